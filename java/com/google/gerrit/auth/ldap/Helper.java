@@ -21,8 +21,10 @@ import com.google.common.flogger.FluentLogger;
 import com.google.gerrit.common.Nullable;
 import com.google.gerrit.common.data.ParameterizedString;
 import com.google.gerrit.entities.AccountGroup;
+import com.google.gerrit.metrics.Counter1;
 import com.google.gerrit.metrics.Description;
 import com.google.gerrit.metrics.Description.Units;
+import com.google.gerrit.metrics.Field;
 import com.google.gerrit.metrics.MetricMaker;
 import com.google.gerrit.metrics.Timer0;
 import com.google.gerrit.server.account.AccountException;
@@ -42,20 +44,26 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import javax.naming.CompositeName;
 import javax.naming.Context;
+import javax.naming.InvalidNameException;
 import javax.naming.Name;
 import javax.naming.NamingEnumeration;
 import javax.naming.NamingException;
 import javax.naming.PartialResultException;
 import javax.naming.directory.Attribute;
 import javax.naming.directory.DirContext;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
 import javax.naming.ldap.InitialLdapContext;
 import javax.naming.ldap.LdapContext;
+import javax.naming.ldap.LdapName;
 import javax.naming.ldap.StartTlsRequest;
 import javax.naming.ldap.StartTlsResponse;
 import javax.net.ssl.SSLSocketFactory;
@@ -70,6 +78,7 @@ class Helper {
 
   static final String LDAP_UUID = "ldap:";
   static final String STARTTLS_PROPERTY = Helper.class.getName() + ".startTls";
+  private static final int DEFAULT_GROUP_EXPANSION_BATCH_SIZE = 50;
 
   private final Cache<String, ImmutableSet<String>> parentGroups;
   private final Config config;
@@ -86,10 +95,12 @@ class Helper {
   private final String connectTimeoutMillis;
   private final boolean useConnectionPooling;
   private final boolean groupsVisibleToAll;
+  private final int groupExpansionBatchSize;
   private final Timer0 loginLatencyTimer;
   private final Timer0 userSearchLatencyTimer;
   private final Timer0 groupSearchLatencyTimer;
   private final Timer0 groupExpansionLatencyTimer;
+  private final Counter1<Boolean> parentGroupLookups;
 
   @Inject
   Helper(
@@ -105,6 +116,8 @@ class Helper {
     this.supportAnonymous = config.getBoolean("ldap", "supportAnonymous", true);
     this.sslVerify = config.getBoolean("ldap", "sslverify", true);
     this.groupsVisibleToAll = config.getBoolean("ldap", "groupsVisibleToAll", false);
+    this.groupExpansionBatchSize =
+        config.getInt("ldap", "groupExpansionBatchSize", DEFAULT_GROUP_EXPANSION_BATCH_SIZE);
     this.authentication = LdapRealm.optional(config, "authentication", "simple");
     String readTimeout = LdapRealm.optional(config, "readTimeout");
     if (readTimeout != null) {
@@ -145,6 +158,15 @@ class Helper {
             new Description("Latency for expanding nested groups")
                 .setCumulative()
                 .setUnit(Units.NANOSECONDS));
+    this.parentGroupLookups =
+        metricMaker.newCounter(
+            "ldap/parent_group_lookups",
+            new Description("Number of LDAP requests for resolving the parents of nested groups")
+                .setRate()
+                .setUnit("requests"),
+            Field.ofBoolean("batched", (metadataBuilder, batched) -> {})
+                .description("Whether the parents of multiple groups were resolved at once.")
+                .build());
   }
 
   Timer0 getGroupSearchLatencyTimer() {
@@ -311,7 +333,7 @@ class Helper {
   Set<AccountGroup.UUID> queryForGroups(
       final DirContext ctx, String username, LdapQuery.Result account) throws NamingException {
     final LdapSchema schema = getSchema(ctx);
-    final Set<String> groupDNs = new HashSet<>();
+    final Set<String> directGroupDNs = new LinkedHashSet<>();
 
     if (!schema.groupMemberQueryList.isEmpty()) {
       final HashMap<String, String> params = new HashMap<>();
@@ -331,9 +353,7 @@ class Helper {
 
       for (LdapQuery groupMemberQuery : schema.groupMemberQueryList) {
         for (LdapQuery.Result r : groupMemberQuery.query(ctx, params, groupSearchLatencyTimer)) {
-          try (Timer0.Context ignored = groupExpansionLatencyTimer.start()) {
-            recursivelyExpandGroups(groupDNs, schema, ctx, r.getDN());
-          }
+          directGroupDNs.add(r.getDN());
         }
       }
     }
@@ -352,8 +372,7 @@ class Helper {
         final NamingEnumeration<?> groups = groupAtt.getAll();
         try {
           while (groups.hasMore()) {
-            final String nextDN = (String) groups.next();
-            recursivelyExpandGroups(groupDNs, schema, ctx, nextDN);
+            directGroupDNs.add((String) groups.next());
           }
         } catch (PartialResultException e) {
           // Ignored
@@ -361,6 +380,17 @@ class Helper {
       }
     }
 
+    final Set<String> groupDNs = new HashSet<>();
+    if (schema.accountMemberField != null && schema.accountMemberExpandGroups) {
+      try (Timer0.Context ignored = groupExpansionLatencyTimer.start()) {
+        new NestedGroupExpander(
+                parentGroups, dns -> lookupParentGroups(schema, ctx, dns), groupExpansionBatchSize)
+            .expand(groupDNs, directGroupDNs);
+      }
+    } else {
+      groupDNs.addAll(directGroupDNs);
+    }
+
     final Set<AccountGroup.UUID> actual = new HashSet<>();
     for (String dn : groupDNs) {
       actual.add(AccountGroup.uuid(LDAP_UUID + dn));
@@ -372,43 +402,109 @@ class Helper {
     return ImmutableSet.copyOf(actual);
   }
 
-  private void recursivelyExpandGroups(
-      final Set<String> groupDNs,
-      final LdapSchema schema,
-      final DirContext ctx,
-      final String groupDN) {
-    if (groupDNs.add(groupDN)
-        && schema.accountMemberField != null
-        && schema.accountMemberExpandGroups) {
-      ImmutableSet<String> cachedParentsDNs = parentGroups.getIfPresent(groupDN);
-      if (cachedParentsDNs == null) {
-        // Recursively identify the groups it is a member of.
-        ImmutableSet.Builder<String> dns = ImmutableSet.builder();
+  /**
+   * Resolves the parent groups of {@code groupDNs}.
+   *
+   * <p>If {@code ldap.groupDnAttribute} is set, the groups are looked up with a single search per
+   * group base using an OR-filter over their DNs. Groups that can't be found this way, e.g. because
+   * they are not below a group base, are looked up one by one.
+   */
+  private Map<String, ImmutableSet<String>> lookupParentGroups(
+      LdapSchema schema, DirContext ctx, Set<String> groupDNs) {
+    Map<String, ImmutableSet<String>> result = new HashMap<>();
+    if (schema.groupDnAttribute != null && groupDNs.size() > 1) {
+      searchParentGroups(schema, ctx, groupDNs, result);
+    }
+    for (String groupDN : groupDNs) {
+      if (!result.containsKey(groupDN)) {
+        result.put(groupDN, getParentGroups(schema, ctx, groupDN));
+      }
+    }
+    return result;
+  }
+
+  private void searchParentGroups(
+      LdapSchema schema,
+      DirContext ctx,
+      Set<String> groupDNs,
+      Map<String, ImmutableSet<String>> result) {
+    Map<LdapName, String> requested = new HashMap<>();
+    for (String groupDN : groupDNs) {
+      try {
+        requested.put(new LdapName(groupDN), groupDN);
+      } catch (InvalidNameException e) {
+        // Looked up individually.
+      }
+    }
+    if (requested.isEmpty()) {
+      return;
+    }
+
+    StringBuilder filter = new StringBuilder("(|");
+    Object[] filterArgs = new Object[requested.size()];
+    int i = 0;
+    for (String groupDN : requested.values()) {
+      filter.append('(').append(schema.groupDnAttribute).append("={").append(i).append("})");
+      filterArgs[i++] = groupDN;
+    }
+    filter.append(')');
+
+    SearchControls sc = new SearchControls();
+    sc.setSearchScope(schema.groupScope.scope());
+    sc.setReturningAttributes(schema.accountMemberFieldArray);
+    for (String groupBase : schema.groupBases) {
+      parentGroupLookups.increment(true);
+      try (Timer0.Context ignored = groupSearchLatencyTimer.start()) {
+        NamingEnumeration<SearchResult> res =
+            ctx.search(groupBase, filter.toString(), filterArgs, sc);
         try {
-          final Name compositeGroupName = new CompositeName().add(groupDN);
-          final Attribute in =
-              ctx.getAttributes(compositeGroupName, schema.accountMemberFieldArray)
-                  .get(schema.accountMemberField);
-          if (in != null) {
-            final NamingEnumeration<?> groups = in.getAll();
-            try {
-              while (groups.hasMore()) {
-                dns.add((String) groups.next());
-              }
-            } catch (PartialResultException e) {
-              // Ignored
+          while (res.hasMore()) {
+            SearchResult r = res.next();
+            String groupDN = requested.get(new LdapName(r.getNameInNamespace()));
+            if (groupDN != null) {
+              result.put(
+                  groupDN, readParentGroups(r.getAttributes().get(schema.accountMemberField)));
             }
           }
-        } catch (NamingException e) {
-          logger.atWarning().withCause(e).log("Could not find group %s", groupDN);
+        } catch (PartialResultException e) {
+          // Ignored
+        } finally {
+          res.close();
         }
-        cachedParentsDNs = dns.build();
-        parentGroups.put(groupDN, cachedParentsDNs);
+      } catch (NamingException e) {
+        logger.atWarning().withCause(e).log(
+            "Could not search for %d groups in %s", requested.size(), groupBase);
       }
-      for (String dn : cachedParentsDNs) {
-        recursivelyExpandGroups(groupDNs, schema, ctx, dn);
+    }
+  }
+
+  private ImmutableSet<String> getParentGroups(LdapSchema schema, DirContext ctx, String groupDN) {
+    parentGroupLookups.increment(false);
+    try {
+      final Name compositeGroupName = new CompositeName().add(groupDN);
+      return readParentGroups(
+          ctx.getAttributes(compositeGroupName, schema.accountMemberFieldArray)
+              .get(schema.accountMemberField));
+    } catch (NamingException e) {
+      logger.atWarning().withCause(e).log("Could not find group %s", groupDN);
+      return ImmutableSet.of();
+    }
+  }
+
+  private static ImmutableSet<String> readParentGroups(@Nullable Attribute in)
+      throws NamingException {
+    ImmutableSet.Builder<String> dns = ImmutableSet.builder();
+    if (in != null) {
+      final NamingEnumeration<?> groups = in.getAll();
+      try {
+        while (groups.hasMore()) {
+          dns.add((String) groups.next());
+        }
+      } catch (PartialResultException e) {
+        // Ignored
       }
     }
+    return dns.build();
   }
 
   public boolean groupsVisibleToAll() {
@@ -423,6 +519,7 @@ class Helper {
     final ParameterizedString accountSshUserName;
     final String accountMemberField;
     final boolean accountMemberExpandGroups;
+    final String groupDnAttribute;
     final String[] accountMemberFieldArray;
     final List<LdapQuery> accountQueryList;
     final List<LdapQuery> accountWithMemberOfQueryList;
@@ -494,6 +591,7 @@ class Helper {
       }
       accountMemberExpandGroups =
           LdapRealm.optional(config, "accountMemberExpandGroups", type.accountMemberExpandGroups());
+      groupDnAttribute = LdapRealm.optdef(config, "groupDnAttribute", type.groupDnAttribute());
 
       final SearchScope accountScope = LdapRealm.scope(config, "accountScope");
       final String accountPattern =
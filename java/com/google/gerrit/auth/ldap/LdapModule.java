@@ -37,6 +37,7 @@ public class LdapModule extends CacheModule {
   protected void configure() {
     cache(GROUP_CACHE, String.class, new TypeLiteral<Set<AccountGroup.UUID>>() {})
         .expireAfterWrite(Duration.ofHours(1))
+        .refreshAfterWrite(Duration.ofMinutes(50))
         .loader(LdapRealm.MemberLoader.class);
 
     cache(USERNAME_CACHE, String.class, new TypeLiteral<Optional<Account.Id>>() {})
@@ -20,6 +20,8 @@ import com.google.common.base.Strings;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.flogger.FluentLogger;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.gerrit.common.Nullable;
 import com.google.gerrit.common.data.ParameterizedString;
 import com.google.gerrit.entities.Account;
@@ -27,6 +29,7 @@ import com.google.gerrit.entities.AccountGroup;
 import com.google.gerrit.entities.GroupReference;
 import com.google.gerrit.extensions.client.AccountFieldName;
 import com.google.gerrit.extensions.client.AuthType;
+import com.google.gerrit.server.CacheRefreshExecutor;
 import com.google.gerrit.server.account.AbstractRealm;
 import com.google.gerrit.server.account.AccountException;
 import com.google.gerrit.server.account.AuthRequest;
@@ -374,10 +377,12 @@ class LdapRealm extends AbstractRealm {
 
   static class MemberLoader extends CacheLoader<String, Set<AccountGroup.UUID>> {
     private final Helper helper;
+    private final ListeningExecutorService refreshExecutor;
 
     @Inject
-    MemberLoader(Helper helper) {
+    MemberLoader(Helper helper, @CacheRefreshExecutor ListeningExecutorService refreshExecutor) {
       this.helper = helper;
+      this.refreshExecutor = refreshExecutor;
     }
 
     @Override
@@ -394,6 +399,15 @@ class LdapRealm extends AbstractRealm {
         }
       }
     }
+
+    @Override
+    public ListenableFuture<Set<AccountGroup.UUID>> reload(
+        String username, Set<AccountGroup.UUID> oldValue) {
+      // Entries are refreshed in the background shortly before they expire, so that logins and
+      // permission checks don't have to wait for the directory. The old value is served until the
+      // refresh completes.
+      return refreshExecutor.submit(() -> load(username));
+    }
   }
 
   static class ExistenceLoader extends CacheLoader<String, Boolean> {
@@ -55,6 +55,8 @@ abstract class LdapType {
 
   abstract boolean accountMemberExpandGroups();
 
+  abstract String groupDnAttribute();
+
   abstract String accountPattern();
 
   private static class Rfc2307 extends LdapType {
@@ -102,6 +104,11 @@ abstract class LdapType {
     boolean accountMemberExpandGroups() {
       return true;
     }
+
+    @Override
+    String groupDnAttribute() {
+      return null; // Not defined in RFC 2307
+    }
   }
 
   private static class ActiveDirectory extends LdapType {
@@ -149,6 +156,11 @@ abstract class LdapType {
     boolean accountMemberExpandGroups() {
       return true;
     }
+
+    @Override
+    String groupDnAttribute() {
+      return "distinguishedName";
+    }
   }
 
   private static class FreeIPA extends LdapType {
@@ -197,5 +209,10 @@ abstract class LdapType {
     boolean accountMemberExpandGroups() {
       return false;
     }
+
+    @Override
+    String groupDnAttribute() {
+      return null; // FreeIPA doesn't expand nested groups
+    }
   }
 }
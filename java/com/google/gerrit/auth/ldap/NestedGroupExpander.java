@@ -0,0 +1,103 @@
+// Copyright (C) 2023 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.auth.ldap;
+
+import com.google.common.cache.Cache;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.naming.NamingException;
+
+/**
+ * Flattens nested LDAP groups by walking the parent groups level by level.
+ *
+ * <p>All groups of one level whose parents are not cached yet are resolved together, in batches of
+ * at most {@code batchSize} groups, so that expanding the groups of a user takes one directory
+ * round trip per nesting level and batch instead of one round trip per group.
+ */
+class NestedGroupExpander {
+  /** Resolves the parent groups of a batch of groups. */
+  @FunctionalInterface
+  interface ParentGroupLookup {
+    /**
+     * Returns the parent group DNs for each of the given group DNs. Groups that are missing in the
+     * result are treated as having no parents.
+     */
+    Map<String, ImmutableSet<String>> lookup(Set<String> groupDNs) throws NamingException;
+  }
+
+  private final Cache<String, ImmutableSet<String>> parentGroups;
+  private final ParentGroupLookup lookup;
+  private final int batchSize;
+
+  NestedGroupExpander(
+      Cache<String, ImmutableSet<String>> parentGroups, ParentGroupLookup lookup, int batchSize) {
+    this.parentGroups = parentGroups;
+    this.lookup = lookup;
+    this.batchSize = Math.max(1, batchSize);
+  }
+
+  /**
+   * Adds {@code groupDNs} and all groups they are transitively nested in to {@code result}.
+   *
+   * @param result set of already expanded group DNs. Groups in this set are not expanded again.
+   * @param groupDNs group DNs to expand.
+   */
+  void expand(Set<String> result, Collection<String> groupDNs) throws NamingException {
+    Set<String> level = new LinkedHashSet<>();
+    for (String dn : groupDNs) {
+      if (result.add(dn)) {
+        level.add(dn);
+      }
+    }
+
+    while (!level.isEmpty()) {
+      List<ImmutableSet<String>> parentsOfLevel = new ArrayList<>(level.size());
+      Set<String> missing = new LinkedHashSet<>();
+      for (String dn : level) {
+        ImmutableSet<String> cached = parentGroups.getIfPresent(dn);
+        if (cached != null) {
+          parentsOfLevel.add(cached);
+        } else {
+          missing.add(dn);
+        }
+      }
+
+      for (List<String> batch : Iterables.partition(missing, batchSize)) {
+        Map<String, ImmutableSet<String>> found = lookup.lookup(ImmutableSet.copyOf(batch));
+        for (String dn : batch) {
+          ImmutableSet<String> parents = found.getOrDefault(dn, ImmutableSet.of());
+          parentGroups.put(dn, parents);
+          parentsOfLevel.add(parents);
+        }
+      }
+
+      Set<String> nextLevel = new LinkedHashSet<>();
+      for (ImmutableSet<String> parents : parentsOfLevel) {
+        for (String parent : parents) {
+          if (result.add(parent)) {
+            nextLevel.add(parent);
+          }
+        }
+      }
+      level = nextLevel;
+    }
+  }
+}
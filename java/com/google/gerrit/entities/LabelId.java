@@ -15,6 +15,8 @@
 package com.google.gerrit.entities;
 
 import com.google.auto.value.AutoValue;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 
 @AutoValue
 public abstract class LabelId {
@@ -22,8 +24,11 @@ public abstract class LabelId {
   public static final String CODE_REVIEW = "Code-Review";
   public static final String VERIFIED = "Verified";
 
+  // There are only few distinct labels, but every cached approval references one.
+  private static final Interner<LabelId> INTERNER = Interners.newWeakInterner();
+
   public static LabelId create(String n) {
-    return new AutoValue_LabelId(n);
+    return INTERNER.intern(new AutoValue_LabelId(n));
   }
 
   public static LabelId legacySubmit() {
@@ -0,0 +1,47 @@
+// Copyright (C) 2023 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.extensions.events;
+
+import static java.lang.annotation.ElementType.TYPE;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+/**
+ * Allows a {@link LifecycleListener} to be started concurrently with the listeners that are
+ * registered after it.
+ *
+ * <p>By default listeners are started one by one in the order in which they are registered. A
+ * listener with this annotation is still only started once all listeners registered before it were
+ * started, but it is started on a background thread, and the following listeners don't wait for
+ * it. The server only finishes starting once all listeners were started. Since the listener is
+ * started on another thread, it doesn't see the request context of the thread starting the server.
+ *
+ * <p>Only annotate listeners that no listener registered after them depends on, except for
+ * listeners that declare the dependency with {@link #after()}.
+ */
+@Documented
+@Retention(RUNTIME)
+@Target(TYPE)
+public @interface ConcurrentStart {
+  /**
+   * Concurrently started listeners that must be started before this listener.
+   *
+   * <p>Only listeners that are registered before this listener are considered.
+   */
+  Class<? extends LifecycleListener>[] after() default {};
+}
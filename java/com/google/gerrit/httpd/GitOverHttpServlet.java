@@ -22,18 +22,22 @@ import com.google.common.collect.ImmutableListMultimap;
 import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.flogger.FluentLogger;
+import com.google.common.net.HttpHeaders;
 import com.google.gerrit.common.Nullable;
 import com.google.gerrit.common.data.Capable;
 import com.google.gerrit.entities.Project;
 import com.google.gerrit.extensions.registration.DynamicSet;
 import com.google.gerrit.extensions.restapi.AuthException;
+import com.google.gerrit.httpd.restapi.RestApiServlet;
 import com.google.gerrit.server.AccessPath;
+import com.google.gerrit.server.AdmissionController;
 import com.google.gerrit.server.AnonymousUser;
 import com.google.gerrit.server.CurrentUser;
 import com.google.gerrit.server.RequestInfo;
 import com.google.gerrit.server.RequestListener;
 import com.google.gerrit.server.audit.HttpAuditEvent;
 import com.google.gerrit.server.cache.CacheModule;
+import com.google.gerrit.server.cancellation.RequestCancelledException;
 import com.google.gerrit.server.git.GitRepositoryManager;
 import com.google.gerrit.server.git.PermissionAwareRepositoryManager;
 import com.google.gerrit.server.git.TracingHook;
@@ -50,6 +54,9 @@ import com.google.gerrit.server.permissions.ProjectPermission;
 import com.google.gerrit.server.plugincontext.PluginSetContext;
 import com.google.gerrit.server.project.ProjectCache;
 import com.google.gerrit.server.project.ProjectState;
+import com.google.gerrit.server.quota.QuotaBackend;
+import com.google.gerrit.server.quota.QuotaException;
+import com.google.gerrit.server.quota.QuotaGroupDefinitions;
 import com.google.gerrit.server.util.time.TimeUtil;
 import com.google.inject.AbstractModule;
 import com.google.inject.Inject;
@@ -388,6 +395,9 @@ public class GitOverHttpServlet extends GitServlet {
     private final PluginSetContext<RequestListener> requestListeners;
     private final UsersSelfAdvertiseRefsHook usersSelfAdvertiseRefsHook;
     private final Provider<WebSession> sessionProvider;
+    private final QuotaBackend quotaBackend;
+    private final AdmissionController admissionController;
+    private final UploadPackCacheHandler uploadPackCacheHandler;
 
     @Inject
     UploadFilter(
@@ -398,7 +408,10 @@ public class GitOverHttpServlet extends GitServlet {
         Metrics metrics,
         PluginSetContext<RequestListener> requestListeners,
         UsersSelfAdvertiseRefsHook usersSelfAdvertiseRefsHook,
-        Provider<WebSession> sessionProvider) {
+        Provider<WebSession> sessionProvider,
+        QuotaBackend quotaBackend,
+        AdmissionController admissionController,
+        UploadPackCacheHandler uploadPackCacheHandler) {
       this.uploadValidatorsFactory = uploadValidatorsFactory;
       this.permissionBackend = permissionBackend;
       this.userProvider = userProvider;
@@ -407,6 +420,9 @@ public class GitOverHttpServlet extends GitServlet {
       this.requestListeners = requestListeners;
       this.usersSelfAdvertiseRefsHook = usersSelfAdvertiseRefsHook;
       this.sessionProvider = sessionProvider;
+      this.quotaBackend = quotaBackend;
+      this.admissionController = admissionController;
+      this.uploadPackCacheHandler = uploadPackCacheHandler;
     }
 
     @Override
@@ -446,6 +462,34 @@ public class GitOverHttpServlet extends GitServlet {
           throw new ServletException(e);
         }
 
+        HttpServletRequest uploadRequest = httpRequest;
+        if (UploadPackCacheHandler.isUploadPackRequest(httpRequest)) {
+          // Only requests that may send a pack are charged, so that a clone takes one token. The
+          // ref advertisement and the protocol v2 ls-refs command only list refs.
+          UploadPackCacheHandler.BufferedRequest peeked =
+              UploadPackCacheHandler.peekCommand(httpRequest);
+          uploadRequest = peeked;
+          if (!peeked.isLsRefs()) {
+            try {
+              quotaBackend
+                  .user(userProvider.get())
+                  .project(state.getNameKey())
+                  .requestToken(QuotaGroupDefinitions.GIT_UPLOAD_GROUP)
+                  .throwOnError();
+            } catch (QuotaException e) {
+              e.getRetryAfterSeconds()
+                  .ifPresent(
+                      s -> responseWrapper.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(s)));
+              GitSmartHttpTools.sendError(
+                  httpRequest,
+                  responseWrapper,
+                  RestApiServlet.SC_TOO_MANY_REQUESTS,
+                  e.getMessage());
+              return;
+            }
+          }
+        }
+
         // We use getRemoteHost() here instead of getRemoteAddr() because REMOTE_ADDR
         // may have been overridden by a proxy server -- we'll try to avoid this.
         UploadValidators uploadValidators =
@@ -457,9 +501,27 @@ public class GitOverHttpServlet extends GitServlet {
           up.setAdvertiseRefsHook(usersSelfAdvertiseRefsHook);
         }
 
-        try (TracingHook tracingHook = new TracingHook()) {
+        AdmissionController.Permit admissionPermit =
+            admit(
+                admissionController,
+                userProvider.get(),
+                AdmissionController.RequestClass.GIT_UPLOAD,
+                httpRequest,
+                responseWrapper);
+        if (admissionPermit == null) {
+          return;
+        }
+        try (AdmissionController.Permit permit = admissionPermit;
+            TracingHook tracingHook = new TracingHook()) {
           up.setProtocolV2Hook(tracingHook);
-          next.doFilter(httpRequest, responseWrapper);
+          if (uploadPackCacheHandler.isEnabled()
+              && !state.isAllUsers()
+              && UploadPackCacheHandler.isUploadPackRequest(uploadRequest)) {
+            uploadPackCacheHandler.service(
+                state.getNameKey(), up, uploadRequest, responseWrapper, next);
+          } else {
+            next.doFilter(uploadRequest, responseWrapper);
+          }
         }
       } finally {
         groupAuditService.dispatch(
@@ -483,6 +545,29 @@ public class GitOverHttpServlet extends GitServlet {
     public void destroy() {}
   }
 
+  /**
+   * Admits a Git request, or replies with {@code 503 Service Unavailable} if the server is
+   * overloaded.
+   *
+   * @return the permit that must be closed after the request, {@code null} if the request was
+   *     rejected
+   */
+  @Nullable
+  private static AdmissionController.Permit admit(
+      AdmissionController admissionController,
+      CurrentUser user,
+      AdmissionController.RequestClass requestClass,
+      HttpServletRequest req,
+      HttpServletResponse rsp)
+      throws IOException {
+    try {
+      return admissionController.admit(user, requestClass);
+    } catch (RequestCancelledException e) {
+      sendError(req, rsp, HttpServletResponse.SC_SERVICE_UNAVAILABLE, e.getMessage());
+      return null;
+    }
+  }
+
   static class GerritUploadPackErrorHandler implements UploadPackErrorHandler {
     private static final FluentLogger logger = FluentLogger.forEnclosingClass();
 
@@ -556,6 +641,7 @@ public class GitOverHttpServlet extends GitServlet {
     private final GroupAuditService groupAuditService;
     private final Metrics metrics;
     private final Provider<WebSession> sessionProvider;
+    private final AdmissionController admissionController;
 
     @Inject
     ReceiveFilter(
@@ -564,13 +650,15 @@ public class GitOverHttpServlet extends GitServlet {
         Provider<CurrentUser> userProvider,
         GroupAuditService groupAuditService,
         Metrics metrics,
-        Provider<WebSession> sessionProvider) {
+        Provider<WebSession> sessionProvider,
+        AdmissionController admissionController) {
       this.cache = cache;
       this.permissionBackend = permissionBackend;
       this.userProvider = userProvider;
       this.groupAuditService = groupAuditService;
       this.metrics = metrics;
       this.sessionProvider = sessionProvider;
+      this.admissionController = admissionController;
     }
 
     @Override
@@ -630,6 +718,29 @@ public class GitOverHttpServlet extends GitServlet {
         return;
       }
 
+      AdmissionController.Permit admissionPermit =
+          admit(
+              admissionController,
+              userProvider.get(),
+              AdmissionController.RequestClass.WRITE,
+              httpRequest,
+              responseWrapper);
+      if (admissionPermit == null) {
+        return;
+      }
+      try (AdmissionController.Permit permit = admissionPermit) {
+        receive(request, responseWrapper, chain, rp, state, isGet);
+      }
+    }
+
+    private void receive(
+        ServletRequest request,
+        HttpServletResponseWithStatusWrapper responseWrapper,
+        FilterChain chain,
+        ReceivePack rp,
+        ProjectState state,
+        boolean isGet)
+        throws IOException, ServletException {
       if (!rp.isCheckReferencedObjectsAreReachable()) {
         chain.doFilter(request, responseWrapper);
         return;
@@ -0,0 +1,377 @@
+// Copyright (C) 2023 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.httpd;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+import com.google.common.net.HttpHeaders;
+import com.google.common.primitives.Bytes;
+import com.google.gerrit.common.Nullable;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.server.git.UploadPackCache;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPInputStream;
+import javax.servlet.FilterChain;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.storage.pack.PackStatistics;
+import org.eclipse.jgit.transport.PostUploadHook;
+import org.eclipse.jgit.transport.PostUploadHookChain;
+import org.eclipse.jgit.transport.PreUploadHook;
+import org.eclipse.jgit.transport.ServiceMayNotContinueException;
+import org.eclipse.jgit.transport.UploadPack;
+
+/**
+ * Serves full fetches over HTTP from the {@link UploadPackCache}.
+ *
+ * <p>The request body is buffered to find out whether the request is a full fetch. Other requests,
+ * and requests that are too large to buffer, are passed on unchanged.
+ */
+@Singleton
+class UploadPackCacheHandler {
+  private static final String RESULT_TYPE = "application/x-git-upload-pack-result";
+  private static final int MAX_REQUEST_SIZE = 1024 * 1024;
+  private static final String LS_REFS_COMMAND = "command=ls-refs";
+
+  private final UploadPackCache cache;
+
+  @Inject
+  UploadPackCacheHandler(UploadPackCache cache) {
+    this.cache = cache;
+  }
+
+  boolean isEnabled() {
+    return cache.isEnabled();
+  }
+
+  static boolean isUploadPackRequest(HttpServletRequest req) {
+    return "POST".equals(req.getMethod()) && req.getRequestURI().endsWith("/git-upload-pack");
+  }
+
+  /**
+   * Reads the first packet line of an upload-pack request, which names the command of protocol v2
+   * requests. Compressed requests are passed on unread.
+   *
+   * @param req the upload-pack request
+   * @return the request to continue with, it still has the full body
+   */
+  static BufferedRequest peekCommand(HttpServletRequest req) throws IOException {
+    InputStream in = req.getInputStream();
+    if (req.getHeader(HttpHeaders.CONTENT_ENCODING) != null) {
+      return new BufferedRequest(req, new byte[0], in, false);
+    }
+    byte[] head = ByteStreams.toByteArray(ByteStreams.limit(in, 4 + LS_REFS_COMMAND.length()));
+    return new BufferedRequest(req, head, in, false);
+  }
+
+  /**
+   * Handles an upload-pack request.
+   *
+   * @param project the project
+   * @param up the upload pack, its repository must only show the refs that the user can see
+   * @param req the request
+   * @param rsp the response
+   * @param next the filter chain that runs upload-pack
+   */
+  void service(
+      Project.NameKey project,
+      UploadPack up,
+      HttpServletRequest req,
+      HttpServletResponse rsp,
+      FilterChain next)
+      throws IOException, ServletException {
+    InputStream in = req.getInputStream();
+    if ("gzip".equals(req.getHeader(HttpHeaders.CONTENT_ENCODING))) {
+      in = new GZIPInputStream(in);
+    }
+    byte[] body = ByteStreams.toByteArray(ByteStreams.limit(in, MAX_REQUEST_SIZE + 1));
+    if (body.length > MAX_REQUEST_SIZE) {
+      next.doFilter(new BufferedRequest(req, body, in, true), rsp);
+      return;
+    }
+    HttpServletRequest bufferedReq = new BufferedRequest(req, body, null, true);
+
+    Optional<ImmutableList<ObjectId>> wants = UploadPackCache.parseFullFetch(body);
+    if (!wants.isPresent()) {
+      next.doFilter(bufferedReq, rsp);
+      return;
+    }
+    try {
+      // Validate the request before it may be served from the cache. Upload-pack doesn't need to
+      // validate it again, since the request has no haves that could change the result.
+      up.getPreUploadHook().onSendPack(up, wants.get(), ImmutableList.of());
+      up.setPreUploadHook(PreUploadHook.NULL);
+    } catch (ServiceMayNotContinueException e) {
+      // Let upload-pack report the error.
+      next.doFilter(bufferedReq, rsp);
+      return;
+    }
+
+    // The same request gets a different response depending on the protocol version.
+    String protocol = String.valueOf(req.getHeader("Git-Protocol")) + "\n";
+    UploadPackCache.Key key =
+        UploadPackCache.Key.create(
+            project,
+            up.getRepository().getRefDatabase().getRefs(),
+            Bytes.concat(protocol.getBytes(UTF_8), body));
+
+    rsp.setContentType(RESULT_TYPE);
+    rsp.setHeader(HttpHeaders.EXPIRES, "Fri, 01 Jan 1980 00:00:00 GMT");
+    rsp.setHeader(HttpHeaders.PRAGMA, "no-cache");
+    rsp.setHeader(HttpHeaders.CACHE_CONTROL, "no-cache, max-age=0, must-revalidate");
+    long start = System.nanoTime();
+    long cachedSize;
+    try {
+      cachedSize =
+          cache.writeTo(
+              key, out -> generate(up, bufferedReq, rsp, next, out), rsp.getOutputStream());
+    } catch (WrappedServletException e) {
+      throw e.getCause();
+    }
+    if (cachedSize >= 0) {
+      // Upload-pack didn't run, report the transferred response to the post upload hooks instead.
+      PackStatistics.Accumulator stats = new PackStatistics.Accumulator();
+      stats.totalBytes = cachedSize;
+      stats.timeWriting = NANOSECONDS.toMillis(System.nanoTime() - start);
+      up.getPostUploadHook().onPostUpload(new PackStatistics(stats));
+    }
+  }
+
+  private static boolean generate(
+      UploadPack up,
+      HttpServletRequest req,
+      HttpServletResponse rsp,
+      FilterChain next,
+      OutputStream out)
+      throws IOException {
+    AtomicBoolean packSent = new AtomicBoolean();
+    PostUploadHook onPackSent = stats -> packSent.set(true);
+    up.setPostUploadHook(
+        PostUploadHookChain.newChain(ImmutableList.of(up.getPostUploadHook(), onPackSent)));
+    TeeResponse teeRsp = new TeeResponse(rsp, out);
+    try {
+      next.doFilter(req, teeRsp);
+    } catch (ServletException e) {
+      throw new WrappedServletException(e);
+    }
+    out.flush();
+    return packSent.get() && teeRsp.cacheable;
+  }
+
+  /** Request whose body starts with bytes that were already read from the original request. */
+  static class BufferedRequest extends HttpServletRequestWrapper {
+    private final byte[] body;
+    private final InputStream in;
+
+    /** Whether the body was decompressed, the headers describing the encoding are then hidden. */
+    private final boolean decoded;
+
+    BufferedRequest(
+        HttpServletRequest req, byte[] body, @Nullable InputStream rest, boolean decoded) {
+      super(req);
+      this.body = body;
+      this.decoded = decoded;
+      InputStream buffered = new ByteArrayInputStream(body);
+      in = rest != null ? new SequenceInputStream(buffered, rest) : buffered;
+    }
+
+    /** Returns whether the request runs the protocol v2 ls-refs command, which only lists refs. */
+    boolean isLsRefs() {
+      int len = LS_REFS_COMMAND.length();
+      return body.length >= 4 + len && new String(body, 4, len, UTF_8).equals(LS_REFS_COMMAND);
+    }
+
+    @Override
+    public ServletInputStream getInputStream() {
+      return new ServletInputStream() {
+        private boolean finished;
+
+        @Override
+        public int read() throws IOException {
+          int b = in.read();
+          finished = b < 0;
+          return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+          int n = in.read(b, off, len);
+          finished = n < 0;
+          return n;
+        }
+
+        @Override
+        public boolean isFinished() {
+          return finished;
+        }
+
+        @Override
+        public boolean isReady() {
+          return true;
+        }
+
+        @Override
+        public void setReadListener(ReadListener listener) {
+          throw new UnsupportedOperationException();
+        }
+      };
+    }
+
+    @Override
+    public int getContentLength() {
+      return decoded ? -1 : super.getContentLength();
+    }
+
+    @Override
+    public long getContentLengthLong() {
+      return decoded ? -1 : super.getContentLengthLong();
+    }
+
+    @Override
+    @Nullable
+    public String getHeader(String name) {
+      return isHidden(name) ? null : super.getHeader(name);
+    }
+
+    @Override
+    public Enumeration<String> getHeaders(String name) {
+      return isHidden(name) ? Collections.emptyEnumeration() : super.getHeaders(name);
+    }
+
+    private boolean isHidden(String name) {
+      if (!decoded) {
+        return false;
+      }
+      // The body was already decompressed, and compressing the response would make it differ
+      // between clients.
+      return HttpHeaders.CONTENT_ENCODING.equalsIgnoreCase(name)
+          || HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)
+          || HttpHeaders.ACCEPT_ENCODING.equalsIgnoreCase(name);
+    }
+  }
+
+  /** Writes the response body to the cache, and remembers whether the response can be cached. */
+  private static class TeeResponse extends HttpServletResponseWrapper {
+    private final ServletOutputStream out;
+    private boolean cacheable = true;
+
+    TeeResponse(HttpServletResponse rsp, OutputStream out) {
+      super(rsp);
+      this.out =
+          new ServletOutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+              out.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+              out.write(b, off, len);
+            }
+
+            @Override
+            public void flush() throws IOException {
+              out.flush();
+            }
+
+            @Override
+            public boolean isReady() {
+              return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener listener) {
+              throw new UnsupportedOperationException();
+            }
+          };
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() {
+      return out;
+    }
+
+    @Override
+    public void setStatus(int sc) {
+      cacheable &= sc == SC_OK;
+      super.setStatus(sc);
+    }
+
+    @SuppressWarnings("deprecation")
+    @Override
+    public void setStatus(int sc, String sm) {
+      cacheable &= sc == SC_OK;
+      super.setStatus(sc, sm);
+    }
+
+    @Override
+    public void sendError(int sc) throws IOException {
+      cacheable = false;
+      super.sendError(sc);
+    }
+
+    @Override
+    public void sendError(int sc, String msg) throws IOException {
+      cacheable = false;
+      super.sendError(sc, msg);
+    }
+
+    @Override
+    public void setHeader(String name, String value) {
+      cacheable &= !HttpHeaders.CONTENT_ENCODING.equalsIgnoreCase(name);
+      super.setHeader(name, value);
+    }
+
+    @Override
+    public void addHeader(String name, String value) {
+      cacheable &= !HttpHeaders.CONTENT_ENCODING.equalsIgnoreCase(name);
+      super.addHeader(name, value);
+    }
+  }
+
+  private static class WrappedServletException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    WrappedServletException(ServletException cause) {
+      super(cause);
+    }
+
+    @Override
+    public synchronized ServletException getCause() {
+      return (ServletException) super.getCause();
+    }
+  }
+}
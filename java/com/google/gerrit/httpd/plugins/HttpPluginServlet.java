@@ -36,6 +36,7 @@ import com.google.common.flogger.FluentLogger;
 import com.google.common.io.ByteStreams;
 import com.google.common.net.HttpHeaders;
 import com.google.gerrit.common.Nullable;
+import com.google.gerrit.httpd.HtmlDomUtil;
 import com.google.gerrit.httpd.resources.Resource;
 import com.google.gerrit.httpd.resources.ResourceKey;
 import com.google.gerrit.httpd.resources.SmallResource;
@@ -282,7 +283,7 @@ class HttpPluginServlet extends HttpServlet implements StartPluginListener, Relo
           if (hasUpToDateCachedResource(rsc, entry.get().getTime())) {
             rsc.send(req, res);
           } else {
-            sendResource(scanner, entry.get(), key, res);
+            sendResource(scanner, entry.get(), key, req, res);
           }
         } else {
           resourceCache.put(key, Resource.NOT_FOUND);
@@ -317,7 +318,7 @@ class HttpPluginServlet extends HttpServlet implements StartPluginListener, Relo
         if (hasUpToDateCachedResource(rsc, entry.get().getTime())) {
           rsc.send(req, res);
         } else {
-          sendResource(scanner, entry.get(), key, res);
+          sendResource(scanner, entry.get(), key, req, res);
         }
       } else {
         resourceCache.put(key, Resource.NOT_FOUND);
@@ -623,6 +624,7 @@ class HttpPluginServlet extends HttpServlet implements StartPluginListener, Relo
       PluginContentScanner scanner,
       PluginEntry entry,
       PluginResourceKey key,
+      HttpServletRequest req,
       HttpServletResponse res)
       throws IOException {
     byte[] data = null;
@@ -649,6 +651,23 @@ class HttpPluginServlet extends HttpServlet implements StartPluginListener, Relo
     }
 
     long time = entry.getTime();
+    if (data != null) {
+      SmallResource resource =
+          new SmallResource(data)
+              .setContentType(contentType)
+              .setCharacterEncoding(charEnc)
+              .setLastModified(time);
+      if (isCompressible(contentType)) {
+        byte[] gzipped = readVariant(scanner, entry, ".gz");
+        resource
+            .setGzipped(gzipped != null ? gzipped : compress(data))
+            .setBrotli(readVariant(scanner, entry, ".br"));
+      }
+      resourceCache.put(key, resource);
+      resource.send(req, res);
+      return;
+    }
+
     if (0 < time) {
       res.setDateHeader("Last-Modified", time);
     }
@@ -659,17 +678,39 @@ class HttpPluginServlet extends HttpServlet implements StartPluginListener, Relo
     if (charEnc != null) {
       res.setCharacterEncoding(charEnc);
     }
-    if (data != null) {
-      resourceCache.put(
-          key,
-          new SmallResource(data)
-              .setContentType(contentType)
-              .setCharacterEncoding(charEnc)
-              .setLastModified(time));
-      res.getOutputStream().write(data);
-    } else {
-      writeToResponse(res, scanner.getInputStream(entry));
+    writeToResponse(res, scanner.getInputStream(entry));
+  }
+
+  private static boolean isCompressible(String contentType) {
+    return contentType.startsWith("text/")
+        || contentType.endsWith("javascript")
+        || contentType.endsWith("json")
+        || contentType.endsWith("+xml");
+  }
+
+  /** Returns the gzip compressed data, or null if compression doesn't make it smaller. */
+  @Nullable
+  private static byte[] compress(byte[] data) throws IOException {
+    byte[] gz = HtmlDomUtil.compress(data);
+    return (gz.length + 24) < data.length ? gz : null;
+  }
+
+  /**
+   * Reads the precompressed variant of a plugin resource.
+   *
+   * @param scanner content scanner of the plugin
+   * @param entry the resource
+   * @param suffix suffix of the precompressed variant, e.g. {@code .gz}
+   * @return content of the variant, or null if the plugin doesn't contain it
+   */
+  @Nullable
+  private static byte[] readVariant(PluginContentScanner scanner, PluginEntry entry, String suffix)
+      throws IOException {
+    Optional<PluginEntry> variant = scanner.getEntry(entry.getName() + suffix);
+    if (!variant.isPresent() || variant.get().getTime() < entry.getTime()) {
+      return null;
     }
+    return readWholeEntry(scanner, variant.get());
   }
 
   private void sendJsPlugin(
@@ -677,12 +718,26 @@ class HttpPluginServlet extends HttpServlet implements StartPluginListener, Relo
       throws IOException {
     Path path = plugin.getSrcFile();
     if (req.getRequestURI().endsWith(getJsPluginPath(plugin)) && Files.exists(path)) {
-      res.setHeader("Content-Length", Long.toString(Files.size(path)));
+      long size = Files.size(path);
+      String contentType;
       if (path.toString().toLowerCase(Locale.US).endsWith(".html")) {
-        res.setContentType("text/html");
+        contentType = "text/html";
       } else {
-        res.setContentType("application/javascript");
+        contentType = "application/javascript";
+      }
+      if (size <= SMALL_RESOURCE) {
+        byte[] data = Files.readAllBytes(path);
+        SmallResource resource =
+            new SmallResource(data)
+                .setContentType(contentType)
+                .setLastModified(lastModified(path))
+                .setGzipped(compress(data));
+        resourceCache.put(key, resource);
+        resource.send(req, res);
+        return;
       }
+      res.setHeader("Content-Length", Long.toString(size));
+      res.setContentType(contentType);
       writeToResponse(res, Files.newInputStream(path));
     } else {
       resourceCache.put(key, Resource.NOT_FOUND);
@@ -14,11 +14,13 @@
 
 package com.google.gerrit.httpd.raw;
 
+import static com.google.common.net.HttpHeaders.ACCEPT_ENCODING;
 import static com.google.common.net.HttpHeaders.CONTENT_ENCODING;
 import static com.google.common.net.HttpHeaders.ETAG;
 import static com.google.common.net.HttpHeaders.IF_MODIFIED_SINCE;
 import static com.google.common.net.HttpHeaders.IF_NONE_MATCH;
 import static com.google.common.net.HttpHeaders.LAST_MODIFIED;
+import static com.google.common.net.HttpHeaders.VARY;
 import static java.util.Objects.requireNonNull;
 import static java.util.concurrent.TimeUnit.DAYS;
 import static java.util.concurrent.TimeUnit.MINUTES;
@@ -53,7 +55,11 @@ import javax.servlet.http.HttpServletResponse;
 /**
  * Base class for serving static resources.
  *
- * <p>Supports caching, ETags, basic content type detection, and limited gzip compression.
+ * <p>Supports caching, ETags, basic content type detection, and gzip and brotli compression.
+ *
+ * <p>Cached resources are compressed once when they are loaded. If a resource {@code foo.js} has a
+ * precompressed variant {@code foo.js.gz} or {@code foo.js.br} next to it, the variant is served
+ * to clients that accept the encoding, instead of compressing the resource for each request.
  */
 public abstract class ResourceServlet extends HttpServlet {
   private static final long serialVersionUID = 1L;
@@ -62,6 +68,9 @@ public abstract class ResourceServlet extends HttpServlet {
 
   private static final int CACHE_FILE_SIZE_LIMIT_BYTES = 100 << 10;
 
+  private static final String GZIP = "gzip";
+  private static final String BROTLI = "br";
+
   private static final String JS = "application/x-javascript";
   private static final ImmutableMap<String, String> MIME_TYPES =
       ImmutableMap.<String, String>builder()
@@ -216,12 +225,15 @@ public abstract class ResourceServlet extends HttpServlet {
       r = processResourceBeforeServe(req, rsp, r);
     }
     byte[] tosend = r.raw;
-    if (!r.contentType.equals(JS) && RequestUtil.acceptsGzipEncoding(req)) {
-      byte[] gz = HtmlDomUtil.compress(tosend);
-      if ((gz.length + 24) < tosend.length) {
-        rsp.setHeader(CONTENT_ENCODING, "gzip");
-        tosend = gz;
-      }
+    if (r.brotli != null && RequestUtil.acceptsBrotliEncoding(req)) {
+      rsp.setHeader(CONTENT_ENCODING, BROTLI);
+      tosend = r.brotli;
+    } else if (r.gzipped != null && RequestUtil.acceptsGzipEncoding(req)) {
+      rsp.setHeader(CONTENT_ENCODING, GZIP);
+      tosend = r.gzipped;
+    }
+    if (r.brotli != null || r.gzipped != null) {
+      rsp.setHeader(VARY, ACCEPT_ENCODING);
     }
 
     if (!requiresPostProcess && cacheOnClient) {
@@ -298,21 +310,54 @@ public abstract class ResourceServlet extends HttpServlet {
       CacheHeaders.setCacheable(req, rsp, 15, MINUTES, refresh);
     }
     rsp.setContentType(contentType(p.toString()));
+    rsp.setHeader(VARY, ACCEPT_ENCODING);
 
+    Path brotli = RequestUtil.acceptsBrotliEncoding(req) ? variant(p, BROTLI) : null;
+    Path gzipped = RequestUtil.acceptsGzipEncoding(req) ? variant(p, GZIP) : null;
     OutputStream out = rsp.getOutputStream();
-    GZIPOutputStream gz = null;
-    if (RequestUtil.acceptsGzipEncoding(req)) {
-      rsp.setHeader(CONTENT_ENCODING, "gzip");
-      gz = new GZIPOutputStream(out);
-      out = gz;
-    }
-    Files.copy(p, out);
-    if (gz != null) {
+    if (brotli != null) {
+      rsp.setHeader(CONTENT_ENCODING, BROTLI);
+      Files.copy(brotli, out);
+    } else if (gzipped != null) {
+      rsp.setHeader(CONTENT_ENCODING, GZIP);
+      Files.copy(gzipped, out);
+    } else if (RequestUtil.acceptsGzipEncoding(req)) {
+      rsp.setHeader(CONTENT_ENCODING, GZIP);
+      GZIPOutputStream gz = new GZIPOutputStream(out);
+      Files.copy(p, gz);
       gz.finish();
+    } else {
+      Files.copy(p, out);
     }
     return true;
   }
 
+  /**
+   * Returns the precompressed variant of a resource.
+   *
+   * @param p path of the resource
+   * @param encoding content encoding of the variant
+   * @return path of the variant, or null if there is no variant or if it is older than the resource
+   */
+  @Nullable
+  private static Path variant(Path p, String encoding) throws IOException {
+    Path variant = p.resolveSibling(p.getFileName() + (encoding.equals(GZIP) ? ".gz" : ".br"));
+    try {
+      if (Files.getLastModifiedTime(variant).compareTo(Files.getLastModifiedTime(p)) >= 0) {
+        return variant;
+      }
+    } catch (NoSuchFileException e) {
+      // No precompressed variant.
+    }
+    return null;
+  }
+
+  @Nullable
+  private static byte[] readVariant(Path p, String encoding) throws IOException {
+    Path variant = variant(p, encoding);
+    return variant != null ? Files.readAllBytes(variant) : null;
+  }
+
   private static boolean isUnreasonableName(String name) {
     return name.length() < 1
         || name.contains("\\") // no windows/dos style paths
@@ -324,30 +369,65 @@ public abstract class ResourceServlet extends HttpServlet {
 
   private Callable<Resource> newLoader(Path p) {
     return () -> {
+      FileTime lastModified;
+      byte[] raw;
       try {
-        return new Resource(
-            getLastModifiedTime(p), contentType(p.toString()), Files.readAllBytes(p));
+        lastModified = getLastModifiedTime(p);
+        raw = Files.readAllBytes(p);
       } catch (NoSuchFileException e) {
         return Resource.NOT_FOUND;
       }
+      byte[] gzipped = readVariant(p, GZIP);
+      if (gzipped == null) {
+        gzipped = Resource.compress(raw);
+      }
+      return new Resource(
+          lastModified, contentType(p.toString()), raw, gzipped, readVariant(p, BROTLI));
     };
   }
 
   public static class Resource {
-    static final Resource NOT_FOUND = new Resource(FileTime.fromMillis(0), "", new byte[] {});
+    static final Resource NOT_FOUND =
+        new Resource(FileTime.fromMillis(0), "", new byte[] {}, null, null);
 
     final FileTime lastModified;
     final String contentType;
     final String etag;
     final byte[] raw;
+    @Nullable final byte[] gzipped;
+    @Nullable final byte[] brotli;
 
     Resource(FileTime lastModified, String contentType, byte[] raw) {
+      this(lastModified, contentType, raw, compress(raw), null);
+    }
+
+    Resource(
+        FileTime lastModified,
+        String contentType,
+        byte[] raw,
+        @Nullable byte[] gzipped,
+        @Nullable byte[] brotli) {
       this.lastModified = requireNonNull(lastModified, "lastModified");
       this.contentType = requireNonNull(contentType, "contentType");
       this.raw = requireNonNull(raw, "raw");
+      this.gzipped = gzipped;
+      this.brotli = brotli;
       this.etag = Hashing.murmur3_128().hashBytes(raw).toString();
     }
 
+    /** Returns the gzip compressed content, or null if compression doesn't make it smaller. */
+    @Nullable
+    static byte[] compress(byte[] raw) {
+      byte[] gz;
+      try {
+        gz = HtmlDomUtil.compress(raw);
+      } catch (IOException e) {
+        logger.atWarning().withCause(e).log("Cannot compress static resource");
+        return null;
+      }
+      return (gz.length + 24) < raw.length ? gz : null;
+    }
+
     boolean isStale(Path p, ResourceServlet rs) throws IOException {
       FileTime t;
       try {
@@ -363,7 +443,10 @@ public abstract class ResourceServlet extends HttpServlet {
   public static class Weigher implements com.google.common.cache.Weigher<Path, Resource> {
     @Override
     public int weigh(Path p, Resource r) {
-      return 2 * p.toString().length() + r.raw.length;
+      return 2 * p.toString().length()
+          + r.raw.length
+          + (r.gzipped != null ? r.gzipped.length : 0)
+          + (r.brotli != null ? r.brotli.length : 0);
     }
   }
 }
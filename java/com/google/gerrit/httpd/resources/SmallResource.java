@@ -16,6 +16,7 @@ package com.google.gerrit.httpd.resources;
 
 import com.google.common.net.HttpHeaders;
 import com.google.gerrit.common.Nullable;
+import com.google.gerrit.util.http.RequestUtil;
 import java.io.IOException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -23,6 +24,8 @@ import javax.servlet.http.HttpServletResponse;
 public final class SmallResource extends Resource {
   private static final long serialVersionUID = 1L;
   private final byte[] data;
+  @Nullable private byte[] gzipped;
+  @Nullable private byte[] brotli;
   private String contentType;
   private String characterEncoding;
   private long lastModified;
@@ -46,9 +49,24 @@ public final class SmallResource extends Resource {
     return this;
   }
 
+  /** Sets the gzip compressed data, which is sent to clients that accept gzip encoding. */
+  public SmallResource setGzipped(@Nullable byte[] gzipped) {
+    this.gzipped = gzipped;
+    return this;
+  }
+
+  /** Sets the brotli compressed data, which is sent to clients that accept brotli encoding. */
+  public SmallResource setBrotli(@Nullable byte[] brotli) {
+    this.brotli = brotli;
+    return this;
+  }
+
   @Override
   public int weigh() {
-    return contentType.length() * 2 + data.length;
+    return contentType.length() * 2
+        + data.length
+        + (gzipped != null ? gzipped.length : 0)
+        + (brotli != null ? brotli.length : 0);
   }
 
   @Override
@@ -65,8 +83,19 @@ public final class SmallResource extends Resource {
     if (characterEncoding != null) {
       res.setCharacterEncoding(characterEncoding);
     }
-    res.setContentLength(data.length);
-    res.getOutputStream().write(data);
+    byte[] tosend = data;
+    if (brotli != null && RequestUtil.acceptsBrotliEncoding(req)) {
+      res.setHeader(HttpHeaders.CONTENT_ENCODING, "br");
+      tosend = brotli;
+    } else if (gzipped != null && RequestUtil.acceptsGzipEncoding(req)) {
+      res.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+      tosend = gzipped;
+    }
+    if (brotli != null || gzipped != null) {
+      res.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+    }
+    res.setContentLength(tosend.length);
+    res.getOutputStream().write(tosend);
   }
 
   @Override
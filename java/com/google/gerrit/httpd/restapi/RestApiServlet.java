@@ -36,6 +36,7 @@ import static javax.servlet.http.HttpServletResponse.SC_NOT_MODIFIED;
 import static javax.servlet.http.HttpServletResponse.SC_OK;
 import static javax.servlet.http.HttpServletResponse.SC_PRECONDITION_FAILED;
 import static javax.servlet.http.HttpServletResponse.SC_REQUEST_TIMEOUT;
+import static javax.servlet.http.HttpServletResponse.SC_SERVICE_UNAVAILABLE;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Splitter;
@@ -57,7 +58,6 @@ import com.google.gerrit.entities.Project;
 import com.google.gerrit.extensions.events.GitReferenceUpdatedListener;
 import com.google.gerrit.extensions.registration.DynamicItem;
 import com.google.gerrit.extensions.registration.DynamicMap;
-import com.google.gerrit.extensions.registration.DynamicSet;
 import com.google.gerrit.extensions.registration.PluginName;
 import com.google.gerrit.extensions.restapi.AuthException;
 import com.google.gerrit.extensions.restapi.BadRequestException;
@@ -91,6 +91,7 @@ import com.google.gerrit.httpd.WebSession;
 import com.google.gerrit.httpd.restapi.ParameterParser.QueryParams;
 import com.google.gerrit.json.OutputFormat;
 import com.google.gerrit.server.AccessPath;
+import com.google.gerrit.server.AdmissionController;
 import com.google.gerrit.server.AnonymousUser;
 import com.google.gerrit.server.CancellationMetrics;
 import com.google.gerrit.server.CurrentUser;
@@ -99,6 +100,7 @@ import com.google.gerrit.server.DynamicOptions;
 import com.google.gerrit.server.ExceptionHook;
 import com.google.gerrit.server.InvalidDeadlineException;
 import com.google.gerrit.server.OptionUtil;
+import com.google.gerrit.server.PerformanceLogDispatcher;
 import com.google.gerrit.server.RequestInfo;
 import com.google.gerrit.server.RequestListener;
 import com.google.gerrit.server.audit.ExtendedHttpAuditEvent;
@@ -111,7 +113,6 @@ import com.google.gerrit.server.config.GerritServerConfig;
 import com.google.gerrit.server.group.GroupAuditService;
 import com.google.gerrit.server.logging.Metadata;
 import com.google.gerrit.server.logging.PerformanceLogContext;
-import com.google.gerrit.server.logging.PerformanceLogger;
 import com.google.gerrit.server.logging.RequestId;
 import com.google.gerrit.server.logging.TraceContext;
 import com.google.gerrit.server.logging.TraceContext.TraceTimer;
@@ -239,7 +240,7 @@ public class RestApiServlet extends HttpServlet {
     final Pattern allowOrigin;
     final RestApiQuotaEnforcer quotaChecker;
     final Config config;
-    final DynamicSet<PerformanceLogger> performanceLoggers;
+    final PerformanceLogDispatcher performanceLogDispatcher;
     final ChangeFinder changeFinder;
     final RetryHelper retryHelper;
     final PluginSetContext<ExceptionHook> exceptionHooks;
@@ -247,6 +248,7 @@ public class RestApiServlet extends HttpServlet {
     final DynamicMap<DynamicOptions.DynamicBean> dynamicBeans;
     final DeadlineChecker.Factory deadlineCheckerFactory;
     final CancellationMetrics cancellationMetrics;
+    final AdmissionController admissionController;
 
     @Inject
     Globals(
@@ -259,14 +261,15 @@ public class RestApiServlet extends HttpServlet {
         RestApiMetrics metrics,
         RestApiQuotaEnforcer quotaChecker,
         @GerritServerConfig Config config,
-        DynamicSet<PerformanceLogger> performanceLoggers,
+        PerformanceLogDispatcher performanceLogDispatcher,
         ChangeFinder changeFinder,
         RetryHelper retryHelper,
         PluginSetContext<ExceptionHook> exceptionHooks,
         Injector injector,
         DynamicMap<DynamicOptions.DynamicBean> dynamicBeans,
         DeadlineChecker.Factory deadlineCheckerFactory,
-        CancellationMetrics cancellationMetrics) {
+        CancellationMetrics cancellationMetrics,
+        AdmissionController admissionController) {
       this.currentUser = currentUser;
       this.webSession = webSession;
       this.paramParser = paramParser;
@@ -276,7 +279,7 @@ public class RestApiServlet extends HttpServlet {
       this.metrics = metrics;
       this.quotaChecker = quotaChecker;
       this.config = config;
-      this.performanceLoggers = performanceLoggers;
+      this.performanceLogDispatcher = performanceLogDispatcher;
       this.changeFinder = changeFinder;
       this.retryHelper = retryHelper;
       this.exceptionHooks = exceptionHooks;
@@ -285,6 +288,7 @@ public class RestApiServlet extends HttpServlet {
       this.dynamicBeans = dynamicBeans;
       this.deadlineCheckerFactory = deadlineCheckerFactory;
       this.cancellationMetrics = cancellationMetrics;
+      this.admissionController = admissionController;
     }
   }
 
@@ -342,8 +346,15 @@ public class RestApiServlet extends HttpServlet {
                     .addRequestStateProvider(
                         globals.deadlineCheckerFactory.create(
                             requestInfo, req.getHeader(X_GERRIT_DEADLINE)));
+            AdmissionController.Permit admissionPermit =
+                globals.admissionController.admit(
+                    globals.currentUser.get(),
+                    isRead(req)
+                        ? AdmissionController.RequestClass.INTERACTIVE_READ
+                        : AdmissionController.RequestClass.WRITE);
             PerformanceLogContext performanceLogContext =
-                new PerformanceLogContext(globals.config, globals.performanceLoggers)) {
+                globals.performanceLogDispatcher.newContext()) {
+          requestStateContext.addRequestStateProvider(admissionPermit);
           traceRequestData(req);
 
           if (corsResponder.filterCorsPreflight(req, res)) {
@@ -684,6 +695,8 @@ public class RestApiServlet extends HttpServlet {
                 req, res, statusCode = SC_NOT_IMPLEMENTED, messageOr(e, "Not Implemented"), e);
       } catch (QuotaException e) {
         cause = Optional.of(e);
+        e.getRetryAfterSeconds()
+            .ifPresent(s -> res.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(s)));
         responseBytes =
             replyError(
                 req,
@@ -1898,6 +1911,8 @@ public class RestApiServlet extends HttpServlet {
         return SC_REQUEST_TIMEOUT;
       case SERVER_DEADLINE_EXCEEDED:
         return SC_INTERNAL_SERVER_ERROR;
+      case SERVER_OVERLOADED:
+        return SC_SERVICE_UNAVAILABLE;
     }
     logger.atSevere().log("Unexpected cancellation reason: %s", cancellationReason);
     return SC_INTERNAL_SERVER_ERROR;
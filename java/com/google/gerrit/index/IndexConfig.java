@@ -174,4 +174,6 @@ public abstract class IndexConfig {
    * Returns maximum allowed limit when repeating index queries to obtain the next set of results.
    */
   public abstract int maxPageSize();
+
+  public abstract Builder toBuilder();
 }
@@ -113,7 +113,7 @@ public abstract class QueryOptions {
     return create(
         config(),
         0,
-        null,
+        searchAfter(),
         pageSize,
         pageSizeMultiplier(),
         limit,
@@ -45,6 +45,7 @@ public class Schema<T> {
   public static class Builder<T> {
     private final List<SchemaField<T, ?>> searchFields = new ArrayList<>();
     private final List<IndexedField<T, ?>> indexedFields = new ArrayList<>();
+    private final List<IndexedField<T, ?>> recomputedFields = new ArrayList<>();
 
     private Optional<Integer> version = Optional.empty();
 
@@ -109,10 +110,32 @@ public class Schema<T> {
       return this;
     }
 
+    /**
+     * Declares fields whose values must be recomputed when upgrading to this schema version, e.g.
+     * because the way they are computed has changed.
+     *
+     * <p>Values stored by an earlier schema version are not reused for these fields during an
+     * online upgrade.
+     */
+    @SafeVarargs
+    public final Builder<T> recompute(IndexedField<T, ?>... fields) {
+      for (IndexedField<T, ?> field : fields) {
+        checkArgument(
+            this.indexedFields.contains(field),
+            "%s can only be recomputed by a schema that contains it",
+            field.name());
+      }
+      this.recomputedFields.addAll(Arrays.asList(fields));
+      return this;
+    }
+
     public Schema<T> build() {
       checkState(version.isPresent());
       return new Schema<>(
-          version.get(), ImmutableList.copyOf(indexedFields), ImmutableList.copyOf(searchFields));
+          version.get(),
+          ImmutableList.copyOf(indexedFields),
+          ImmutableList.copyOf(searchFields),
+          ImmutableList.copyOf(recomputedFields));
     }
   }
 
@@ -140,6 +163,7 @@ public class Schema<T> {
   }
 
   private final ImmutableSet<String> storedFields;
+  private final ImmutableSet<String> recomputedFields;
 
   private final ImmutableMap<String, SchemaField<T, ?>> schemaFields;
   private final ImmutableMap<String, IndexedField<T, ?>> indexedFields;
@@ -149,7 +173,8 @@ public class Schema<T> {
   private Schema(
       int version,
       ImmutableList<IndexedField<T, ?>> indexedFields,
-      ImmutableList<SchemaField<T, ?>> schemaFields) {
+      ImmutableList<SchemaField<T, ?>> schemaFields,
+      ImmutableList<IndexedField<T, ?>> recomputedFields) {
     this.version = version;
 
     this.indexedFields =
@@ -170,6 +195,10 @@ public class Schema<T> {
             .filter(SchemaField::isStored)
             .map(SchemaField::getName)
             .collect(toImmutableSet());
+    this.recomputedFields =
+        recomputedFields.stream()
+            .flatMap(f -> f.getSearchSpecs().keySet().stream())
+            .collect(toImmutableSet());
   }
 
   public final int getVersion() {
@@ -201,6 +230,14 @@ public class Schema<T> {
     return storedFields;
   }
 
+  /**
+   * Returns names of {@link SchemaField} fields whose values stored by an earlier schema version
+   * must not be reused by this schema version.
+   */
+  public final ImmutableSet<String> getRecomputedFields() {
+    return recomputedFields;
+  }
+
   /**
    * Look up fields in this schema.
    *
@@ -146,6 +146,11 @@ public abstract class QueryProcessor<T> {
     return this;
   }
 
+  /** Returns whether visibility of the results is enforced. */
+  protected boolean isVisibilityEnforced() {
+    return enforceVisibility;
+  }
+
   /** Convenience method for API backward compatibility. */
   @CanIgnoreReturnValue
   public QueryProcessor<T> setUserProvidedLimit(int n) {
@@ -298,7 +303,8 @@ public abstract class QueryProcessor<T> {
                 getRequestedFields());
         logger.atFine().log("Query options: %s", opts);
         // Apply index-specific rewrite first
-        Predicate<T> pred = rewriter.rewrite(q, opts);
+        Predicate<T> pred =
+            rewriter.rewrite(enforceVisibility ? prefilterVisibility(q) : q, opts);
         if (enforceVisibility) {
           pred = enforceVisibility(pred);
         }
@@ -328,7 +334,10 @@ public abstract class QueryProcessor<T> {
       out = new ArrayList<>(cnt);
       for (int i = 0; i < cnt; i++) {
         String queryString = queryStrings != null ? queryStrings.get(i) : null;
-        ImmutableList<T> matchesList = matches.get(i).toList();
+        ImmutableList<T> matchesList =
+            cnt > 1
+                ? matches.get(i).toList().stream().map(this::shareMatch).collect(toImmutableList())
+                : matches.get(i).toList();
         int matchCount = matchesList.size();
         int limit = limits.get(i);
         logger.atFine().log(
@@ -396,6 +405,18 @@ public abstract class QueryProcessor<T> {
         requestedFields);
   }
 
+  /**
+   * Invoked before the query is rewritten, if visibility is enforced. Subclasses may overwrite this
+   * method to add predicates that let the index skip results that are not visible to the calling
+   * user. Results are still filtered by {@link #enforceVisibility(Predicate)}.
+   *
+   * @param pred the query
+   * @return the modified query
+   */
+  protected Predicate<T> prefilterVisibility(Predicate<T> pred) {
+    return pred;
+  }
+
   /**
    * Invoked after the query was rewritten. Subclasses must overwrite this method to filter out
    * results that are not visible to the calling user.
@@ -405,7 +426,7 @@ public abstract class QueryProcessor<T> {
    */
   protected abstract Predicate<T> enforceVisibility(Predicate<T> pred);
 
-  private Set<String> getRequestedFields() {
+  protected Set<String> getRequestedFields() {
     if (requestedFields != null) {
       return requestedFields;
     }
@@ -477,4 +498,15 @@ public abstract class QueryProcessor<T> {
   }
 
   protected abstract String formatForLogging(T t);
+
+  /**
+   * Returns the entity to return for a match if several queries are executed together.
+   *
+   * <p>Subclasses may return the entity that an earlier query of the same call returned for the
+   * same object, so that data that is loaded lazily for it, e.g. while formatting the results, is
+   * only loaded once.
+   */
+  protected T shareMatch(T match) {
+    return match;
+  }
 }
@@ -46,6 +46,7 @@ import com.google.gerrit.server.index.IndexUtils;
 import com.google.gerrit.server.index.account.AccountIndex;
 import com.google.gerrit.server.index.change.ChangeField;
 import com.google.gerrit.server.index.change.ChangeIndex;
+import com.google.gerrit.server.index.change.ChangeSortKey;
 import com.google.gerrit.server.index.group.GroupIndex;
 import com.google.gerrit.server.query.change.ChangeData;
 import com.google.inject.Inject;
@@ -144,12 +145,7 @@ public abstract class AbstractFakeIndex<K, V, D> implements Index<K, V> {
               .sorted(sortingComparator());
       if (opts.searchAfter() != null) {
         ImmutableList<V> valueList = valueStream.collect(toImmutableList());
-        int fromIndex =
-            IntStream.range(0, valueList.size())
-                    .filter(i -> keyFor(valueList.get(i)).equals(opts.searchAfter()))
-                    .findFirst()
-                    .orElse(-1)
-                + 1;
+        int fromIndex = indexAfter(valueList, opts.searchAfter());
         int toIndex = Math.min(fromIndex + opts.pageSize(), valueList.size());
         results = valueList.subList(fromIndex, toIndex);
       } else {
@@ -212,6 +208,18 @@ public abstract class AbstractFakeIndex<K, V, D> implements Index<K, V> {
     IndexUtils.setReady(sitePaths, indexName, schema.getVersion(), ready);
   }
 
+  /**
+   * Method to get the position of the first value that follows {@code searchAfter} in the sorted
+   * values, {@code 0} if {@code searchAfter} is not found.
+   */
+  protected int indexAfter(List<V> values, Object searchAfter) {
+    return IntStream.range(0, values.size())
+            .filter(i -> keyFor(values.get(i)).equals(searchAfter))
+            .findFirst()
+            .orElse(-1)
+        + 1;
+  }
+
   /** Method to get a key from a document. */
   protected abstract K keyFor(V doc);
 
@@ -264,6 +272,19 @@ public abstract class AbstractFakeIndex<K, V, D> implements Index<K, V> {
       return lastUpdated.thenComparing(merged).thenComparing(id).reversed();
     }
 
+    @Override
+    protected int indexAfter(List<ChangeData> values, Object searchAfter) {
+      if (!(searchAfter instanceof ChangeSortKey)) {
+        return super.indexAfter(values, searchAfter);
+      }
+      // Like the Lucene index, continue after the sort key even if its change is gone.
+      ChangeSortKey key = (ChangeSortKey) searchAfter;
+      return IntStream.range(0, values.size())
+          .filter(i -> ChangeSortKey.of(values.get(i)).compareTo(key) > 0)
+          .findFirst()
+          .orElse(values.size());
+    }
+
     @Override
     protected Map<String, Object> docFor(ChangeData value) {
       ImmutableMap.Builder<String, Object> doc = ImmutableMap.builder();
@@ -15,27 +15,102 @@
 package com.google.gerrit.lifecycle;
 
 import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static java.util.Comparator.comparing;
 
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.flogger.FluentLogger;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.google.gerrit.common.Nullable;
+import com.google.gerrit.extensions.events.ConcurrentStart;
 import com.google.gerrit.extensions.events.LifecycleListener;
 import com.google.gerrit.extensions.registration.RegistrationHandle;
 import com.google.inject.Binding;
 import com.google.inject.Injector;
 import com.google.inject.Provider;
 import com.google.inject.TypeLiteral;
+import com.google.inject.spi.InstanceBinding;
+import com.google.inject.spi.LinkedKeyBinding;
 import com.google.inject.util.Providers;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
-/** Tracks and executes registered {@link LifecycleListener}s. */
+/**
+ * Tracks and executes registered {@link LifecycleListener}s.
+ *
+ * <p>Listeners are started in the order they were registered. Listeners annotated with {@link
+ * ConcurrentStart} are started on a background thread instead, so that the following listeners
+ * don't need to wait for them.
+ */
 public class LifecycleManager {
   private static final FluentLogger logger = FluentLogger.forEnclosingClass();
 
-  private final List<Provider<LifecycleListener>> listeners = newList();
-  private final List<RegistrationHandle> handles = newList();
+  /** Start of a listener, as reported by {@link #getStartTimeline()}. */
+  public static class StartEvent {
+    private final String listener;
+    private final String thread;
+    private final Duration offset;
+    private final Duration duration;
+
+    StartEvent(String listener, String thread, Duration offset, Duration duration) {
+      this.listener = listener;
+      this.thread = thread;
+      this.offset = offset;
+      this.duration = duration;
+    }
 
-  /** Index of the last listener to start successfully; -1 when not started. */
-  private int startedIndex = -1;
+    /** Class name of the listener. */
+    public String listener() {
+      return listener;
+    }
+
+    /** Name of the thread that started the listener. */
+    public String thread() {
+      return thread;
+    }
+
+    /** Time from the call to {@link LifecycleManager#start()} until the listener was started. */
+    public Duration offset() {
+      return offset;
+    }
+
+    /** Time it took to start the listener. */
+    public Duration duration() {
+      return duration;
+    }
+  }
+
+  private static class Entry {
+    final Provider<LifecycleListener> provider;
+    @Nullable final Class<?> type;
+    volatile boolean started;
+
+    Entry(Provider<LifecycleListener> provider, @Nullable Class<?> type) {
+      this.provider = provider;
+      this.type = type;
+    }
+
+    @Nullable
+    ConcurrentStart concurrentStart() {
+      return type != null ? type.getAnnotation(ConcurrentStart.class) : null;
+    }
+  }
+
+  private final List<Entry> listeners = newList();
+  private final List<RegistrationHandle> handles = newList();
+  private ImmutableList<StartEvent> startTimeline = ImmutableList.of();
 
   /**
    * Add a handle that must be cleared during stop.
@@ -52,7 +127,7 @@ public class LifecycleManager {
    * @param listener the listener to add.
    */
   public void add(LifecycleListener listener) {
-    listeners.add(Providers.of(listener));
+    listeners.add(new Entry(Providers.of(listener), listener.getClass()));
   }
 
   /**
@@ -61,7 +136,7 @@ public class LifecycleManager {
    * @param listener the listener to add.
    */
   public void add(Provider<LifecycleListener> listener) {
-    listeners.add(listener);
+    listeners.add(new Entry(listener, null));
   }
 
   /**
@@ -70,9 +145,9 @@ public class LifecycleManager {
    * @param injector the injector to add.
    */
   public void add(Injector injector) {
-    checkState(startedIndex < 0, "Already started");
+    checkState(listeners.stream().noneMatch(e -> e.started), "Already started");
     for (Binding<LifecycleListener> binding : get(injector)) {
-      add(binding.getProvider());
+      listeners.add(new Entry(binding.getProvider(), typeOf(binding)));
     }
   }
 
@@ -87,15 +162,124 @@ public class LifecycleManager {
     }
   }
 
-  /** Start all listeners, in the order they were registered. */
+  /**
+   * Start all listeners, in the order they were registered.
+   *
+   * <p>Listeners annotated with {@link ConcurrentStart} are started on a background thread once all
+   * listeners registered before them and all their {@link ConcurrentStart#after() dependencies}
+   * were started. Returns once all listeners were started.
+   */
   public void start() {
-    for (int i = startedIndex + 1; i < listeners.size(); i++) {
-      LifecycleListener listener = listeners.get(i).get();
-      startedIndex = i;
-      listener.start();
+    long startNanos = System.nanoTime();
+    List<StartEvent> timeline = Collections.synchronizedList(new ArrayList<>());
+    Map<Entry, Future<?>> concurrent = new LinkedHashMap<>();
+    ExecutorService executor = null;
+    try {
+      for (Entry e : listeners) {
+        if (e.started) {
+          continue;
+        }
+        ConcurrentStart concurrentStart = e.concurrentStart();
+        if (concurrentStart == null) {
+          start(e, startNanos, timeline);
+          continue;
+        }
+        if (executor == null) {
+          executor =
+              Executors.newCachedThreadPool(
+                  new ThreadFactoryBuilder()
+                      .setNameFormat("LifecycleStart-%d")
+                      .setDaemon(true)
+                      .build());
+        }
+        List<Future<?>> dependencies = dependencies(concurrentStart, concurrent);
+        concurrent.put(
+            e,
+            executor.submit(
+                () -> {
+                  awaitAll(dependencies);
+                  start(e, startNanos, timeline);
+                  return null;
+                }));
+      }
+      awaitAll(concurrent.values());
+    } catch (RuntimeException | Error err) {
+      // Wait for the other listeners, so that stop() sees all started listeners.
+      try {
+        awaitAll(concurrent.values());
+      } catch (RuntimeException other) {
+        if (other != err) {
+          err.addSuppressed(other);
+        }
+      }
+      throw err;
+    } finally {
+      if (executor != null) {
+        executor.shutdown();
+      }
+      synchronized (timeline) {
+        startTimeline =
+            timeline.stream().sorted(comparing(StartEvent::offset)).collect(toImmutableList());
+      }
+    }
+  }
+
+  private static void start(Entry e, long startNanos, List<StartEvent> timeline) {
+    LifecycleListener listener = e.provider.get();
+    e.started = true;
+    long begin = System.nanoTime();
+    listener.start();
+    long end = System.nanoTime();
+    timeline.add(
+        new StartEvent(
+            listener.getClass().getName(),
+            Thread.currentThread().getName(),
+            Duration.ofNanos(begin - startNanos),
+            Duration.ofNanos(end - begin)));
+  }
+
+  private static List<Future<?>> dependencies(
+      ConcurrentStart concurrentStart, Map<Entry, Future<?>> concurrent) {
+    List<Future<?>> dependencies = new ArrayList<>();
+    for (Class<? extends LifecycleListener> after : concurrentStart.after()) {
+      for (Map.Entry<Entry, Future<?>> c : concurrent.entrySet()) {
+        if (after.isAssignableFrom(c.getKey().type)) {
+          dependencies.add(c.getValue());
+        }
+      }
+    }
+    return dependencies;
+  }
+
+  private static void awaitAll(Collection<Future<?>> futures) {
+    RuntimeException failure = null;
+    for (Future<?> f : futures) {
+      try {
+        Uninterruptibles.getUninterruptibly(f);
+      } catch (ExecutionException err) {
+        if (failure == null) {
+          Throwables.throwIfUnchecked(err.getCause());
+          failure = new IllegalStateException(err.getCause());
+        }
+      } catch (RuntimeException err) {
+        if (failure == null) {
+          failure = err;
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
     }
   }
 
+  /**
+   * Returns the start of each listener during the last call to {@link #start()}, in the order in
+   * which they were started.
+   */
+  public ImmutableList<StartEvent> getStartTimeline() {
+    return startTimeline;
+  }
+
   /** Stop all listeners, in the reverse order they were registered. */
   public void stop() {
     for (int i = handles.size() - 1; 0 <= i; i--) {
@@ -103,14 +287,18 @@ public class LifecycleManager {
     }
     handles.clear();
 
-    for (int i = startedIndex; 0 <= i; i--) {
-      LifecycleListener obj = listeners.get(i).get();
+    for (int i = listeners.size() - 1; 0 <= i; i--) {
+      Entry e = listeners.get(i);
+      if (!e.started) {
+        continue;
+      }
+      LifecycleListener obj = e.provider.get();
       try {
         obj.stop();
       } catch (RuntimeException err) {
         logger.atWarning().withCause(err).log("Failed to stop %s", obj.getClass());
       }
-      startedIndex = i - 1;
+      e.started = false;
     }
   }
 
@@ -118,6 +306,17 @@ public class LifecycleManager {
     return i.findBindingsByType(new TypeLiteral<LifecycleListener>() {});
   }
 
+  @Nullable
+  private static Class<?> typeOf(Binding<LifecycleListener> binding) {
+    if (binding instanceof LinkedKeyBinding) {
+      return ((LinkedKeyBinding<?>) binding).getLinkedKey().getTypeLiteral().getRawType();
+    }
+    if (binding instanceof InstanceBinding) {
+      return ((InstanceBinding<?>) binding).getInstance().getClass();
+    }
+    return null;
+  }
+
   private static <T> List<T> newList() {
     return Lists.newArrayListWithCapacity(4);
   }
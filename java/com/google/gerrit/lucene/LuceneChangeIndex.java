@@ -57,6 +57,7 @@ import com.google.gerrit.server.index.IndexUtils;
 import com.google.gerrit.server.index.change.ChangeField;
 import com.google.gerrit.server.index.change.ChangeIndex;
 import com.google.gerrit.server.index.change.ChangeIndexRewriter;
+import com.google.gerrit.server.index.change.ChangeSortKey;
 import com.google.gerrit.server.index.options.AutoFlush;
 import com.google.gerrit.server.query.change.ChangeData;
 import com.google.gerrit.server.query.change.ChangeDataSource;
@@ -80,6 +81,7 @@ import org.apache.lucene.document.Document;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexableField;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.search.FieldDoc;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
@@ -411,7 +413,7 @@ public class LuceneChangeIndex implements ChangeIndex {
           ChangeSubIndex subIndex = indexes.get(i);
           searchers[i] = subIndex.acquire();
           if (isSearchAfterPagination) {
-            ScoreDoc searchAfter = getSearchAfter(subIndex);
+            ScoreDoc searchAfter = getSearchAfter(subIndex, searchers[i]);
             int maxRemainingHits = realPageSize - searchAfterHitsCount;
             if (maxRemainingHits > 0) {
               TopFieldDocs subIndexHits =
@@ -474,14 +476,31 @@ public class LuceneChangeIndex implements ChangeIndex {
      * PaginationType#SEARCH_AFTER search-after}, otherwise returns the last doc from previous
      * search on the given change sub-index.
      *
+     * <p>If the search should continue after a {@link ChangeSortKey}, a doc with the sort values
+     * of the key is returned. Its doc ID is the highest ID of the sub-index, so that a doc with
+     * equal sort values, i.e. the change of the key itself, is skipped.
+     *
      * @param subIndex change sub-index
+     * @param searcher searcher of the change sub-index
      * @return the score doc that can be used to page result sets
      */
     @Nullable
-    private ScoreDoc getSearchAfter(ChangeSubIndex subIndex) {
-      if (isSearchAfterPagination
-          && opts.searchAfter() != null
-          && opts.searchAfter() instanceof Map
+    private ScoreDoc getSearchAfter(ChangeSubIndex subIndex, IndexSearcher searcher) {
+      if (!isSearchAfterPagination || opts.searchAfter() == null) {
+        return null;
+      }
+      if (opts.searchAfter() instanceof ChangeSortKey) {
+        int maxDoc = searcher.getIndexReader().maxDoc();
+        if (maxDoc == 0) {
+          return null;
+        }
+        ChangeSortKey key = (ChangeSortKey) opts.searchAfter();
+        return new FieldDoc(
+            maxDoc - 1,
+            Float.NaN,
+            new Object[] {key.updatedMillis(), key.mergedOnMillis(), (long) key.changeNumber()});
+      }
+      if (opts.searchAfter() instanceof Map
           && ((Map<?, ?>) opts.searchAfter()).get(subIndex) instanceof ScoreDoc) {
         return (ScoreDoc) ((Map<?, ?>) opts.searchAfter()).get(subIndex);
       }
@@ -20,6 +20,7 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Joiner;
 import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
 import com.google.common.flogger.FluentLogger;
 import com.google.gerrit.auth.AuthModule;
 import com.google.gerrit.common.Nullable;
@@ -47,10 +48,15 @@ import com.google.gerrit.httpd.raw.StaticModule;
 import com.google.gerrit.index.IndexType;
 import com.google.gerrit.lifecycle.LifecycleManager;
 import com.google.gerrit.lucene.LuceneIndexModule;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.Field;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.metrics.Timer1;
 import com.google.gerrit.metrics.dropwizard.DropWizardMetricMaker;
 import com.google.gerrit.pgm.http.jetty.JettyEnv;
 import com.google.gerrit.pgm.http.jetty.JettyModule;
 import com.google.gerrit.pgm.http.jetty.ProjectQoSFilter.ProjectQoSFilterModule;
+import com.google.gerrit.pgm.rules.RulesPrecompiler;
 import com.google.gerrit.pgm.util.ErrorLogFile;
 import com.google.gerrit.pgm.util.LogFileCompressor.LogFileCompressorModule;
 import com.google.gerrit.pgm.util.RuntimeShutdown;
@@ -98,6 +104,7 @@ import com.google.gerrit.server.index.IndexModule;
 import com.google.gerrit.server.index.OnlineUpgrader.OnlineUpgraderModule;
 import com.google.gerrit.server.index.VersionManager;
 import com.google.gerrit.server.index.options.AutoFlush;
+import com.google.gerrit.server.logging.Metadata;
 import com.google.gerrit.server.mail.EmailModule;
 import com.google.gerrit.server.mail.SignedTokenEmailTokenVerifier.SignedTokenEmailTokenVerifierModule;
 import com.google.gerrit.server.mail.receive.MailReceiver.MailReceiverModule;
@@ -146,6 +153,7 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import javax.servlet.http.HttpServletRequest;
 import org.eclipse.jgit.lib.Config;
 import org.kohsuke.args4j.Option;
@@ -403,6 +411,36 @@ public class Daemon extends SiteProgram {
     }
 
     manager.start();
+    reportStartTimeline();
+  }
+
+  private void reportStartTimeline() {
+    ImmutableList<LifecycleManager.StartEvent> timeline = manager.getStartTimeline();
+    StringBuilder b = new StringBuilder();
+    for (LifecycleManager.StartEvent e : timeline) {
+      b.append(
+          String.format(
+              "\n  %6d ms %6d ms  %-20s %s",
+              e.offset().toMillis(), e.duration().toMillis(), e.thread(), e.listener()));
+    }
+    logger.atInfo().log(
+        "Started %d lifecycle listeners (offset, duration, thread, listener):%s",
+        timeline.size(), b);
+
+    Timer1<String> startLatency =
+        sysInjector
+            .getInstance(MetricMaker.class)
+            .newTimer(
+                "lifecycle/start_latency",
+                new Description("Time to start a lifecycle listener during server startup")
+                    .setCumulative()
+                    .setUnit(Description.Units.MILLISECONDS),
+                Field.ofString("listener", Metadata.Builder::className)
+                    .description("The class of the lifecycle listener.")
+                    .build());
+    for (LifecycleManager.StartEvent e : timeline) {
+      startLatency.record(e.listener(), e.duration().toNanos(), TimeUnit.NANOSECONDS);
+    }
   }
 
   @VisibleForTesting
@@ -547,6 +585,7 @@ public class Daemon extends SiteProgram {
           }
         });
     modules.add(new GarbageCollectionModule());
+    modules.add(new RulesPrecompiler.Module());
     if (replica) {
       modules.add(new PeriodicGroupIndexerModule());
     } else {
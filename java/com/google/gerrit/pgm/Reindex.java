@@ -28,6 +28,8 @@ import com.google.gerrit.index.IndexType;
 import com.google.gerrit.index.SiteIndexer;
 import com.google.gerrit.lifecycle.LifecycleManager;
 import com.google.gerrit.lucene.LuceneIndexModule;
+import com.google.gerrit.metrics.proc.ThreadMXBeanFactory;
+import com.google.gerrit.metrics.proc.ThreadMXBeanInterface;
 import com.google.gerrit.pgm.util.BatchProgramModule;
 import com.google.gerrit.pgm.util.SiteProgram;
 import com.google.gerrit.server.LibModuleLoader;
@@ -55,6 +57,8 @@ import com.google.inject.Module;
 import com.google.inject.multibindings.OptionalBinder;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
@@ -97,6 +101,15 @@ public class Reindex extends SiteProgram {
   @Option(name = "--build-bloom-filter", usage = "Build bloom filter for H2 disk caches.")
   private boolean buildBloomFilter;
 
+  @Option(
+      name = "--ram-buffer-size",
+      metaVar = "SIZE",
+      usage =
+          "RAM buffer of the Lucene change indexes, e.g. 512m. Default is"
+              + " index.changes_open.ramBufferSize and index.changes_closed.ramBufferSize from"
+              + " config.")
+  private String ramBufferSize;
+
   private Injector dbInjector;
   private Injector sysInjector;
   private Injector cfgInjector;
@@ -241,6 +254,10 @@ public class Reindex extends SiteProgram {
     if (IndexModule.getIndexType(dbInjector).isLucene()) {
       globalConfig.setLong("index", "changes_open", "commitWithin", -1);
       globalConfig.setLong("index", "changes_closed", "commitWithin", -1);
+      if (ramBufferSize != null) {
+        globalConfig.setString("index", "changes_open", "ramBufferSize", ramBufferSize);
+        globalConfig.setString("index", "changes_closed", "ramBufferSize", ramBufferSize);
+      }
     }
 
     // Disable change cache.
@@ -260,11 +277,23 @@ public class Reindex extends SiteProgram {
     SiteIndexer<K, V, I> siteIndexer = def.getSiteIndexer();
     siteIndexer.setProgressOut(System.err);
     siteIndexer.setVerboseOut(verbose ? System.out : NullOutputStream.INSTANCE);
+    JvmStats jvmAtStart = JvmStats.now();
     SiteIndexer.Result result = siteIndexer.indexAll(index);
+    JvmStats jvm = JvmStats.now();
     int n = result.doneCount() + result.failedCount();
     double t = result.elapsed(TimeUnit.MILLISECONDS) / 1000d;
     System.out.format(
         "Reindexed %d documents in %s index in %.01fs (%.01f/s)\n", n, def.getName(), t, n / t);
+    long gcTimeMs = jvm.gcTimeMs - jvmAtStart.gcTimeMs;
+    System.out.format(
+        "Spent %.01fs (%.01f%%) in %d garbage collections\n",
+        gcTimeMs / 1000d, gcTimeMs / 10d / t, jvm.gcCount - jvmAtStart.gcCount);
+    long allocated = jvm.allocatedBytesSince(jvmAtStart);
+    if (allocated >= 0 && n > 0) {
+      System.out.format(
+          "Allocated %.01f MiB (%.01f MiB/s, %.01f KiB per document)\n",
+          allocated / 1048576d, allocated / 1048576d / t, allocated / 1024d / n);
+    }
     if (result.success()) {
       index.markReady(true);
     }
@@ -289,4 +318,56 @@ public class Reindex extends SiteProgram {
       System.out.format("Error displaying the cache statistics\n" + e.getMessage());
     }
   }
+
+  /** Allocation and garbage collection totals of the JVM, to compare reindex settings. */
+  private static class JvmStats {
+    private static final ThreadMXBeanInterface threads = ThreadMXBeanFactory.create();
+
+    final long gcCount;
+    final long gcTimeMs;
+
+    /** Bytes allocated so far by each live thread, empty if the JVM can't tell. */
+    final Map<Long, Long> allocatedBytesByThread;
+
+    JvmStats(long gcCount, long gcTimeMs, Map<Long, Long> allocatedBytesByThread) {
+      this.gcCount = gcCount;
+      this.gcTimeMs = gcTimeMs;
+      this.allocatedBytesByThread = allocatedBytesByThread;
+    }
+
+    static JvmStats now() {
+      long count = 0;
+      long timeMs = 0;
+      for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+        count += Math.max(0, gc.getCollectionCount());
+        timeMs += Math.max(0, gc.getCollectionTime());
+      }
+      Map<Long, Long> allocated = new HashMap<>();
+      if (threads.supportsAllocatedBytes()) {
+        long[] ids = threads.getAllThreadIds();
+        long[] bytes = threads.getAllThreadsAllocatedBytes(ids);
+        for (int i = 0; i < ids.length; i++) {
+          if (bytes[i] >= 0) {
+            allocated.put(ids[i], bytes[i]);
+          }
+        }
+      }
+      return new JvmStats(count, timeMs, allocated);
+    }
+
+    /**
+     * Returns the bytes allocated since {@code start} by the threads that are still alive, or
+     * {@code -1} if the JVM can't tell.
+     */
+    long allocatedBytesSince(JvmStats start) {
+      if (allocatedBytesByThread.isEmpty()) {
+        return -1;
+      }
+      long total = 0;
+      for (Map.Entry<Long, Long> e : allocatedBytesByThread.entrySet()) {
+        total += e.getValue() - start.allocatedBytesByThread.getOrDefault(e.getKey(), 0L);
+      }
+      return total;
+    }
+  }
 }
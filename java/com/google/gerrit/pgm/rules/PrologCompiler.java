@@ -81,7 +81,15 @@ public class PrologCompiler implements Callable<PrologCompiler.Status> {
 
   @Override
   public Status call() throws IOException, CompileException {
-    ObjectId metaConfig = git.resolve(RefNames.REFS_CONFIG);
+    return call(git.resolve(RefNames.REFS_CONFIG));
+  }
+
+  /**
+   * Compiles the rules.pl of the given revision of the {@code refs/meta/config} branch.
+   *
+   * @param metaConfig the revision, {@code null} if the branch doesn't exist
+   */
+  public Status call(@Nullable ObjectId metaConfig) throws IOException, CompileException {
     if (metaConfig == null) {
       return Status.NO_RULES;
     }
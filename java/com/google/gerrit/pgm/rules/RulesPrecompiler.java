@@ -0,0 +1,161 @@
+// Copyright (C) 2023 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.pgm.rules;
+
+import static com.google.gerrit.server.project.ProjectConfig.RULES_PL_FILE;
+
+import com.google.common.flogger.FluentLogger;
+import com.google.gerrit.common.Nullable;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.entities.RefNames;
+import com.google.gerrit.extensions.events.GitBatchRefUpdateListener;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gerrit.extensions.registration.DynamicSet;
+import com.google.gerrit.lifecycle.LifecycleModule;
+import com.google.gerrit.server.config.GerritServerConfig;
+import com.google.gerrit.server.config.SitePaths;
+import com.google.gerrit.server.git.GitRepositoryManager;
+import com.google.gerrit.server.git.WorkQueue;
+import com.google.gerrit.server.rules.prolog.RulesCache;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.googlecode.prolog_cafe.exceptions.CompileException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import javax.tools.ToolProvider;
+import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+
+/**
+ * Compiles the {@code rules.pl} of a project in the background when its {@link
+ * RefNames#REFS_CONFIG} branch is updated.
+ *
+ * <p>The compiled rules are written to {@code rules-SHA1.jar} in the rules cache directory, the
+ * same as by {@code gerrit.war Rulec}. {@link RulesCache} prefers the jar over consulting the
+ * rules, and the jar is kept across restarts, so only the first evaluation after an update pays
+ * for consulting the rules.
+ */
+@Singleton
+public class RulesPrecompiler implements LifecycleListener, GitBatchRefUpdateListener {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  public static class Module extends LifecycleModule {
+    @Override
+    protected void configure() {
+      factory(PrologCompiler.Factory.class);
+      listener().to(RulesPrecompiler.class);
+      DynamicSet.bind(binder(), GitBatchRefUpdateListener.class).to(RulesPrecompiler.class);
+    }
+  }
+
+  private final GitRepositoryManager repoManager;
+  private final PrologCompiler.Factory compilerFactory;
+  private final RulesCache rulesCache;
+  private final WorkQueue workQueue;
+  @Nullable private final Path ruleDir;
+  private final boolean enabled;
+  private final Set<ObjectId> compiling = ConcurrentHashMap.newKeySet();
+  private volatile ScheduledExecutorService executor;
+
+  @Inject
+  RulesPrecompiler(
+      @GerritServerConfig Config config,
+      SitePaths site,
+      GitRepositoryManager repoManager,
+      PrologCompiler.Factory compilerFactory,
+      RulesCache rulesCache,
+      WorkQueue workQueue) {
+    this.repoManager = repoManager;
+    this.compilerFactory = compilerFactory;
+    this.rulesCache = rulesCache;
+    this.workQueue = workQueue;
+    Path cacheDir = site.resolve(config.getString("cache", null, "directory"));
+    ruleDir = cacheDir != null ? cacheDir.resolve("rules") : null;
+    enabled =
+        config.getBoolean("rules", null, "precompile", true)
+            && rulesCache.isProjectRulesEnabled()
+            && ruleDir != null;
+  }
+
+  @Override
+  public void start() {
+    if (!enabled) {
+      return;
+    }
+    if (ToolProvider.getSystemJavaCompiler() == null) {
+      logger.atWarning().log("Cannot precompile Prolog rules: JDK required (running in a JRE)");
+      return;
+    }
+    executor = workQueue.createQueue(1, "PrologRulesCompiler");
+  }
+
+  @Override
+  public void stop() {
+    ScheduledExecutorService queue = executor;
+    executor = null;
+    if (queue != null) {
+      queue.shutdownNow();
+    }
+  }
+
+  @Override
+  public void onGitBatchRefUpdate(Event event) {
+    ScheduledExecutorService queue = executor;
+    if (queue == null) {
+      return;
+    }
+    for (UpdatedRef ref : event.getUpdatedRefs()) {
+      if (RefNames.REFS_CONFIG.equals(ref.getRefName()) && !ref.isDelete()) {
+        Project.NameKey project = Project.nameKey(event.getProjectName());
+        ObjectId metaConfig = ObjectId.fromString(ref.getNewObjectId());
+        try {
+          @SuppressWarnings("unused")
+          Future<?> possiblyIgnoredError = queue.submit(() -> compile(project, metaConfig));
+        } catch (RejectedExecutionException e) {
+          // The server is shutting down.
+        }
+      }
+    }
+  }
+
+  /** Compiles the rules.pl of the given revision of the {@code refs/meta/config} branch. */
+  private void compile(Project.NameKey project, ObjectId metaConfig) {
+    try (Repository git = repoManager.openRepository(project)) {
+      ObjectId rulesId = git.resolve(metaConfig.name() + ":" + RULES_PL_FILE);
+      if (rulesId == null
+          || Files.isRegularFile(ruleDir.resolve("rules-" + rulesId.name() + ".jar"))
+          || !compiling.add(rulesId)) {
+        return;
+      }
+      try {
+        compilerFactory.create(git).call(metaConfig);
+        // Load the compiled rules on the next evaluation.
+        rulesCache.evict(rulesId);
+        logger.atFine().log("Compiled rules.pl of %s", project);
+      } finally {
+        compiling.remove(rulesId);
+      }
+    } catch (IOException | CompileException | RuntimeException e) {
+      logger.atWarning().withCause(e).log("Cannot compile rules.pl of %s", project);
+    }
+  }
+}
@@ -0,0 +1,365 @@
+// Copyright (C) 2023 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.gerrit.common.Nullable;
+import com.google.gerrit.metrics.CallbackMetric1;
+import com.google.gerrit.metrics.Counter1;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.Field;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.server.account.AccountLimits;
+import com.google.gerrit.server.cancellation.RequestCancelledException;
+import com.google.gerrit.server.cancellation.RequestStateProvider;
+import com.google.gerrit.server.config.GerritServerConfig;
+import com.google.gerrit.server.git.QueueProvider;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import org.eclipse.jgit.lib.Config;
+
+/**
+ * Limits the number of requests that are processed concurrently, so that an overloaded server
+ * rejects excess requests early instead of letting them pile up until they time out.
+ *
+ * <p>Requests are divided into {@link RequestClass}es and every class has its own limit. The limit
+ * adapts to the observed latency: once per second the average latency of the finished requests is
+ * compared with the lowest average latency that was seen recently. While the latency stays close
+ * to that baseline the limit grows, and when the latency rises the limit is reduced by the same
+ * ratio (gradient algorithm).
+ *
+ * <p>A request that finds its class at the limit is rejected right away with a {@link
+ * RequestCancelledException} for {@link RequestStateProvider.Reason#SERVER_OVERLOADED}, so that it
+ * doesn't hold a thread while the server is overloaded. For classes that are configured to be shed,
+ * requests that are already running are also cancelled when the limit drops below the number of
+ * running requests.
+ */
+@Singleton
+public class AdmissionController {
+  static final String SECTION = "admission";
+
+  private static final long WINDOW_NANOS = SECONDS.toNanos(1);
+  private static final double LATENCY_TOLERANCE = 2.0;
+  private static final double MIN_GRADIENT = 0.5;
+  private static final double SMOOTHING = 0.2;
+  private static final double BASELINE_DRIFT = 0.01;
+
+  /** Class of a request, every class is limited separately. */
+  public enum RequestClass {
+    /** Requests of interactive users that don't modify data. */
+    INTERACTIVE_READ(50, 4, 500, false),
+    /** Requests of interactive users that modify data, including pushes. */
+    WRITE(20, 2, 200, false),
+    /** Git fetches and clones of interactive users. */
+    GIT_UPLOAD(10, 2, 100, false),
+    /** Requests of users that are assigned to the batch queue. */
+    BATCH(10, 1, 100, true);
+
+    final int defaultInitialLimit;
+    final int defaultMinLimit;
+    final int defaultMaxLimit;
+    final boolean defaultShed;
+
+    RequestClass(int initialLimit, int minLimit, int maxLimit, boolean shed) {
+      this.defaultInitialLimit = initialLimit;
+      this.defaultMinLimit = minLimit;
+      this.defaultMaxLimit = maxLimit;
+      this.defaultShed = shed;
+    }
+
+    String configName() {
+      return name().toLowerCase(Locale.US).replace('_', '-');
+    }
+  }
+
+  /** Admission of a request, must be closed when the request is done. */
+  public interface Permit extends RequestStateProvider, AutoCloseable {
+    @Override
+    void close();
+  }
+
+  private static final Permit UNLIMITED =
+      new Permit() {
+        @Override
+        public void checkIfCancelled(OnCancelled onCancelled) {}
+
+        @Override
+        public void close() {}
+      };
+
+  private final boolean enabled;
+  private final AccountLimits.Factory limitsFactory;
+  private final Map<RequestClass, Limiter> limiters;
+  private final Counter1<RequestClass> shed;
+
+  @Inject
+  AdmissionController(
+      @GerritServerConfig Config cfg,
+      AccountLimits.Factory limitsFactory,
+      Ticker ticker,
+      MetricMaker metricMaker) {
+    this.enabled = cfg.getBoolean(SECTION, "enabled", false);
+    this.limitsFactory = limitsFactory;
+    this.limiters = Maps.newEnumMap(RequestClass.class);
+    for (RequestClass c : RequestClass.values()) {
+      limiters.put(c, Limiter.fromConfig(cfg, c, ticker));
+    }
+
+    Field<RequestClass> classField =
+        Field.ofEnum(RequestClass.class, "request_class", (metadataBuilder, fieldValue) -> {})
+            .description("The class of the request.")
+            .build();
+    this.shed =
+        metricMaker.newCounter(
+            "admission/shed_count",
+            new Description("Requests rejected or cancelled because the server is overloaded")
+                .setRate()
+                .setUnit("requests"),
+            classField);
+    CallbackMetric1<RequestClass, Integer> limit =
+        metricMaker.newCallbackMetric(
+            "admission/limit",
+            Integer.class,
+            new Description("Current limit of concurrent requests").setGauge().setUnit("requests"),
+            classField);
+    CallbackMetric1<RequestClass, Integer> inFlight =
+        metricMaker.newCallbackMetric(
+            "admission/in_flight",
+            Integer.class,
+            new Description("Admitted requests that are being processed")
+                .setGauge()
+                .setUnit("requests"),
+            classField);
+    metricMaker.newTrigger(
+        ImmutableSet.of(limit, inFlight),
+        () -> {
+          limiters.forEach(
+              (c, l) -> {
+                limit.set(c, l.limit());
+                inFlight.set(c, l.inFlight());
+              });
+          limit.prune();
+          inFlight.prune();
+        });
+  }
+
+  /**
+   * Admits a request if its class is below the limit.
+   *
+   * <p>Requests of users that are assigned to the batch queue are always admitted as {@link
+   * RequestClass#BATCH}.
+   *
+   * @param user the user sending the request
+   * @param requestClass the class of the request if the user is interactive
+   * @return permit that must be closed when the request is done, should be registered in the {@link
+   *     com.google.gerrit.server.cancellation.RequestStateContext} of the request
+   * @throws RequestCancelledException if the request is rejected because the server is overloaded
+   */
+  public Permit admit(CurrentUser user, RequestClass requestClass) {
+    if (!enabled) {
+      return UNLIMITED;
+    }
+    RequestClass c = isBatchUser(user) ? RequestClass.BATCH : requestClass;
+    Limiter limiter = limiters.get(c);
+    try {
+      limiter.acquire();
+    } catch (RequestCancelledException e) {
+      shed.increment(c);
+      throw e;
+    }
+    return limiter.newPermit(() -> shed.increment(c));
+  }
+
+  /** Returns a permit for a request that bypasses the limits, e.g. an administrative command. */
+  public Permit unlimited() {
+    return UNLIMITED;
+  }
+
+  private boolean isBatchUser(CurrentUser user) {
+    return user.isIdentifiedUser()
+        && limitsFactory.create(user).getQueueType() == QueueProvider.QueueType.BATCH;
+  }
+
+  /** Limit of concurrent requests of one {@link RequestClass}. */
+  @VisibleForTesting
+  static class Limiter {
+    static Limiter fromConfig(Config cfg, RequestClass c, Ticker ticker) {
+      String sub = c.configName();
+      int minLimit = Math.max(1, cfg.getInt(SECTION, sub, "minLimit", c.defaultMinLimit));
+      int maxLimit = Math.max(minLimit, cfg.getInt(SECTION, sub, "maxLimit", c.defaultMaxLimit));
+      int initialLimit = cfg.getInt(SECTION, sub, "initialLimit", c.defaultInitialLimit);
+      boolean shed = cfg.getBoolean(SECTION, sub, "shed", c.defaultShed);
+      return new Limiter(
+          ticker,
+          Math.min(maxLimit, Math.max(minLimit, initialLimit)),
+          minLimit,
+          maxLimit,
+          shed);
+    }
+
+    private final Ticker ticker;
+    private final int minLimit;
+    private final int maxLimit;
+    private final boolean shed;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+
+    private final LongAdder latencySum = new LongAdder();
+    private final LongAdder samples = new LongAdder();
+    private final AtomicLong windowEnd;
+    private volatile double limit;
+    private double baselineLatency;
+
+    Limiter(Ticker ticker, int initialLimit, int minLimit, int maxLimit, boolean shed) {
+      this.ticker = ticker;
+      this.limit = initialLimit;
+      this.minLimit = minLimit;
+      this.maxLimit = maxLimit;
+      this.shed = shed;
+      this.windowEnd = new AtomicLong(ticker.read() + WINDOW_NANOS);
+    }
+
+    int limit() {
+      return (int) limit;
+    }
+
+    int inFlight() {
+      return inFlight.get();
+    }
+
+    /**
+     * Takes a slot without waiting.
+     *
+     * @throws RequestCancelledException if all slots are taken
+     */
+    void acquire() {
+      while (true) {
+        int current = inFlight.get();
+        if (current >= limit()) {
+          throw overloaded();
+        }
+        if (inFlight.compareAndSet(current, current + 1)) {
+          peakInFlight.accumulateAndGet(current + 1, Math::max);
+          return;
+        }
+      }
+    }
+
+    private void release() {
+      inFlight.decrementAndGet();
+    }
+
+    /** Records the latency of a finished request and adjusts the limit once per window. */
+    @VisibleForTesting
+    void onSample(long latencyNanos) {
+      latencySum.add(latencyNanos);
+      samples.increment();
+      long now = ticker.read();
+      long end = windowEnd.get();
+      if (now >= end && windowEnd.compareAndSet(end, now + WINDOW_NANOS)) {
+        updateLimit();
+      }
+    }
+
+    private synchronized void updateLimit() {
+      long n = samples.sumThenReset();
+      long sum = latencySum.sumThenReset();
+      int peak = peakInFlight.getAndSet(inFlight.get());
+      if (n == 0) {
+        return;
+      }
+      double latency = (double) sum / n;
+      baselineLatency =
+          baselineLatency == 0
+              ? latency
+              : Math.min(latency, baselineLatency * (1 + BASELINE_DRIFT));
+
+      double gradient =
+          Math.max(MIN_GRADIENT, Math.min(1.0, LATENCY_TOLERANCE * baselineLatency / latency));
+      double current = limit;
+      double target = current * gradient;
+      if (gradient == 1.0 && peak >= current / 2) {
+        // Only grow the limit if it is actually used, otherwise it grows without bounds while the
+        // server is idle and doesn't protect it when the load rises.
+        target += Math.sqrt(current);
+      }
+      double updated = current * (1 - SMOOTHING) + target * SMOOTHING;
+      limit = Math.max(minLimit, Math.min(maxLimit, updated));
+    }
+
+    private RequestCancelledException overloaded() {
+      return new RequestCancelledException(
+          RequestStateProvider.Reason.SERVER_OVERLOADED, "too many concurrent requests");
+    }
+
+    /** Returns a permit for a slot that was taken by {@link #acquire()}. */
+    Permit newPermit(@Nullable Runnable onShed) {
+      return new LimiterPermit(onShed);
+    }
+
+    /** Permit holding one slot of this limiter. */
+    private class LimiterPermit implements Permit {
+      private final long start = ticker.read();
+      private final AtomicBoolean released = new AtomicBoolean();
+      @Nullable private final Runnable onShed;
+      private volatile boolean cancelled;
+
+      LimiterPermit(@Nullable Runnable onShed) {
+        this.onShed = onShed;
+      }
+
+      @Override
+      public void checkIfCancelled(OnCancelled onCancelled) {
+        if (!cancelled && shed && inFlight() > limit()) {
+          // Cancel requests one by one, so that only as many requests are cancelled as are above
+          // the limit.
+          synchronized (Limiter.this) {
+            if (inFlight() > limit() && released.compareAndSet(false, true)) {
+              release();
+              cancelled = true;
+              if (onShed != null) {
+                onShed.run();
+              }
+            }
+          }
+        }
+        if (cancelled) {
+          onCancelled.onCancel(
+              RequestStateProvider.Reason.SERVER_OVERLOADED, "too many concurrent requests");
+        }
+      }
+
+      @Override
+      public void close() {
+        if (released.compareAndSet(false, true)) {
+          onSample(ticker.read() - start);
+          release();
+        }
+      }
+    }
+  }
+}
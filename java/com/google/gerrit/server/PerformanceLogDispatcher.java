@@ -0,0 +1,111 @@
+// Copyright (C) 2023 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server;
+
+import com.google.common.collect.ImmutableList;
+import com.google.gerrit.common.Nullable;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gerrit.extensions.registration.DynamicSet;
+import com.google.gerrit.lifecycle.LifecycleModule;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.server.config.GerritServerConfig;
+import com.google.gerrit.server.logging.BatchingSink;
+import com.google.gerrit.server.logging.PerformanceLogContext;
+import com.google.gerrit.server.logging.PerformanceLogRecord;
+import com.google.gerrit.server.logging.PerformanceLogger;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.eclipse.jgit.lib.Config;
+
+/**
+ * Opens {@link PerformanceLogContext}s for requests.
+ *
+ * <p>If {@code tracing.performanceLogQueueSize} is set, the performance log records of a request
+ * are handed over to the {@link PerformanceLogger}s on a dedicated thread, instead of by the
+ * request thread when the request is done.
+ */
+@Singleton
+public class PerformanceLogDispatcher implements LifecycleListener {
+  public static class Module extends LifecycleModule {
+    @Override
+    protected void configure() {
+      listener().to(PerformanceLogDispatcher.class);
+    }
+  }
+
+  private final Config cfg;
+  private final DynamicSet<PerformanceLogger> performanceLoggers;
+  @Nullable private final BatchingSink<ImmutableList<PerformanceLogRecord>> sink;
+
+  @Inject
+  PerformanceLogDispatcher(
+      @GerritServerConfig Config cfg,
+      DynamicSet<PerformanceLogger> performanceLoggers,
+      MetricMaker metricMaker) {
+    this.cfg = cfg;
+    this.performanceLoggers = performanceLoggers;
+
+    int queueSize = cfg.getInt("tracing", "performanceLogQueueSize", 0);
+    if (queueSize > 0) {
+      sink =
+          PerformanceLogContext.newSink(
+              queueSize,
+              cfg.getInt("tracing", "performanceLogBatchSize", 100),
+              cfg.getEnum(
+                  "tracing",
+                  null,
+                  "performanceLogOverflowPolicy",
+                  BatchingSink.OverflowPolicy.DROP),
+              performanceLoggers);
+      metricMaker.newCallbackMetric(
+          "performance_log/queue_depth",
+          Integer.class,
+          new Description("Requests whose performance log records wait for delivery")
+              .setGauge()
+              .setUnit("requests"),
+          sink::size);
+      metricMaker.newCallbackMetric(
+          "performance_log/dropped",
+          Long.class,
+          new Description(
+                  "Requests whose performance log records were dropped because the queue was full")
+              .setCumulative()
+              .setUnit("requests"),
+          sink::dropped);
+    } else {
+      sink = null;
+    }
+  }
+
+  /** Opens a context that captures the performance log records of the current request. */
+  public PerformanceLogContext newContext() {
+    return new PerformanceLogContext(cfg, performanceLoggers, sink);
+  }
+
+  @Override
+  public void start() {
+    if (sink != null) {
+      sink.start();
+    }
+  }
+
+  @Override
+  public void stop() {
+    if (sink != null) {
+      sink.stop();
+    }
+  }
+}
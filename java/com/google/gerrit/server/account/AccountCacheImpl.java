@@ -63,6 +63,7 @@ public class AccountCacheImpl implements AccountCache {
       persist(BYID_AND_REV_NAME, CachedAccountDetails.Key.class, CachedAccountDetails.class)
           .version(2)
           .keySerializer(CachedAccountDetails.Key.Serializer.INSTANCE)
+          .warmUp(CachedAccountDetails.Key.Serializer.INSTANCE)
           .valueSerializer(CachedAccountDetails.Serializer.INSTANCE)
           .loader(Loader.class);
 
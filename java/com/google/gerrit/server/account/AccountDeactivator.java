@@ -15,6 +15,7 @@
 package com.google.gerrit.server.account;
 
 import com.google.common.flogger.FluentLogger;
+import com.google.gerrit.extensions.events.ConcurrentStart;
 import com.google.gerrit.extensions.events.LifecycleListener;
 import com.google.gerrit.extensions.restapi.ResourceConflictException;
 import com.google.gerrit.lifecycle.LifecycleModule;
@@ -40,6 +41,7 @@ public class AccountDeactivator implements Runnable {
     }
   }
 
+  @ConcurrentStart
   static class Lifecycle implements LifecycleListener {
     private final WorkQueue queue;
     private final AccountDeactivator deactivator;
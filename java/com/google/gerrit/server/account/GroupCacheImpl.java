@@ -14,11 +14,9 @@
 
 package com.google.gerrit.server.account;
 
-import static com.google.common.collect.ImmutableMap.toImmutableMap;
-import static com.google.common.collect.ImmutableSet.toImmutableSet;
-
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
@@ -51,6 +49,7 @@ import com.google.inject.name.Named;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -70,7 +69,7 @@ public class GroupCacheImpl implements GroupCache {
   private static final String BYID_NAME = "groups";
   private static final String BYNAME_NAME = "groups_byname";
   private static final String BYUUID_NAME = "groups_byuuid";
-  private static final String BYUUID_NAME_PERSISTED = "groups_byuuid_persisted";
+  static final String BYUUID_NAME_PERSISTED = "groups_byuuid_persisted";
 
   public static Module module() {
     return new CacheModule() {
@@ -124,6 +123,7 @@ public class GroupCacheImpl implements GroupCache {
   private final LoadingCache<String, Optional<InternalGroup>> byName;
   private final LoadingCache<String, Optional<InternalGroup>> byUUID;
   private final LoadingCache<Cache.GroupKeyProto, InternalGroup> persistedByUuidCache;
+  private final InternalGroupsSnapshot snapshot;
 
   @Inject
   GroupCacheImpl(
@@ -131,15 +131,21 @@ public class GroupCacheImpl implements GroupCache {
       @Named(BYNAME_NAME) LoadingCache<String, Optional<InternalGroup>> byName,
       @Named(BYUUID_NAME) LoadingCache<String, Optional<InternalGroup>> byUUID,
       @Named(BYUUID_NAME_PERSISTED)
-          LoadingCache<Cache.GroupKeyProto, InternalGroup> persistedByUuidCache) {
+          LoadingCache<Cache.GroupKeyProto, InternalGroup> persistedByUuidCache,
+      InternalGroupsSnapshot snapshot) {
     this.byId = byId;
     this.byName = byName;
     this.byUUID = byUUID;
     this.persistedByUuidCache = persistedByUuidCache;
+    this.snapshot = snapshot;
   }
 
   @Override
   public Optional<InternalGroup> get(AccountGroup.Id groupId) {
+    InternalGroupsSnapshot.State s = snapshot.current();
+    if (s != null && s.get(groupId).isPresent()) {
+      return s.get(groupId);
+    }
     try {
       return byId.get(groupId);
     } catch (ExecutionException e) {
@@ -153,6 +159,10 @@ public class GroupCacheImpl implements GroupCache {
     if (name == null) {
       return Optional.empty();
     }
+    InternalGroupsSnapshot.State s = snapshot.current();
+    if (s != null && s.get(name).isPresent()) {
+      return s.get(name);
+    }
     try {
       return byName.get(name.get());
     } catch (ExecutionException e) {
@@ -166,6 +176,10 @@ public class GroupCacheImpl implements GroupCache {
     if (groupUuid == null) {
       return Optional.empty();
     }
+    InternalGroupsSnapshot.State s = snapshot.current();
+    if (s != null && s.get(groupUuid).isPresent()) {
+      return s.get(groupUuid);
+    }
 
     try {
       return byUUID.get(groupUuid.get());
@@ -177,15 +191,28 @@ public class GroupCacheImpl implements GroupCache {
 
   @Override
   public Map<AccountGroup.UUID, InternalGroup> get(Collection<AccountGroup.UUID> groupUuids) {
+    InternalGroupsSnapshot.State s = snapshot.current();
+    Map<AccountGroup.UUID, InternalGroup> result = new HashMap<>();
+    Set<String> groupUuidsStringSet = new HashSet<>();
+    for (AccountGroup.UUID uuid : groupUuids) {
+      Optional<InternalGroup> group = s != null ? s.get(uuid) : Optional.empty();
+      if (group.isPresent()) {
+        result.put(uuid, group.get());
+      } else {
+        groupUuidsStringSet.add(uuid.get());
+      }
+    }
+    if (groupUuidsStringSet.isEmpty()) {
+      return ImmutableMap.copyOf(result);
+    }
     try {
-      Set<String> groupUuidsStringSet =
-          groupUuids.stream().map(u -> u.get()).collect(toImmutableSet());
-      return byUUID.getAll(groupUuidsStringSet).entrySet().stream()
+      byUUID.getAll(groupUuidsStringSet).entrySet().stream()
           .filter(g -> g.getValue().isPresent())
-          .collect(toImmutableMap(g -> AccountGroup.uuid(g.getKey()), g -> g.getValue().get()));
+          .forEach(g -> result.put(AccountGroup.uuid(g.getKey()), g.getValue().get()));
+      return ImmutableMap.copyOf(result);
     } catch (ExecutionException e) {
       logger.atWarning().withCause(e).log("Cannot look up groups %s by uuids", groupUuids);
-      return ImmutableMap.of();
+      return ImmutableMap.copyOf(result);
     }
   }
 
@@ -225,6 +252,7 @@ public class GroupCacheImpl implements GroupCache {
     if (groupUuid != null) {
       logger.atFine().log("Evict group %s by UUID", groupUuid.get());
       byUUID.invalidate(groupUuid.get());
+      snapshot.refresh(ImmutableList.of(groupUuid));
     }
   }
 
@@ -233,6 +261,7 @@ public class GroupCacheImpl implements GroupCache {
     if (groupUuids != null && !groupUuids.isEmpty()) {
       logger.atFine().log("Evict groups %s by UUID", groupUuids);
       byUUID.invalidateAll(groupUuids);
+      snapshot.refresh(groupUuids);
     }
   }
 
@@ -41,6 +41,7 @@ public class InternalGroupBackend implements GroupBackend {
   private final GroupControl.Factory groupControlFactory;
   private final GroupCache groupCache;
   private final Groups groups;
+  private final InternalGroupsSnapshot groupsSnapshot;
   private final IncludingGroupMembership.Factory groupMembershipFactory;
 
   @Inject
@@ -48,10 +49,12 @@ public class InternalGroupBackend implements GroupBackend {
       GroupControl.Factory groupControlFactory,
       GroupCache groupCache,
       Groups groups,
+      InternalGroupsSnapshot groupsSnapshot,
       IncludingGroupMembership.Factory groupMembershipFactory) {
     this.groupControlFactory = groupControlFactory;
     this.groupCache = groupCache;
     this.groups = groups;
+    this.groupsSnapshot = groupsSnapshot;
     this.groupMembershipFactory = groupMembershipFactory;
   }
 
@@ -74,8 +77,8 @@ public class InternalGroupBackend implements GroupBackend {
   @Override
   public Collection<GroupReference> suggest(String name, ProjectState project) {
     try {
-      return groups
-          .getAllGroupReferences()
+      Optional<ImmutableList<GroupReference>> snapshot = groupsSnapshot.getAllGroupReferences();
+      return (snapshot.isPresent() ? snapshot.get().stream() : groups.getAllGroupReferences())
           .filter(group -> startsWithIgnoreCase(group, name))
           .filter(this::isVisible)
           .collect(toList());
@@ -0,0 +1,375 @@
+// Copyright (C) 2023 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.account;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Stopwatch;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.flogger.FluentLogger;
+import com.google.gerrit.common.Nullable;
+import com.google.gerrit.entities.AccountGroup;
+import com.google.gerrit.entities.GroupReference;
+import com.google.gerrit.entities.InternalGroup;
+import com.google.gerrit.entities.RefNames;
+import com.google.gerrit.extensions.events.ConcurrentStart;
+import com.google.gerrit.extensions.events.GitBatchRefUpdateListener;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gerrit.extensions.registration.DynamicSet;
+import com.google.gerrit.lifecycle.LifecycleModule;
+import com.google.gerrit.server.cache.proto.Cache;
+import com.google.gerrit.server.cache.serialize.ObjectIdConverter;
+import com.google.gerrit.server.config.AllUsersName;
+import com.google.gerrit.server.config.GerritServerConfig;
+import com.google.gerrit.server.git.GitRepositoryManager;
+import com.google.gerrit.server.git.WorkQueue;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+
+/**
+ * Immutable in-memory snapshot of all internal groups.
+ *
+ * <p>The snapshot is built in parallel in the background when the server starts, from the {@code
+ * refs/groups/*} refs in {@code All-Users}. The groups are loaded through the persisted groups
+ * cache, so that a restart only needs to read the groups that changed since the last run. The
+ * snapshot is then kept up to date from the {@link GitBatchRefUpdateListener} events on {@code
+ * All-Users} and from {@link GroupCache} evictions. Every update swaps in a new snapshot, so that
+ * readers never need to lock.
+ *
+ * <p>{@link GroupCacheImpl} serves lookups from the snapshot and falls back to loading the group
+ * for groups that are missing from it, and while it is being built.
+ */
+@ConcurrentStart
+@Singleton
+public class InternalGroupsSnapshot implements LifecycleListener, GitBatchRefUpdateListener {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  public static class Module extends LifecycleModule {
+    @Override
+    protected void configure() {
+      listener().to(InternalGroupsSnapshot.class);
+      DynamicSet.bind(binder(), GitBatchRefUpdateListener.class).to(InternalGroupsSnapshot.class);
+    }
+  }
+
+  /** All internal groups, indexed by UUID, ID and name. */
+  @VisibleForTesting
+  static class State {
+    private final ImmutableMap<AccountGroup.UUID, InternalGroup> byUuid;
+    private final ImmutableMap<AccountGroup.Id, InternalGroup> byId;
+    private final ImmutableMap<String, InternalGroup> byName;
+
+    State(Map<AccountGroup.UUID, InternalGroup> groups) {
+      Map<AccountGroup.Id, InternalGroup> ids = new HashMap<>();
+      Map<String, InternalGroup> names = new HashMap<>();
+      for (InternalGroup group : groups.values()) {
+        ids.put(group.getId(), group);
+        names.put(group.getName(), group);
+      }
+      byUuid = ImmutableMap.copyOf(groups);
+      byId = ImmutableMap.copyOf(ids);
+      byName = ImmutableMap.copyOf(names);
+    }
+
+    Optional<InternalGroup> get(AccountGroup.UUID uuid) {
+      return Optional.ofNullable(byUuid.get(uuid));
+    }
+
+    Optional<InternalGroup> get(AccountGroup.Id id) {
+      return Optional.ofNullable(byId.get(id));
+    }
+
+    Optional<InternalGroup> get(AccountGroup.NameKey name) {
+      return Optional.ofNullable(byName.get(name.get()));
+    }
+
+    int size() {
+      return byUuid.size();
+    }
+
+    /**
+     * Returns a new state with the given groups replaced.
+     *
+     * @param updates the new groups by UUID, empty for groups that should be removed
+     */
+    State update(Map<AccountGroup.UUID, Optional<InternalGroup>> updates) {
+      Map<AccountGroup.UUID, InternalGroup> groups = new HashMap<>(byUuid);
+      updates.forEach(
+          (uuid, group) -> {
+            if (group.isPresent()) {
+              groups.put(uuid, group.get());
+            } else {
+              groups.remove(uuid);
+            }
+          });
+      return new State(groups);
+    }
+  }
+
+  private final GitRepositoryManager repoManager;
+  private final AllUsersName allUsers;
+  private final LoadingCache<Cache.GroupKeyProto, InternalGroup> persistedCache;
+  private final WorkQueue workQueue;
+  private final boolean enabled;
+  private final int threads;
+
+  private ScheduledExecutorService executor;
+  private Future<?> buildTask;
+
+  /** The snapshot, or {@code null} if it is not available. */
+  @Nullable private volatile State state;
+
+  /**
+   * Groups that were updated while the snapshot is being built, or {@code null} if it isn't being
+   * built. Guarded by {@code this}.
+   */
+  @Nullable private Set<AccountGroup.UUID> pending;
+
+  @Inject
+  InternalGroupsSnapshot(
+      @GerritServerConfig Config cfg,
+      GitRepositoryManager repoManager,
+      AllUsersName allUsers,
+      @Named(GroupCacheImpl.BYUUID_NAME_PERSISTED)
+          LoadingCache<Cache.GroupKeyProto, InternalGroup> persistedCache,
+      WorkQueue workQueue) {
+    this.repoManager = repoManager;
+    this.allUsers = allUsers;
+    this.persistedCache = persistedCache;
+    this.workQueue = workQueue;
+    this.enabled = cfg.getBoolean("groups", null, "inMemorySnapshot", true);
+    this.threads =
+        cfg.getInt(
+            "groups", null, "snapshotLoadThreads", Runtime.getRuntime().availableProcessors());
+  }
+
+  @Override
+  public void start() {
+    if (!enabled) {
+      return;
+    }
+    synchronized (this) {
+      pending = new HashSet<>();
+    }
+    executor = workQueue.createQueue(Math.max(threads, 1), "InternalGroupsSnapshot");
+    // The build waits for the groups that are loaded on the executor, so it must not run on it.
+    buildTask = workQueue.getDefaultQueue().submit(this::build);
+  }
+
+  @Override
+  public void stop() {
+    if (buildTask != null) {
+      buildTask.cancel(true);
+    }
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+  }
+
+  /** Returns the snapshot, or {@code null} if it is not available. */
+  @Nullable
+  State current() {
+    return state;
+  }
+
+  /**
+   * Returns references to all internal groups.
+   *
+   * @return the group references, or empty if the snapshot is not available and the groups must be
+   *     read from NoteDb
+   */
+  public Optional<ImmutableList<GroupReference>> getAllGroupReferences() {
+    State current = state;
+    if (current == null) {
+      return Optional.empty();
+    }
+    return Optional.of(
+        current.byUuid.values().stream()
+            .map(g -> GroupReference.create(g.getGroupUUID(), g.getName()))
+            .collect(toImmutableList()));
+  }
+
+  @Override
+  public void onGitBatchRefUpdate(GitBatchRefUpdateListener.Event event) {
+    if (!allUsers.get().equals(event.getProjectName())) {
+      return;
+    }
+    List<AccountGroup.UUID> updated = new ArrayList<>();
+    for (GitBatchRefUpdateListener.UpdatedRef u : event.getUpdatedRefs()) {
+      if (RefNames.isRefsGroups(u.getRefName())) {
+        AccountGroup.UUID uuid = AccountGroup.UUID.fromRef(u.getRefName());
+        if (uuid != null) {
+          updated.add(uuid);
+        }
+      }
+    }
+    refresh(updated);
+  }
+
+  /**
+   * Reloads the given groups into the snapshot if their refs changed.
+   *
+   * <p>Groups that can't be loaded are removed from the snapshot, so that lookups fall back to
+   * loading them.
+   *
+   * <p>The groups are loaded without holding the lock. A group that was refreshed concurrently in
+   * the meantime is not overwritten, but refreshed again.
+   */
+  void refresh(Collection<AccountGroup.UUID> uuids) {
+    if (uuids.isEmpty()) {
+      return;
+    }
+    State current;
+    synchronized (this) {
+      current = state;
+      if (current == null) {
+        if (pending != null) {
+          pending.addAll(uuids);
+        }
+        return;
+      }
+    }
+
+    Map<AccountGroup.UUID, Optional<InternalGroup>> updates = new HashMap<>();
+    try (Repository repo = repoManager.openRepository(allUsers)) {
+      for (AccountGroup.UUID uuid : uuids) {
+        if (!uuid.isInternalGroup()) {
+          continue;
+        }
+        Ref ref = repo.exactRef(RefNames.refsGroups(uuid));
+        Optional<InternalGroup> group = current.get(uuid);
+        if (ref == null) {
+          if (group.isPresent()) {
+            updates.put(uuid, Optional.empty());
+          }
+        } else if (!group.isPresent() || !ref.getObjectId().equals(group.get().getRefState())) {
+          updates.put(uuid, load(uuid, ref.getObjectId()));
+        }
+      }
+    } catch (IOException e) {
+      logger.atWarning().withCause(e).log("Cannot refresh groups %s", uuids);
+      uuids.forEach(uuid -> updates.put(uuid, Optional.empty()));
+    }
+    if (updates.isEmpty()) {
+      return;
+    }
+
+    List<AccountGroup.UUID> changedMeanwhile = new ArrayList<>();
+    synchronized (this) {
+      State latest = state;
+      Map<AccountGroup.UUID, Optional<InternalGroup>> applicable = new HashMap<>();
+      updates.forEach(
+          (uuid, group) -> {
+            if (latest.get(uuid).equals(current.get(uuid))) {
+              applicable.put(uuid, group);
+            } else {
+              changedMeanwhile.add(uuid);
+            }
+          });
+      if (!applicable.isEmpty()) {
+        state = latest.update(applicable);
+      }
+    }
+    refresh(changedMeanwhile);
+  }
+
+  private void build() {
+    Stopwatch sw = Stopwatch.createStarted();
+    try {
+      List<Ref> refs;
+      try (Repository repo = repoManager.openRepository(allUsers)) {
+        refs = repo.getRefDatabase().getRefsByPrefix(RefNames.REFS_GROUPS);
+      }
+      List<Future<Map<AccountGroup.UUID, InternalGroup>>> loaded = new ArrayList<>();
+      for (List<Ref> part : Lists.partition(refs, 256)) {
+        loaded.add(executor.submit(() -> load(part)));
+      }
+      Map<AccountGroup.UUID, InternalGroup> groups = new HashMap<>();
+      for (Future<Map<AccountGroup.UUID, InternalGroup>> f : loaded) {
+        groups.putAll(f.get());
+      }
+
+      Set<AccountGroup.UUID> updatedWhileBuilding;
+      synchronized (this) {
+        state = new State(groups);
+        updatedWhileBuilding = pending;
+        pending = null;
+      }
+      refresh(updatedWhileBuilding);
+      logger.atInfo().log(
+          "Loaded %d groups into the snapshot in %d ms",
+          groups.size(), sw.elapsed(TimeUnit.MILLISECONDS));
+    } catch (IOException | ExecutionException | RuntimeException e) {
+      logger.atWarning().withCause(e).log("Cannot build groups snapshot");
+      synchronized (this) {
+        pending = null;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      synchronized (this) {
+        pending = null;
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private Map<AccountGroup.UUID, InternalGroup> load(List<Ref> refs) {
+    Map<AccountGroup.UUID, InternalGroup> groups = new HashMap<>();
+    for (Ref ref : refs) {
+      AccountGroup.UUID uuid = AccountGroup.UUID.fromRef(ref.getName());
+      if (uuid != null) {
+        load(uuid, ref.getObjectId()).ifPresent(g -> groups.put(uuid, g));
+      }
+    }
+    return groups;
+  }
+
+  private Optional<InternalGroup> load(AccountGroup.UUID uuid, ObjectId revision) {
+    Cache.GroupKeyProto key =
+        Cache.GroupKeyProto.newBuilder()
+            .setUuid(uuid.get())
+            .setRevision(ObjectIdConverter.create().toByteString(revision))
+            .build();
+    try {
+      return Optional.of(persistedCache.get(key));
+    } catch (ExecutionException | RuntimeException e) {
+      logger.atWarning().withCause(e).log("Cannot load group %s", uuid.get());
+      return Optional.empty();
+    }
+  }
+}
@@ -16,9 +16,23 @@ package com.google.gerrit.server.audit;
 
 import com.google.gerrit.extensions.annotations.ExtensionPoint;
 import com.google.gerrit.server.AuditEvent;
+import java.util.List;
 
 @ExtensionPoint
 public interface AuditListener {
 
   void onAuditableAction(AuditEvent action);
+
+  /**
+   * Invoked with batches of audit events if audit events are delivered asynchronously (see {@code
+   * audit.queueSize}).
+   *
+   * <p>Listeners that can store several events at once should override this method. By default
+   * each event is passed to {@link #onAuditableAction(AuditEvent)}.
+   *
+   * @param actions the audit events in the order in which they were recorded
+   */
+  default void onAuditableActions(List<AuditEvent> actions) {
+    actions.forEach(this::onAuditableAction);
+  }
 }
@@ -0,0 +1,115 @@
+// Copyright (C) 2023 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.audit;
+
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gerrit.server.AuditEvent;
+import com.google.gerrit.server.CurrentUser;
+import com.google.gerrit.server.config.GerritServerConfig;
+import com.google.gerrit.server.util.SystemLog;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.apache.log4j.AsyncAppender;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+import org.eclipse.jgit.lib.Config;
+
+/**
+ * Writes audit events to {@code $site_path/logs/audit_log.json}, one JSON object per line.
+ *
+ * <p>Disabled unless {@code audit.log} is set.
+ */
+@Singleton
+class AuditLog implements AuditListener, LifecycleListener {
+  private static final Logger log = Logger.getLogger(AuditLog.class);
+
+  static final String LOG_NAME = "audit_log.json";
+  static final String P_UUID = "uuid";
+  static final String P_SESSION = "session";
+  static final String P_USER_NAME = "userName";
+  static final String P_ACCOUNT_ID = "accountId";
+  static final String P_ELAPSED = "elapsed";
+  static final String P_METHOD = "method";
+  static final String P_STATUS = "status";
+
+  private final SystemLog systemLog;
+  private final boolean enabled;
+  private volatile AsyncAppender async;
+
+  @Inject
+  AuditLog(SystemLog systemLog, @GerritServerConfig Config config) {
+    this.systemLog = systemLog;
+    this.enabled = config.getBoolean("audit", "log", false);
+  }
+
+  @Override
+  public void start() {
+    if (enabled) {
+      async = systemLog.createAsyncAppender(LOG_NAME, new AuditLogJsonLayout());
+    }
+  }
+
+  @Override
+  public void stop() {
+    if (async != null) {
+      async.close();
+      async = null;
+    }
+  }
+
+  @Override
+  public void onAuditableAction(AuditEvent action) {
+    AsyncAppender appender = async;
+    if (appender != null) {
+      appender.append(toLoggingEvent(action));
+    }
+  }
+
+  private static LoggingEvent toLoggingEvent(AuditEvent action) {
+    LoggingEvent event =
+        new LoggingEvent( //
+            Logger.class.getName(), // fqnOfCategoryClass
+            log, // logger
+            action.when, // when
+            Level.INFO, // level
+            action.what, // message text
+            Thread.currentThread().getName(), // thread name
+            null, // exception information
+            null, // current NDC string
+            null, // caller location
+            null // MDC properties
+            );
+
+    event.setProperty(P_UUID, action.uuid.uuid());
+    event.setProperty(P_SESSION, action.sessionId);
+    CurrentUser who = action.who;
+    if (who != null) {
+      event.setProperty(P_USER_NAME, who.getLoggableName());
+      if (who.isIdentifiedUser()) {
+        event.setProperty(P_ACCOUNT_ID, who.getAccountId().toString());
+      }
+    }
+    event.setProperty(P_ELAPSED, action.elapsed + "ms");
+    if (action instanceof HttpAuditEvent) {
+      HttpAuditEvent httpAction = (HttpAuditEvent) action;
+      event.setProperty(P_METHOD, httpAction.httpMethod);
+      event.setProperty(P_STATUS, Integer.toString(httpAction.httpStatus));
+    } else if (action.result instanceof String) {
+      event.setProperty(P_STATUS, (String) action.result);
+    }
+    return event;
+  }
+}
@@ -0,0 +1,62 @@
+// Copyright (C) 2023 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.audit;
+
+import static com.google.gerrit.server.audit.AuditLog.P_ACCOUNT_ID;
+import static com.google.gerrit.server.audit.AuditLog.P_ELAPSED;
+import static com.google.gerrit.server.audit.AuditLog.P_METHOD;
+import static com.google.gerrit.server.audit.AuditLog.P_SESSION;
+import static com.google.gerrit.server.audit.AuditLog.P_STATUS;
+import static com.google.gerrit.server.audit.AuditLog.P_USER_NAME;
+import static com.google.gerrit.server.audit.AuditLog.P_UUID;
+
+import com.google.gerrit.util.logging.JsonLayout;
+import com.google.gerrit.util.logging.JsonLogEntry;
+import org.apache.log4j.spi.LoggingEvent;
+
+public class AuditLogJsonLayout extends JsonLayout {
+
+  @Override
+  public JsonLogEntry toJsonLogEntry(LoggingEvent event) {
+    return new AuditJsonLogEntry(event);
+  }
+
+  @SuppressWarnings("unused")
+  private class AuditJsonLogEntry extends JsonLogEntry {
+    public String timestamp;
+    public String uuid;
+    public String session;
+    public String thread;
+    public String user;
+    public String accountId;
+    public String what;
+    public String method;
+    public String status;
+    public String elapsed;
+
+    public AuditJsonLogEntry(LoggingEvent event) {
+      this.timestamp = timestampFormatter.format(event.getTimeStamp());
+      this.uuid = getMdcString(event, P_UUID);
+      this.session = getMdcString(event, P_SESSION);
+      this.thread = event.getThreadName();
+      this.user = getMdcString(event, P_USER_NAME);
+      this.accountId = getMdcString(event, P_ACCOUNT_ID);
+      this.what = (String) event.getMessage();
+      this.method = getMdcString(event, P_METHOD);
+      this.status = getMdcString(event, P_STATUS);
+      this.elapsed = getMdcString(event, P_ELAPSED);
+    }
+  }
+}
@@ -15,16 +15,21 @@
 package com.google.gerrit.server.audit;
 
 import com.google.gerrit.extensions.registration.DynamicSet;
+import com.google.gerrit.lifecycle.LifecycleModule;
 import com.google.gerrit.server.audit.group.GroupAuditListener;
 import com.google.gerrit.server.group.GroupAuditService;
-import com.google.inject.AbstractModule;
 
-public class AuditModule extends AbstractModule {
+public class AuditModule extends LifecycleModule {
 
   @Override
   protected void configure() {
     DynamicSet.setOf(binder(), AuditListener.class);
     DynamicSet.setOf(binder(), GroupAuditListener.class);
     bind(GroupAuditService.class).to(AuditService.class);
+
+    DynamicSet.bind(binder(), AuditListener.class).to(AuditLog.class);
+    listener().to(AuditLog.class);
+    // Registered after the audit log so that queued events are written before it is closed.
+    listener().to(AuditService.class);
   }
 }
@@ -15,34 +15,94 @@
 package com.google.gerrit.server.audit;
 
 import com.google.common.collect.ImmutableSet;
+import com.google.gerrit.common.Nullable;
 import com.google.gerrit.entities.Account;
 import com.google.gerrit.entities.AccountGroup;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.MetricMaker;
 import com.google.gerrit.server.AuditEvent;
 import com.google.gerrit.server.audit.group.GroupAuditListener;
 import com.google.gerrit.server.audit.group.GroupMemberAuditEvent;
 import com.google.gerrit.server.audit.group.GroupSubgroupAuditEvent;
+import com.google.gerrit.server.config.GerritServerConfig;
 import com.google.gerrit.server.group.GroupAuditService;
+import com.google.gerrit.server.logging.BatchingSink;
 import com.google.gerrit.server.plugincontext.PluginSetContext;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import java.time.Instant;
+import org.eclipse.jgit.lib.Config;
 
+/**
+ * Dispatches audit events to the registered listeners.
+ *
+ * <p>If {@code audit.queueSize} is set, {@link AuditListener}s are invoked in batches on a
+ * dedicated thread, so that slow listeners don't delay the request that recorded the event.
+ * Group audit events are always dispatched synchronously.
+ */
 @Singleton
-public class AuditService implements GroupAuditService {
+public class AuditService implements GroupAuditService, LifecycleListener {
   private final PluginSetContext<AuditListener> auditListeners;
   private final PluginSetContext<GroupAuditListener> groupAuditListeners;
+  @Nullable private final BatchingSink<AuditEvent> sink;
 
   @Inject
   public AuditService(
       PluginSetContext<AuditListener> auditListeners,
-      PluginSetContext<GroupAuditListener> groupAuditListeners) {
+      PluginSetContext<GroupAuditListener> groupAuditListeners,
+      @GerritServerConfig Config cfg,
+      MetricMaker metricMaker) {
     this.auditListeners = auditListeners;
     this.groupAuditListeners = groupAuditListeners;
+
+    int queueSize = cfg.getInt("audit", "queueSize", 0);
+    if (queueSize > 0) {
+      sink =
+          new BatchingSink<>(
+              "AuditListener",
+              queueSize,
+              cfg.getInt("audit", "batchSize", 100),
+              cfg.getEnum("audit", null, "overflowPolicy", BatchingSink.OverflowPolicy.DROP),
+              batch -> auditListeners.runEach(l -> l.onAuditableActions(batch)));
+      metricMaker.newCallbackMetric(
+          "audit/queue_depth",
+          Integer.class,
+          new Description("Audit events that wait for delivery").setGauge().setUnit("events"),
+          sink::size);
+      metricMaker.newCallbackMetric(
+          "audit/dropped",
+          Long.class,
+          new Description("Audit events that were dropped because the queue was full")
+              .setCumulative()
+              .setUnit("events"),
+          sink::dropped);
+    } else {
+      sink = null;
+    }
+  }
+
+  @Override
+  public void start() {
+    if (sink != null) {
+      sink.start();
+    }
+  }
+
+  @Override
+  public void stop() {
+    if (sink != null) {
+      sink.stop();
+    }
   }
 
   @Override
   public void dispatch(AuditEvent action) {
-    auditListeners.runEach(l -> l.onAuditableAction(action));
+    if (sink != null) {
+      sink.add(action);
+    } else {
+      auditListeners.runEach(l -> l.onAuditableAction(action));
+    }
   }
 
   @Override
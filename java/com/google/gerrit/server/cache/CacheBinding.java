@@ -16,6 +16,7 @@ package com.google.gerrit.server.cache;
 
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.Weigher;
+import com.google.gerrit.server.cache.serialize.CacheSerializer;
 import java.time.Duration;
 
 /** Configure a cache declared within a {@link CacheModule} instance. */
@@ -42,6 +43,15 @@ public interface CacheBinding<K, V> {
   /** Algorithm to weigh an object with a method other than the unit weight 1. */
   CacheBinding<K, V> weigher(Class<? extends Weigher<K, V>> clazz);
 
+  /**
+   * Record the keys held in memory periodically and load them again when the server starts.
+   *
+   * <p>Caches without a loader can only be warmed up from their on-disk copy.
+   *
+   * @param keySerializer serializer used to store the recorded keys.
+   */
+  CacheBinding<K, V> warmUp(CacheSerializer<K> keySerializer);
+
   /**
    * Set the config name to something other than the cache name.
    *
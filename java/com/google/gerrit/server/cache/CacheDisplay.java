@@ -38,7 +38,7 @@ public class CacheDisplay {
   public void displayCaches() throws IOException {
     stdout.write(
         String.format( //
-            "%1s %-" + nw + "s|%-21s|  %-5s |%-9s|\n" //
+            "%1s %-" + nw + "s|%-21s|  %-5s |%-9s|%-7s|\n" //
             ,
             "" //
             ,
@@ -49,10 +49,12 @@ public class CacheDisplay {
             "AvgGet" //
             ,
             "Hit Ratio" //
+            ,
+            "WarmUp" //
             ));
     stdout.write(
         String.format( //
-            "%1s %-" + nw + "s|%6s %6s %7s|  %-5s  |%-4s %-4s|\n" //
+            "%1s %-" + nw + "s|%6s %6s %7s|  %-5s  |%-4s %-4s|%-7s|\n" //
             ,
             "" //
             ,
@@ -69,12 +71,14 @@ public class CacheDisplay {
             "Mem" //
             ,
             "Disk" //
+            ,
+            "" //
             ));
     stdout.write("--");
     for (int i = 0; i < nw; i++) {
       stdout.write('-');
     }
-    stdout.write("+---------------------+---------+---------+\n");
+    stdout.write("+---------------------+---------+---------+-------+\n");
     printMemoryCoreCaches(caches);
     printMemoryPluginCaches(caches);
     printDiskCaches(caches);
@@ -108,7 +112,7 @@ public class CacheDisplay {
   private void printCache(CacheInfo cache) throws IOException {
     stdout.write(
         String.format(
-            "%1s %-" + nw + "s|%6s %6s %7s| %7s |%4s %4s|\n",
+            "%1s %-" + nw + "s|%6s %6s %7s| %7s |%4s %4s|%7s|\n",
             CacheInfo.CacheType.DISK.equals(cache.type) ? "D" : "",
             cache.name,
             nullToEmpty(cache.entries.mem),
@@ -116,7 +120,8 @@ public class CacheDisplay {
             Strings.nullToEmpty(cache.entries.space),
             Strings.nullToEmpty(cache.averageGet),
             formatAsPercent(cache.hitRatio.mem),
-            formatAsPercent(cache.hitRatio.disk)));
+            formatAsPercent(cache.hitRatio.disk),
+            Strings.nullToEmpty(cache.warmUp)));
   }
 
   private static String nullToEmpty(Long l) {
@@ -25,6 +25,7 @@ public class CacheInfo {
   public EntriesInfo entries;
   public String averageGet;
   public HitRatioInfo hitRatio;
+  public String warmUp;
 
   public CacheInfo(Cache<?, ?> cache) {
     this(null, cache);
@@ -23,6 +23,7 @@ import com.google.common.cache.CacheLoader;
 import com.google.common.cache.Weigher;
 import com.google.gerrit.common.Nullable;
 import com.google.gerrit.extensions.annotations.PluginName;
+import com.google.gerrit.server.cache.serialize.CacheSerializer;
 import com.google.inject.Inject;
 import com.google.inject.Provider;
 import com.google.inject.TypeLiteral;
@@ -40,9 +41,11 @@ class CacheProvider<K, V> implements Provider<Cache<K, V>>, CacheBinding<K, V>,
   private Duration refreshAfterWrite;
   private Provider<CacheLoader<K, V>> loader;
   private Provider<Weigher<K, V>> weigher;
+  private CacheSerializer<K> warmUpKeySerializer;
 
   private String plugin;
   private MemoryCacheFactory memoryCacheFactory;
+  private CacheWarmUp cacheWarmUp;
   private boolean frozen;
 
   CacheProvider(CacheModule module, String name, TypeLiteral<K> keyType, TypeLiteral<V> valType) {
@@ -62,6 +65,11 @@ class CacheProvider<K, V> implements Provider<Cache<K, V>>, CacheBinding<K, V>,
     this.memoryCacheFactory = factory;
   }
 
+  @Inject(optional = true)
+  void setCacheWarmUp(CacheWarmUp cacheWarmUp) {
+    this.cacheWarmUp = cacheWarmUp;
+  }
+
   @Override
   public CacheBinding<K, V> maximumWeight(long weight) {
     checkNotFrozen();
@@ -104,6 +112,13 @@ class CacheProvider<K, V> implements Provider<Cache<K, V>>, CacheBinding<K, V>,
     return this;
   }
 
+  @Override
+  public CacheBinding<K, V> warmUp(CacheSerializer<K> keySerializer) {
+    checkNotFrozen();
+    warmUpKeySerializer = requireNonNull(keySerializer);
+    return this;
+  }
+
   @Override
   public CacheBinding<K, V> configKey(String name) {
     checkNotFrozen();
@@ -172,7 +187,23 @@ class CacheProvider<K, V> implements Provider<Cache<K, V>>, CacheBinding<K, V>,
   public Cache<K, V> get() {
     freeze();
     CacheLoader<K, V> ldr = loader();
-    return ldr != null ? memoryCacheFactory.build(this, ldr) : memoryCacheFactory.build(this);
+    return registerForWarmUp(
+        ldr != null ? memoryCacheFactory.build(this, ldr) : memoryCacheFactory.build(this), 0);
+  }
+
+  /**
+   * Registers {@code cache} with the {@link CacheWarmUp} if this cache opted in.
+   *
+   * @param cache the cache that was built for this binding.
+   * @param version version of the key format, recorded keys of other versions are discarded.
+   * @return {@code cache}.
+   */
+  protected Cache<K, V> registerForWarmUp(Cache<K, V> cache, int version) {
+    // Plugin caches are not warmed up since plugins may be loaded after the warm-up started.
+    if (warmUpKeySerializer != null && cacheWarmUp != null && Strings.isNullOrEmpty(plugin)) {
+      cacheWarmUp.register(name(), cache, warmUpKeySerializer, version);
+    }
+    return cache;
   }
 
   protected void checkNotFrozen() {
@@ -0,0 +1,369 @@
+// Copyright (C) 2023 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.cache;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.LoadingCache;
+import com.google.common.flogger.FluentLogger;
+import com.google.gerrit.common.Nullable;
+import com.google.gerrit.extensions.events.ConcurrentStart;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gerrit.lifecycle.LifecycleModule;
+import com.google.gerrit.metrics.Counter1;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.Description.Units;
+import com.google.gerrit.metrics.Field;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.metrics.Timer1;
+import com.google.gerrit.server.cache.serialize.CacheSerializer;
+import com.google.gerrit.server.config.ConfigUtil;
+import com.google.gerrit.server.config.GerritServerConfig;
+import com.google.gerrit.server.config.SitePaths;
+import com.google.gerrit.server.git.WorkQueue;
+import com.google.gerrit.server.logging.Metadata;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.eclipse.jgit.lib.Config;
+
+/**
+ * Warms up caches after a restart.
+ *
+ * <p>Caches opt in by {@link CacheBinding#warmUp(CacheSerializer)}. For these caches the keys that
+ * are held in memory are periodically recorded to a file in the cache directory of the site. When
+ * the server starts, the recorded keys are loaded again in the background on a throttled queue, so
+ * that the caches are filled with the entries that were in use before the restart instead of being
+ * refilled by user requests.
+ *
+ * <p>Disabled by default, see the {@code cacheWarmUp} section in the config documentation.
+ */
+@ConcurrentStart
+@Singleton
+public class CacheWarmUp implements LifecycleListener {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  private static final String SECTION = "cacheWarmUp";
+  private static final int FILE_MAGIC = 0x47435755; // "GCWU"
+  private static final String FILE_SUFFIX = ".warmup";
+
+  public static class Module extends LifecycleModule {
+    @Override
+    protected void configure() {
+      listener().to(CacheWarmUp.class);
+    }
+  }
+
+  @Singleton
+  static class Metrics {
+    private static final Field<String> F_NAME =
+        Field.ofString("cache_name", Metadata.Builder::cacheName)
+            .description("The name of the cache.")
+            .build();
+
+    final Counter1<String> loadedKeys;
+    final Counter1<String> failedKeys;
+    final Timer1<String> latency;
+    final AtomicLong pendingKeys = new AtomicLong();
+
+    @Inject
+    Metrics(MetricMaker metricMaker) {
+      loadedKeys =
+          metricMaker.newCounter(
+              "caches/warm_up/loaded_keys",
+              new Description("Number of recorded keys that were loaded into a cache on startup")
+                  .setRate()
+                  .setUnit("keys"),
+              F_NAME);
+      failedKeys =
+          metricMaker.newCounter(
+              "caches/warm_up/failed_keys",
+              new Description("Number of recorded keys that could not be loaded on startup")
+                  .setRate()
+                  .setUnit("keys"),
+              F_NAME);
+      latency =
+          metricMaker.newTimer(
+              "caches/warm_up/latency",
+              new Description("Time it took to warm up a cache on startup")
+                  .setCumulative()
+                  .setUnit(Units.MILLISECONDS),
+              F_NAME);
+      metricMaker.newCallbackMetric(
+          "caches/warm_up/pending_keys",
+          Long.class,
+          new Description("Number of recorded keys that still need to be loaded")
+              .setGauge()
+              .setUnit("keys"),
+          pendingKeys::get);
+    }
+  }
+
+  /** A cache that opted in to be warmed up. */
+  private static class Registration<K, V> {
+    final String name;
+    final Cache<K, V> cache;
+    final CacheSerializer<K> keySerializer;
+    final int version;
+    final AtomicLong total = new AtomicLong();
+    final AtomicLong processed = new AtomicLong();
+    volatile boolean started;
+    volatile long startNanos;
+
+    Registration(String name, Cache<K, V> cache, CacheSerializer<K> keySerializer, int version) {
+      this.name = name;
+      this.cache = cache;
+      this.keySerializer = keySerializer;
+      this.version = version;
+    }
+
+    boolean isDone() {
+      return started && processed.get() >= total.get();
+    }
+  }
+
+  private final Map<String, Registration<?, ?>> registrations = new ConcurrentHashMap<>();
+  private final WorkQueue workQueue;
+  private final Metrics metrics;
+  private final boolean enabled;
+  private final int threads;
+  private final int maxKeys;
+  private final long recordIntervalMillis;
+  @Nullable private final Path dir;
+
+  private ScheduledThreadPoolExecutor executor;
+  private ScheduledFuture<?> recorder;
+
+  @Inject
+  CacheWarmUp(
+      @GerritServerConfig Config cfg,
+      SitePaths site,
+      WorkQueue workQueue,
+      Metrics metrics) {
+    this.workQueue = workQueue;
+    this.metrics = metrics;
+    this.enabled = cfg.getBoolean(SECTION, "enabled", false);
+    this.threads = Math.max(1, cfg.getInt(SECTION, "threads", 2));
+    this.maxKeys = cfg.getInt(SECTION, "maxKeys", 10_000);
+    this.recordIntervalMillis =
+        ConfigUtil.getTimeUnit(
+            cfg, SECTION, null, "recordInterval", TimeUnit.MINUTES.toMillis(15), MILLISECONDS);
+    this.dir = site.resolve(cfg.getString("cache", null, "directory"));
+  }
+
+  <K, V> void register(
+      String name, Cache<K, V> cache, CacheSerializer<K> keySerializer, int version) {
+    registrations.put(name, new Registration<>(name, cache, keySerializer, version));
+  }
+
+  /**
+   * Returns the warm-up state of the cache for display, or {@code null} if the cache is not warmed
+   * up.
+   */
+  @Nullable
+  public String getState(String name) {
+    Registration<?, ?> r = registrations.get(name);
+    if (!enabled || dir == null || r == null) {
+      return null;
+    }
+    if (!r.started) {
+      return "pending";
+    }
+    long total = r.total.get();
+    if (r.isDone()) {
+      return "done";
+    }
+    return (100 * r.processed.get() / total) + "%";
+  }
+
+  @Override
+  public void start() {
+    if (!enabled || registrations.isEmpty()) {
+      return;
+    }
+    if (dir == null) {
+      logger.atWarning().log("Cache warm-up is enabled, but cache.directory is not set");
+      return;
+    }
+    try {
+      Files.createDirectories(dir);
+    } catch (IOException e) {
+      logger.atWarning().withCause(e).log("Cannot create cache warm-up directory %s", dir);
+      return;
+    }
+
+    executor = workQueue.createQueue(threads, "CacheWarmUp", Thread.MIN_PRIORITY, true);
+    for (Registration<?, ?> r : registrations.values()) {
+      executor.execute(() -> warmUp(r));
+    }
+    if (recordIntervalMillis > 0) {
+      recorder =
+          workQueue
+              .getDefaultQueue()
+              .scheduleAtFixedRate(
+                  this::recordAll, recordIntervalMillis, recordIntervalMillis, MILLISECONDS);
+    }
+  }
+
+  @Override
+  public void stop() {
+    if (executor == null) {
+      return;
+    }
+    if (recorder != null) {
+      recorder.cancel(false);
+    }
+    executor.shutdownNow();
+    recordAll();
+  }
+
+  private <K, V> void warmUp(Registration<K, V> r) {
+    List<K> keys = readKeys(r);
+    r.startNanos = System.nanoTime();
+    r.total.set(keys.size());
+    metrics.pendingKeys.addAndGet(keys.size());
+    r.started = true;
+    if (keys.isEmpty()) {
+      return;
+    }
+    logger.atInfo().log("Warming up cache %s with %d keys", r.name, keys.size());
+    for (K key : keys) {
+      executor.execute(() -> load(r, key));
+    }
+  }
+
+  private <K, V> void load(Registration<K, V> r, K key) {
+    try {
+      if (r.cache instanceof LoadingCache) {
+        ((LoadingCache<K, V>) r.cache).get(key);
+      } else {
+        // Without a loader the entry can only be promoted from the disk to the memory cache.
+        r.cache.getIfPresent(key);
+      }
+      metrics.loadedKeys.increment(r.name);
+    } catch (ExecutionException | RuntimeException e) {
+      metrics.failedKeys.increment(r.name);
+      logger.atFine().withCause(e).log("Cannot warm up key %s of cache %s", key, r.name);
+    } finally {
+      metrics.pendingKeys.decrementAndGet();
+      if (r.processed.incrementAndGet() == r.total.get()) {
+        long elapsed = System.nanoTime() - r.startNanos;
+        metrics.latency.record(r.name, elapsed, TimeUnit.NANOSECONDS);
+        logger.atInfo().log(
+            "Finished warming up cache %s in %d ms",
+            r.name, TimeUnit.NANOSECONDS.toMillis(elapsed));
+      }
+    }
+  }
+
+  private void recordAll() {
+    for (Registration<?, ?> r : registrations.values()) {
+      // Don't replace the recorded keys with a partially warmed up cache.
+      if (!r.isDone()) {
+        continue;
+      }
+      try {
+        writeKeys(r);
+      } catch (IOException | RuntimeException e) {
+        logger.atWarning().withCause(e).log("Cannot record keys of cache %s", r.name);
+      }
+    }
+  }
+
+  private Path file(Registration<?, ?> r) {
+    return dir.resolve(r.name + FILE_SUFFIX);
+  }
+
+  private <K, V> void writeKeys(Registration<K, V> r) throws IOException {
+    List<byte[]> keys = new ArrayList<>();
+    for (Object key : keysInMemory(r.cache)) {
+      if (keys.size() >= maxKeys) {
+        break;
+      }
+      @SuppressWarnings("unchecked")
+      K k = (K) key;
+      keys.add(r.keySerializer.serialize(k));
+    }
+
+    Path tmp = Files.createTempFile(dir, r.name, ".tmp");
+    try {
+      try (DataOutputStream out =
+          new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+        out.writeInt(FILE_MAGIC);
+        out.writeInt(r.version);
+        out.writeInt(keys.size());
+        for (byte[] key : keys) {
+          out.writeInt(key.length);
+          out.write(key);
+        }
+      }
+      Files.move(tmp, file(r), REPLACE_EXISTING, ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+  }
+
+  private <K, V> List<K> readKeys(Registration<K, V> r) {
+    List<K> keys = new ArrayList<>();
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(Files.newInputStream(file(r))))) {
+      if (in.readInt() != FILE_MAGIC || in.readInt() != r.version) {
+        logger.atInfo().log("Ignoring outdated recorded keys of cache %s", r.name);
+        return keys;
+      }
+      int count = Math.min(in.readInt(), maxKeys);
+      for (int i = 0; i < count; i++) {
+        byte[] key = new byte[in.readInt()];
+        in.readFully(key);
+        try {
+          keys.add(r.keySerializer.deserialize(key));
+        } catch (RuntimeException e) {
+          metrics.failedKeys.increment(r.name);
+        }
+      }
+    } catch (NoSuchFileException e) {
+      // Nothing was recorded yet.
+    } catch (IOException e) {
+      logger.atWarning().withCause(e).log("Cannot read recorded keys of cache %s", r.name);
+    }
+    return keys;
+  }
+
+  private static Iterable<?> keysInMemory(Cache<?, ?> cache) {
+    if (cache instanceof PersistentCache) {
+      return ((PersistentCache) cache).memoryKeys();
+    }
+    return cache.asMap().keySet();
+  }
+}
@@ -14,10 +14,21 @@
 
 package com.google.gerrit.server.cache;
 
+import com.google.common.collect.ImmutableList;
+
 public interface PersistentCache {
 
   DiskStats diskStats();
 
+  /**
+   * Returns the keys of the entries that are currently held in memory.
+   *
+   * <p>Used to record the hot keys of the cache, so that they can be loaded again after a restart.
+   */
+  default Iterable<?> memoryKeys() {
+    return ImmutableList.of();
+  }
+
   class DiskStats {
     private final long size;
     private final long space;
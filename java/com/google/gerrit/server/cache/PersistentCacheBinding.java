@@ -36,6 +36,9 @@ public interface PersistentCacheBinding<K, V> extends CacheBinding<K, V> {
   @Override
   PersistentCacheBinding<K, V> weigher(Class<? extends Weigher<K, V>> clazz);
 
+  @Override
+  PersistentCacheBinding<K, V> warmUp(CacheSerializer<K> keySerializer);
+
   PersistentCacheBinding<K, V> version(int version);
 
   /**
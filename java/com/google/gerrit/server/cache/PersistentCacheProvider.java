@@ -74,6 +74,11 @@ class PersistentCacheProvider<K, V> extends CacheProvider<K, V>
     return (PersistentCacheBinding<K, V>) super.weigher(clazz);
   }
 
+  @Override
+  public PersistentCacheBinding<K, V> warmUp(CacheSerializer<K> keySerializer) {
+    return (PersistentCacheBinding<K, V>) super.warmUp(keySerializer);
+  }
+
   @Override
   public PersistentCacheBinding<K, V> version(int version) {
     this.version = version;
@@ -129,9 +134,9 @@ class PersistentCacheProvider<K, V> extends CacheProvider<K, V>
     checkSerializer(valueType(), valueSerializer, "value");
     freeze();
     CacheLoader<K, V> ldr = loader();
-    return ldr != null
-        ? persistentCacheFactory.build(this, ldr)
-        : persistentCacheFactory.build(this);
+    return registerForWarmUp(
+        ldr != null ? persistentCacheFactory.build(this, ldr) : persistentCacheFactory.build(this),
+        version);
   }
 
   private static <T> void checkSerializer(
@@ -210,6 +210,11 @@ public class H2CacheImpl<K, V> extends AbstractLoadingCache<K, V> implements Per
     return mem.stats();
   }
 
+  @Override
+  public Iterable<K> memoryKeys() {
+    return mem.asMap().keySet();
+  }
+
   @Override
   public DiskStats diskStats() {
     return store.diskStats();
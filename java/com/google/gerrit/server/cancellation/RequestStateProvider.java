@@ -55,6 +55,12 @@ public interface RequestStateProvider {
      *
      * <p>Server-side deadlines are usually configurable, but may also be hard-coded.
      */
-    SERVER_DEADLINE_EXCEEDED;
+    SERVER_DEADLINE_EXCEEDED,
+
+    /**
+     * The server is overloaded and rejected the request or cancelled it to make room for other
+     * requests.
+     */
+    SERVER_OVERLOADED;
   }
 }
@@ -0,0 +1,366 @@
+// Copyright (C) 2023 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.change;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.util.Comparator.comparing;
+import static java.util.stream.Collectors.toList;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.flogger.FluentLogger;
+import com.google.common.hash.Hashing;
+import com.google.gerrit.common.Nullable;
+import com.google.gerrit.metrics.Counter0;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.server.config.GerritServerConfig;
+import com.google.gerrit.server.config.SitePaths;
+import com.google.gerrit.server.util.time.TimeUtil;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Stream;
+import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.lib.ObjectId;
+
+/**
+ * Disk-backed cache of generated archives.
+ *
+ * <p>Archives are stored in the {@code archives} folder of the cache directory, named by a hash of
+ * their {@link Key}. Since the key identifies the archived objects by their ID, the same archive is
+ * shared between all projects that contain them. Concurrent requests for the same archive are
+ * coalesced, so that the archive is only generated once. Once the total size of the archives
+ * exceeds {@code download.archiveCacheSize}, the least recently used archives are deleted.
+ *
+ * <p>Callers must have checked that the user can read the archived tree.
+ */
+@Singleton
+public class ArchiveCache {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  private static final String TMP_SUFFIX = ".tmp";
+
+  /** Writes an archive. */
+  @FunctionalInterface
+  public interface Generator {
+    void writeTo(OutputStream out) throws IOException;
+  }
+
+  /**
+   * Identifies the content of an archive.
+   *
+   * <p>The tree-ish is the ID of the tree or commit that is archived. Archives of a commit differ
+   * from archives of its tree, since the entries get the commit time as their modification time.
+   */
+  @AutoValue
+  public abstract static class Key {
+    public static Key create(
+        ObjectId treeIsh,
+        ArchiveFormatInternal format,
+        @Nullable String prefix,
+        List<String> paths,
+        Map<String, Object> formatOptions) {
+      return new AutoValue_ArchiveCache_Key(
+          treeIsh.copy(),
+          format,
+          prefix,
+          ImmutableList.copyOf(paths),
+          ImmutableSortedMap.copyOf(formatOptions));
+    }
+
+    public static Key create(ObjectId treeIsh, ArchiveFormatInternal format) {
+      return create(treeIsh, format, null, ImmutableList.of(), ImmutableSortedMap.of());
+    }
+
+    public abstract ObjectId treeIsh();
+
+    public abstract ArchiveFormatInternal format();
+
+    @Nullable
+    public abstract String prefix();
+
+    public abstract ImmutableList<String> paths();
+
+    public abstract ImmutableSortedMap<String, Object> formatOptions();
+
+    String fileName() {
+      StringBuilder b = new StringBuilder();
+      b.append(treeIsh().name()).append('\n').append(format().name()).append('\n');
+      b.append(prefix() != null ? prefix() : "").append('\n');
+      paths().forEach(p -> b.append(p).append('\0'));
+      b.append('\n');
+      formatOptions().forEach((k, v) -> b.append(k).append('=').append(v).append('\0'));
+      return Hashing.sha256().hashString(b, UTF_8) + format().getDefaultSuffix();
+    }
+  }
+
+  @Nullable private final Path dir;
+  private final long maxSize;
+  private final Counter0 hits;
+  private final Counter0 misses;
+  private final ConcurrentMap<String, CompletableFuture<Boolean>> pending =
+      new ConcurrentHashMap<>();
+
+  /** Sizes of the cached archives, by file name, in access order. Guarded by {@code this}. */
+  private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+  private long totalSize;
+
+  @Inject
+  ArchiveCache(@GerritServerConfig Config cfg, SitePaths site, MetricMaker metricMaker) {
+    maxSize = cfg.getLong("download", null, "archiveCacheSize", 0);
+    Path cacheDir = site.resolve(cfg.getString("cache", null, "directory"));
+    dir = maxSize > 0 && cacheDir != null ? init(cacheDir.resolve("archives")) : null;
+
+    hits =
+        metricMaker.newCounter(
+            "archive/cache/hits",
+            new Description("Archive requests that were served from the archive cache")
+                .setRate()
+                .setUnit("requests"));
+    misses =
+        metricMaker.newCounter(
+            "archive/cache/misses",
+            new Description("Archive requests for which the archive was generated")
+                .setRate()
+                .setUnit("requests"));
+    metricMaker.newCallbackMetric(
+        "archive/cache/disk_usage",
+        Long.class,
+        new Description("Total size of the cached archives")
+            .setGauge()
+            .setUnit(Description.Units.BYTES),
+        this::getTotalSize);
+  }
+
+  @Nullable
+  private Path init(Path dir) {
+    try {
+      Files.createDirectories(dir);
+      List<Path> files;
+      try (Stream<Path> s = Files.list(dir)) {
+        files = s.sorted(comparing(ArchiveCache::lastModified)).collect(toList());
+      }
+      for (Path file : files) {
+        String name = file.getFileName().toString();
+        if (name.endsWith(TMP_SUFFIX)) {
+          Files.deleteIfExists(file);
+        } else {
+          long size = Files.size(file);
+          entries.put(name, size);
+          totalSize += size;
+        }
+      }
+      return dir;
+    } catch (IOException e) {
+      logger.atWarning().withCause(e).log("Cannot initialize archive cache in %s", dir);
+      return null;
+    }
+  }
+
+  private static FileTime lastModified(Path file) {
+    try {
+      return Files.getLastModifiedTime(file);
+    } catch (IOException e) {
+      return FileTime.fromMillis(0);
+    }
+  }
+
+  private synchronized long getTotalSize() {
+    return totalSize;
+  }
+
+  /**
+   * Writes an archive to the output stream.
+   *
+   * <p>If the archive is cached, the cached file is transferred to the output stream. Otherwise the
+   * archive is generated into the cache first. If the cache is disabled, the archive is generated
+   * directly into the output stream.
+   *
+   * @param key key of the archive
+   * @param generator generator of the archive, must write the archive identified by {@code key}
+   * @param out output stream to write to
+   */
+  public void writeTo(Key key, Generator generator, OutputStream out) throws IOException {
+    if (dir == null) {
+      generator.writeTo(out);
+      return;
+    }
+
+    String name = key.fileName();
+    Path file = dir.resolve(name);
+    boolean generated = false;
+    if (!isCached(name)) {
+      CompletableFuture<Boolean> future = new CompletableFuture<>();
+      CompletableFuture<Boolean> existing = pending.putIfAbsent(name, future);
+      if (existing == null) {
+        misses.increment();
+        Path tmp = generate(name, generator, future);
+        if (tmp != null) {
+          // Too large to be cached, nobody else reads this file.
+          try (FileChannel c = FileChannel.open(tmp, StandardOpenOption.READ)) {
+            transfer(c, out);
+          } finally {
+            Files.deleteIfExists(tmp);
+          }
+          return;
+        }
+        generated = true;
+      } else if (!await(existing)) {
+        // Too large to be cached.
+        misses.increment();
+        generator.writeTo(out);
+        return;
+      }
+    }
+
+    FileChannel channel;
+    try {
+      channel = FileChannel.open(file, StandardOpenOption.READ);
+    } catch (NoSuchFileException e) {
+      // Evicted in the meantime.
+      if (!generated) {
+        misses.increment();
+      }
+      generator.writeTo(out);
+      return;
+    }
+    if (!generated) {
+      hits.increment();
+      try {
+        Files.setLastModifiedTime(file, FileTime.from(TimeUtil.now()));
+      } catch (IOException e) {
+        // Only needed to restore the access order after a restart.
+      }
+    }
+    try (FileChannel c = channel) {
+      transfer(c, out);
+    }
+  }
+
+  private static void transfer(FileChannel c, OutputStream out) throws IOException {
+    // Let the channel transfer the file to the target without copying it through the heap.
+    WritableByteChannel target = Channels.newChannel(out);
+    long size = c.size();
+    for (long pos = 0; pos < size; ) {
+      pos += c.transferTo(pos, size - pos, target);
+    }
+    out.flush();
+  }
+
+  /**
+   * Generates an archive into the cache.
+   *
+   * <p>Completes {@code future} with whether the archive was cached.
+   *
+   * @return {@code null} if the archive was cached, otherwise the temporary file that contains the
+   *     archive, which must be deleted by the caller.
+   */
+  @Nullable
+  private Path generate(String name, Generator generator, CompletableFuture<Boolean> future)
+      throws IOException {
+    Path tmp = null;
+    try {
+      tmp = Files.createTempFile(dir, name, TMP_SUFFIX);
+      try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmp))) {
+        generator.writeTo(out);
+      }
+      long size = Files.size(tmp);
+      if (size > maxSize) {
+        // Doesn't fit into the cache at all.
+        Path result = tmp;
+        tmp = null;
+        future.complete(false);
+        return result;
+      }
+      Files.move(tmp, dir.resolve(name), ATOMIC_MOVE, REPLACE_EXISTING);
+      tmp = null;
+      add(name, size);
+      future.complete(true);
+      return null;
+    } catch (IOException | RuntimeException e) {
+      future.completeExceptionally(e);
+      throw e;
+    } finally {
+      pending.remove(name);
+      if (tmp != null) {
+        Files.deleteIfExists(tmp);
+      }
+    }
+  }
+
+  private synchronized boolean isCached(String name) {
+    // Updates the access order.
+    return entries.get(name) != null;
+  }
+
+  private synchronized void add(String name, long size) {
+    Long old = entries.put(name, size);
+    totalSize += size - (old != null ? old : 0);
+    Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+    while (totalSize > maxSize && it.hasNext()) {
+      Map.Entry<String, Long> e = it.next();
+      if (e.getKey().equals(name)) {
+        continue;
+      }
+      try {
+        // Requests that already opened the file can still read it.
+        Files.deleteIfExists(dir.resolve(e.getKey()));
+      } catch (IOException err) {
+        logger.atWarning().withCause(err).log("Cannot delete cached archive %s", e.getKey());
+        continue;
+      }
+      totalSize -= e.getValue();
+      it.remove();
+    }
+  }
+
+  private static boolean await(CompletableFuture<Boolean> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted while waiting for archive");
+    } catch (ExecutionException e) {
+      Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new IOException(e.getCause());
+    }
+  }
+}
@@ -15,6 +15,7 @@
 package com.google.gerrit.server.change;
 
 import com.google.common.flogger.FluentLogger;
+import com.google.gerrit.extensions.events.ConcurrentStart;
 import com.google.gerrit.extensions.events.LifecycleListener;
 import com.google.gerrit.extensions.restapi.RestApiException;
 import com.google.gerrit.lifecycle.LifecycleModule;
@@ -37,6 +38,7 @@ public class ChangeCleanupRunner implements Runnable {
     }
   }
 
+  @ConcurrentStart
   static class Lifecycle implements LifecycleListener {
     private final WorkQueue queue;
     private final ChangeCleanupRunner runner;
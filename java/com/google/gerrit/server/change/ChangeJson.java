@@ -338,6 +338,11 @@ public class ChangeJson {
         }
         res.add(infos);
       }
+      if (has(STAR) && userProvider.get().isIdentifiedUser()) {
+        // Populate the 'starred' field of all sections together, changes returned by several
+        // sections share their ChangeInfo.
+        populateStarField(res.stream().flatMap(List::stream).collect(toList()));
+      }
       accountLoader.fill();
       return res;
     }
@@ -549,9 +554,6 @@ public class ChangeJson {
               "Omitting corrupt change %s from results", cd.getId());
         }
       }
-      if (has(STAR) && userProvider.get().isIdentifiedUser()) {
-        populateStarField(changeInfos);
-      }
       return changeInfos;
     }
   }
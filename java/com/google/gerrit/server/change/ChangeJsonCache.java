@@ -0,0 +1,209 @@
+// Copyright (C) 2023 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.change;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.cache.Cache;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import com.google.gerrit.common.Nullable;
+import com.google.gerrit.extensions.client.ListChangesOption;
+import com.google.gerrit.extensions.common.ChangeInfo;
+import com.google.gerrit.json.OutputFormat;
+import com.google.gerrit.metrics.Counter0;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.Description.Units;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.server.cache.CacheModule;
+import com.google.gerrit.server.config.GerritServerConfig;
+import com.google.gson.Gson;
+import com.google.inject.Inject;
+import com.google.inject.Module;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import java.util.Set;
+import org.eclipse.jgit.lib.Config;
+
+/**
+ * Caches the {@link ChangeInfo} that is returned for a change, in serialized form.
+ *
+ * <p>Entries are keyed by an ETag of the change and the requested options. The ETag covers the
+ * state of the change, of the accounts on it, of the project configs and of plugins. Unless the
+ * options request data that depends on the calling account, it's the {@link
+ * ChangeResource#getVisibilityClassETag() visibility class ETag}, so that an entry is shared by all
+ * users with the same groups. Otherwise the {@link ChangeResource#getETag() ETag} of the change
+ * includes the calling account, and an entry is only reused for the same user, e.g. for all
+ * responses of {@code GetDetail}, which requests {@link ListChangesOption#DETAILED_LABELS}. Shared
+ * entries don't include the starred flag of the change, callers must populate it.
+ *
+ * <p>The cache is disabled unless {@code cache.change_json.memoryLimit} is set.
+ */
+@Singleton
+public class ChangeJsonCache {
+  static final String CACHE_NAME = "change_json";
+
+  private static final Gson GSON = OutputFormat.JSON_COMPACT.newGson();
+
+  /**
+   * Options that request data that depends on the calling account: its stars, permission checks
+   * that may depend on groups that are not known or on the account itself (e.g. removable
+   * reviewers), and fetch URLs that may include the user name.
+   */
+  private static final ImmutableSet<ListChangesOption> PER_USER_OPTIONS =
+      Sets.immutableEnumSet(
+          ListChangesOption.STAR,
+          ListChangesOption.DETAILED_LABELS,
+          ListChangesOption.SUBMITTABLE,
+          ListChangesOption.CURRENT_ACTIONS,
+          ListChangesOption.CHANGE_ACTIONS,
+          ListChangesOption.CURRENT_REVISION,
+          ListChangesOption.ALL_REVISIONS,
+          ListChangesOption.DOWNLOAD_COMMANDS);
+
+  /**
+   * Options whose responses are never cached: consistency checks must look at the current state,
+   * and the reviewed flag is not covered by the ETag.
+   */
+  private static final ImmutableSet<ListChangesOption> UNCACHED_OPTIONS =
+      Sets.immutableEnumSet(ListChangesOption.CHECK, ListChangesOption.REVIEWED);
+
+  public static Module module() {
+    return new CacheModule() {
+      @Override
+      protected void configure() {
+        cache(CACHE_NAME, Key.class, String.class).maximumWeight(0).weigher(JsonWeigher.class);
+      }
+    };
+  }
+
+  /** Returns whether responses for the given options may be cached. */
+  public static boolean isCacheable(Set<ListChangesOption> options) {
+    return options.stream().noneMatch(UNCACHED_OPTIONS::contains);
+  }
+
+  /**
+   * Returns whether the response for the given options depends on the calling account, and must be
+   * cached per user.
+   */
+  public static boolean isPerUser(Set<ListChangesOption> options) {
+    return options.stream().anyMatch(PER_USER_OPTIONS::contains);
+  }
+
+  @AutoValue
+  public abstract static class Key {
+    /**
+     * Creates a key.
+     *
+     * @param eTag the ETag of the change, or its visibility class ETag if {@code perUser} is false
+     * @param perUser whether the entry is only reused for the same user
+     * @param options the requested options
+     */
+    public static Key create(String eTag, boolean perUser, Set<ListChangesOption> options) {
+      return new AutoValue_ChangeJsonCache_Key(eTag, perUser, Sets.immutableEnumSet(options));
+    }
+
+    abstract String eTag();
+
+    public abstract boolean perUser();
+
+    abstract ImmutableSet<ListChangesOption> options();
+  }
+
+  static class JsonWeigher implements Weigher<Key, String> {
+    @Override
+    public int weigh(Key key, String json) {
+      return key.eTag().length() + json.length();
+    }
+  }
+
+  private final Cache<Key, String> cache;
+  private final boolean enabled;
+  private final Counter0 hits;
+  private final Counter0 misses;
+  private final Counter0 bytesSaved;
+
+  @Inject
+  ChangeJsonCache(
+      @Named(CACHE_NAME) Cache<Key, String> cache,
+      @GerritServerConfig Config cfg,
+      MetricMaker metricMaker) {
+    this.cache = cache;
+    this.enabled = cfg.getLong("cache", CACHE_NAME, "memoryLimit", 0) > 0;
+    this.hits =
+        metricMaker.newCounter(
+            "change/json_cache/hits",
+            new Description("Change requests that were served from the change JSON cache")
+                .setRate()
+                .setUnit("requests"));
+    this.misses =
+        metricMaker.newCounter(
+            "change/json_cache/misses",
+            new Description("Change requests for which the change JSON was computed")
+                .setRate()
+                .setUnit("requests"));
+    this.bytesSaved =
+        metricMaker.newCounter(
+            "change/json_cache/bytes_saved",
+            new Description("Size of the change JSON that was served from the cache")
+                .setRate()
+                .setUnit(Units.BYTES));
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /** Returns a new copy of the cached change, or {@code null} if it is not cached. */
+  @Nullable
+  public ChangeInfo get(Key key) {
+    String json = cache.getIfPresent(key);
+    if (json == null) {
+      misses.increment();
+      return null;
+    }
+    hits.increment();
+    bytesSaved.incrementBy(json.length());
+    ChangeInfo info = GSON.fromJson(json, ChangeInfo.class);
+    if (info.revisions != null) {
+      // Not serialized, but read by callers of the Java API.
+      info.revisions.forEach((rev, r) -> r.isCurrent = rev.equals(info.currentRevision));
+    }
+    return info;
+  }
+
+  /**
+   * Caches a change.
+   *
+   * <p>Changes with plugin defined attributes are not cached since the attributes can't be
+   * deserialized. The starred flag is not cached for entries that are shared by several users.
+   */
+  public void put(Key key, ChangeInfo info) {
+    if (info.plugins != null && !info.plugins.isEmpty()) {
+      return;
+    }
+    if (key.perUser()) {
+      cache.put(key, GSON.toJson(info));
+      return;
+    }
+    Boolean starred = info.starred;
+    info.starred = null;
+    try {
+      cache.put(key, GSON.toJson(info));
+    } finally {
+      info.starred = starred;
+    }
+  }
+}
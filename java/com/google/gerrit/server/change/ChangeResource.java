@@ -173,7 +173,12 @@ public class ChangeResource implements RestResource, HasETag {
         h.putBytes(uuid.get().getBytes(UTF_8));
       }
     }
+    prepareStateETag(h);
+  }
 
+  // Includes the state of the change, of the accounts on it, of the project configs and of
+  // plugins, but nothing about the calling user.
+  private void prepareStateETag(Hasher h) {
     byte[] buf = new byte[20];
     Set<Account.Id> accounts = new HashSet<>();
     accounts.add(getChange().getOwner());
@@ -244,6 +249,26 @@ public class ChangeResource implements RestResource, HasETag {
     }
   }
 
+  /**
+   * Returns an ETag that is shared by all users with the same groups, who are either all owners of
+   * the change or all not. Unlike {@link #getETag()}, it doesn't cover the calling account and data
+   * that only applies to it, such as whether the change is starred.
+   */
+  public String getVisibilityClassETag() {
+    Hasher h = Hashing.murmur3_128().newHasher();
+    h.putInt(JSON_FORMAT_VERSION)
+        .putLong(getChange().getLastUpdatedOn().toEpochMilli())
+        .putBoolean(user.isIdentifiedUser())
+        .putBoolean(isUserOwner());
+    // Sort the groups, users with the same groups may have them in a different order.
+    user.getEffectiveGroups().getKnownGroups().stream()
+        .map(AccountGroup.UUID::get)
+        .sorted()
+        .forEach(g -> h.putString(g, UTF_8));
+    prepareStateETag(h);
+    return h.hash().toString();
+  }
+
   private void hashObjectId(Hasher h, @Nullable ObjectId id, byte[] buf) {
     MoreObjects.firstNonNull(id, ObjectId.zeroId()).copyRawTo(buf, 0);
     h.putBytes(buf);
@@ -24,6 +24,7 @@ import com.google.gerrit.extensions.restapi.ResourceConflictException;
 import com.google.gerrit.server.patch.DiffNotAvailableException;
 import com.google.gerrit.server.patch.DiffOperations;
 import com.google.gerrit.server.patch.DiffOptions;
+import com.google.gerrit.server.patch.DiffPrecomputer;
 import com.google.gerrit.server.patch.FilePathAdapter;
 import com.google.gerrit.server.patch.PatchListNotAvailableException;
 import com.google.gerrit.server.patch.filediff.FileDiffOutput;
@@ -36,10 +37,12 @@ import org.eclipse.jgit.lib.ObjectId;
 /** Implementation of {@link FileInfoJson} using {@link DiffOperations}. */
 public class FileInfoJsonImpl implements FileInfoJson {
   private final DiffOperations diffs;
+  private final DiffPrecomputer diffPrecomputer;
 
   @Inject
-  FileInfoJsonImpl(DiffOperations diffOperations) {
+  FileInfoJsonImpl(DiffOperations diffOperations, DiffPrecomputer diffPrecomputer) {
     this.diffs = diffOperations;
+    this.diffPrecomputer = diffPrecomputer;
   }
 
   @Nullable
@@ -47,6 +50,7 @@ public class FileInfoJsonImpl implements FileInfoJson {
   public Map<String, FileInfo> getFileInfoMap(
       Change change, ObjectId objectId, @Nullable PatchSet base)
       throws ResourceConflictException, PatchListNotAvailableException {
+    diffPrecomputer.recordFileListRequest(objectId);
     try {
       if (base == null) {
         // Setting parentNum=0 requests the default parent, which is the only parent for
@@ -17,7 +17,9 @@ package com.google.gerrit.server.config;
 import com.google.gerrit.server.config.ScheduleConfig.Schedule;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import java.time.Duration;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 import org.eclipse.jgit.lib.Config;
 import org.eclipse.jgit.lib.ConfigConstants;
 
@@ -25,11 +27,27 @@ import org.eclipse.jgit.lib.ConfigConstants;
 public class GcConfig {
   private final Optional<Schedule> schedule;
   private final boolean aggressive;
+  private final boolean adaptive;
+  private final int threads;
+  private final Duration cooldown;
+  private final long minScore;
 
   @Inject
   GcConfig(@GerritServerConfig Config cfg) {
     schedule = ScheduleConfig.createSchedule(cfg, ConfigConstants.CONFIG_GC_SECTION);
     aggressive = cfg.getBoolean(ConfigConstants.CONFIG_GC_SECTION, "aggressive", false);
+    adaptive = cfg.getBoolean(ConfigConstants.CONFIG_GC_SECTION, "adaptive", false);
+    threads = Math.max(1, cfg.getInt(ConfigConstants.CONFIG_GC_SECTION, "threads", 1));
+    cooldown =
+        Duration.ofSeconds(
+            ConfigUtil.getTimeUnit(
+                cfg,
+                ConfigConstants.CONFIG_GC_SECTION,
+                null,
+                "cooldown",
+                TimeUnit.HOURS.toSeconds(12),
+                TimeUnit.SECONDS));
+    minScore = cfg.getLong(ConfigConstants.CONFIG_GC_SECTION, "minScore", 1000);
   }
 
   public Optional<Schedule> getSchedule() {
@@ -39,4 +57,24 @@ public class GcConfig {
   public boolean isAggressive() {
     return aggressive;
   }
+
+  /** Whether scheduled runs only collect garbage of the repositories that benefit the most. */
+  public boolean isAdaptive() {
+    return adaptive;
+  }
+
+  /** Number of repositories that are garbage collected in parallel by adaptive runs. */
+  public int getThreads() {
+    return threads;
+  }
+
+  /** Minimum time between two garbage collections of a repository by adaptive runs. */
+  public Duration getCooldown() {
+    return cooldown;
+  }
+
+  /** Minimum score of a repository to be garbage collected by adaptive runs. */
+  public long getMinScore() {
+    return minScore;
+  }
 }
@@ -199,6 +199,30 @@ public class EventBroker implements EventDispatcher {
     return permissionBackend.user(user).ref(branchName).test(RefPermission.READ);
   }
 
+  /**
+   * Checks whether an event that was already fired may be shown to a user.
+   *
+   * <p>This is meant for listeners that replay past events, e.g. to a client that reconnected. The
+   * visibility of change events is checked against the change itself, like it is when the event is
+   * fired for a change.
+   */
+  public boolean isEventVisibleTo(Event event, CurrentUser user) throws PermissionBackendException {
+    if (event instanceof ChangeEvent) {
+      ChangeEvent changeEvent = (ChangeEvent) event;
+      if (changeEvent.change != null) {
+        Change.Id cid = Change.id(changeEvent.change.get().number);
+        try {
+          return isVisibleTo(
+              notesFactory.createChecked(changeEvent.getProjectNameKey(), cid).getChange(), user);
+        } catch (NoSuchChangeException e) {
+          logger.atFine().log(
+              "Change %s cannot be found, falling back on ref visibility check", cid.get());
+        }
+      }
+    }
+    return isVisibleTo(event, user);
+  }
+
   protected boolean isVisibleTo(Event event, CurrentUser user) throws PermissionBackendException {
     if (event instanceof RefEvent) {
       RefEvent refEvent = (RefEvent) event;
@@ -20,6 +20,7 @@ import com.google.gerrit.extensions.common.AccountInfo;
 import com.google.gerrit.extensions.events.GitBatchRefUpdateListener;
 import com.google.gerrit.extensions.events.GitReferenceUpdatedListener;
 import com.google.gerrit.server.account.AccountState;
+import com.google.gerrit.server.git.RefSnapshotCache;
 import com.google.gerrit.server.plugincontext.PluginSetContext;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
@@ -125,6 +126,7 @@ public class GitReferenceUpdated {
   }
 
   public void fire(Project.NameKey project, BatchRefUpdate batchRefUpdate, AccountState updater) {
+    RefSnapshotCache.invalidate();
     if (batchRefUpdateListeners.isEmpty() && refUpdatedListeners.isEmpty()) {
       return;
     }
@@ -140,6 +142,7 @@ public class GitReferenceUpdated {
   }
 
   private void fire(Project.NameKey project, UpdatedRef updatedRef, AccountInfo updater) {
+    RefSnapshotCache.invalidate();
     fireBatchRefUpdateEvent(project, Set.of(updatedRef), updater);
     fireRefUpdatedEvent(project, updatedRef, updater);
   }
@@ -17,6 +17,7 @@ package com.google.gerrit.server.git;
 import com.google.auto.value.AutoValue;
 import com.google.common.cache.Cache;
 import com.google.common.cache.Weigher;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.flogger.FluentLogger;
 import com.google.gerrit.common.Nullable;
 import com.google.gerrit.entities.BranchNameKey;
@@ -73,17 +74,20 @@ public class ChangesByProjectCacheImpl implements ChangesByProjectCache {
   private final ChangeData.Factory cdFactory;
   private final UseIndex useIndex;
   private final Provider<InternalChangeQuery> queryProvider;
+  private final RefSnapshotCache refSnapshotCache;
 
   @Inject
   ChangesByProjectCacheImpl(
       @Named(CACHE_NAME) Cache<Project.NameKey, CachedProjectChanges> cache,
       ChangeData.Factory cdFactory,
       UseIndex useIndex,
-      Provider<InternalChangeQuery> queryProvider) {
+      Provider<InternalChangeQuery> queryProvider,
+      RefSnapshotCache refSnapshotCache) {
     this.cache = cache;
     this.cdFactory = cdFactory;
     this.useIndex = useIndex;
     this.queryProvider = queryProvider;
+    this.refSnapshotCache = refSnapshotCache;
   }
 
   /** {@inheritDoc} */
@@ -93,8 +97,7 @@ public class ChangesByProjectCacheImpl implements ChangesByProjectCache {
     CachedProjectChanges projectChanges = cache.getIfPresent(project);
     if (projectChanges != null) {
       return projectChanges
-          .getUpdatedChangeDatas(
-              project, repo, cdFactory, ChangeNotes.Factory.scanChangeIds(repo), "Updating")
+          .getUpdatedChangeDatas(project, repo, cdFactory, scanChangeIds(repo), "Updating")
           .stream();
     }
     if (UseIndex.TRUE.equals(useIndex)) {
@@ -116,10 +119,18 @@ public class ChangesByProjectCacheImpl implements ChangesByProjectCache {
         project,
         repo,
         cdFactory,
-        ChangeNotes.Factory.scanChangeIds(repo),
+        scanChangeIds(repo),
         ours == projectChanges ? "Scanning" : "Updating");
   }
 
+  private ImmutableMap<Change.Id, ObjectId> scanChangeIds(Repository repo) throws IOException {
+    if (refSnapshotCache.isShared()) {
+      // Other components serving the request read all refs of the repository as well.
+      return ChangeNotes.Factory.scanChangeIds(refSnapshotCache.get(repo));
+    }
+    return ChangeNotes.Factory.scanChangeIds(repo);
+  }
+
   private Collection<ChangeData> queryChangeDatasAndLoad(Project.NameKey project) {
     Collection<ChangeData> cds = queryChangeDatas(project);
     cache.put(project, new CachedProjectChanges(cds));
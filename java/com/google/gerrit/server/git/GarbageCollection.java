@@ -85,12 +85,7 @@ public class GarbageCollection {
       try (Repository repo = repoManager.openRepository(p)) {
         logGcConfiguration(p, repo, aggressive);
         print(writer, "collecting garbage for \"" + p + "\":\n");
-        GarbageCollectCommand gc =
-            Git.wrap(
-                    repo instanceof DelegateRepository
-                        ? ((DelegateRepository) repo).delegate()
-                        : repo)
-                .gc();
+        GarbageCollectCommand gc = gc(repo);
         gc.setAggressive(aggressive);
         logGcInfo(p, "before:", gc.getStatistics());
         gc.setProgressMonitor(
@@ -112,6 +107,12 @@ public class GarbageCollection {
     return result;
   }
 
+  static GarbageCollectCommand gc(Repository repo) {
+    return Git.wrap(
+            repo instanceof DelegateRepository ? ((DelegateRepository) repo).delegate() : repo)
+        .gc();
+  }
+
   private void fire(Project.NameKey p, Properties statistics) {
     if (!listeners.iterator().hasNext()) {
       return;
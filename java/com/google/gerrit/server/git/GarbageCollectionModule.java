@@ -14,6 +14,8 @@
 
 package com.google.gerrit.server.git;
 
+import com.google.gerrit.extensions.events.GarbageCollectorListener;
+import com.google.gerrit.extensions.registration.DynamicSet;
 import com.google.gerrit.lifecycle.LifecycleModule;
 
 public class GarbageCollectionModule extends LifecycleModule {
@@ -26,5 +28,6 @@ public class GarbageCollectionModule extends LifecycleModule {
     bind(GarbageCollectionQueue.class);
     factory(GarbageCollection.Factory.class);
     listener().to(GarbageCollectionRunner.Lifecycle.class);
+    DynamicSet.bind(binder(), GarbageCollectorListener.class).to(GarbageCollectionScheduler.class);
   }
 }
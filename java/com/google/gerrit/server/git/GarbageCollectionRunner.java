@@ -50,16 +50,27 @@ public class GarbageCollectionRunner implements Runnable {
 
   private final GarbageCollection.Factory garbageCollectionFactory;
   private final ProjectCache projectCache;
+  private final GcConfig gcConfig;
+  private final GarbageCollectionScheduler scheduler;
 
   @Inject
   GarbageCollectionRunner(
-      GarbageCollection.Factory garbageCollectionFactory, ProjectCache projectCache) {
+      GarbageCollection.Factory garbageCollectionFactory,
+      ProjectCache projectCache,
+      GcConfig gcConfig,
+      GarbageCollectionScheduler scheduler) {
     this.garbageCollectionFactory = garbageCollectionFactory;
     this.projectCache = projectCache;
+    this.gcConfig = gcConfig;
+    this.scheduler = scheduler;
   }
 
   @Override
   public void run() {
+    if (gcConfig.isAdaptive()) {
+      scheduler.run();
+      return;
+    }
     logger.atInfo().log("Triggering gc on all repositories");
     garbageCollectionFactory.create().run(Lists.newArrayList(projectCache.all()));
   }
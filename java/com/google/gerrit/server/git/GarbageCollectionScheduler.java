@@ -0,0 +1,279 @@
+// Copyright (C) 2023 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.git;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.flogger.FluentLogger;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.extensions.events.GarbageCollectorListener;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.server.config.GcConfig;
+import com.google.gerrit.server.config.SitePaths;
+import com.google.gerrit.server.project.ProjectCache;
+import com.google.gerrit.server.util.time.TimeUtil;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.ToLongFunction;
+import org.eclipse.jgit.errors.ConfigInvalidException;
+import org.eclipse.jgit.errors.RepositoryNotFoundException;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.storage.file.FileBasedConfig;
+import org.eclipse.jgit.util.FS;
+
+/**
+ * Collects garbage of the repositories that benefit the most from it.
+ *
+ * <p>Each run samples the {@link RepositoryGcStatistics} of all repositories and collects garbage
+ * of the repositories whose {@link RepositoryGcStatistics#score() score} reaches {@link
+ * GcConfig#getMinScore()}, highest score first, skipping repositories that were garbage collected
+ * within {@link GcConfig#getCooldown()}. Up to {@link GcConfig#getThreads()} repositories are
+ * garbage collected in parallel.
+ *
+ * <p>The time of the last garbage collection of each repository is stored in {@code
+ * $site_path/data/gc_status.config}, so that a restart of the server doesn't reset the cooldown.
+ */
+@Singleton
+public class GarbageCollectionScheduler implements GarbageCollectorListener {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  private static final String STATUS_FILE_NAME = "gc_status.config";
+  private static final String PROJECT = "project";
+  private static final String KEY_LAST_GC = "lastGc";
+
+  private final GitRepositoryManager repoManager;
+  private final ProjectCache projectCache;
+  private final GarbageCollection.Factory garbageCollectionFactory;
+  private final GcConfig gcConfig;
+  private final WorkQueue workQueue;
+  private final ConcurrentMap<Project.NameKey, RepositoryGcStatistics> statistics =
+      new ConcurrentHashMap<>();
+  private final ConcurrentMap<Project.NameKey, Instant> lastGc = new ConcurrentHashMap<>();
+  private final FileBasedConfig lastGcConfig;
+
+  private ScheduledExecutorService executor;
+
+  @Inject
+  GarbageCollectionScheduler(
+      GitRepositoryManager repoManager,
+      ProjectCache projectCache,
+      GarbageCollection.Factory garbageCollectionFactory,
+      GcConfig gcConfig,
+      WorkQueue workQueue,
+      SitePaths sitePaths,
+      MetricMaker metricMaker) {
+    this.repoManager = repoManager;
+    this.projectCache = projectCache;
+    this.garbageCollectionFactory = garbageCollectionFactory;
+    this.gcConfig = gcConfig;
+    this.workQueue = workQueue;
+    this.lastGcConfig =
+        new FileBasedConfig(sitePaths.data_dir.resolve(STATUS_FILE_NAME).toFile(), FS.DETECTED);
+    loadLastGc();
+
+    newGauge(
+        metricMaker,
+        "gc/loose_objects",
+        "Number of loose objects in all repositories",
+        "objects",
+        RepositoryGcStatistics::looseObjects);
+    newGauge(
+        metricMaker,
+        "gc/loose_objects_size",
+        "Size of the loose objects in all repositories",
+        Description.Units.BYTES,
+        RepositoryGcStatistics::looseObjectsSize);
+    newGauge(
+        metricMaker,
+        "gc/pack_files",
+        "Number of pack files in all repositories",
+        "packs",
+        RepositoryGcStatistics::packFiles);
+    newGauge(
+        metricMaker,
+        "gc/loose_refs",
+        "Number of loose refs in all repositories",
+        "refs",
+        RepositoryGcStatistics::looseRefs);
+    metricMaker.newCallbackMetric(
+        "gc/pending_repositories",
+        Long.class,
+        new Description("Number of repositories that are due for garbage collection")
+            .setGauge()
+            .setUnit("repositories"),
+        () -> (long) getPending(TimeUtil.now()).size());
+  }
+
+  private void newGauge(
+      MetricMaker metricMaker,
+      String name,
+      String description,
+      String unit,
+      ToLongFunction<RepositoryGcStatistics> value) {
+    metricMaker.newCallbackMetric(
+        name,
+        Long.class,
+        new Description(description).setGauge().setUnit(unit),
+        () -> statistics.values().stream().mapToLong(value).sum());
+  }
+
+  /** Samples all repositories and collects garbage of the ones that are due. */
+  public void run() {
+    ImmutableSortedSet<Project.NameKey> projects = projectCache.all();
+    for (Project.NameKey p : projects) {
+      sample(p);
+    }
+    pruneLastGc(projects);
+    ImmutableList<RepositoryGcStatistics> pending = getPending(TimeUtil.now());
+    logger.atInfo().log(
+        "Triggering gc on %d of %d repositories", pending.size(), statistics.size());
+
+    List<Future<?>> tasks = new ArrayList<>(pending.size());
+    for (RepositoryGcStatistics s : pending) {
+      tasks.add(
+          getExecutor()
+              .submit(() -> garbageCollectionFactory.create().run(ImmutableList.of(s.project()))));
+    }
+    for (Future<?> task : tasks) {
+      try {
+        task.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (ExecutionException e) {
+        logger.atSevere().withCause(e).log("Garbage collection failed");
+      }
+    }
+  }
+
+  /** Returns the last sampled statistics of all repositories, highest score first. */
+  public ImmutableList<RepositoryGcStatistics> getStatistics() {
+    return statistics.values().stream()
+        .sorted(Comparator.comparingLong(RepositoryGcStatistics::score).reversed())
+        .collect(toImmutableList());
+  }
+
+  /** Returns when garbage of the repository was last collected. */
+  public Optional<Instant> getLastGc(Project.NameKey project) {
+    return Optional.ofNullable(lastGc.get(project));
+  }
+
+  /** Returns whether the repository is due for garbage collection. */
+  public boolean isPending(RepositoryGcStatistics s, Instant now) {
+    if (s.score() < gcConfig.getMinScore()) {
+      return false;
+    }
+    Instant last = lastGc.get(s.project());
+    return last == null || !now.isBefore(last.plus(gcConfig.getCooldown()));
+  }
+
+  private ImmutableList<RepositoryGcStatistics> getPending(Instant now) {
+    return getStatistics().stream().filter(s -> isPending(s, now)).collect(toImmutableList());
+  }
+
+  private void sample(Project.NameKey p) {
+    try (Repository repo = repoManager.openRepository(p)) {
+      statistics.put(
+          p,
+          RepositoryGcStatistics.create(
+              p, GarbageCollection.gc(repo).getStatistics(), TimeUtil.now()));
+    } catch (RepositoryNotFoundException e) {
+      statistics.remove(p);
+    } catch (Exception e) {
+      logger.atWarning().withCause(e).log("Cannot sample gc statistics of %s", p);
+    }
+  }
+
+  private synchronized ScheduledExecutorService getExecutor() {
+    if (executor == null) {
+      executor = workQueue.createQueue(gcConfig.getThreads(), "GarbageCollection");
+    }
+    return executor;
+  }
+
+  @Override
+  public void onGarbageCollected(GarbageCollectorListener.Event event) {
+    Project.NameKey p = Project.nameKey(event.getProjectName());
+    Instant now = TimeUtil.now();
+    lastGc.put(p, now);
+    statistics.put(p, RepositoryGcStatistics.create(p, event.getStatistics(), now));
+    synchronized (lastGcConfig) {
+      lastGcConfig.setLong(PROJECT, p.get(), KEY_LAST_GC, now.toEpochMilli());
+      saveLastGc();
+    }
+  }
+
+  private void loadLastGc() {
+    synchronized (lastGcConfig) {
+      try {
+        lastGcConfig.load();
+      } catch (IOException | ConfigInvalidException e) {
+        logger.atWarning().withCause(e).log(
+            "Cannot read the last garbage collections from %s", lastGcConfig.getFile());
+        return;
+      }
+      for (String name : lastGcConfig.getSubsections(PROJECT)) {
+        long millis = lastGcConfig.getLong(PROJECT, name, KEY_LAST_GC, 0);
+        if (millis > 0) {
+          lastGc.put(Project.nameKey(name), Instant.ofEpochMilli(millis));
+        }
+      }
+    }
+  }
+
+  /** Forgets the last garbage collections of projects that no longer exist. */
+  private void pruneLastGc(Set<Project.NameKey> projects) {
+    synchronized (lastGcConfig) {
+      boolean pruned = false;
+      for (String name : lastGcConfig.getSubsections(PROJECT)) {
+        Project.NameKey p = Project.nameKey(name);
+        if (!projects.contains(p)) {
+          lastGc.remove(p);
+          lastGcConfig.unsetSection(PROJECT, name);
+          pruned = true;
+        }
+      }
+      if (pruned) {
+        saveLastGc();
+      }
+    }
+  }
+
+  private void saveLastGc() {
+    try {
+      Files.createDirectories(lastGcConfig.getFile().toPath().getParent());
+      lastGcConfig.save();
+    } catch (IOException e) {
+      logger.atWarning().withCause(e).log(
+          "Cannot store the last garbage collections in %s", lastGcConfig.getFile());
+    }
+  }
+}
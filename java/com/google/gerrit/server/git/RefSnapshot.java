@@ -0,0 +1,166 @@
+// Copyright (C) 2023 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.git;
+
+import static java.util.Comparator.comparing;
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.gerrit.common.Nullable;
+import java.util.Collection;
+import java.util.Set;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+
+/**
+ * Immutable view of the refs of a repository, sorted by name.
+ *
+ * <p>Exact lookups and prefix lookups are answered by a binary search on the sorted ref list, so
+ * that components that need different subsets of the refs of a repository can share a single
+ * listing of the ref database instead of each reading and copying the refs they need.
+ *
+ * <p>Instances are thread safe.
+ */
+public class RefSnapshot {
+  /**
+   * Rough per ref overhead in bytes of the {@link Ref} instance, its {@link ObjectId}s and the name
+   * string, excluding the characters of the name.
+   */
+  private static final int ESTIMATED_REF_OVERHEAD = 112;
+
+  public static RefSnapshot create(Collection<Ref> refs) {
+    return new RefSnapshot(ImmutableList.sortedCopyOf(comparing(Ref::getName), refs));
+  }
+
+  private final ImmutableList<Ref> refs;
+  private final Supplier<ImmutableListMultimap<ObjectId, Ref>> refsByObjectId;
+
+  private RefSnapshot(ImmutableList<Ref> refs) {
+    this.refs = refs;
+    this.refsByObjectId = Suppliers.memoize(this::indexByObjectId);
+  }
+
+  /** Returns all refs of the snapshot, sorted by name. */
+  public ImmutableList<Ref> all() {
+    return refs;
+  }
+
+  /** Returns the ref with the given name or {@code null} if such a ref does not exist. */
+  @Nullable
+  public Ref exactRef(String name) {
+    int i = lowerBound(name);
+    if (i < refs.size()) {
+      Ref ref = refs.get(i);
+      if (ref.getName().equals(name)) {
+        return ref;
+      }
+    }
+    return null;
+  }
+
+  /** Returns all refs whose name starts with {@code prefix}, sorted by name. */
+  public ImmutableList<Ref> byPrefix(String prefix) {
+    if (prefix.isEmpty()) {
+      return refs;
+    }
+    return refs.subList(lowerBound(prefix), endOfPrefix(prefix));
+  }
+
+  /**
+   * Returns all refs whose name starts with {@code prefix} but doesn't start with any of the {@code
+   * excludes}, sorted by name.
+   */
+  public ImmutableList<Ref> byPrefixWithExclusions(String prefix, Set<String> excludes) {
+    if (excludes.isEmpty()) {
+      return byPrefix(prefix);
+    }
+    ImmutableList.Builder<Ref> result = ImmutableList.builder();
+    int end = prefix.isEmpty() ? refs.size() : endOfPrefix(prefix);
+    int i = lowerBound(prefix);
+    while (i < end) {
+      String name = refs.get(i).getName();
+      String excluded = excludes.stream().filter(name::startsWith).findFirst().orElse(null);
+      if (excluded == null) {
+        result.add(refs.get(i));
+        i++;
+      } else {
+        // All refs with the excluded prefix are adjacent, skip them at once.
+        i = endOfPrefix(excluded);
+      }
+    }
+    return result.build();
+  }
+
+  /** Returns all refs pointing to {@code id}. */
+  public ImmutableList<Ref> byObjectId(ObjectId id) {
+    return refsByObjectId.get().get(id);
+  }
+
+  /** Returns the number of refs in this snapshot. */
+  public int size() {
+    return refs.size();
+  }
+
+  /** Returns an estimate of the heap memory in bytes retained by this snapshot. */
+  public long estimatedSizeBytes() {
+    long size = 0;
+    for (Ref ref : refs) {
+      size += ESTIMATED_REF_OVERHEAD + 2L * ref.getName().length();
+    }
+    return size;
+  }
+
+  /** Returns the index of the first ref whose name is not less than {@code name}. */
+  private int lowerBound(String name) {
+    int low = 0;
+    int high = refs.size();
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (refs.get(mid).getName().compareTo(name) < 0) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /** Returns the index of the first ref after all refs whose name starts with {@code prefix}. */
+  private int endOfPrefix(String prefix) {
+    int low = lowerBound(prefix);
+    int high = refs.size();
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (refs.get(mid).getName().startsWith(prefix)) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  private ImmutableListMultimap<ObjectId, Ref> indexByObjectId() {
+    ImmutableListMultimap.Builder<ObjectId, Ref> byId = ImmutableListMultimap.builder();
+    for (Ref ref : refs) {
+      if (ref.getObjectId() != null) {
+        byId.put(ref.getObjectId(), ref);
+      }
+    }
+    return byId.build();
+  }
+}
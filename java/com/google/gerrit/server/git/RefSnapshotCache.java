@@ -0,0 +1,160 @@
+// Copyright (C) 2023 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.git;
+
+import com.google.gerrit.common.Nullable;
+import com.google.gerrit.metrics.Counter0;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.Description.Units;
+import com.google.gerrit.metrics.Histogram0;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.metrics.Timer0;
+import com.google.gerrit.server.cache.PerThreadCache;
+import com.google.gerrit.server.config.GerritServerConfig;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.io.IOException;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.lib.Repository;
+
+/**
+ * Provides a {@link RefSnapshot} per repository that is shared by all components serving the
+ * current request.
+ *
+ * <p>Snapshots are held in the {@link PerThreadCache} of the request thread, so that e.g. the ref
+ * filter, the tag matcher and the change scanner materialize the refs of a repository only once
+ * per request. Like the per request ref database, this is controlled by {@code
+ * core.usePerRequestRefCache}. Ref updates that Gerrit performs while serving the request drop
+ * the snapshots by calling {@link #invalidate()}. Like the per request ref database, snapshots
+ * don't see refs that were updated concurrently by other requests.
+ */
+@Singleton
+public class RefSnapshotCache {
+  private static final PerThreadCache.Key<Snapshots> SNAPSHOTS_KEY =
+      PerThreadCache.Key.create(Snapshots.class);
+
+  /** Snapshots of the current request, by repository. */
+  private static class Snapshots {
+    final Map<Repository, RefSnapshot> byRepository = new IdentityHashMap<>();
+  }
+
+  @Singleton
+  static class Metrics {
+    final Timer0 buildLatency;
+    final Histogram0 estimatedSize;
+    final Counter0 reused;
+
+    @Inject
+    Metrics(MetricMaker metricMaker) {
+      buildLatency =
+          metricMaker.newTimer(
+              "git/ref_snapshot/build_latency",
+              new Description("Latency of reading all refs of a repository into a ref snapshot")
+                  .setCumulative()
+                  .setUnit(Units.MILLISECONDS));
+      estimatedSize =
+          metricMaker.newHistogram(
+              "git/ref_snapshot/estimated_size",
+              new Description("Estimated heap memory retained by a ref snapshot")
+                  .setCumulative()
+                  .setUnit(Units.BYTES));
+      reused =
+          metricMaker.newCounter(
+              "git/ref_snapshot/reused",
+              new Description("Number of times an existing ref snapshot was reused")
+                  .setRate()
+                  .setUnit("lookups"));
+    }
+  }
+
+  /**
+   * Returns the snapshot of {@code repo} that was already built while serving the current request,
+   * or {@code null} if there is none.
+   */
+  @Nullable
+  public static RefSnapshot getIfPresent(Repository repo) {
+    PerThreadCache cache = PerThreadCache.get();
+    if (cache == null) {
+      return null;
+    }
+    return cache.get(SNAPSHOTS_KEY, Snapshots::new).byRepository.get(repo);
+  }
+
+  /**
+   * Drops all snapshots of the current request.
+   *
+   * <p>Must be called after refs were updated while serving the request, so that later callers
+   * serving the same request see the update.
+   */
+  public static void invalidate() {
+    PerThreadCache cache = PerThreadCache.get();
+    if (cache != null) {
+      cache.get(SNAPSHOTS_KEY, Snapshots::new).byRepository.clear();
+    }
+  }
+
+  private final Metrics metrics;
+  private final boolean enabled;
+
+  @Inject
+  RefSnapshotCache(@GerritServerConfig Config cfg, Metrics metrics) {
+    this.metrics = metrics;
+    this.enabled = cfg.getBoolean("core", null, "usePerRequestRefCache", true);
+  }
+
+  /**
+   * Returns whether the snapshots returned by {@link #get(Repository)} are shared with the other
+   * callers serving the current request.
+   *
+   * <p>If not, each call builds a new snapshot of all refs, and callers that only need some of the
+   * refs should read them from the ref database instead.
+   */
+  public boolean isShared() {
+    return enabled && PerThreadCache.get() != null;
+  }
+
+  /**
+   * Returns a snapshot of all refs of {@code repo}.
+   *
+   * <p>If called while serving a request, the snapshot is shared with all other callers serving the
+   * same request. Otherwise a new snapshot is built on each call.
+   */
+  public RefSnapshot get(Repository repo) throws IOException {
+    if (!isShared()) {
+      return build(repo);
+    }
+    Map<Repository, RefSnapshot> snapshots =
+        PerThreadCache.get().get(SNAPSHOTS_KEY, Snapshots::new).byRepository;
+    RefSnapshot snapshot = snapshots.get(repo);
+    if (snapshot != null) {
+      metrics.reused.increment();
+      return snapshot;
+    }
+    snapshot = build(repo);
+    snapshots.put(repo, snapshot);
+    return snapshot;
+  }
+
+  private RefSnapshot build(Repository repo) throws IOException {
+    RefSnapshot snapshot;
+    try (Timer0.Context ignored = metrics.buildLatency.start()) {
+      snapshot = RefSnapshot.create(repo.getRefDatabase().getRefs());
+    }
+    metrics.estimatedSize.record(snapshot.estimatedSizeBytes());
+    return snapshot;
+  }
+}
@@ -0,0 +1,79 @@
+// Copyright (C) 2023 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.git;
+
+import com.google.auto.value.AutoValue;
+import com.google.gerrit.entities.Project;
+import java.time.Instant;
+import java.util.Properties;
+
+/**
+ * Statistics of a repository that determine how much it benefits from a garbage collection.
+ *
+ * <p>The {@link #score()} estimates the benefit: each loose object and each loose ref costs a file
+ * system lookup, loose objects take more disk space than packed ones, and each pack file beyond the
+ * first costs an index lookup for every object that is read from the repository.
+ */
+@AutoValue
+public abstract class RepositoryGcStatistics {
+  /** Weight of a pack file beyond the first one, relative to a loose object. */
+  static final long PACK_FILE_WEIGHT = 100;
+
+  /** Size of loose objects that weighs as much as one loose object. */
+  static final long LOOSE_OBJECTS_SIZE_PER_POINT = 64 * 1024;
+
+  /**
+   * Creates the statistics of a repository.
+   *
+   * @param project name of the project
+   * @param statistics statistics as returned by {@link
+   *     org.eclipse.jgit.api.GarbageCollectCommand#getStatistics()}
+   * @param sampledAt time when the statistics were collected
+   */
+  public static RepositoryGcStatistics create(
+      Project.NameKey project, Properties statistics, Instant sampledAt) {
+    return new AutoValue_RepositoryGcStatistics(
+        project,
+        get(statistics, "numberOfLooseObjects"),
+        get(statistics, "sizeOfLooseObjects"),
+        get(statistics, "numberOfPackFiles"),
+        get(statistics, "numberOfLooseRefs"),
+        sampledAt);
+  }
+
+  private static long get(Properties statistics, String key) {
+    Object value = statistics.get(key);
+    return value instanceof Number ? ((Number) value).longValue() : 0;
+  }
+
+  public abstract Project.NameKey project();
+
+  public abstract long looseObjects();
+
+  public abstract long looseObjectsSize();
+
+  public abstract long packFiles();
+
+  public abstract long looseRefs();
+
+  public abstract Instant sampledAt();
+
+  public long score() {
+    return looseObjects()
+        + looseObjectsSize() / LOOSE_OBJECTS_SIZE_PER_POINT
+        + looseRefs()
+        + PACK_FILE_WEIGHT * Math.max(0, packFiles() - 1);
+  }
+}
@@ -36,6 +36,7 @@ public class TagCache {
         persist(CACHE_NAME, String.class, TagSetHolder.class)
             .version(2)
             .keySerializer(StringCacheSerializer.INSTANCE)
+            .warmUp(StringCacheSerializer.INSTANCE)
             .valueSerializer(TagSetHolder.Serializer.INSTANCE);
         bind(TagCache.class);
       }
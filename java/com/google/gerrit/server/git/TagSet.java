@@ -32,6 +32,7 @@ import java.io.DataOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicReference;
 import org.eclipse.jgit.errors.IncorrectObjectTypeException;
@@ -213,9 +214,7 @@ class TagSet {
     try (TagWalk rw = new TagWalk(git)) {
       rw.setRetainBody(false);
       RevFlag isTag = rw.newFlag("tag");
-      for (Ref ref :
-          git.getRefDatabase()
-              .getRefsByPrefixWithExclusions(RefDatabase.ALL, SKIPPABLE_REF_PREFIXES)) {
+      for (Ref ref : listRefs(git)) {
         if (skip(ref)) {
           continue;
 
@@ -243,6 +242,15 @@ class TagSet {
     }
   }
 
+  private static List<Ref> listRefs(Repository git) throws IOException {
+    RefSnapshot snapshot = RefSnapshotCache.getIfPresent(git);
+    if (snapshot != null) {
+      return snapshot.byPrefixWithExclusions(RefDatabase.ALL, SKIPPABLE_REF_PREFIXES);
+    }
+    return git.getRefDatabase()
+        .getRefsByPrefixWithExclusions(RefDatabase.ALL, SKIPPABLE_REF_PREFIXES);
+  }
+
   static TagSet fromProto(TagSetProto proto) {
     ObjectIdConverter idConverter = ObjectIdConverter.create();
 
@@ -0,0 +1,483 @@
+// Copyright (C) 2023 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.git;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.util.Comparator.comparing;
+import static java.util.stream.Collectors.toList;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableList;
+import com.google.common.flogger.FluentLogger;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.gerrit.common.Nullable;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.metrics.Counter0;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.server.config.GerritServerConfig;
+import com.google.gerrit.server.config.SitePaths;
+import com.google.gerrit.server.util.time.TimeUtil;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Stream;
+import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+
+/**
+ * Disk-backed cache of upload-pack responses to full fetches.
+ *
+ * <p>A fetch without {@code have} lines, like a clone, gets the same pack for as long as the refs
+ * that the user can see don't change. CI systems often clone the same repository many times at the
+ * same state, and each clone enumerates the objects and writes the pack again. This cache stores
+ * the complete response of such requests in the {@code packs} folder of the cache directory, keyed
+ * by a hash of the project, the visible refs and the request, and transfers the stored response for
+ * identical requests. Concurrent identical requests are coalesced, so that the response is only
+ * generated once. Once the total size of the responses exceeds {@code upload.packCacheSize}, the
+ * least recently used responses are deleted.
+ *
+ * <p>Callers must have validated that the user may fetch the wanted objects.
+ */
+@Singleton
+public class UploadPackCache {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  private static final String TMP_SUFFIX = ".tmp";
+
+  /** Writes an upload-pack response. */
+  @FunctionalInterface
+  public interface Generator {
+    /**
+     * Writes the response.
+     *
+     * @return whether the response is complete and may be served to identical requests
+     */
+    boolean writeTo(OutputStream out) throws IOException;
+  }
+
+  /** Identifies an upload-pack response. */
+  @AutoValue
+  public abstract static class Key {
+    /**
+     * Creates a key.
+     *
+     * @param project the project
+     * @param visibleRefs the refs that the user can see
+     * @param request the upload-pack request
+     */
+    public static Key create(Project.NameKey project, Collection<Ref> visibleRefs, byte[] request) {
+      Hasher h = Hashing.sha256().newHasher();
+      h.putString(project.get(), UTF_8).putByte((byte) 0);
+      visibleRefs.stream()
+          .sorted(comparing(Ref::getName))
+          .forEach(
+              r -> {
+                h.putString(r.getName(), UTF_8).putByte((byte) 0);
+                if (r.isSymbolic()) {
+                  h.putString(r.getTarget().getName(), UTF_8);
+                } else {
+                  h.putString(ObjectId.toString(r.getObjectId()), UTF_8);
+                }
+                h.putByte((byte) 0);
+              });
+      h.putBytes(request);
+      return new AutoValue_UploadPackCache_Key(h.hash().toString());
+    }
+
+    abstract String hash();
+  }
+
+  /**
+   * Parses an upload-pack request of protocol v0, v1 or v2.
+   *
+   * @param request the pkt-lines of the request
+   * @return the wanted objects if the request is a fetch without {@code have} lines that asks for
+   *     the pack, empty otherwise
+   */
+  public static Optional<ImmutableList<ObjectId>> parseFullFetch(byte[] request) {
+    ImmutableList.Builder<ObjectId> wants = ImmutableList.builder();
+    boolean hasWants = false;
+    boolean done = false;
+    int pos = 0;
+    while (pos < request.length) {
+      if (pos + 4 > request.length) {
+        return Optional.empty();
+      }
+      int len = 0;
+      for (int i = 0; i < 4; i++) {
+        int d = Character.digit(request[pos + i], 16);
+        if (d < 0) {
+          return Optional.empty();
+        }
+        len = (len << 4) | d;
+      }
+      if (len < 4) {
+        // Flush, delimiter and response end packets.
+        pos += 4;
+        continue;
+      }
+      if (pos + len > request.length) {
+        return Optional.empty();
+      }
+      String line = new String(request, pos + 4, len - 4, UTF_8);
+      if (line.endsWith("\n")) {
+        line = line.substring(0, line.length() - 1);
+      }
+      pos += len;
+
+      if (line.startsWith("command=")) {
+        if (!line.equals("command=fetch")) {
+          return Optional.empty();
+        }
+      } else if (line.startsWith("want ")) {
+        if (line.length() < 45 || !ObjectId.isId(line.substring(5, 45))) {
+          return Optional.empty();
+        }
+        wants.add(ObjectId.fromString(line.substring(5, 45)));
+        hasWants = true;
+      } else if (line.startsWith("have ") || line.startsWith("want-ref ")) {
+        return Optional.empty();
+      } else if (line.equals("done")) {
+        done = true;
+      }
+    }
+    return hasWants && done ? Optional.of(wants.build()) : Optional.empty();
+  }
+
+  @Nullable private final Path dir;
+  private final long maxSize;
+  private final long minPackSize;
+  private final long maxPackSize;
+  private final Counter0 hits;
+  private final Counter0 misses;
+  private final Counter0 servedBytes;
+  private final ConcurrentMap<String, CompletableFuture<Boolean>> pending =
+      new ConcurrentHashMap<>();
+
+  /** Sizes of the cached responses, by file name, in access order. Guarded by {@code this}. */
+  private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+  private long totalSize;
+
+  @Inject
+  UploadPackCache(@GerritServerConfig Config cfg, SitePaths site, MetricMaker metricMaker) {
+    maxSize = cfg.getLong("upload", null, "packCacheSize", 0);
+    minPackSize = cfg.getLong("upload", null, "packCacheMinPackSize", 1024 * 1024);
+    maxPackSize = cfg.getLong("upload", null, "packCacheMaxPackSize", maxSize / 4);
+    Path cacheDir = site.resolve(cfg.getString("cache", null, "directory"));
+    dir = maxSize > 0 && cacheDir != null ? init(cacheDir.resolve("packs")) : null;
+
+    hits =
+        metricMaker.newCounter(
+            "git/upload-pack/cache/hits",
+            new Description("Full fetches that were served from the upload-pack cache")
+                .setRate()
+                .setUnit("requests"));
+    misses =
+        metricMaker.newCounter(
+            "git/upload-pack/cache/misses",
+            new Description("Full fetches for which the pack was generated")
+                .setRate()
+                .setUnit("requests"));
+    servedBytes =
+        metricMaker.newCounter(
+            "git/upload-pack/cache/served_bytes",
+            new Description("Size of the responses that were served from the upload-pack cache")
+                .setRate()
+                .setUnit(Description.Units.BYTES));
+    metricMaker.newCallbackMetric(
+        "git/upload-pack/cache/disk_usage",
+        Long.class,
+        new Description("Total size of the cached upload-pack responses")
+            .setGauge()
+            .setUnit(Description.Units.BYTES),
+        this::getTotalSize);
+  }
+
+  @Nullable
+  private Path init(Path dir) {
+    try {
+      Files.createDirectories(dir);
+      List<Path> files;
+      try (Stream<Path> s = Files.list(dir)) {
+        files = s.sorted(comparing(UploadPackCache::lastModified)).collect(toList());
+      }
+      for (Path file : files) {
+        String name = file.getFileName().toString();
+        if (name.endsWith(TMP_SUFFIX)) {
+          Files.deleteIfExists(file);
+        } else {
+          long size = Files.size(file);
+          entries.put(name, size);
+          totalSize += size;
+        }
+      }
+      return dir;
+    } catch (IOException e) {
+      logger.atWarning().withCause(e).log("Cannot initialize upload-pack cache in %s", dir);
+      return null;
+    }
+  }
+
+  private static FileTime lastModified(Path file) {
+    try {
+      return Files.getLastModifiedTime(file);
+    } catch (IOException e) {
+      return FileTime.fromMillis(0);
+    }
+  }
+
+  private synchronized long getTotalSize() {
+    return totalSize;
+  }
+
+  public boolean isEnabled() {
+    return dir != null;
+  }
+
+  /**
+   * Writes an upload-pack response to the output stream.
+   *
+   * <p>If the response is cached, the cached file is transferred to the output stream. If the same
+   * response is being generated for another request, waits for it. Otherwise the response is
+   * generated into the output stream and, if it is complete and within the size limits, stored in
+   * the cache at the same time.
+   *
+   * @param key key of the response
+   * @param generator generator of the response, must write the response identified by {@code key}
+   * @param out output stream to write to
+   * @return size of the response if it was served from the cache, -1 if it was generated
+   */
+  public long writeTo(Key key, Generator generator, OutputStream out) throws IOException {
+    if (dir == null) {
+      generator.writeTo(out);
+      return -1;
+    }
+
+    String name = key.hash();
+    Path file = dir.resolve(name);
+    if (isCached(name)) {
+      try {
+        Files.setLastModifiedTime(file, FileTime.from(TimeUtil.now()));
+      } catch (IOException e) {
+        // Only needed to restore the access order after a restart.
+      }
+      long size = transfer(file, out);
+      if (size >= 0) {
+        return size;
+      }
+    }
+
+    CompletableFuture<Boolean> future = new CompletableFuture<>();
+    CompletableFuture<Boolean> existing = pending.putIfAbsent(name, future);
+    if (existing != null) {
+      long size = await(existing) ? transfer(file, out) : -1;
+      if (size < 0) {
+        // The response couldn't be cached, generate it without caching it again.
+        misses.increment();
+        generator.writeTo(out);
+      }
+      return size;
+    }
+
+    misses.increment();
+    boolean cached = false;
+    try {
+      cached = generate(name, file, generator, out);
+    } finally {
+      future.complete(cached);
+      pending.remove(name);
+    }
+    return -1;
+  }
+
+  private boolean generate(String name, Path file, Generator generator, OutputStream out)
+      throws IOException {
+    Path tmp = Files.createTempFile(dir, name, TMP_SUFFIX);
+    try {
+      boolean complete;
+      long size;
+      try (TeeOutputStream tee = new TeeOutputStream(out, tmp, maxPackSize)) {
+        complete = generator.writeTo(tee);
+        size = tee.fileSize();
+      }
+      if (!complete || size < minPackSize || size > maxSize) {
+        return false;
+      }
+      Files.move(tmp, file, ATOMIC_MOVE, REPLACE_EXISTING);
+      add(name, size);
+      return true;
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+  }
+
+  /** Transfers a cached file, returns its size or -1 if it was evicted in the meantime. */
+  private long transfer(Path file, OutputStream out) throws IOException {
+    FileChannel channel;
+    try {
+      channel = FileChannel.open(file, StandardOpenOption.READ);
+    } catch (NoSuchFileException e) {
+      return -1;
+    }
+    long size;
+    try (FileChannel c = channel) {
+      hits.increment();
+      // Let the channel transfer the file to the target without copying it through the heap.
+      WritableByteChannel target = Channels.newChannel(out);
+      size = c.size();
+      for (long pos = 0; pos < size; ) {
+        pos += c.transferTo(pos, size - pos, target);
+      }
+      servedBytes.incrementBy(size);
+    }
+    out.flush();
+    return size;
+  }
+
+  private synchronized boolean isCached(String name) {
+    // Updates the access order.
+    return entries.get(name) != null;
+  }
+
+  private synchronized void add(String name, long size) {
+    Long old = entries.put(name, size);
+    totalSize += size - (old != null ? old : 0);
+    Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+    while (totalSize > maxSize && it.hasNext()) {
+      Map.Entry<String, Long> e = it.next();
+      if (e.getKey().equals(name)) {
+        continue;
+      }
+      try {
+        // Requests that already opened the file can still read it.
+        Files.deleteIfExists(dir.resolve(e.getKey()));
+      } catch (IOException err) {
+        logger.atWarning().withCause(err).log("Cannot delete cached pack %s", e.getKey());
+        continue;
+      }
+      totalSize -= e.getValue();
+      it.remove();
+    }
+  }
+
+  private static boolean await(CompletableFuture<Boolean> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted while waiting for pack");
+    } catch (ExecutionException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Writes to the client and to a file. Once the file would exceed the maximum size, or can't be
+   * written, only the client is written to.
+   */
+  private static class TeeOutputStream extends OutputStream {
+    private final OutputStream out;
+    private final Path path;
+    private final long maxFileSize;
+    @Nullable private OutputStream file;
+    private long fileSize;
+
+    TeeOutputStream(OutputStream out, Path path, long maxFileSize) throws IOException {
+      this.out = out;
+      this.path = path;
+      this.maxFileSize = maxFileSize;
+      this.file = new BufferedOutputStream(Files.newOutputStream(path));
+    }
+
+    /** Returns the size of the file, or -1 if it is incomplete. */
+    long fileSize() {
+      return file != null ? fileSize : -1;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+      if (file == null) {
+        return;
+      }
+      if (fileSize + len > maxFileSize) {
+        abandonFile(null);
+        return;
+      }
+      try {
+        file.write(b, off, len);
+        fileSize += len;
+      } catch (IOException e) {
+        abandonFile(e);
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (file != null) {
+        file.close();
+      }
+    }
+
+    private void abandonFile(@Nullable IOException cause) {
+      if (cause != null) {
+        logger.atWarning().withCause(cause).log("Cannot write pack to %s", path);
+      }
+      try {
+        file.close();
+      } catch (IOException e) {
+        // Deleted by the caller.
+      }
+      file = null;
+    }
+  }
+}
@@ -115,6 +115,7 @@ import com.google.gerrit.server.DraftCommentsReader;
 import com.google.gerrit.server.IdentifiedUser;
 import com.google.gerrit.server.InvalidDeadlineException;
 import com.google.gerrit.server.PatchSetUtil;
+import com.google.gerrit.server.PerformanceLogDispatcher;
 import com.google.gerrit.server.PublishCommentUtil;
 import com.google.gerrit.server.PublishCommentsOp;
 import com.google.gerrit.server.RequestInfo;
@@ -154,7 +155,6 @@ import com.google.gerrit.server.git.validators.ValidationMessage;
 import com.google.gerrit.server.index.change.ChangeIndexer;
 import com.google.gerrit.server.logging.Metadata;
 import com.google.gerrit.server.logging.PerformanceLogContext;
-import com.google.gerrit.server.logging.PerformanceLogger;
 import com.google.gerrit.server.logging.RequestId;
 import com.google.gerrit.server.logging.TraceContext;
 import com.google.gerrit.server.logging.TraceContext.TraceTimer;
@@ -387,7 +387,7 @@ class ReceiveCommits {
   private final Metrics metrics;
   private final PatchSetInfoFactory patchSetInfoFactory;
   private final PatchSetUtil psUtil;
-  private final DynamicSet<PerformanceLogger> performanceLoggers;
+  private final PerformanceLogDispatcher performanceLogDispatcher;
   private final PermissionBackend permissionBackend;
   private final ProjectCache projectCache;
   private final Provider<InternalChangeQuery> queryProvider;
@@ -475,7 +475,7 @@ class ReceiveCommits {
       Metrics metrics,
       PatchSetInfoFactory patchSetInfoFactory,
       PatchSetUtil psUtil,
-      DynamicSet<PerformanceLogger> performanceLoggers,
+      PerformanceLogDispatcher performanceLogDispatcher,
       PermissionBackend permissionBackend,
       ProjectCache projectCache,
       Provider<InternalChangeQuery> queryProvider,
@@ -536,7 +536,7 @@ class ReceiveCommits {
     this.pluginPushOptions = pluginPushOptions;
     this.projectCache = projectCache;
     this.psUtil = psUtil;
-    this.performanceLoggers = performanceLoggers;
+    this.performanceLogDispatcher = performanceLogDispatcher;
     this.publishCommentsOp = publishCommentsOp;
     this.queryProvider = queryProvider;
     this.receiveConfig = receiveConfig;
@@ -662,8 +662,7 @@ class ReceiveCommits {
                 tracePushOption.isPresent(),
                 tracePushOption.orElse(null),
                 (tagName, traceId) -> addMessage(tagName + ": " + traceId));
-        PerformanceLogContext performanceLogContext =
-            new PerformanceLogContext(config, performanceLoggers);
+        PerformanceLogContext performanceLogContext = performanceLogDispatcher.newContext();
         TraceTimer traceTimer =
             newTimer("processCommands", Metadata.builder().resourceCount(commandCount))) {
       RequestInfo requestInfo =
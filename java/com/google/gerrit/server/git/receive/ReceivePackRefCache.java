@@ -18,11 +18,8 @@ import static com.google.common.collect.ImmutableList.toImmutableList;
 
 import com.google.common.base.Supplier;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ListMultimap;
-import com.google.common.collect.MultimapBuilder;
-import com.google.gerrit.entities.Change;
 import com.google.gerrit.entities.PatchSet;
-import com.google.gerrit.entities.RefNames;
+import com.google.gerrit.server.git.RefSnapshot;
 import java.io.IOException;
 import java.util.Map;
 import java.util.Objects;
@@ -50,8 +47,8 @@ public interface ReceivePackRefCache {
 
   /**
    * Returns an instance that answers calls based on refs previously advertised and captured in
-   * {@link AllRefsWatcher}. Speeds up inverse lookups by building a {@code Map<ObjectId,
-   * List<Ref>>} and a {@code Map<Change.Id, List<Ref>>}.
+   * {@link AllRefsWatcher}. Speeds up name and prefix lookups by sorting the refs into a {@link
+   * RefSnapshot} and inverse lookups by building a {@code Map<ObjectId, List<Ref>>}.
    *
    * <p>This implementation speeds up lookups when the ref database does not support inverse ({@code
    * ObjectId} to name) lookups.
@@ -98,17 +95,10 @@ public interface ReceivePackRefCache {
   }
 
   class WithAdvertisedRefs implements ReceivePackRefCache {
-    /** We estimate that a change has an average of 4 patch sets plus the meta ref. */
-    private static final int ESTIMATED_NUMBER_OF_REFS_PER_CHANGE = 5;
-
     private final Supplier<Map<String, Ref>> allRefsSupplier;
 
-    // Collections lazily populated during processing.
-    private Map<String, Ref> allRefs;
-    /** Contains only patch set refs. */
-    private ListMultimap<Change.Id, Ref> refsByChange;
-    /** Contains all refs. */
-    private ListMultimap<ObjectId, Ref> refsByObjectId;
+    // Lazily populated during processing.
+    private RefSnapshot allRefs;
 
     private WithAdvertisedRefs(Supplier<Map<String, Ref>> allRefsSupplier) {
       this.allRefsSupplier = allRefsSupplier;
@@ -116,8 +106,7 @@ public interface ReceivePackRefCache {
 
     @Override
     public ImmutableList<PatchSet.Id> patchSetIdsFromObjectId(ObjectId id) {
-      lazilyInitRefMaps();
-      return refsByObjectId.get(id).stream()
+      return allRefs().byObjectId(id).stream()
           .map(r -> PatchSet.Id.fromRef(r.getName()))
           .filter(Objects::nonNull)
           .collect(toImmutableList());
@@ -125,53 +114,20 @@ public interface ReceivePackRefCache {
 
     @Override
     public ImmutableList<Ref> byPrefix(String prefix) {
-      lazilyInitRefMaps();
-      if (RefNames.isRefsChanges(prefix)) {
-        Change.Id cId = Change.Id.fromRefPart(prefix);
-        if (cId != null) {
-          return refsByChange.get(cId).stream()
-              .filter(r -> r.getName().startsWith(prefix))
-              .collect(toImmutableList());
-        }
-      }
-      return allRefs().values().stream()
-          .filter(r -> r.getName().startsWith(prefix))
-          .collect(toImmutableList());
+      return allRefs().byPrefix(prefix);
     }
 
     @Override
     @Nullable
     public Ref exactRef(String name) {
-      return allRefs().get(name);
+      return allRefs().exactRef(name);
     }
 
-    private Map<String, Ref> allRefs() {
+    private RefSnapshot allRefs() {
       if (allRefs == null) {
-        allRefs = allRefsSupplier.get();
+        allRefs = RefSnapshot.create(allRefsSupplier.get().values());
       }
       return allRefs;
     }
-
-    private void lazilyInitRefMaps() {
-      if (refsByChange != null) {
-        return;
-      }
-
-      refsByObjectId = MultimapBuilder.hashKeys().arrayListValues().build();
-      refsByChange =
-          MultimapBuilder.hashKeys(allRefs().size() / ESTIMATED_NUMBER_OF_REFS_PER_CHANGE)
-              .arrayListValues(ESTIMATED_NUMBER_OF_REFS_PER_CHANGE)
-              .build();
-      for (Ref ref : allRefs().values()) {
-        ObjectId objectId = ref.getObjectId();
-        if (objectId != null) {
-          refsByObjectId.put(objectId, ref);
-          Change.Id changeId = Change.Id.fromRef(ref.getName());
-          if (changeId != null) {
-            refsByChange.put(changeId, ref);
-          }
-        }
-      }
-    }
   }
 }
@@ -21,6 +21,7 @@ import com.google.common.collect.Sets;
 import com.google.common.flogger.FluentLogger;
 import com.google.gerrit.entities.AccountGroup;
 import com.google.gerrit.entities.GroupReference;
+import com.google.gerrit.extensions.events.ConcurrentStart;
 import com.google.gerrit.extensions.events.LifecycleListener;
 import com.google.gerrit.lifecycle.LifecycleModule;
 import com.google.gerrit.server.config.AllUsersName;
@@ -66,6 +67,7 @@ public class PeriodicGroupIndexer implements Runnable {
     }
   }
 
+  @ConcurrentStart
   private static class Lifecycle implements LifecycleListener {
     private final Config cfg;
     private final WorkQueue queue;
@@ -14,14 +14,19 @@
 
 package com.google.gerrit.server.index.change;
 
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
 import static com.google.common.util.concurrent.Futures.successfulAsList;
 import static com.google.common.util.concurrent.Futures.transform;
 import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
 import static com.google.gerrit.server.git.QueueProvider.QueueType.BATCH;
 
 import com.google.auto.value.AutoValue;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Stopwatch;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import com.google.common.flogger.FluentLogger;
 import com.google.common.util.concurrent.ListenableFuture;
@@ -30,7 +35,12 @@ import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.google.gerrit.common.Nullable;
 import com.google.gerrit.entities.Change;
 import com.google.gerrit.entities.Project;
+import com.google.gerrit.exceptions.StorageException;
+import com.google.gerrit.index.IndexConfig;
+import com.google.gerrit.index.Schema;
 import com.google.gerrit.index.SiteIndexer;
+import com.google.gerrit.index.query.Predicate;
+import com.google.gerrit.index.query.QueryParseException;
 import com.google.gerrit.server.config.GerritServerConfig;
 import com.google.gerrit.server.git.GitRepositoryManager;
 import com.google.gerrit.server.git.MultiProgressMonitor;
@@ -43,16 +53,20 @@ import com.google.gerrit.server.notedb.ChangeNotes;
 import com.google.gerrit.server.notedb.ChangeNotes.Factory.ChangeNotesResult;
 import com.google.gerrit.server.project.ProjectCache;
 import com.google.gerrit.server.query.change.ChangeData;
+import com.google.gerrit.server.query.change.ChangePredicates;
 import com.google.inject.Inject;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import org.eclipse.jgit.lib.Config;
 import org.eclipse.jgit.lib.ObjectId;
@@ -71,6 +85,9 @@ public class AllChangesIndexer extends SiteIndexer<Change.Id, ChangeData, Change
   private Task failedTask;
   private static final int PROJECT_SLICE_MAX_REFS = 1000;
 
+  /** Number of changes read at once from the previous index version during a schema upgrade. */
+  private static final int STORED_FIELDS_BATCH_SIZE = 100;
+
   private final MultiProgressMonitor.Factory multiProgressMonitorFactory;
 
   private static class ProjectsCollectionFailure extends Exception {
@@ -88,6 +105,9 @@ public class AllChangesIndexer extends SiteIndexer<Change.Id, ChangeData, Change
   private final ChangeNotes.Factory notesFactory;
   private final ProjectCache projectCache;
   private final Set<Project.NameKey> projectsToSkip;
+  private final ChangeIndexCollection indexes;
+  private final IndexConfig indexConfig;
+  private final boolean reuseStoredFields;
 
   @Inject
   AllChangesIndexer(
@@ -98,6 +118,8 @@ public class AllChangesIndexer extends SiteIndexer<Change.Id, ChangeData, Change
       ChangeIndexer.Factory indexerFactory,
       ChangeNotes.Factory notesFactory,
       ProjectCache projectCache,
+      ChangeIndexCollection indexes,
+      IndexConfig indexConfig,
       @GerritServerConfig Config config) {
     this.multiProgressMonitorFactory = multiProgressMonitorFactory;
     this.changeDataFactory = changeDataFactory;
@@ -111,6 +133,9 @@ public class AllChangesIndexer extends SiteIndexer<Change.Id, ChangeData, Change
             .stream()
             .map(p -> Project.NameKey.parse(p))
             .collect(Collectors.toSet());
+    this.indexes = indexes;
+    this.indexConfig = indexConfig;
+    this.reuseStoredFields = config.getBoolean("index", null, "reuseStoredFieldsOnUpgrade", true);
   }
 
   @AutoValue
@@ -223,6 +248,30 @@ public class AllChangesIndexer extends SiteIndexer<Change.Id, ChangeData, Change
     return new ProjectSliceIndexer(indexer, projectSlice, done, failed, false);
   }
 
+  /**
+   * Returns the names of the stored fields whose values in documents of {@code previous} can be
+   * copied into documents of {@code newest}.
+   *
+   * <p>A field is only reused if both schemas define it by the same field instance, and if no
+   * schema version after {@code previous}, up to and including {@code newest}, declares it as
+   * {@link Schema.Builder#recompute recomputed}. All other fields of the new documents are computed
+   * from NoteDb.
+   */
+  @VisibleForTesting
+  static ImmutableSet<String> reusableStoredFields(
+      ImmutableSortedMap<Integer, Schema<ChangeData>> schemas,
+      Schema<ChangeData> previous,
+      Schema<ChangeData> newest) {
+    Set<String> recomputed =
+        schemas.subMap(previous.getVersion(), false, newest.getVersion(), true).values().stream()
+            .flatMap(s -> s.getRecomputedFields().stream())
+            .collect(toImmutableSet());
+    return newest.getStoredFields().stream()
+        .filter(f -> previous.getSchemaField(f) == newest.getSchemaField(f))
+        .filter(f -> !recomputed.contains(f))
+        .collect(toImmutableSet());
+  }
+
   private class ProjectSliceIndexer implements Callable<Void> {
     private final ChangeIndexer indexer;
     private final ProjectSlice projectSlice;
@@ -260,17 +309,29 @@ public class AllChangesIndexer extends SiteIndexer<Change.Id, ChangeData, Change
         if (newestIndex.isEmpty()) {
           logger.atWarning().log("No change index available yet");
         }
+        Optional<ChangeIndex> previousIndex = getPreviousIndex(newestIndex);
+        if (previousIndex.isPresent()) {
+          migrate(previousIndex.get(), newestIndex.get());
+          OnlineReindexMode.end();
+          return null;
+        }
         // Order of scanning changes is undefined. This is ok if we assume that packfile locality is
         // not important for indexing, since sites should have a fully populated DiffSummary cache.
         // It does mean that reindexing after invalidating the DiffSummary cache will be expensive,
         // but the goal is to invalidate that cache as infrequently as we possibly can. And besides,
         // we don't have concrete proof that improving packfile locality would help.
-        notesFactory
-            .scan(
-                projectSlice.metaIdByChange(),
-                projectSlice.name(),
-                id -> (id.get() % projectSlice.slices()) == projectSlice.slice())
-            .forEach(r -> index(r, newestIndex));
+        //
+        // All changes of the slice are read through the same open repository, rather than looking
+        // it up again for every change.
+        try (Repository repo = repoManager.openRepository(projectSlice.name())) {
+          notesFactory
+              .scan(
+                  repo,
+                  projectSlice.metaIdByChange(),
+                  projectSlice.name(),
+                  id -> (id.get() % projectSlice.slices()) == projectSlice.slice())
+              .forEach(r -> index(r, newestIndex));
+        }
         OnlineReindexMode.end();
       } finally {
         Thread.currentThread().setName(oldThreadName);
@@ -278,28 +339,131 @@ public class AllChangesIndexer extends SiteIndexer<Change.Id, ChangeData, Change
       return null;
     }
 
+    /**
+     * Returns the index version that is replaced by {@code newestIndex} during an online schema
+     * upgrade, if its stored fields can be reused to build the new documents.
+     */
+    private Optional<ChangeIndex> getPreviousIndex(Optional<ChangeIndex> newestIndex) {
+      if (!reuseStoredFields || forceReindex || newestIndex.isEmpty()) {
+        return Optional.empty();
+      }
+      ChangeIndex searchIndex = indexes.getSearchIndex();
+      if (searchIndex == null
+          || searchIndex.getSchema().getVersion() >= newestIndex.get().getSchema().getVersion()
+          || !reusableStoredFields(searchIndex, newestIndex.get())
+              .containsAll(StalenessChecker.FIELDS)) {
+        return Optional.empty();
+      }
+      return Optional.of(searchIndex);
+    }
+
+    /**
+     * Indexes the changes of this slice from the documents of the previous index version.
+     *
+     * <p>Changes are read in batches with the stored fields that can be reused from the previous
+     * schema, see {@link #reusableStoredFields(ImmutableSortedMap, Schema, Schema)}. All other
+     * fields are computed from NoteDb only when the new document is built. Changes that are missing
+     * from the previous index, or whose document is stale, are fully reloaded from NoteDb.
+     */
+    private void migrate(ChangeIndex previousIndex, ChangeIndex newestIndex) throws IOException {
+      ImmutableSet<String> fields = reusableStoredFields(previousIndex, newestIndex);
+      List<Change.Id> ids =
+          projectSlice.metaIdByChange().keySet().stream()
+              .filter(id -> (id.get() % projectSlice.slices()) == projectSlice.slice())
+              .collect(Collectors.toList());
+
+      Set<Change.Id> toReload = new HashSet<>();
+      for (List<Change.Id> batch : Lists.partition(ids, STORED_FIELDS_BATCH_SIZE)) {
+        Map<Change.Id, ChangeData> stored = readStoredFields(previousIndex, batch, fields);
+        for (Change.Id id : batch) {
+          ChangeData cd = stored.get(id);
+          if (cd == null || isStale(cd)) {
+            toReload.add(id);
+          } else {
+            index(id, () -> cd, Optional.of(newestIndex));
+          }
+        }
+      }
+
+      if (!toReload.isEmpty()) {
+        verboseWriter.format(
+            "Reloading %d changes of project %s from NoteDb\n",
+            toReload.size(), projectSlice.name().get());
+        try (Repository repo = repoManager.openRepository(projectSlice.name())) {
+          notesFactory
+              .scan(repo, projectSlice.metaIdByChange(), projectSlice.name(), toReload::contains)
+              .forEach(r -> index(r, Optional.of(newestIndex)));
+        }
+      }
+    }
+
+    private ImmutableSet<String> reusableStoredFields(
+        ChangeIndex previousIndex, ChangeIndex newestIndex) {
+      return AllChangesIndexer.reusableStoredFields(
+          ChangeSchemaDefinitions.INSTANCE.getSchemas(),
+          previousIndex.getSchema(),
+          newestIndex.getSchema());
+    }
+
+    private Map<Change.Id, ChangeData> readStoredFields(
+        ChangeIndex previousIndex, List<Change.Id> ids, Set<String> fields) {
+      Predicate<ChangeData> p =
+          Predicate.or(ids.stream().map(ChangePredicates::idStr).collect(Collectors.toList()));
+      try {
+        return previousIndex
+            .getSource(p, IndexedChangeQuery.createOptions(indexConfig, 0, ids.size(), fields))
+            .read()
+            .toList()
+            .stream()
+            .collect(Collectors.toMap(ChangeData::getId, cd -> cd, (a, b) -> a));
+      } catch (QueryParseException | StorageException e) {
+        logger.atWarning().withCause(e).log(
+            "Failed to read %d changes of project %s from the previous index version",
+            ids.size(), projectSlice.name());
+        return ImmutableMap.of();
+      }
+    }
+
+    private boolean isStale(ChangeData cd) {
+      try {
+        return StalenessChecker.check(
+                repoManager,
+                cd.getId(),
+                cd.getRefStates(),
+                StalenessChecker.parsePatterns(cd.getRefStatePatterns()))
+            .isStale();
+      } catch (RuntimeException e) {
+        logger.atFine().withCause(e).log("Cannot check staleness of change %s", cd.getId());
+        return true;
+      }
+    }
+
     private void index(ChangeNotesResult r, Optional<ChangeIndex> newestIndex) {
       if (r.error().isPresent()) {
         fail("Failed to read change " + r.id() + " for indexing", true, r.error().get());
         return;
       }
+      index(r.id(), () -> changeDataFactory.create(r.notes()), newestIndex);
+    }
+
+    private void index(
+        Change.Id id, Supplier<ChangeData> changeData, Optional<ChangeIndex> newestIndex) {
       try {
-        if (forceReindex || !indexer.isChangeAlreadyIndexed(r.id(), newestIndex)) {
-          indexer.index(changeDataFactory.create(r.notes()));
+        if (forceReindex || !indexer.isChangeAlreadyIndexed(id, newestIndex)) {
+          indexer.index(changeData.get());
           verboseWriter.format(
-              "Reindexed change %d (project: %s)\n",
-              r.id().get(), r.notes().getProjectName().get());
+              "Reindexed change %d (project: %s)\n", id.get(), projectSlice.name().get());
 
         } else {
           verboseWriter.format(
-              "Skipped change %d (project: %s)\n", r.id().get(), r.notes().getProjectName().get());
+              "Skipped change %d (project: %s)\n", id.get(), projectSlice.name().get());
         }
         done.update(1);
       } catch (RejectedExecutionException e) {
         // Server shutdown, don't spam the logs.
         failSilently();
       } catch (Exception e) {
-        fail("Failed to index change " + r.id(), true, e);
+        fail("Failed to index change " + id, true, e);
       }
     }
 
@@ -1733,6 +1733,14 @@ public class ChangeField {
       CUSTOM_KEYED_VALUES_SPEC =
           CUSTOM_KEYED_VALUES_FIELD.prefix(ChangeQueryBuilder.FIELD_CUSTOM_KEYED_VALUES);
 
+  /** Principals that may be able to read the change, see {@link ReadPrincipals}. */
+  public static final IndexedField<ChangeData, Iterable<String>> READ_PRINCIPAL_FIELD =
+      IndexedField.<ChangeData>iterableStringBuilder("ReadPrincipal")
+          .build(ChangeData::readPrincipals);
+
+  public static final IndexedField<ChangeData, Iterable<String>>.SearchSpec READ_PRINCIPAL_SPEC =
+      READ_PRINCIPAL_FIELD.exact(ChangeQueryBuilder.FIELD_READ_PRINCIPAL);
+
   @Nullable
   private static String getTopic(ChangeData cd) {
     Change c = cd.change();
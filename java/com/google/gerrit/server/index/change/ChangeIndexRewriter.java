@@ -239,7 +239,7 @@ public class ChangeIndexRewriter implements IndexRewriter<ChangeData> {
     } else if (rewritten.cardinality() == n) {
       // All children were rewritten.
       if (changeSource.cardinality() == n) {
-        return copy(in, newChildren);
+        return copy(in, newChildren, opts);
       }
       return in.copy(newChildren);
     }
@@ -267,8 +267,9 @@ public class ChangeIndexRewriter implements IndexRewriter<ChangeData> {
     if (isIndexed.cardinality() == 1) {
       int i = isIndexed.nextSetBit(0);
       Predicate<ChangeData> indexed = newChildren.remove(i);
-      newChildren.add(0, new IndexedChangeQuery(index, copy(indexed, indexed.getChildren()), opts));
-      return copy(in, newChildren);
+      newChildren.add(
+          0, new IndexedChangeQuery(index, copy(indexed, indexed.getChildren(), opts), opts));
+      return copy(in, newChildren, opts);
     }
 
     // Group all indexed predicates into a wrapped subtree.
@@ -285,16 +286,17 @@ public class ChangeIndexRewriter implements IndexRewriter<ChangeData> {
         all.add(c);
       }
     }
-    all.add(0, new IndexedChangeQuery(index, copy(in, indexed), opts));
-    return copy(in, all);
+    all.add(0, new IndexedChangeQuery(index, copy(in, indexed, opts), opts));
+    return copy(in, all, opts);
   }
 
-  private Predicate<ChangeData> copy(Predicate<ChangeData> in, List<Predicate<ChangeData>> all) {
+  private Predicate<ChangeData> copy(
+      Predicate<ChangeData> in, List<Predicate<ChangeData>> all, QueryOptions opts) {
     if (in instanceof AndPredicate) {
       Optional<Predicate<ChangeData>> atLeastOneChangeDataSource =
           all.stream().filter(p -> (p instanceof ChangeDataSource)).findAny();
       if (atLeastOneChangeDataSource.isPresent()) {
-        return new AndChangeSource(all, config);
+        return new AndChangeSource(all, opts.config());
       }
       Optional<Predicate<ChangeData>> atLeastOneCardinalPredicate =
           all.stream().filter(p -> (p instanceof HasCardinality)).findAny();
@@ -259,8 +259,16 @@ public class ChangeSchemaDefinitions extends SchemaDefinitions<ChangeData> {
           .build();
 
   /** Upgrade Lucene to 9.x requires reindexing. */
+  @Deprecated static final Schema<ChangeData> V85 = schema(V84);
+
+  /** Added new field {@link ChangeField#READ_PRINCIPAL_SPEC} to pre-filter change visibility. */
   @SuppressWarnings("deprecation")
-  static final Schema<ChangeData> V85 = schema(V84);
+  static final Schema<ChangeData> V86 =
+      new Schema.Builder<ChangeData>()
+          .add(V85)
+          .addIndexedFields(ChangeField.READ_PRINCIPAL_FIELD)
+          .addSearchSpecs(ChangeField.READ_PRINCIPAL_SPEC)
+          .build();
 
   /**
    * Name of the change index to be used when contacting index backends or loading configurations.
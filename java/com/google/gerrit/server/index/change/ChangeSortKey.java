@@ -0,0 +1,94 @@
+// Copyright (C) 2023 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.index.change;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ComparisonChain;
+import com.google.common.collect.Ordering;
+import com.google.gerrit.entities.Change;
+import com.google.gerrit.server.query.change.ChangeData;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Position of a change in the sort order of the change index.
+ *
+ * <p>Changes are sorted by their last updated timestamp, then by the timestamp when they were
+ * merged and then by their numeric ID, all descending. A sort key can be passed as {@link
+ * com.google.gerrit.index.QueryOptions#searchAfter()} to continue a search after the change that
+ * it was created for, if the index is configured with {@link
+ * com.google.gerrit.index.PaginationType#SEARCH_AFTER}.
+ *
+ * <p>Sort keys are serialized as {@code <updated>.<mergedOn>.<number>} with both timestamps in
+ * milliseconds, so that they can be handed out to clients as a cursor.
+ */
+@AutoValue
+public abstract class ChangeSortKey implements Comparable<ChangeSortKey> {
+  private static final Splitter SPLITTER = Splitter.on('.');
+
+  public static ChangeSortKey create(long updatedMillis, long mergedOnMillis, int changeNumber) {
+    return new AutoValue_ChangeSortKey(updatedMillis, mergedOnMillis, changeNumber);
+  }
+
+  /** Returns the sort key of a change, as it is stored in the index. */
+  public static ChangeSortKey of(ChangeData cd) {
+    Change change = cd.change();
+    // Only merged changes have the merged-on field, avoid loading the notes of open changes.
+    long mergedOn =
+        change.isMerged() ? cd.getMergedOn().map(Instant::toEpochMilli).orElse(0L) : 0L;
+    return create(change.getLastUpdatedOn().toEpochMilli(), mergedOn, cd.getVirtualId().get());
+  }
+
+  /**
+   * Parses a serialized sort key.
+   *
+   * @throws IllegalArgumentException if the sort key is malformed
+   */
+  public static ChangeSortKey parse(String str) {
+    List<String> parts = SPLITTER.splitToList(str);
+    if (parts.size() != 3) {
+      throw new IllegalArgumentException("invalid sort key: " + str);
+    }
+    try {
+      return create(
+          Long.parseLong(parts.get(0)),
+          Long.parseLong(parts.get(1)),
+          Integer.parseInt(parts.get(2)));
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("invalid sort key: " + str, e);
+    }
+  }
+
+  public abstract long updatedMillis();
+
+  public abstract long mergedOnMillis();
+
+  public abstract int changeNumber();
+
+  public String serialize() {
+    return updatedMillis() + "." + mergedOnMillis() + "." + changeNumber();
+  }
+
+  /** Orders sort keys like the index orders changes, i.e. the most recently updated first. */
+  @Override
+  public int compareTo(ChangeSortKey o) {
+    return ComparisonChain.start()
+        .compare(updatedMillis(), o.updatedMillis(), Ordering.natural().reverse())
+        .compare(mergedOnMillis(), o.mergedOnMillis(), Ordering.natural().reverse())
+        .compare(changeNumber(), o.changeNumber(), Ordering.natural().reverse())
+        .result();
+  }
+}
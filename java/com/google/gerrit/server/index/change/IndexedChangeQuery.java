@@ -102,14 +102,16 @@ public class IndexedChangeQuery extends IndexedQuery<Change.Id, ChangeData>
   @VisibleForTesting
   static QueryOptions convertOptions(QueryOptions opts) {
     opts = opts.convertForBackend();
-    return IndexedChangeQuery.createOptions(
-        opts.config(),
-        opts.start(),
-        opts.pageSize(),
-        opts.pageSizeMultiplier(),
-        opts.limit(),
-        opts.allowIncompleteResults(),
-        opts.fields());
+    QueryOptions converted =
+        IndexedChangeQuery.createOptions(
+            opts.config(),
+            opts.start(),
+            opts.pageSize(),
+            opts.pageSizeMultiplier(),
+            opts.limit(),
+            opts.allowIncompleteResults(),
+            opts.fields());
+    return opts.searchAfter() != null ? converted.withSearchAfter(opts.searchAfter()) : converted;
   }
 
   private final Map<ChangeData, DataSource<ChangeData>> fromSource;
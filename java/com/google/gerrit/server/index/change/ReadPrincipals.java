@@ -0,0 +1,158 @@
+// Copyright (C) 2023 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.index.change;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.gerrit.entities.Account;
+import com.google.gerrit.entities.AccountGroup;
+import com.google.gerrit.entities.Change;
+import com.google.gerrit.entities.Permission;
+import com.google.gerrit.entities.PermissionRule;
+import com.google.gerrit.entities.RefNames;
+import com.google.gerrit.server.CurrentUser;
+import com.google.gerrit.server.group.SystemGroupBackend;
+import com.google.gerrit.server.project.RefPatternMatcher;
+import com.google.gerrit.server.project.SectionMatcher;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import org.eclipse.jgit.lib.Constants;
+
+/**
+ * Principals that may be able to read a change.
+ *
+ * <p>The principals of a change are stored in the change index, so that change queries can be
+ * restricted to changes that have at least one principal in common with the calling user. This
+ * lets the index drop most changes that are not visible to the user, before they are loaded and
+ * checked by {@link com.google.gerrit.server.query.change.ChangeIsVisibleToPredicate}.
+ *
+ * <p>The principals of a change are a superset of the users who can read it: {@code DENY} and
+ * {@code BLOCK} rules as well as exclusive permissions are ignored, since they can only restrict
+ * visibility further. Changes for which the principals can't be determined from the access
+ * sections alone get the {@link #ANY} principal that is matched by all users. This includes
+ * changes that are readable by groups whose members can't be enumerated, since {@link
+ * com.google.gerrit.server.account.GroupMembership#getKnownGroups()} may not list them for the
+ * user.
+ */
+public class ReadPrincipals {
+  /** Principal that is matched by all users. */
+  public static final String ANY = "*";
+
+  /**
+   * Returns the principals of a change.
+   *
+   * @param sections all access sections of the change's project, including inherited ones
+   * @param owners owner groups of the change's project, including inherited ones
+   * @param change the change
+   * @param reviewers reviewers and CCs of the change
+   */
+  public static ImmutableSet<String> forChange(
+      List<SectionMatcher> sections,
+      Set<AccountGroup.UUID> owners,
+      Change change,
+      Collection<Account.Id> reviewers) {
+    String ref = change.getDest().branch();
+    if (ref.startsWith(Constants.R_TAGS) || RefNames.isGerritRef(ref)) {
+      // Visibility of these refs is not determined by the access sections only.
+      return ImmutableSet.of(ANY);
+    }
+
+    ImmutableSet.Builder<String> principals = ImmutableSet.builder();
+    String permission;
+    if (change.isPrivate()) {
+      // Private changes are visible to their owner, reviewers and users who can view private
+      // changes, in addition to requiring read access on the destination branch.
+      principals.add(account(change.getOwner()));
+      reviewers.forEach(r -> principals.add(account(r)));
+      permission = Permission.VIEW_PRIVATE_CHANGES;
+    } else {
+      permission = Permission.READ;
+    }
+
+    for (SectionMatcher section : sections) {
+      Permission p = section.getSection().getPermission(permission);
+      if (p == null || !matches(section.getMatcher(), ref)) {
+        continue;
+      }
+      if (section.getMatcher() instanceof RefPatternMatcher.ExpandParameters) {
+        // Whether the section applies depends on the user.
+        return ImmutableSet.of(ANY);
+      }
+      for (PermissionRule rule : p.getRules()) {
+        AccountGroup.UUID uuid = rule.getGroup().getUUID();
+        if (rule.isDeny() || rule.isBlock() || uuid == null) {
+          continue;
+        }
+        if (SystemGroupBackend.PROJECT_OWNERS.equals(uuid)) {
+          // Project Owners is not a group of the user, but matches members of the owner groups.
+          for (AccountGroup.UUID owner : owners) {
+            if (!isEnumerable(owner)) {
+              return ImmutableSet.of(ANY);
+            }
+            principals.add(group(owner));
+          }
+        } else if (SystemGroupBackend.CHANGE_OWNER.equals(uuid)) {
+          principals.add(account(change.getOwner()));
+        } else if (isEnumerable(uuid)) {
+          principals.add(group(uuid));
+        } else {
+          return ImmutableSet.of(ANY);
+        }
+      }
+    }
+    return principals.build();
+  }
+
+  /** Returns the principals of the given user. */
+  public static ImmutableSet<String> forUser(CurrentUser user) {
+    ImmutableSet.Builder<String> principals = ImmutableSet.builder();
+    principals.add(ANY);
+    if (user.isIdentifiedUser()) {
+      principals.add(account(user.getAccountId()));
+    }
+    user.getEffectiveGroups().getKnownGroups().forEach(g -> principals.add(group(g)));
+    return principals.build();
+  }
+
+  /**
+   * Whether {@link com.google.gerrit.server.account.GroupMembership#getKnownGroups()} lists the
+   * group for all of its members. This is the case for internal groups, including their external
+   * subgroups, and for the system groups that are not resolved per project or change.
+   */
+  private static boolean isEnumerable(AccountGroup.UUID uuid) {
+    return uuid.isInternalGroup()
+        || (SystemGroupBackend.isSystemGroup(uuid)
+            && !SystemGroupBackend.PROJECT_OWNERS.equals(uuid)
+            && !SystemGroupBackend.CHANGE_OWNER.equals(uuid));
+  }
+
+  private static boolean matches(RefPatternMatcher matcher, String ref) {
+    if (matcher instanceof RefPatternMatcher.ExpandParameters) {
+      return ((RefPatternMatcher.ExpandParameters) matcher).matchPrefix(ref);
+    }
+    // Non-parameterized patterns don't depend on the user.
+    return matcher.match(ref, null);
+  }
+
+  private static String account(Account.Id id) {
+    return "a/" + id.get();
+  }
+
+  private static String group(AccountGroup.UUID uuid) {
+    return "g/" + uuid.get();
+  }
+
+  private ReadPrincipals() {}
+}
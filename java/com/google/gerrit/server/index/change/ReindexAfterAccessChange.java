@@ -0,0 +1,240 @@
+// Copyright (C) 2023 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.index.change;
+
+import static com.google.gerrit.server.git.QueueProvider.QueueType.BATCH;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.flogger.FluentLogger;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.gerrit.entities.AccessSection;
+import com.google.gerrit.entities.Permission;
+import com.google.gerrit.entities.PermissionRule;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.entities.RefNames;
+import com.google.gerrit.extensions.common.ProjectInfo;
+import com.google.gerrit.extensions.events.GitBatchRefUpdateListener;
+import com.google.gerrit.server.config.GerritServerConfig;
+import com.google.gerrit.server.git.GitRepositoryManager;
+import com.google.gerrit.server.git.MultiProgressMonitor;
+import com.google.gerrit.server.git.MultiProgressMonitor.Task;
+import com.google.gerrit.server.git.MultiProgressMonitor.TaskKind;
+import com.google.gerrit.server.index.IndexExecutor;
+import com.google.gerrit.server.project.ChildProjects;
+import com.google.gerrit.server.project.ProjectConfig;
+import com.google.gerrit.server.util.ManualRequestContext;
+import com.google.gerrit.server.util.OneOffRequestContext;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import org.eclipse.jgit.errors.ConfigInvalidException;
+import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.util.io.NullOutputStream;
+
+/**
+ * Listener for project config updates that reindexes all changes of the project and its child
+ * projects if the permissions from which the {@link ChangeField#READ_PRINCIPAL_FIELD} of changes
+ * is computed were modified. This includes the owners of the project, since read permissions
+ * granted to Project Owners are indexed as permissions of the owner groups.
+ *
+ * <p>Only active if {@code index.prefilterChangeVisibility} is enabled. Affected projects are
+ * queued and reindexed one at a time, so that an update of a project with many child projects, such
+ * as All-Projects, doesn't flood the index executor. A project that is still queued is not queued
+ * again.
+ */
+@Singleton
+public class ReindexAfterAccessChange implements GitBatchRefUpdateListener {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  private static final ImmutableSet<String> INDEXED_PERMISSIONS =
+      ImmutableSet.of(Permission.READ, Permission.VIEW_PRIVATE_CHANGES, Permission.OWNER);
+
+  private final GitRepositoryManager repoManager;
+  private final ProjectConfig.Factory projectConfigFactory;
+  private final OneOffRequestContext requestContext;
+  private final Provider<ChildProjects> childProjects;
+  private final ChangeIndexCollection indexes;
+  private final ChangeIndexer indexer;
+  private final Provider<AllChangesIndexer> allChangesIndexerProvider;
+  private final MultiProgressMonitor.Factory multiProgressMonitorFactory;
+  private final ListeningExecutorService executor;
+  private final boolean enabled;
+
+  /** Projects whose changes wait to be reindexed, guarded by itself. */
+  private final Set<Project.NameKey> queued = new LinkedHashSet<>();
+
+  /** Whether a task is reindexing the {@link #queued} projects, guarded by {@link #queued}. */
+  private boolean draining;
+
+  @Inject
+  ReindexAfterAccessChange(
+      @GerritServerConfig Config cfg,
+      GitRepositoryManager repoManager,
+      ProjectConfig.Factory projectConfigFactory,
+      OneOffRequestContext requestContext,
+      Provider<ChildProjects> childProjects,
+      ChangeIndexCollection indexes,
+      ChangeIndexer indexer,
+      Provider<AllChangesIndexer> allChangesIndexerProvider,
+      MultiProgressMonitor.Factory multiProgressMonitorFactory,
+      @IndexExecutor(BATCH) ListeningExecutorService executor) {
+    this.repoManager = repoManager;
+    this.projectConfigFactory = projectConfigFactory;
+    this.requestContext = requestContext;
+    this.childProjects = childProjects;
+    this.indexes = indexes;
+    this.indexer = indexer;
+    this.allChangesIndexerProvider = allChangesIndexerProvider;
+    this.multiProgressMonitorFactory = multiProgressMonitorFactory;
+    this.executor = executor;
+    this.enabled = cfg.getBoolean("index", null, "prefilterChangeVisibility", false);
+  }
+
+  @Override
+  public void onGitBatchRefUpdate(GitBatchRefUpdateListener.Event event) {
+    if (!enabled
+        || indexes.getWriteIndexes().stream()
+        .noneMatch(i -> i.getSchema().hasField(ChangeField.READ_PRINCIPAL_SPEC))) {
+      return;
+    }
+    Project.NameKey project = Project.nameKey(event.getProjectName());
+    for (UpdatedRef ref : event.getUpdatedRefs()) {
+      if (ref.getRefName().equals(RefNames.REFS_CONFIG) && !ref.isCreate() && !ref.isDelete()) {
+        @SuppressWarnings("unused")
+        Future<?> possiblyIgnoredError = executor.submit(new ReindexIfAccessChanged(project, ref));
+      }
+    }
+  }
+
+  private void enqueue(List<Project.NameKey> projects) {
+    synchronized (queued) {
+      queued.addAll(projects);
+      if (draining) {
+        return;
+      }
+      draining = true;
+    }
+    @SuppressWarnings("unused")
+    Future<?> possiblyIgnoredError = executor.submit(this::reindexQueued);
+  }
+
+  private void reindexQueued() {
+    Task mpt =
+        multiProgressMonitorFactory
+            .create(ByteStreams.nullOutputStream(), TaskKind.INDEXING, "Reindexing projects")
+            .beginSubTask("", MultiProgressMonitor.UNKNOWN);
+    while (true) {
+      Project.NameKey project;
+      synchronized (queued) {
+        Iterator<Project.NameKey> it = queued.iterator();
+        if (!it.hasNext()) {
+          draining = false;
+          return;
+        }
+        project = it.next();
+        it.remove();
+      }
+      try (ManualRequestContext ctx = requestContext.open()) {
+        AllChangesIndexer allChangesIndexer = allChangesIndexerProvider.get();
+        allChangesIndexer.setVerboseOut(NullOutputStream.INSTANCE);
+        Callable<Void> task = allChangesIndexer.reindexProject(indexer, project, mpt, mpt);
+        if (task != null) {
+          task.call();
+        }
+      } catch (Exception e) {
+        logger.atSevere().withCause(e).log(
+            "Failed to reindex changes of %s after access change", project);
+      }
+    }
+  }
+
+  private class ReindexIfAccessChanged implements Callable<Void> {
+    private final Project.NameKey project;
+    private final UpdatedRef updatedRef;
+
+    ReindexIfAccessChanged(Project.NameKey project, UpdatedRef updatedRef) {
+      this.project = project;
+      this.updatedRef = updatedRef;
+    }
+
+    @Override
+    public Void call() throws Exception {
+      try (ManualRequestContext ctx = requestContext.open()) {
+        try (Repository repo = repoManager.openRepository(project)) {
+          if (readRules(repo, updatedRef.getOldObjectId())
+              .equals(readRules(repo, updatedRef.getNewObjectId()))) {
+            return null;
+          }
+        }
+
+        List<Project.NameKey> projects = new ArrayList<>();
+        projects.add(project);
+        for (ProjectInfo child : childProjects.get().list(project)) {
+          projects.add(Project.nameKey(child.name));
+        }
+        logger.atInfo().log(
+            "Read permissions of %s changed, reindexing changes of %d projects",
+            project, projects.size());
+        enqueue(projects);
+        return null;
+      } catch (Exception e) {
+        logger.atSevere().withCause(e).log("Failed to reindex changes after %s", this);
+        throw e;
+      }
+    }
+
+    /** Returns the rules of the project config from which the read principals are computed. */
+    private ImmutableSet<String> readRules(Repository repo, String revision)
+        throws IOException, ConfigInvalidException {
+      ProjectConfig cfg = projectConfigFactory.create(project);
+      cfg.load(project, repo, ObjectId.fromString(revision));
+      ImmutableSet.Builder<String> rules = ImmutableSet.builder();
+      rules.add("parent " + cfg.getProject().getParent());
+      for (AccessSection section : cfg.getAccessSections()) {
+        for (String permission : INDEXED_PERMISSIONS) {
+          Permission p = section.getPermission(permission);
+          if (p == null) {
+            continue;
+          }
+          for (PermissionRule rule : p.getRules()) {
+            if (!rule.isDeny() && !rule.isBlock()) {
+              rules.add(section.getName() + " " + permission + " " + rule.getGroup().getUUID());
+            }
+          }
+        }
+      }
+      return rules.build();
+    }
+
+    @Override
+    public String toString() {
+      return "Reindex changes after update of "
+          + updatedRef.getRefName()
+          + " in project "
+          + project;
+    }
+  }
+}
@@ -0,0 +1,191 @@
+// Copyright (C) 2023 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.logging;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.flogger.FluentLogger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Bounded buffer that hands records over to a consumer in batches on a dedicated thread.
+ *
+ * <p>Producers never take a lock: a slot is reserved by an atomic counter and the record is
+ * appended to a non-blocking queue. If all slots are taken the {@link OverflowPolicy} decides
+ * whether the record is dropped or whether the producer waits until the consumer caught up.
+ *
+ * <p>Records that are added before {@link #start()} are delivered once the sink is started. Records
+ * that are added after {@link #stop()} are delivered synchronously by the calling thread.
+ *
+ * @param <T> type of the records
+ */
+public class BatchingSink<T> {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  private static final long IDLE_WAIT_NANOS = MILLISECONDS.toNanos(100);
+  private static final long FULL_WAIT_NANOS = MICROSECONDS.toNanos(100);
+
+  /** What to do with a record if the sink is full. */
+  public enum OverflowPolicy {
+    /** Discard the record. */
+    DROP,
+
+    /** Block the producer until there is space. */
+    BLOCK
+  }
+
+  private final int capacity;
+  private final int batchSize;
+  private final OverflowPolicy overflowPolicy;
+  private final Consumer<List<T>> consumer;
+  private final Queue<T> queue = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger size = new AtomicInteger();
+  private final AtomicLong dropped = new AtomicLong();
+  private final Thread thread;
+  private volatile boolean started;
+  private volatile boolean stopped;
+
+  /**
+   * @param name name of the delivery thread
+   * @param capacity maximum number of records that are buffered
+   * @param batchSize maximum number of records that are handed over to the consumer at once
+   * @param overflowPolicy what to do with records if the sink is full
+   * @param consumer consumer that receives the records in the order in which they were added
+   */
+  public BatchingSink(
+      String name,
+      int capacity,
+      int batchSize,
+      OverflowPolicy overflowPolicy,
+      Consumer<List<T>> consumer) {
+    checkArgument(capacity > 0, "capacity must be positive: %s", capacity);
+    checkArgument(batchSize > 0, "batchSize must be positive: %s", batchSize);
+    this.capacity = capacity;
+    this.batchSize = batchSize;
+    this.overflowPolicy = overflowPolicy;
+    this.consumer = consumer;
+    this.thread = new Thread(this::run, name);
+    this.thread.setDaemon(true);
+  }
+
+  /** Starts the delivery thread. */
+  public void start() {
+    started = true;
+    thread.start();
+  }
+
+  /** Delivers all buffered records and stops the delivery thread. */
+  public void stop() {
+    stopped = true;
+    if (started) {
+      LockSupport.unpark(thread);
+      try {
+        thread.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    drain();
+  }
+
+  /**
+   * Adds a record.
+   *
+   * @param record the record
+   * @return whether the record was accepted, {@code false} if it was dropped because the sink is
+   *     full
+   */
+  public boolean add(T record) {
+    if (stopped) {
+      deliver(ImmutableList.of(record));
+      return true;
+    }
+    while (true) {
+      int n = size.get();
+      if (n < capacity) {
+        if (size.compareAndSet(n, n + 1)) {
+          queue.add(record);
+          if (stopped) {
+            // stop() may have drained the queue before the record was added.
+            drain();
+          } else if (n == 0) {
+            LockSupport.unpark(thread);
+          }
+          return true;
+        }
+      } else if (overflowPolicy == OverflowPolicy.DROP || !started || stopped) {
+        dropped.incrementAndGet();
+        return false;
+      } else {
+        LockSupport.parkNanos(this, FULL_WAIT_NANOS);
+      }
+    }
+  }
+
+  /** Returns the number of buffered records. */
+  public int size() {
+    return size.get();
+  }
+
+  /** Returns the number of records that were dropped because the sink was full. */
+  public long dropped() {
+    return dropped.get();
+  }
+
+  private void run() {
+    while (!stopped) {
+      if (deliverBatch() == 0) {
+        LockSupport.parkNanos(this, IDLE_WAIT_NANOS);
+      }
+    }
+  }
+
+  /** Delivers all buffered records on the calling thread, once the delivery thread is stopped. */
+  private synchronized void drain() {
+    while (deliverBatch() > 0) {}
+  }
+
+  private int deliverBatch() {
+    List<T> batch = new ArrayList<>(Math.min(batchSize, size.get()));
+    T record;
+    while (batch.size() < batchSize && (record = queue.poll()) != null) {
+      batch.add(record);
+    }
+    if (batch.isEmpty()) {
+      return 0;
+    }
+    size.addAndGet(-batch.size());
+    deliver(batch);
+    return batch.size();
+  }
+
+  private void deliver(List<T> batch) {
+    try {
+      consumer.accept(batch);
+    } catch (RuntimeException e) {
+      logger.atWarning().withCause(e).log("Failed to deliver %d records", batch.size());
+    }
+  }
+}
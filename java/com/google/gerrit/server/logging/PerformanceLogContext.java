@@ -14,11 +14,15 @@
 
 package com.google.gerrit.server.logging;
 
+import static com.google.common.collect.ImmutableList.toImmutableList;
+
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.flogger.FluentLogger;
+import com.google.gerrit.common.Nullable;
 import com.google.gerrit.extensions.registration.DynamicSet;
 import com.google.gerrit.extensions.registration.Extension;
+import java.util.List;
 import org.eclipse.jgit.lib.Config;
 
 /**
@@ -32,6 +36,10 @@ import org.eclipse.jgit.lib.Config;
  * consume the captured performance log records. Otherwise captured performance log records might
  * leak into other requests that are executed by the same thread (if a thread pool is used to
  * process requests).
+ *
+ * <p>If an asynchronous sink is given, the performance log records are handed over to the {@link
+ * PerformanceLogger}s on the sink's delivery thread, so that slow performance loggers don't delay
+ * the request.
  */
 public class PerformanceLogContext implements AutoCloseable {
   private static final FluentLogger logger = FluentLogger.forEnclosingClass();
@@ -41,12 +49,22 @@ public class PerformanceLogContext implements AutoCloseable {
   // a performance log in the performance log (endless loop).
   private final DynamicSet<PerformanceLogger> performanceLoggers;
 
+  @Nullable private final BatchingSink<ImmutableList<PerformanceLogRecord>> sink;
+
   private final boolean oldPerformanceLogging;
   private final ImmutableList<PerformanceLogRecord> oldPerformanceLogRecords;
 
   public PerformanceLogContext(
       Config gerritConfig, DynamicSet<PerformanceLogger> performanceLoggers) {
+    this(gerritConfig, performanceLoggers, null);
+  }
+
+  public PerformanceLogContext(
+      Config gerritConfig,
+      DynamicSet<PerformanceLogger> performanceLoggers,
+      @Nullable BatchingSink<ImmutableList<PerformanceLogRecord>> sink) {
     this.performanceLoggers = performanceLoggers;
+    this.sink = sink;
 
     // Just in case remember the old state and reset performance log entries.
     this.oldPerformanceLogging = LoggingContext.getInstance().isPerformanceLogging();
@@ -65,7 +83,13 @@ public class PerformanceLogContext implements AutoCloseable {
   @Override
   public void close() {
     if (LoggingContext.getInstance().isPerformanceLogging()) {
-      runEach(performanceLoggers, LoggingContext.getInstance().getPerformanceLogRecords());
+      ImmutableList<PerformanceLogRecord> records =
+          LoggingContext.getInstance().getPerformanceLogRecords();
+      if (sink == null) {
+        runEach(performanceLoggers, records);
+      } else if (!records.isEmpty()) {
+        sink.add(records);
+      }
     }
 
     // Restore old state. Required to support nesting of PerformanceLogContext's.
@@ -73,6 +97,33 @@ public class PerformanceLogContext implements AutoCloseable {
     LoggingContext.getInstance().setPerformanceLogRecords(oldPerformanceLogRecords);
   }
 
+  /**
+   * Creates a sink that hands performance log records over to the performance loggers on a
+   * dedicated thread.
+   *
+   * @param capacity maximum number of requests for which performance log records are buffered
+   * @param batchSize maximum number of requests for which performance log records are handed over
+   *     at once
+   * @param overflowPolicy what to do with performance log records if the sink is full
+   * @param performanceLoggers the performance loggers that should be invoked
+   * @return the sink, not started yet
+   */
+  public static BatchingSink<ImmutableList<PerformanceLogRecord>> newSink(
+      int capacity,
+      int batchSize,
+      BatchingSink.OverflowPolicy overflowPolicy,
+      DynamicSet<PerformanceLogger> performanceLoggers) {
+    return new BatchingSink<>(
+        "PerformanceLogger",
+        capacity,
+        batchSize,
+        overflowPolicy,
+        batch ->
+            runEach(
+                performanceLoggers,
+                batch.stream().flatMap(List::stream).collect(toImmutableList())));
+  }
+
   /**
    * Invokes all performance loggers.
    *
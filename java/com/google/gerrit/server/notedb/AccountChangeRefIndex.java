@@ -0,0 +1,401 @@
+// Copyright (C) 2023 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.notedb;
+
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.flogger.FluentLogger;
+import com.google.gerrit.common.Nullable;
+import com.google.gerrit.entities.Account;
+import com.google.gerrit.entities.Change;
+import com.google.gerrit.entities.RefNames;
+import com.google.gerrit.extensions.events.GitBatchRefUpdateListener;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gerrit.extensions.registration.DynamicSet;
+import com.google.gerrit.lifecycle.LifecycleModule;
+import com.google.gerrit.server.config.AllUsersName;
+import com.google.gerrit.server.config.GerritServerConfig;
+import com.google.gerrit.server.config.SitePaths;
+import com.google.gerrit.server.git.GitRepositoryManager;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiFunction;
+import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+
+/**
+ * In-memory index from accounts to the changes that they starred or have draft comments on.
+ *
+ * <p>The star and draft comment refs in {@code All-Users} are sharded by change, so finding the
+ * changes of one account requires listing these refs of all accounts. This index inverts them. It
+ * is built from the refs in the background when the server starts and is maintained from the
+ * {@link GitBatchRefUpdateListener} events on {@code All-Users}. If {@code cache.directory} is set,
+ * it is written to it on shutdown, so that it can be used right away after the next start while it
+ * is rebuilt.
+ *
+ * <p>Refs that are modified without an event, e.g. by another server that shares the repository,
+ * are only picked up by the next rebuild. The changes found in the index are verified against the
+ * refs, so that such updates may only cause changes to be missed. Setups that share {@code
+ * All-Users} between servers should disable the index with {@code noteDb.indexAccountChangeRefs}.
+ */
+@Singleton
+public class AccountChangeRefIndex implements LifecycleListener, GitBatchRefUpdateListener {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  private static final int FILE_MAGIC = 0x47414352; // "GACR"
+  private static final int FILE_VERSION = 1;
+  @VisibleForTesting static final String FILE_NAME = "account_change_refs.index";
+
+  public static class Module extends LifecycleModule {
+    @Override
+    protected void configure() {
+      listener().to(AccountChangeRefIndex.class);
+      DynamicSet.bind(binder(), GitBatchRefUpdateListener.class).to(AccountChangeRefIndex.class);
+    }
+  }
+
+  /** The refs of an account and a change that are indexed. */
+  enum Kind {
+    STAR(RefNames.REFS_STARRED_CHANGES, RefNames::refsStarredChanges),
+    DRAFT(RefNames.REFS_DRAFT_COMMENTS, RefNames::refsDraftComments);
+
+    private final String prefix;
+    private final BiFunction<Change.Id, Account.Id, String> refName;
+
+    Kind(String prefix, BiFunction<Change.Id, Account.Id, String> refName) {
+      this.prefix = prefix;
+      this.refName = refName;
+    }
+
+    @Nullable
+    static Kind of(String refName) {
+      for (Kind kind : values()) {
+        if (refName.startsWith(kind.prefix)) {
+          return kind;
+        }
+      }
+      return null;
+    }
+  }
+
+  /**
+   * Sorted change numbers by account and kind.
+   *
+   * <p>The arrays are never modified but replaced, so that they can be read without locking.
+   */
+  @VisibleForTesting
+  static class Entries {
+    private final Map<Kind, ConcurrentMap<Account.Id, int[]>> byKind = new EnumMap<>(Kind.class);
+
+    Entries() {
+      for (Kind kind : Kind.values()) {
+        byKind.put(kind, new ConcurrentHashMap<>());
+      }
+    }
+
+    int[] get(Kind kind, Account.Id accountId) {
+      int[] changes = byKind.get(kind).get(accountId);
+      return changes != null ? changes : new int[0];
+    }
+
+    void update(String refName, boolean exists) {
+      Kind kind = Kind.of(refName);
+      Change.Id changeId = Change.Id.fromAllUsersRef(refName);
+      Account.Id accountId = Account.Id.fromRefSuffix(refName);
+      if (kind == null || changeId == null || accountId == null) {
+        return;
+      }
+      byKind
+          .get(kind)
+          .compute(
+              accountId,
+              (k, changes) ->
+                  exists ? add(changes, changeId.get()) : remove(changes, changeId.get()));
+    }
+
+    private static int[] add(@Nullable int[] changes, int change) {
+      if (changes == null) {
+        return new int[] {change};
+      }
+      int i = Arrays.binarySearch(changes, change);
+      if (i >= 0) {
+        return changes;
+      }
+      int pos = -i - 1;
+      int[] result = new int[changes.length + 1];
+      System.arraycopy(changes, 0, result, 0, pos);
+      result[pos] = change;
+      System.arraycopy(changes, pos, result, pos + 1, changes.length - pos);
+      return result;
+    }
+
+    @Nullable
+    private static int[] remove(@Nullable int[] changes, int change) {
+      if (changes == null) {
+        return null;
+      }
+      int pos = Arrays.binarySearch(changes, change);
+      if (pos < 0) {
+        return changes;
+      }
+      if (changes.length == 1) {
+        return null;
+      }
+      int[] result = new int[changes.length - 1];
+      System.arraycopy(changes, 0, result, 0, pos);
+      System.arraycopy(changes, pos + 1, result, pos, result.length - pos);
+      return result;
+    }
+
+    static Entries build(Repository allUsersRepo) throws IOException {
+      Entries entries = new Entries();
+      for (Kind kind : Kind.values()) {
+        Map<Account.Id, List<Integer>> changes = new HashMap<>();
+        for (Ref ref : allUsersRepo.getRefDatabase().getRefsByPrefix(kind.prefix)) {
+          Change.Id changeId = Change.Id.fromAllUsersRef(ref.getName());
+          Account.Id accountId = Account.Id.fromRefSuffix(ref.getName());
+          if (changeId != null && accountId != null) {
+            changes.computeIfAbsent(accountId, k -> new ArrayList<>()).add(changeId.get());
+          }
+        }
+        ConcurrentMap<Account.Id, int[]> byAccount = entries.byKind.get(kind);
+        changes.forEach(
+            (accountId, ids) ->
+                byAccount.put(
+                    accountId,
+                    ids.stream().mapToInt(Integer::intValue).sorted().distinct().toArray()));
+      }
+      return entries;
+    }
+
+    void write(DataOutputStream out) throws IOException {
+      out.writeInt(FILE_MAGIC);
+      out.writeInt(FILE_VERSION);
+      for (Kind kind : Kind.values()) {
+        // Copy the map, so that the number of accounts matches the written entries.
+        Map<Account.Id, int[]> byAccount = new HashMap<>(byKind.get(kind));
+        out.writeInt(byAccount.size());
+        for (Map.Entry<Account.Id, int[]> e : byAccount.entrySet()) {
+          out.writeInt(e.getKey().get());
+          out.writeInt(e.getValue().length);
+          for (int change : e.getValue()) {
+            out.writeInt(change);
+          }
+        }
+      }
+    }
+
+    @Nullable
+    static Entries read(DataInputStream in) throws IOException {
+      if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) {
+        return null;
+      }
+      Entries entries = new Entries();
+      for (Kind kind : Kind.values()) {
+        ConcurrentMap<Account.Id, int[]> byAccount = entries.byKind.get(kind);
+        int accounts = in.readInt();
+        for (int i = 0; i < accounts; i++) {
+          Account.Id accountId = Account.id(in.readInt());
+          int[] changes = new int[in.readInt()];
+          for (int j = 0; j < changes.length; j++) {
+            changes[j] = in.readInt();
+          }
+          byAccount.put(accountId, changes);
+        }
+      }
+      return entries;
+    }
+  }
+
+  private final GitRepositoryManager repoManager;
+  private final AllUsersName allUsers;
+  private final boolean enabled;
+  /** File the index is persisted in, or {@code null} if it is only kept in memory. */
+  @Nullable private final Path file;
+
+  /** The index, or {@code null} if it is not available. */
+  @Nullable private volatile Entries entries;
+
+  /**
+   * Latest state of the refs that were updated while the index is being built, or {@code null} if
+   * it isn't being built. Guarded by {@code this}.
+   */
+  @Nullable private Map<String, Boolean> pending;
+
+  @Inject
+  AccountChangeRefIndex(
+      @GerritServerConfig Config cfg,
+      SitePaths site,
+      GitRepositoryManager repoManager,
+      AllUsersName allUsers) {
+    this.repoManager = repoManager;
+    this.allUsers = allUsers;
+    this.enabled = cfg.getBoolean("noteDb", null, "indexAccountChangeRefs", true);
+    Path cacheDir = site.resolve(cfg.getString("cache", null, "directory"));
+    this.file = cacheDir != null ? cacheDir.resolve(FILE_NAME) : null;
+  }
+
+  @Override
+  public void start() {
+    if (!enabled) {
+      return;
+    }
+    entries = read();
+    synchronized (this) {
+      pending = new HashMap<>();
+    }
+    Thread builder = new Thread(this::build, "AccountChangeRefIndex");
+    builder.setDaemon(true);
+    builder.start();
+  }
+
+  @Override
+  public void stop() {
+    Entries current = entries;
+    if (current != null && file != null) {
+      write(current);
+    }
+  }
+
+  /**
+   * Returns the changes that the account starred or has draft comments on.
+   *
+   * @param allUsersRepo the {@code All-Users} repository, used to verify the indexed changes
+   * @param kind the kind of refs
+   * @param accountId the account
+   * @return the changes, or empty if the index is not available and the refs must be scanned
+   */
+  Optional<ImmutableSet<Change.Id>> get(Repository allUsersRepo, Kind kind, Account.Id accountId)
+      throws IOException {
+    Entries current = entries;
+    if (current == null) {
+      return Optional.empty();
+    }
+    int[] changes = current.get(kind, accountId);
+    if (changes.length == 0) {
+      return Optional.of(ImmutableSet.of());
+    }
+    String[] refNames = new String[changes.length];
+    for (int i = 0; i < changes.length; i++) {
+      refNames[i] = kind.refName.apply(Change.id(changes[i]), accountId);
+    }
+    return Optional.of(
+        allUsersRepo.getRefDatabase().exactRef(refNames).keySet().stream()
+            .map(Change.Id::fromAllUsersRef)
+            .collect(toImmutableSet()));
+  }
+
+  @Override
+  public void onGitBatchRefUpdate(GitBatchRefUpdateListener.Event event) {
+    if (!allUsers.get().equals(event.getProjectName())) {
+      return;
+    }
+    for (GitBatchRefUpdateListener.UpdatedRef u : event.getUpdatedRefs()) {
+      if (Kind.of(u.getRefName()) == null) {
+        continue;
+      }
+      boolean exists = !ObjectId.zeroId().name().equals(u.getNewObjectId());
+      synchronized (this) {
+        if (pending != null) {
+          pending.put(u.getRefName(), exists);
+        }
+        Entries current = entries;
+        if (current != null) {
+          current.update(u.getRefName(), exists);
+        }
+      }
+    }
+  }
+
+  private void build() {
+    long start = System.nanoTime();
+    Entries built;
+    try (Repository repo = repoManager.openRepository(allUsers)) {
+      built = Entries.build(repo);
+    } catch (IOException | RuntimeException e) {
+      logger.atWarning().withCause(e).log(
+          "Cannot build account change ref index, falling back to scanning refs");
+      synchronized (this) {
+        pending = null;
+        entries = null;
+      }
+      return;
+    }
+    synchronized (this) {
+      pending.forEach(built::update);
+      pending = null;
+      entries = built;
+    }
+    logger.atInfo().log(
+        "Built account change ref index in %d ms", (System.nanoTime() - start) / 1_000_000);
+  }
+
+  @Nullable
+  private Entries read() {
+    if (file == null) {
+      return null;
+    }
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+      return Entries.read(in);
+    } catch (NoSuchFileException e) {
+      return null;
+    } catch (IOException e) {
+      logger.atWarning().withCause(e).log("Cannot read account change ref index %s", file);
+      return null;
+    }
+  }
+
+  private void write(Entries current) {
+    try {
+      Files.createDirectories(file.getParent());
+      Path tmp = Files.createTempFile(file.getParent(), FILE_NAME, ".tmp");
+      try {
+        try (DataOutputStream out =
+            new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+          current.write(out);
+        }
+        Files.move(tmp, file, ATOMIC_MOVE, REPLACE_EXISTING);
+      } finally {
+        Files.deleteIfExists(tmp);
+      }
+    } catch (IOException e) {
+      logger.atWarning().withCause(e).log("Cannot write account change ref index %s", file);
+    }
+  }
+}
@@ -210,7 +210,8 @@ public class ChangeNoteUtil {
     Optional<Account.Id> account = noteDbUtil.parseIdent(personIdent);
     return account.map(
         id ->
-            AttentionSetUpdate.createFromRead(timestamp, id, inNoteDb.operation, inNoteDb.reason));
+            AttentionSetUpdate.createFromRead(
+                timestamp, id, inNoteDb.operation, NoteDbUtil.intern(inNoteDb.reason)));
   }
 
   String attentionSetUpdateToJson(AttentionSetUpdate attentionSetUpdate) {
@@ -54,6 +54,8 @@ import com.google.gerrit.server.ReviewerByEmailSet;
 import com.google.gerrit.server.ReviewerSet;
 import com.google.gerrit.server.ReviewerStatusUpdate;
 import com.google.gerrit.server.git.RefCache;
+import com.google.gerrit.server.git.RefSnapshot;
+import com.google.gerrit.server.git.RefSnapshotCache;
 import com.google.gerrit.server.project.NoSuchChangeException;
 import com.google.gerrit.server.project.ProjectCache;
 import com.google.gerrit.server.query.change.ChangeData;
@@ -111,8 +113,20 @@ public class ChangeNotes extends AbstractChangeNotes<ChangeNotes> {
 
     public static ImmutableMap<Change.Id, ObjectId> scanChangeIds(Repository repo)
         throws IOException {
+      RefSnapshot snapshot = RefSnapshotCache.getIfPresent(repo);
+      if (snapshot != null) {
+        return scanChangeIds(snapshot);
+      }
+      return scanChangeIds(repo.getRefDatabase().getRefsByPrefix(RefNames.REFS_CHANGES));
+    }
+
+    public static ImmutableMap<Change.Id, ObjectId> scanChangeIds(RefSnapshot snapshot) {
+      return scanChangeIds(snapshot.byPrefix(RefNames.REFS_CHANGES));
+    }
+
+    private static ImmutableMap<Change.Id, ObjectId> scanChangeIds(List<Ref> changeRefs) {
       ImmutableMap.Builder<Change.Id, ObjectId> metaIdByChange = ImmutableMap.builder();
-      for (Ref r : repo.getRefDatabase().getRefsByPrefix(RefNames.REFS_CHANGES)) {
+      for (Ref r : changeRefs) {
         if (r.getName().endsWith(RefNames.META_SUFFIX)) {
           Change.Id id = Change.Id.fromRef(r.getName());
           if (id != null) {
@@ -298,29 +312,53 @@ public class ChangeNotes extends AbstractChangeNotes<ChangeNotes> {
     public Stream<ChangeNotesResult> scan(
         Repository repo, Project.NameKey project, Predicate<Change.Id> changeIdPredicate)
         throws IOException {
-      return scan(scanChangeIds(repo), project, changeIdPredicate);
+      return scan(repo, scanChangeIds(repo), project, changeIdPredicate);
     }
 
     public Stream<ChangeNotesResult> scan(
         ImmutableMap<Change.Id, ObjectId> metaIdByChange,
         Project.NameKey project,
         Predicate<Change.Id> changeIdPredicate) {
+      return scan(null, metaIdByChange, project, changeIdPredicate);
+    }
+
+    /**
+     * Loads the notes of the given changes.
+     *
+     * <p>The changes are loaded lazily while the returned stream is consumed. If {@code repo} is
+     * given, all changes are read from it and it must stay open until the stream was consumed. This
+     * avoids looking up and opening the repository again for every single change when scanning
+     * large projects.
+     *
+     * @param repo open repository of {@code project}, or {@code null} to open it for each change.
+     * @param metaIdByChange meta ref SHA-1 of each change to load.
+     * @param project project the changes belong to.
+     * @param changeIdPredicate filter for the changes to load, or {@code null} to load all changes.
+     * @return a stream with one result per loaded change.
+     */
+    public Stream<ChangeNotesResult> scan(
+        @Nullable Repository repo,
+        ImmutableMap<Change.Id, ObjectId> metaIdByChange,
+        Project.NameKey project,
+        Predicate<Change.Id> changeIdPredicate) {
       Stream<Map.Entry<Change.Id, ObjectId>> metaByIdStream = metaIdByChange.entrySet().stream();
       if (changeIdPredicate != null) {
         metaByIdStream = metaByIdStream.filter(e -> changeIdPredicate.test(e.getKey()));
       }
-      return metaByIdStream.map(e -> scanOneChange(project, e)).filter(Objects::nonNull);
+      return metaByIdStream.map(e -> scanOneChange(repo, project, e)).filter(Objects::nonNull);
     }
 
     @Nullable
     private ChangeNotesResult scanOneChange(
-        Project.NameKey project, Map.Entry<Change.Id, ObjectId> metaIdByChangeId) {
+        @Nullable Repository repo,
+        Project.NameKey project,
+        Map.Entry<Change.Id, ObjectId> metaIdByChangeId) {
       Change.Id id = metaIdByChangeId.getKey();
       // TODO(dborowitz): See discussion in BatchUpdate#newChangeContext.
       try {
         Change change = ChangeNotes.Factory.newChange(project, id);
         logger.atFine().log("adding change %s found in project %s", id, project);
-        return toResult(change, metaIdByChangeId.getValue());
+        return toResult(repo, change, metaIdByChangeId.getValue());
       } catch (InvalidServerIdException ise) {
         logger.atWarning().withCause(ise).log(
             "skipping change %d in project %s because of an invalid server id", id.get(), project);
@@ -329,10 +367,15 @@ public class ChangeNotes extends AbstractChangeNotes<ChangeNotes> {
     }
 
     @Nullable
-    private ChangeNotesResult toResult(Change rawChangeFromNoteDb, ObjectId metaId) {
+    private ChangeNotesResult toResult(
+        @Nullable Repository repo, Change rawChangeFromNoteDb, ObjectId metaId) {
       ChangeNotes n = new ChangeNotes(args, rawChangeFromNoteDb, true, null, metaId);
       try {
-        n.load();
+        if (repo != null) {
+          n.load(repo);
+        } else {
+          n.load();
+        }
       } catch (Exception e) {
         return ChangeNotesResult.error(n.getChangeId(), e);
       }
@@ -129,6 +129,9 @@ public class ChangeNotesCache {
      * sizes rather than iterating over collections. Numbers are largely hand-wavy based on
      * http://stackoverflow.com/questions/258120/what-is-the-memory-consumption-of-an-object-in-java
      *
+     * <p>Values that are interned, like branch names, hashtags and label IDs, are shared between
+     * entries and only count as pointers.
+     *
      * <p>Should be kept up to date with {@link ChangeNotesState}. Please, keep weights listed in
      * the same order as fields.
      */
@@ -143,8 +146,7 @@ public class ChangeNotesCache {
           + T // lastUpdatedOn
           + P
           + K // owner
-          + P
-          + str(state.columns().branch())
+          + P // branch, shared with other changes
           + P // status
           + P
           + patchSetId() // currentPatchSetId
@@ -164,8 +166,8 @@ public class ChangeNotesCache {
           + P
           + patchSetId() // cherryPickOf
           + P
-          + set(state.hashtags(), str(10))
-          + str(state.serverId()) // serverId
+          + set(state.hashtags(), 0) // hashtags are shared with other changes
+          + P // serverId, shared with other changes
           + P
           + list(state.patchSets(), patchSet())
           + P
@@ -181,9 +183,9 @@ public class ChangeNotesCache {
           + P
           + list(state.reviewerUpdates(), 4 * O + K + K + P)
           + P
-          + set(state.attentionSet(), 4 * O + K + I + str(15))
+          + set(state.attentionSet(), 4 * O + K + I + P)
           + P
-          + list(state.allAttentionSetUpdates(), 4 * O + K + I + str(15))
+          + list(state.allAttentionSetUpdates(), 4 * O + K + I + P)
           + P
           + list(state.submitRecords(), P + list(2, str(4) + P + K) + P)
           + P
@@ -227,7 +229,7 @@ public class ChangeNotesCache {
       // Made up numbers.
       int overhead = 32;
       int elemOverhead = O + 32;
-      return overhead + elemOverhead * n * elemSize;
+      return overhead + n * (elemOverhead + elemSize);
     }
 
     private static int list(List<?> list, int elemSize) {
@@ -282,9 +284,7 @@ public class ChangeNotesCache {
           + patchSetId()
           + P
           + K
-          + P
-          + O
-          + str(10)
+          + P // label, shared with other approvals
           + 2 // value
           + P
           + T // granted
@@ -56,7 +56,6 @@ import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.MultimapBuilder;
-import com.google.common.collect.Sets;
 import com.google.common.collect.Table;
 import com.google.common.collect.Tables;
 import com.google.common.flogger.FluentLogger;
@@ -505,7 +504,7 @@ class ChangeNotesParser {
     if (accountId != null) {
       ownerId = accountId;
       PersonIdent personIdent = commit.getAuthorIdent();
-      serverId = NoteDbUtil.extractHostPartFromPersonIdent(personIdent);
+      serverId = NoteDbUtil.intern(NoteDbUtil.extractHostPartFromPersonIdent(personIdent));
     } else {
       serverId = "UNKNOWN_SERVER_ID";
     }
@@ -622,7 +621,7 @@ class ChangeNotesParser {
   @Nullable
   private String parseBranch(ChangeNotesCommit commit) throws ConfigInvalidException {
     String branch = parseOneFooter(commit, FOOTER_BRANCH);
-    return branch != null ? RefNames.fullName(branch) : null;
+    return branch != null ? NoteDbUtil.intern(RefNames.fullName(branch)) : null;
   }
 
   private String parseChangeId(ChangeNotesCommit commit) throws ConfigInvalidException {
@@ -758,7 +757,10 @@ class ChangeNotesParser {
     } else if (hashtagsLines.get(0).isEmpty()) {
       hashtags = ImmutableSet.of();
     } else {
-      hashtags = Sets.newHashSet(HASHTAG_SPLITTER.split(hashtagsLines.get(0)));
+      hashtags = new HashSet<>();
+      for (String hashtag : HASHTAG_SPLITTER.split(hashtagsLines.get(0))) {
+        hashtags.add(NoteDbUtil.intern(hashtag));
+      }
     }
   }
 
@@ -810,7 +812,7 @@ class ChangeNotesParser {
     if (tagLines.isEmpty()) {
       return;
     } else if (tagLines.size() == 1) {
-      tag = tagLines.get(0);
+      tag = NoteDbUtil.intern(tagLines.get(0));
     } else {
       throw expectedOneFooter(FOOTER_TAG, tagLines);
     }
@@ -636,8 +636,11 @@ public abstract class ChangeNotesState {
               .metaId(ObjectIdConverter.create().fromByteString(proto.getMetaId()))
               .changeId(changeId)
               .columns(toChangeColumns(changeId, proto.getColumns()))
-              .serverId(proto.getHasServerId() ? proto.getServerId() : null)
-              .hashtags(proto.getHashtagList())
+              .serverId(proto.getHasServerId() ? NoteDbUtil.intern(proto.getServerId()) : null)
+              .hashtags(
+                  proto.getHashtagList().stream()
+                      .map(NoteDbUtil::intern)
+                      .collect(toImmutableList()))
               .customKeyedValues(proto.getCustomKeyedValuesMap().entrySet())
               .patchSets(
                   proto.getPatchSetList().stream()
@@ -688,7 +691,7 @@ public abstract class ChangeNotesState {
               .createdOn(Instant.ofEpochMilli(proto.getCreatedOnMillis()))
               .lastUpdatedOn(Instant.ofEpochMilli(proto.getLastUpdatedOnMillis()))
               .owner(Account.id(proto.getOwner()))
-              .branch(proto.getBranch());
+              .branch(NoteDbUtil.intern(proto.getBranch()));
       if (proto.getHasCurrentPatchSetId()) {
         b.currentPatchSetId(PatchSet.id(changeId, proto.getCurrentPatchSetId()));
       }
@@ -764,7 +767,7 @@ public abstract class ChangeNotesState {
                 Instant.ofEpochMilli(proto.getTimestampMillis()),
                 Account.id(proto.getAccount()),
                 AttentionSetUpdate.Operation.valueOf(proto.getOperation()),
-                proto.getReason()));
+                NoteDbUtil.intern(proto.getReason())));
       }
       return b.build();
     }
@@ -778,7 +781,7 @@ public abstract class ChangeNotesState {
                 Instant.ofEpochMilli(proto.getTimestampMillis()),
                 Account.id(proto.getAccount()),
                 AttentionSetUpdate.Operation.valueOf(proto.getOperation()),
-                proto.getReason()));
+                NoteDbUtil.intern(proto.getReason())));
       }
       return b.build();
     }
@@ -14,6 +14,7 @@
 
 package com.google.gerrit.server.notedb;
 
+import com.google.common.collect.ImmutableSet;
 import com.google.gerrit.entities.Account;
 import com.google.gerrit.entities.Change;
 import com.google.gerrit.entities.Comment;
@@ -43,15 +44,18 @@ public class DraftCommentsNotesReader implements DraftCommentsReader {
   private final DraftCommentNotes.Factory draftCommentNotesFactory;
   private final GitRepositoryManager repoManager;
   private final AllUsersName allUsers;
+  private final AccountChangeRefIndex accountChangeRefIndex;
 
   @Inject
   DraftCommentsNotesReader(
       DraftCommentNotes.Factory draftCommentNotesFactory,
       GitRepositoryManager repoManager,
-      AllUsersName allUsers) {
+      AllUsersName allUsers,
+      AccountChangeRefIndex accountChangeRefIndex) {
     this.draftCommentNotesFactory = draftCommentNotesFactory;
     this.repoManager = repoManager;
     this.allUsers = allUsers;
+    this.accountChangeRefIndex = accountChangeRefIndex;
   }
 
   @Override
@@ -117,6 +121,11 @@ public class DraftCommentsNotesReader implements DraftCommentsReader {
   public Set<Change.Id> getChangesWithDrafts(Account.Id author) {
     Set<Change.Id> changes = new HashSet<>();
     try (Repository repo = repoManager.openRepository(allUsers)) {
+      Optional<ImmutableSet<Change.Id>> indexed =
+          accountChangeRefIndex.get(repo, AccountChangeRefIndex.Kind.DRAFT, author);
+      if (indexed.isPresent()) {
+        return indexed.get();
+      }
       for (Ref ref : repo.getRefDatabase().getRefsByPrefix(RefNames.REFS_DRAFT_COMMENTS)) {
         Integer accountIdFromRef = RefNames.parseRefSuffix(ref.getName());
         if (accountIdFromRef != null && accountIdFromRef == author.get()) {
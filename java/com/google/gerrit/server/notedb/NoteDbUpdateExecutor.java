@@ -20,6 +20,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.gerrit.common.Nullable;
 import com.google.gerrit.git.RefUpdateUtil;
 import com.google.gerrit.server.GerritPersonIdent;
+import com.google.gerrit.server.git.RefSnapshotCache;
 import com.google.gerrit.server.update.BatchUpdateListener;
 import com.google.gerrit.server.update.ChainedReceiveCommands;
 import com.google.inject.Inject;
@@ -77,7 +78,12 @@ class NoteDbUpdateExecutor {
     }
 
     if (!dryrun) {
-      RefUpdateUtil.executeChecked(bru, or.rw);
+      try {
+        RefUpdateUtil.executeChecked(bru, or.rw);
+      } finally {
+        // Ref snapshots of this request may be stale now, even if the update failed halfway.
+        RefSnapshotCache.invalidate();
+      }
     }
     return Optional.of(bru);
   }
@@ -17,6 +17,8 @@ package com.google.gerrit.server.notedb;
 import com.google.common.base.CharMatcher;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import com.google.common.primitives.Ints;
 import com.google.gerrit.common.Nullable;
 import com.google.gerrit.entities.Account;
@@ -47,6 +49,8 @@ public class NoteDbUtil {
 
   private static final CharMatcher INVALID_FOOTER_CHARS = CharMatcher.anyOf("\r\n\0");
 
+  private static final Interner<String> STRINGS = Interners.newWeakInterner();
+
   private static final ImmutableList<String> PACKAGE_PREFIXES =
       ImmutableList.of("com.google.gerrit.server.", "com.google.gerrit.");
   private static final ImmutableSet<String> SERVLET_NAMES =
@@ -142,6 +146,18 @@ public class NoteDbUtil {
     }
   }
 
+  /**
+   * Returns the canonical instance of a string that is repeated across many changes.
+   *
+   * <p>Used for values such as branch names, tags, hashtags and the server ID, so that the
+   * {@link ChangeNotesState}s in the {@code change_notes} cache share them instead of each holding
+   * its own copy.
+   */
+  @Nullable
+  static String intern(@Nullable String s) {
+    return s != null ? STRINGS.intern(s) : null;
+  }
+
   static String sanitizeFooter(String value) {
     // Remove characters that would confuse JGit's footer parser if they were
     // included in footer values, for example by splitting the footer block into
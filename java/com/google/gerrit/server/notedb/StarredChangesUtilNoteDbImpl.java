@@ -71,17 +71,20 @@ public class StarredChangesUtilNoteDbImpl implements StarredChangesReader, Starr
   private final GitReferenceUpdated gitRefUpdated;
   private final AllUsersName allUsers;
   private final Provider<PersonIdent> serverIdent;
+  private final AccountChangeRefIndex accountChangeRefIndex;
 
   @Inject
   StarredChangesUtilNoteDbImpl(
       GitRepositoryManager repoManager,
       GitReferenceUpdated gitRefUpdated,
       AllUsersName allUsers,
-      @GerritPersonIdent Provider<PersonIdent> serverIdent) {
+      @GerritPersonIdent Provider<PersonIdent> serverIdent,
+      AccountChangeRefIndex accountChangeRefIndex) {
     this.repoManager = repoManager;
     this.gitRefUpdated = gitRefUpdated;
     this.allUsers = allUsers;
     this.serverIdent = serverIdent;
+    this.accountChangeRefIndex = accountChangeRefIndex;
   }
 
   @Override
@@ -201,6 +204,14 @@ public class StarredChangesUtilNoteDbImpl implements StarredChangesReader, Starr
   @Override
   public ImmutableSet<Change.Id> byAccountId(Account.Id accountId, boolean skipInvalidChanges) {
     try (Repository repo = repoManager.openRepository(allUsers)) {
+      if (skipInvalidChanges) {
+        Optional<ImmutableSet<Change.Id>> indexed =
+            accountChangeRefIndex.get(repo, AccountChangeRefIndex.Kind.STAR, accountId);
+        if (indexed.isPresent()) {
+          return indexed.get();
+        }
+      }
+
       ImmutableSet.Builder<Change.Id> builder = ImmutableSet.builder();
       for (Ref ref : repo.getRefDatabase().getRefsByPrefix(RefNames.REFS_STARRED_CHANGES)) {
         Account.Id currentAccountId = Account.Id.fromRef(ref.getName());
@@ -0,0 +1,226 @@
+// Copyright (C) 2023 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.patch;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.flogger.FluentLogger;
+import com.google.gerrit.common.Nullable;
+import com.google.gerrit.entities.Change;
+import com.google.gerrit.entities.PatchSet;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.exceptions.StorageException;
+import com.google.gerrit.extensions.events.RevisionCreatedListener;
+import com.google.gerrit.metrics.Counter0;
+import com.google.gerrit.metrics.Counter1;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.Description.Units;
+import com.google.gerrit.metrics.Field;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.metrics.Timer0;
+import com.google.gerrit.server.config.GerritServerConfig;
+import com.google.gerrit.server.git.GitRepositoryManager;
+import com.google.gerrit.server.git.WorkQueue;
+import com.google.gerrit.server.logging.Metadata;
+import com.google.gerrit.server.logging.TraceContext;
+import com.google.gerrit.server.logging.TraceContext.TraceTimer;
+import com.google.gerrit.server.notedb.ChangeNotes;
+import com.google.gerrit.server.patch.gitdiff.ModifiedFile;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevWalk;
+
+/**
+ * Precomputes the diff caches for newly created patch sets in the background.
+ *
+ * <p>When a patch set is uploaded the list of modified files and the file diffs against the parent
+ * and against the previous patch set are loaded on a low-priority queue, so that the first reviewer
+ * who opens the change doesn't pay for computing them on the request thread.
+ *
+ * <p>Disabled by default, see the {@code diffPrecompute} section in the config documentation.
+ */
+@Singleton
+public class DiffPrecomputer implements RevisionCreatedListener {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  private static final String SECTION = "diffPrecompute";
+  private static final int DEFAULT_MAX_FILES = 1000;
+
+  /** Maximum number of warmed commits remembered for the {@code file_list_requests} metric. */
+  private static final int MAX_TRACKED_COMMITS = 10_000;
+
+  @Singleton
+  static class Metrics {
+    final Counter0 precomputed;
+    final Counter0 skippedTooLarge;
+    final Counter0 failures;
+    final Timer0 latency;
+    final Counter1<Boolean> fileListRequests;
+
+    @Inject
+    Metrics(MetricMaker metricMaker) {
+      precomputed =
+          metricMaker.newCounter(
+              "diff/precompute/count",
+              new Description("Number of patch sets for which the diffs were precomputed")
+                  .setRate()
+                  .setUnit("patch sets"));
+      skippedTooLarge =
+          metricMaker.newCounter(
+              "diff/precompute/skipped_too_large",
+              new Description(
+                      "Number of patch sets for which the diff precomputation was skipped because"
+                          + " they modify too many files")
+                  .setRate()
+                  .setUnit("patch sets"));
+      failures =
+          metricMaker.newCounter(
+              "diff/precompute/failures",
+              new Description("Number of failed diff precomputations")
+                  .setRate()
+                  .setUnit("patch sets"));
+      latency =
+          metricMaker.newTimer(
+              "diff/precompute/latency",
+              new Description("Latency of precomputing the diffs of a patch set")
+                  .setCumulative()
+                  .setUnit(Units.MILLISECONDS));
+      fileListRequests =
+          metricMaker.newCounter(
+              "diff/precompute/file_list_requests",
+              new Description("Number of file list requests for patch sets")
+                  .setRate()
+                  .setUnit("requests"),
+              Field.ofBoolean("warmed", (metadataBuilder, warmed) -> {})
+                  .description("Whether the diffs of the patch set were precomputed.")
+                  .build());
+    }
+  }
+
+  private final Config cfg;
+  private final GitRepositoryManager repoManager;
+  private final ChangeNotes.Factory notesFactory;
+  private final DiffOperations diffOperations;
+  private final Metrics metrics;
+  private final int defaultMaxFiles;
+  private final Cache<ObjectId, Boolean> warmedCommits;
+  @Nullable private final ExecutorService executor;
+
+  @Inject
+  DiffPrecomputer(
+      @GerritServerConfig Config cfg,
+      GitRepositoryManager repoManager,
+      ChangeNotes.Factory notesFactory,
+      DiffOperations diffOperations,
+      Metrics metrics,
+      WorkQueue workQueue) {
+    this.cfg = cfg;
+    this.repoManager = repoManager;
+    this.notesFactory = notesFactory;
+    this.diffOperations = diffOperations;
+    this.metrics = metrics;
+    this.defaultMaxFiles = cfg.getInt(SECTION, "maxFiles", DEFAULT_MAX_FILES);
+    this.warmedCommits = CacheBuilder.newBuilder().maximumSize(MAX_TRACKED_COMMITS).build();
+    if (cfg.getBoolean(SECTION, "enabled", false)) {
+      int threads = Math.max(1, cfg.getInt(SECTION, "threadPoolSize", 1));
+      this.executor = workQueue.createQueue(threads, "DiffPrecompute", Thread.MIN_PRIORITY, true);
+    } else {
+      this.executor = null;
+    }
+  }
+
+  @Override
+  public void onRevisionCreated(RevisionCreatedListener.Event event) {
+    if (executor == null) {
+      return;
+    }
+    Project.NameKey project = Project.nameKey(event.getChange().project);
+    PatchSet.Id psId =
+        PatchSet.id(Change.id(event.getChange()._number), event.getRevision()._number);
+    @SuppressWarnings("unused")
+    Future<?> possiblyIgnoredError = executor.submit(() -> precompute(project, psId));
+  }
+
+  /**
+   * Records that the list of modified files of {@code commit} was requested by a user. Used to
+   * report how often user requests benefit from the precomputation.
+   */
+  public void recordFileListRequest(ObjectId commit) {
+    if (executor == null) {
+      return;
+    }
+    metrics.fileListRequests.increment(warmedCommits.getIfPresent(commit) != null);
+  }
+
+  private int getMaxFiles(Project.NameKey project) {
+    return cfg.getInt(SECTION, project.get(), "maxFiles", defaultMaxFiles);
+  }
+
+  private void precompute(Project.NameKey project, PatchSet.Id psId) {
+    try (TraceTimer traceTimer =
+            TraceContext.newTimer(
+                "Precomputing diffs of patch set",
+                Metadata.builder()
+                    .projectName(project.get())
+                    .changeId(psId.changeId().get())
+                    .patchSetId(psId.get())
+                    .build());
+        Timer0.Context ignored = metrics.latency.start()) {
+      ChangeNotes notes = notesFactory.create(project, psId.changeId());
+      PatchSet ps = notes.getPatchSets().get(psId);
+      if (ps == null) {
+        return;
+      }
+      if (countModifiedFiles(project, ps.commitId()) > getMaxFiles(project)) {
+        metrics.skippedTooLarge.increment();
+        return;
+      }
+
+      // Loading the modified files populates the modified files cache as well as the file diff
+      // caches for all files of the patch set.
+      diffOperations.listModifiedFilesAgainstParent(
+          project, ps.commitId(), /* parentNum= */ 0, DiffOptions.DEFAULTS);
+      Map.Entry<PatchSet.Id, PatchSet> prior = notes.getPatchSets().lowerEntry(psId);
+      if (prior != null) {
+        diffOperations.listModifiedFiles(
+            project, prior.getValue().commitId(), ps.commitId(), DiffOptions.DEFAULTS);
+      }
+      warmedCommits.put(ps.commitId(), true);
+      metrics.precomputed.increment();
+    } catch (DiffNotAvailableException | IOException | StorageException e) {
+      metrics.failures.increment();
+      logger.atWarning().withCause(e).log(
+          "Failed to precompute diffs of patch set %s in project %s", psId, project);
+    }
+  }
+
+  private int countModifiedFiles(Project.NameKey project, ObjectId commit)
+      throws IOException, DiffNotAvailableException {
+    try (Repository repo = repoManager.openRepository(project);
+        RevWalk rw = new RevWalk(repo.newObjectReader())) {
+      Map<String, ModifiedFile> files =
+          diffOperations.loadModifiedFilesAgainstParent(
+              project, commit, /* parentNum= */ 0, DiffOptions.DEFAULTS, rw, repo.getConfig());
+      return files.size();
+    }
+  }
+}
@@ -79,6 +79,7 @@ public class ModifiedFilesCacheImpl implements ModifiedFilesCache {
                 ModifiedFilesCacheKey.class,
                 new TypeLiteral<ImmutableList<ModifiedFile>>() {})
             .keySerializer(ModifiedFilesCacheKey.Serializer.INSTANCE)
+            .warmUp(ModifiedFilesCacheKey.Serializer.INSTANCE)
             .valueSerializer(GitModifiedFilesCacheImpl.ValueSerializer.INSTANCE)
             .maximumWeight(10 << 20)
             .weigher(ModifiedFilesWeigher.class)
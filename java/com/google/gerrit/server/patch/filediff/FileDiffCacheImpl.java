@@ -99,6 +99,7 @@ public class FileDiffCacheImpl implements FileDiffCache {
             .weigher(FileDiffWeigher.class)
             .version(9)
             .keySerializer(FileDiffCacheKey.Serializer.INSTANCE)
+            .warmUp(FileDiffCacheKey.Serializer.INSTANCE)
             .valueSerializer(FileDiffOutput.Serializer.INSTANCE)
             .loader(FileDiffLoader.class);
       }
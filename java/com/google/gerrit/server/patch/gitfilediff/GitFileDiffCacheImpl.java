@@ -18,6 +18,7 @@ import static java.util.function.Function.identity;
 
 import com.google.auto.value.AutoValue;
 import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableList;
@@ -55,6 +56,7 @@ import java.util.Collection;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
@@ -65,8 +67,11 @@ import java.util.stream.Collectors;
 import org.eclipse.jgit.diff.DiffEntry;
 import org.eclipse.jgit.diff.DiffEntry.ChangeType;
 import org.eclipse.jgit.diff.DiffFormatter;
+import org.eclipse.jgit.diff.EditList;
 import org.eclipse.jgit.diff.HistogramDiff;
 import org.eclipse.jgit.diff.RawTextComparator;
+import org.eclipse.jgit.diff.Sequence;
+import org.eclipse.jgit.diff.SequenceComparator;
 import org.eclipse.jgit.errors.MissingObjectException;
 import org.eclipse.jgit.lib.AbbreviatedObjectId;
 import org.eclipse.jgit.lib.Config;
@@ -80,6 +85,7 @@ import org.eclipse.jgit.util.io.DisabledOutputStream;
 public class GitFileDiffCacheImpl implements GitFileDiffCache {
   private static final FluentLogger logger = FluentLogger.forEnclosingClass();
   private static final String GIT_DIFF = "git_file_diff";
+  private static final String GIT_FILE_EDITS = "git_file_edits";
 
   public static Module module() {
     return new CacheModule() {
@@ -93,6 +99,12 @@ public class GitFileDiffCacheImpl implements GitFileDiffCache {
             .valueSerializer(GitFileDiff.Serializer.INSTANCE)
             .version(3)
             .loader(GitFileDiffCacheImpl.Loader.class);
+        persist(GIT_FILE_EDITS, GitFileEditsCacheKey.class, GitFileEdits.class)
+            .maximumWeight(10 << 20)
+            .weigher(GitFileEditsWeigher.class)
+            .keySerializer(GitFileEditsCacheKey.Serializer.INSTANCE)
+            .valueSerializer(GitFileEdits.Serializer.INSTANCE)
+            .version(2);
       }
     };
   }
@@ -100,6 +112,7 @@ public class GitFileDiffCacheImpl implements GitFileDiffCache {
   @Singleton
   static class Metrics {
     final Counter0 timeouts;
+    final Counter0 editsReused;
 
     @Inject
     Metrics(MetricMaker metricMaker) {
@@ -110,6 +123,14 @@ public class GitFileDiffCacheImpl implements GitFileDiffCache {
                       "Total number of git file diff computations that resulted in timeouts.")
                   .setRate()
                   .setUnit("count"));
+      editsReused =
+          metricMaker.newCounter(
+              "caches/diff/edits_reused",
+              new Description(
+                      "Total number of git file diffs whose edits were reused from the"
+                          + " blob-keyed git_file_edits cache instead of being recomputed.")
+                  .setRate()
+                  .setUnit("count"));
     }
   }
 
@@ -130,6 +151,28 @@ public class GitFileDiffCacheImpl implements GitFileDiffCache {
     }
   }
 
+  /** A JGit diff algorithm that returns the edits that were computed earlier for the same blobs. */
+  private static class ReplayedEdits extends org.eclipse.jgit.diff.DiffAlgorithm {
+    private final GitFileEdits edits;
+
+    ReplayedEdits(GitFileEdits edits) {
+      this.edits = edits;
+    }
+
+    @Override
+    public <S extends Sequence> EditList diff(SequenceComparator<? super S> cmp, S a, S b) {
+      EditList result = new EditList();
+      edits.edits().forEach(e -> result.add(e.asJGitEdit()));
+      return result;
+    }
+
+    @Override
+    public <S extends Sequence> EditList diffNonCommon(
+        SequenceComparator<? super S> cmp, S a, S b) {
+      return diff(cmp, a, b);
+    }
+  }
+
   private final LoadingCache<GitFileDiffCacheKey, GitFileDiff> cache;
 
   @Inject
@@ -159,6 +202,7 @@ public class GitFileDiffCacheImpl implements GitFileDiffCache {
 
   static class Loader extends CacheLoader<GitFileDiffCacheKey, GitFileDiff> {
     private final GitRepositoryManager repoManager;
+    private final Cache<GitFileEditsCacheKey, GitFileEdits> editsCache;
     private final ExecutorService diffExecutor;
     private final long timeoutMillis;
     private final Metrics metrics;
@@ -167,9 +211,11 @@ public class GitFileDiffCacheImpl implements GitFileDiffCache {
     public Loader(
         @GerritServerConfig Config cfg,
         GitRepositoryManager repoManager,
+        @Named(GIT_FILE_EDITS) Cache<GitFileEditsCacheKey, GitFileEdits> editsCache,
         @DiffExecutor ExecutorService de,
         Metrics metrics) {
       this.repoManager = repoManager;
+      this.editsCache = editsCache;
       this.diffExecutor = de;
       this.timeoutMillis =
           ConfigUtil.getTimeUnit(
@@ -327,8 +373,65 @@ public class GitFileDiffCacheImpl implements GitFileDiffCache {
     }
 
     /**
-     * Create a {@link GitFileDiff}. The result depends on the value of the {@code useTimeout} field
-     * of the {@code key} parameter.
+     * Create a {@link GitFileDiff}, reusing the edits that were computed earlier for the same pair
+     * of blobs if they are available in the {@code git_file_edits} cache. This is the common case
+     * after a rebase, where the trees differ but most of the modified files still have the same old
+     * and new blobs.
+     */
+    private GitFileDiff createGitFileDiff(
+        DiffEntry diffEntry, GitFileDiffCacheKey key, CloseablePool<DiffFormatter> diffPool)
+        throws IOException {
+      Optional<GitFileEditsCacheKey> editsKey = createEditsKey(diffEntry, key);
+      if (editsKey.isPresent()) {
+        GitFileEdits cached = editsCache.getIfPresent(editsKey.get());
+        if (cached != null) {
+          metrics.editsReused.increment();
+          return replayGitFileDiff(diffEntry, key, cached, diffPool);
+        }
+      }
+      GitFileDiff gitFileDiff = computeGitFileDiff(diffEntry, key, diffPool);
+      if (editsKey.isPresent() && !gitFileDiff.isNegative()) {
+        editsCache.put(editsKey.get(), GitFileEdits.create(gitFileDiff.edits()));
+      }
+      return gitFileDiff;
+    }
+
+    /**
+     * Create a {@link GitFileDiff} from edits that were computed earlier. The blobs are still read
+     * to format the file header, but they are not diffed again, hence no timeout is needed.
+     */
+    private GitFileDiff replayGitFileDiff(
+        DiffEntry diffEntry,
+        GitFileDiffCacheKey key,
+        GitFileEdits edits,
+        CloseablePool<DiffFormatter> diffPool)
+        throws IOException {
+      try (CloseablePool<DiffFormatter>.Handle formatter = diffPool.get()) {
+        formatter.get().setDiffAlgorithm(new ReplayedEdits(edits));
+        try {
+          return GitFileDiff.create(diffEntry, getFileHeader(formatter, diffEntry));
+        } finally {
+          formatter.get().setDiffAlgorithm(DiffAlgorithmFactory.create(key.diffAlgorithm()));
+        }
+      }
+    }
+
+    private static Optional<GitFileEditsCacheKey> createEditsKey(
+        DiffEntry diffEntry, GitFileDiffCacheKey key) {
+      if (!diffEntry.getOldId().isComplete() || !diffEntry.getNewId().isComplete()) {
+        return Optional.empty();
+      }
+      return Optional.of(
+          GitFileEditsCacheKey.create(
+              diffEntry.getOldId().toObjectId(),
+              diffEntry.getNewId().toObjectId(),
+              key.diffAlgorithm(),
+              key.whitespace()));
+    }
+
+    /**
+     * Compute a {@link GitFileDiff}. The result depends on the value of the {@code useTimeout}
+     * field of the {@code key} parameter.
      *
      * <ul>
      *   <li>If {@code useTimeout} is true, the computation is performed with timeout enforcement
@@ -338,7 +441,7 @@ public class GitFileDiffCacheImpl implements GitFileDiffCache {
      *   <li>If {@code useTimeouts} is false, the computation is performed synchronously without
      *       timeout enforcement.
      */
-    private GitFileDiff createGitFileDiff(
+    private GitFileDiff computeGitFileDiff(
         DiffEntry diffEntry, GitFileDiffCacheKey key, CloseablePool<DiffFormatter> diffPool)
         throws IOException {
       if (!key.useTimeout()) {
@@ -0,0 +1,76 @@
+// Copyright (C) 2023 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.patch.gitfilediff;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableList;
+import com.google.gerrit.proto.Protos;
+import com.google.gerrit.server.cache.proto.Cache.GitFileDiffProto;
+import com.google.gerrit.server.cache.proto.Cache.GitFileEditsProto;
+import com.google.gerrit.server.cache.serialize.CacheSerializer;
+import com.google.gerrit.server.patch.filediff.Edit;
+
+/**
+ * The edits between two blobs, as stored in the {@code git_file_edits} cache.
+ *
+ * <p>Only the edits are stored, since they are the expensive part of a {@link GitFileDiff}. The
+ * file header and the other attributes depend on the trees that the blobs were found in and are
+ * computed again when the edits are reused.
+ */
+@AutoValue
+public abstract class GitFileEdits {
+  public static GitFileEdits create(ImmutableList<Edit> edits) {
+    return new AutoValue_GitFileEdits(edits);
+  }
+
+  /** An {@link ImmutableList} of the modified regions in the file. */
+  public abstract ImmutableList<Edit> edits();
+
+  /** Returns the size of the object in bytes. */
+  public int weight() {
+    return 16 * edits().size(); // each edit contains 4 integers (hence 16 bytes)
+  }
+
+  public enum Serializer implements CacheSerializer<GitFileEdits> {
+    INSTANCE;
+
+    @Override
+    public byte[] serialize(GitFileEdits gitFileEdits) {
+      GitFileEditsProto.Builder builder = GitFileEditsProto.newBuilder();
+      gitFileEdits
+          .edits()
+          .forEach(
+              e ->
+                  builder.addEdits(
+                      GitFileDiffProto.Edit.newBuilder()
+                          .setBeginA(e.beginA())
+                          .setEndA(e.endA())
+                          .setBeginB(e.beginB())
+                          .setEndB(e.endB())));
+      return Protos.toByteArray(builder.build());
+    }
+
+    @Override
+    public GitFileEdits deserialize(byte[] in) {
+      GitFileEditsProto proto = Protos.parseUnchecked(GitFileEditsProto.parser(), in);
+      return create(
+          proto.getEditsList().stream()
+              .map(e -> Edit.create(e.getBeginA(), e.getEndA(), e.getBeginB(), e.getEndB()))
+              .collect(toImmutableList()));
+    }
+  }
+}
@@ -0,0 +1,95 @@
+// Copyright (C) 2023 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.patch.gitfilediff;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.base.Converter;
+import com.google.common.base.Enums;
+import com.google.gerrit.extensions.client.DiffPreferencesInfo.Whitespace;
+import com.google.gerrit.proto.Protos;
+import com.google.gerrit.server.cache.proto.Cache.GitFileEditsKeyProto;
+import com.google.gerrit.server.cache.serialize.CacheSerializer;
+import com.google.gerrit.server.cache.serialize.ObjectIdConverter;
+import com.google.gerrit.server.patch.gitfilediff.GitFileDiffCacheImpl.DiffAlgorithm;
+import org.eclipse.jgit.lib.ObjectId;
+
+/**
+ * Content-addressed key of the {@code git_file_edits} cache. Unlike {@link GitFileDiffCacheKey},
+ * this key does not depend on the trees or the project the blobs were found in, hence a diff that
+ * was computed once for a pair of blobs can be reused, e.g. after a rebase or when uploading a
+ * trivial new patch set.
+ */
+@AutoValue
+public abstract class GitFileEditsCacheKey {
+
+  /**
+   * The 20 bytes SHA-1 ID of the old blob, or {@link ObjectId#zeroId()} if the file was added.
+   */
+  public abstract ObjectId oldBlob();
+
+  /**
+   * The 20 bytes SHA-1 ID of the new blob, or {@link ObjectId#zeroId()} if the file was deleted.
+   */
+  public abstract ObjectId newBlob();
+
+  public abstract DiffAlgorithm diffAlgorithm();
+
+  public abstract Whitespace whitespace();
+
+  public static GitFileEditsCacheKey create(
+      ObjectId oldBlob, ObjectId newBlob, DiffAlgorithm diffAlgorithm, Whitespace whitespace) {
+    return new AutoValue_GitFileEditsCacheKey(
+        oldBlob.copy(), newBlob.copy(), diffAlgorithm, whitespace);
+  }
+
+  public int weight() {
+    return 20 * 2 // oldBlob and newBlob
+        + 4 // diffAlgorithm
+        + 4; // whitespace
+  }
+
+  public enum Serializer implements CacheSerializer<GitFileEditsCacheKey> {
+    INSTANCE;
+
+    private static final Converter<String, DiffAlgorithm> DIFF_ALGORITHM_CONVERTER =
+        Enums.stringConverter(DiffAlgorithm.class);
+
+    private static final Converter<String, Whitespace> WHITESPACE_CONVERTER =
+        Enums.stringConverter(Whitespace.class);
+
+    @Override
+    public byte[] serialize(GitFileEditsCacheKey key) {
+      ObjectIdConverter idConverter = ObjectIdConverter.create();
+      return Protos.toByteArray(
+          GitFileEditsKeyProto.newBuilder()
+              .setOldBlob(idConverter.toByteString(key.oldBlob()))
+              .setNewBlob(idConverter.toByteString(key.newBlob()))
+              .setDiffAlgorithm(DIFF_ALGORITHM_CONVERTER.reverse().convert(key.diffAlgorithm()))
+              .setWhitespace(WHITESPACE_CONVERTER.reverse().convert(key.whitespace()))
+              .build());
+    }
+
+    @Override
+    public GitFileEditsCacheKey deserialize(byte[] in) {
+      GitFileEditsKeyProto proto = Protos.parseUnchecked(GitFileEditsKeyProto.parser(), in);
+      ObjectIdConverter idConverter = ObjectIdConverter.create();
+      return GitFileEditsCacheKey.create(
+          idConverter.fromByteString(proto.getOldBlob()),
+          idConverter.fromByteString(proto.getNewBlob()),
+          DIFF_ALGORITHM_CONVERTER.convert(proto.getDiffAlgorithm()),
+          WHITESPACE_CONVERTER.convert(proto.getWhitespace()));
+    }
+  }
+}
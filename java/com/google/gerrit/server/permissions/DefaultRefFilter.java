@@ -36,6 +36,7 @@ import com.google.gerrit.metrics.MetricMaker;
 import com.google.gerrit.server.CurrentUser;
 import com.google.gerrit.server.config.GerritServerConfig;
 import com.google.gerrit.server.git.ChangesByProjectCache;
+import com.google.gerrit.server.git.RefSnapshotCache;
 import com.google.gerrit.server.git.TagCache;
 import com.google.gerrit.server.git.TagMatcher;
 import com.google.gerrit.server.logging.TraceContext;
@@ -94,6 +95,7 @@ class DefaultRefFilter {
   private final PermissionBackend.ForProject permissionBackendForProject;
   private final ChangesByProjectCache changesByProjectCache;
   private final ChangeData.Factory changeDataFactory;
+  private final RefSnapshotCache refSnapshotCache;
   private final Metrics metrics;
   private final boolean skipFullRefEvaluationIfAllRefsAreVisible;
 
@@ -106,12 +108,14 @@ class DefaultRefFilter {
       Metrics metrics,
       ChangesByProjectCache changesByProjectCache,
       ChangeData.Factory changeDataFactory,
+      RefSnapshotCache refSnapshotCache,
       @Assisted ProjectControl projectControl) {
     this.tagCache = tagCache;
     this.permissionBackend = permissionBackend;
     this.refVisibilityControl = refVisibilityControl;
     this.changesByProjectCache = changesByProjectCache;
     this.changeDataFactory = changeDataFactory;
+    this.refSnapshotCache = refSnapshotCache;
     this.skipFullRefEvaluationIfAllRefsAreVisible =
         config.getBoolean("auth", "skipFullRefEvaluationIfAllRefsAreVisible", true);
     this.projectControl = projectControl;
@@ -289,9 +293,12 @@ class DefaultRefFilter {
    * <p>We exclude symbolic refs because their target will be included and this will suffice for
    * computing reachability.
    */
-  private static List<Ref> getTaggableRefs(Repository repo) throws PermissionBackendException {
+  private List<Ref> getTaggableRefs(Repository repo) throws PermissionBackendException {
     try {
-      List<Ref> allRefs = repo.getRefDatabase().getRefs();
+      List<Ref> allRefs =
+          refSnapshotCache.isShared()
+              ? refSnapshotCache.get(repo).all()
+              : repo.getRefDatabase().getRefs();
       return allRefs.stream()
           .filter(
               r ->
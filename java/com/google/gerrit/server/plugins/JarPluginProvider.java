@@ -16,6 +16,9 @@ package com.google.gerrit.server.plugins;
 
 import com.google.common.base.MoreObjects;
 import com.google.common.flogger.FluentLogger;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingInputStream;
 import com.google.gerrit.extensions.registration.PluginName;
 import com.google.gerrit.server.config.PluginConfig;
 import com.google.gerrit.server.config.PluginConfigFactory;
@@ -49,13 +52,16 @@ public class JarPluginProvider implements ServerPluginProvider {
 
   private final Path tmpDir;
   private final PluginConfigFactory configFactory;
+  private final PluginScanCache scanCache;
 
   private ClassLoader pluginApiClassLoader = PluginUtil.parentFor(ApiType.PLUGIN);
 
   @Inject
-  JarPluginProvider(SitePaths sitePaths, PluginConfigFactory configFactory) {
+  JarPluginProvider(
+      SitePaths sitePaths, PluginConfigFactory configFactory, PluginScanCache scanCache) {
     this.tmpDir = sitePaths.tmp_dir;
     this.configFactory = configFactory;
+    this.scanCache = scanCache;
   }
 
   @Override
@@ -86,9 +92,10 @@ public class JarPluginProvider implements ServerPluginProvider {
     try {
       String name = getPluginName(srcPath);
       String extension = getExtension(srcPath);
-      try (InputStream in = Files.newInputStream(srcPath)) {
+      try (HashingInputStream in =
+          new HashingInputStream(Hashing.sha256(), Files.newInputStream(srcPath))) {
         Path tmp = PluginUtil.asTemp(in, tempNameFor(name), extension, tmpDir);
-        return loadJarPlugin(name, srcPath, snapshot, tmp, description);
+        return loadJarPlugin(name, srcPath, snapshot, tmp, in.hash(), description);
       }
     } catch (IOException e) {
       throw new InvalidPluginException("Cannot load Jar plugin " + srcPath, e);
@@ -120,7 +127,12 @@ public class JarPluginProvider implements ServerPluginProvider {
   }
 
   private ServerPlugin loadJarPlugin(
-      String name, Path srcJar, FileSnapshot snapshot, Path tmp, PluginDescription description)
+      String name,
+      Path srcJar,
+      FileSnapshot snapshot,
+      Path tmp,
+      HashCode jarHash,
+      PluginDescription description)
       throws IOException, InvalidPluginException, MalformedURLException {
     JarFile jarFile = new JarFile(tmp.toFile());
     boolean keep = false;
@@ -148,7 +160,7 @@ public class JarPluginProvider implements ServerPluginProvider {
         pluginApiClassLoader = pluginLoader;
       }
 
-      JarScanner jarScanner = createJarScanner(tmp);
+      JarScanner jarScanner = createJarScanner(tmp, jarHash);
       PluginConfig pluginConfig = configFactory.getFromGerritConfig(name);
 
       ServerPlugin plugin =
@@ -184,9 +196,10 @@ public class JarPluginProvider implements ServerPluginProvider {
     }
   }
 
-  private JarScanner createJarScanner(Path srcJar) throws InvalidPluginException {
+  private JarScanner createJarScanner(Path srcJar, HashCode jarHash)
+      throws InvalidPluginException {
     try {
-      return new JarScanner(srcJar);
+      return new JarScanner(srcJar, scanCache, jarHash);
     } catch (IOException e) {
       throw new InvalidPluginException("Cannot scan plugin file " + srcJar, e);
     }
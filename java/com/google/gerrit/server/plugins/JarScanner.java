@@ -16,14 +16,15 @@ package com.google.gerrit.server.plugins;
 
 import static com.google.common.base.MoreObjects.firstNonNull;
 import static com.google.common.collect.ImmutableList.toImmutableList;
-import static com.google.common.collect.Iterables.transform;
 
 import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Maps;
 import com.google.common.collect.MultimapBuilder;
 import com.google.common.flogger.FluentLogger;
+import com.google.common.hash.HashCode;
 import com.google.gerrit.common.Nullable;
 import java.io.IOException;
 import java.io.InputStream;
@@ -59,9 +60,25 @@ public class JarScanner implements PluginContentScanner, AutoCloseable {
   private static final int SKIP_ALL =
       ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES;
   private final JarFile jarFile;
+  @Nullable private final PluginScanCache cache;
+  @Nullable private final HashCode jarHash;
 
   public JarScanner(Path src) throws IOException {
+    this(src, null, null);
+  }
+
+  /**
+   * Creates a scanner that stores its scan results in a cache.
+   *
+   * @param src plugin jar
+   * @param cache cache of scan results, or null to always scan the jar
+   * @param jarHash SHA-256 of the content of {@code src}; required if {@code cache} is set
+   */
+  JarScanner(Path src, @Nullable PluginScanCache cache, @Nullable HashCode jarHash)
+      throws IOException {
     this.jarFile = new JarFile(src.toFile());
+    this.cache = cache;
+    this.jarHash = jarHash;
   }
 
   @Override
@@ -69,8 +86,6 @@ public class JarScanner implements PluginContentScanner, AutoCloseable {
       String pluginName, Iterable<Class<? extends Annotation>> annotations)
       throws InvalidPluginException {
     Set<String> descriptors = new HashSet<>();
-    ListMultimap<String, JarScanner.ClassData> rawMap =
-        MultimapBuilder.hashKeys().arrayListValues().build();
     Map<Class<? extends Annotation>, String> classObjToClassDescr = new HashMap<>();
 
     for (Class<? extends Annotation> annotation : annotations) {
@@ -79,6 +94,38 @@ public class JarScanner implements PluginContentScanner, AutoCloseable {
       classObjToClassDescr.put(annotation, descriptor);
     }
 
+    ListMultimap<String, ExtensionMetaData> rawMap;
+    Optional<ListMultimap<String, ExtensionMetaData>> cached = Optional.empty();
+    if (cache != null) {
+      cache.use(pluginName, jarHash);
+      cached = cache.get(jarHash, descriptors);
+    }
+    if (cached.isPresent()) {
+      rawMap = cached.get();
+    } else {
+      rawMap = scanClasses(pluginName, descriptors);
+      if (cache != null) {
+        cache.put(jarHash, descriptors, rawMap);
+      }
+    }
+
+    ImmutableMap.Builder<Class<? extends Annotation>, Iterable<ExtensionMetaData>> result =
+        ImmutableMap.builder();
+
+    for (Class<? extends Annotation> annotoation : annotations) {
+      String descr = classObjToClassDescr.get(annotoation);
+      Collection<ExtensionMetaData> discoverdData = rawMap.get(descr);
+      Collection<ExtensionMetaData> values = firstNonNull(discoverdData, Collections.emptySet());
+      result.put(annotoation, ImmutableList.copyOf(values));
+    }
+
+    return result.build();
+  }
+
+  private ListMultimap<String, ExtensionMetaData> scanClasses(
+      String pluginName, Set<String> descriptors) throws InvalidPluginException {
+    ListMultimap<String, ExtensionMetaData> rawMap =
+        MultimapBuilder.hashKeys().arrayListValues().build();
     for (JarEntry entry : entriesOf(jarFile)) {
       if (skip(entry)) {
         continue;
@@ -98,7 +145,8 @@ public class JarScanner implements PluginContentScanner, AutoCloseable {
 
       if (!Strings.isNullOrEmpty(def.annotationName)) {
         if (def.isConcrete()) {
-          rawMap.put(def.annotationName, def);
+          rawMap.put(
+              def.annotationName, new ExtensionMetaData(def.className, def.annotationValue));
         } else {
           logger.atWarning().log(
               "Plugin %s tries to @%s(\"%s\") abstract class %s",
@@ -106,21 +154,7 @@ public class JarScanner implements PluginContentScanner, AutoCloseable {
         }
       }
     }
-
-    ImmutableMap.Builder<Class<? extends Annotation>, Iterable<ExtensionMetaData>> result =
-        ImmutableMap.builder();
-
-    for (Class<? extends Annotation> annotoation : annotations) {
-      String descr = classObjToClassDescr.get(annotoation);
-      Collection<ClassData> discoverdData = rawMap.get(descr);
-      Collection<ClassData> values = firstNonNull(discoverdData, Collections.emptySet());
-
-      result.put(
-          annotoation,
-          transform(values, cd -> new ExtensionMetaData(cd.className, cd.annotationValue)));
-    }
-
-    return result.build();
+    return rawMap;
   }
 
   public List<String> findSubClassesOf(Class<?> superClass) throws IOException {
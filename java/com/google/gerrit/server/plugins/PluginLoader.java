@@ -17,6 +17,7 @@ package com.google.gerrit.server.plugins;
 import com.google.common.base.CharMatcher;
 import com.google.common.base.Joiner;
 import com.google.common.base.MoreObjects;
+import com.google.common.base.Stopwatch;
 import com.google.common.base.Strings;
 import com.google.common.collect.ComparisonChain;
 import com.google.common.collect.ImmutableList;
@@ -27,10 +28,16 @@ import com.google.common.collect.Maps;
 import com.google.common.collect.SetMultimap;
 import com.google.common.collect.Sets;
 import com.google.common.flogger.FluentLogger;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
 import com.google.gerrit.common.Nullable;
 import com.google.gerrit.extensions.events.LifecycleListener;
 import com.google.gerrit.extensions.restapi.MethodNotAllowedException;
 import com.google.gerrit.extensions.systemstatus.ServerInformation;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.Field;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.metrics.Timer1;
 import com.google.gerrit.server.PluginUser;
 import com.google.gerrit.server.cache.PersistentCacheFactory;
 import com.google.gerrit.server.config.CanonicalWebUrl;
@@ -38,6 +45,7 @@ import com.google.gerrit.server.config.ConfigUtil;
 import com.google.gerrit.server.config.GerritRuntime;
 import com.google.gerrit.server.config.GerritServerConfig;
 import com.google.gerrit.server.config.SitePaths;
+import com.google.gerrit.server.logging.Metadata;
 import com.google.gerrit.server.plugins.ServerPluginProvider.PluginDescription;
 import com.google.inject.Inject;
 import com.google.inject.Provider;
@@ -61,6 +69,10 @@ import java.util.Queue;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.jar.JarFile;
 import org.eclipse.jgit.internal.storage.file.FileSnapshot;
@@ -93,6 +105,9 @@ public class PluginLoader implements LifecycleListener {
   private final MandatoryPluginsCollection mandatoryPlugins;
   private final UniversalServerPluginProvider serverPluginFactory;
   private final GerritRuntime gerritRuntime;
+  private final int loadThreads;
+  private final PluginScanCache scanCache;
+  private final Timer1<String> loadLatency;
 
   @Inject
   public PluginLoader(
@@ -106,7 +121,9 @@ public class PluginLoader implements LifecycleListener {
       PersistentCacheFactory cacheFactory,
       UniversalServerPluginProvider pluginFactory,
       MandatoryPluginsCollection mpc,
-      GerritRuntime gerritRuntime) {
+      GerritRuntime gerritRuntime,
+      MetricMaker metricMaker,
+      PluginScanCache scanCache) {
     pluginsDir = sitePaths.plugins_dir;
     dataDir = sitePaths.data_dir;
     tempDir = sitePaths.tmp_dir;
@@ -121,6 +138,17 @@ public class PluginLoader implements LifecycleListener {
     remoteAdmin = cfg.getBoolean("plugins", null, "allowRemoteAdmin", false);
     mandatoryPlugins = mpc;
     this.gerritRuntime = gerritRuntime;
+    loadThreads = Math.max(1, cfg.getInt("plugins", null, "loadThreads", 1));
+    this.scanCache = scanCache;
+    loadLatency =
+        metricMaker.newTimer(
+            "plugin/load_latency",
+            new Description("Time to load and start a plugin")
+                .setCumulative()
+                .setUnit(Description.Units.MILLISECONDS),
+            Field.ofString("plugin_name", Metadata.Builder::pluginName)
+                .description("The name of the plugin.")
+                .build());
 
     long checkFrequency =
         ConfigUtil.getTimeUnit(
@@ -403,6 +431,7 @@ public class PluginLoader implements LifecycleListener {
       syncDisabledPlugins(pluginsFiles);
 
       Map<String, Path> activePlugins = filterDisabled(pluginsFiles);
+      List<Map.Entry<String, Path>> newPlugins = new ArrayList<>();
       for (Map.Entry<String, Path> entry : jarsApiFirstSortedPluginsSet(activePlugins)) {
         String name = entry.getKey();
         Path path = entry.getValue();
@@ -424,25 +453,34 @@ public class PluginLoader implements LifecycleListener {
           continue;
         }
 
+        if (active == null && loadThreads > 1 && !isApiPlugin(path)) {
+          // Started after all API plugins, which the plugin may depend on.
+          newPlugins.add(entry);
+          continue;
+        }
+
         if (active != null) {
           logger.atInfo().log("Reloading plugin %s", active.getName());
         }
 
         try {
+          Stopwatch sw = Stopwatch.createStarted();
           Plugin loadedPlugin = runPlugin(name, path, active);
           if (!loadedPlugin.isDisabled()) {
             loadedPlugins.add(name);
             logger.atInfo().log(
-                "%s plugin %s%s, version %s",
+                "%s plugin %s%s, version %s in %d ms",
                 active == null ? "Loaded" : "Reloaded",
                 loadedPlugin.getName(),
                 loadedPlugin.getApiModule().isPresent() ? " (w/ ApiModule)" : "",
-                loadedPlugin.getVersion());
+                loadedPlugin.getVersion(),
+                sw.elapsed(TimeUnit.MILLISECONDS));
           }
         } catch (PluginInstallException e) {
           logger.atWarning().withCause(e.getCause()).log("Cannot load plugin %s", name);
         }
       }
+      runNewPlugins(newPlugins, loadedPlugins);
     }
 
     Set<String> missingMandatory = Sets.difference(mandatoryPlugins.asSet(), loadedPlugins);
@@ -450,9 +488,126 @@ public class PluginLoader implements LifecycleListener {
       throw new MissingMandatoryPluginsException(missingMandatory);
     }
 
+    scanCache.prune(Sets.union(running.keySet(), disabled.keySet()));
     cleanInBackground();
   }
 
+  /**
+   * Loads plugins that are not running yet in parallel, then starts them one by one.
+   *
+   * <p>Loading a plugin copies its jar to the temp directory, creates its class loader and scans
+   * it for auto-registered extensions, which only depends on the API plugins that are started
+   * before. If no plugin provides an ApiModule, the injectors of the plugins are created in
+   * parallel as well, since then none of them is created from the injector of another plugin. Each
+   * plugin is then started and registered before the next one, in the order given, just like
+   * plugins that are loaded by {@link #runPlugin(String, Path, Plugin)}.
+   */
+  private void runNewPlugins(List<Map.Entry<String, Path>> plugins, Set<String> loadedPlugins) {
+    if (plugins.isEmpty()) {
+      return;
+    }
+
+    ExecutorService executor =
+        Executors.newFixedThreadPool(
+            Math.min(loadThreads, plugins.size()),
+            new ThreadFactoryBuilder().setNameFormat("PluginLoader-%d").build());
+    try {
+      List<FileSnapshot> snapshots = new ArrayList<>(plugins.size());
+      List<Future<Plugin>> loaded = new ArrayList<>(plugins.size());
+      long[] loadMillis = new long[plugins.size()];
+      Exception[] prepareErrors = new Exception[plugins.size()];
+      boolean createInjectors = env.getApiInjector() == null;
+      for (int i = 0; i < plugins.size(); i++) {
+        int index = i;
+        String name = plugins.get(i).getKey();
+        Path path = plugins.get(i).getValue();
+        FileSnapshot snapshot = FileSnapshot.save(path.toFile());
+        snapshots.add(snapshot);
+        loaded.add(
+            executor.submit(
+                () -> {
+                  Stopwatch sw = Stopwatch.createStarted();
+                  Plugin plugin = loadPlugin(name, path, snapshot);
+                  if (plugin instanceof ServerPlugin && !plugin.isDisabled()) {
+                    try {
+                      ((ServerPlugin) plugin).prepare(env, createInjectors);
+                    } catch (Exception e) {
+                      // Reported when the plugin is started, after its cleanup handle is kept.
+                      prepareErrors[index] = e;
+                    }
+                  }
+                  loadMillis[index] = sw.elapsed(TimeUnit.MILLISECONDS);
+                  return plugin;
+                }));
+      }
+
+      for (int i = 0; i < plugins.size(); i++) {
+        String name = plugins.get(i).getKey();
+        try {
+          Plugin plugin = Uninterruptibles.getUninterruptibly(loaded.get(i));
+          name = plugin.getName();
+          startNewPlugin(plugin, loadMillis[i], prepareErrors[i]);
+          if (!plugin.isDisabled()) {
+            loadedPlugins.add(name);
+          }
+        } catch (ExecutionException e) {
+          broken.put(name, snapshots.get(i));
+          logger.atWarning().withCause(e.getCause()).log("Cannot load plugin %s", name);
+        } catch (Exception e) {
+          broken.put(name, snapshots.get(i));
+          logger.atWarning().withCause(e).log("Cannot load plugin %s", name);
+        }
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private void startNewPlugin(Plugin plugin, long loadMillis, @Nullable Exception prepareError)
+      throws Exception {
+    Stopwatch sw = Stopwatch.createStarted();
+    if (plugin.getCleanupHandle() != null) {
+      cleanupHandles.put(plugin, plugin.getCleanupHandle());
+    }
+    String name = plugin.getName();
+    if (plugin.isDisabled()) {
+      disabled.put(name, plugin);
+      broken.remove(name);
+      return;
+    }
+
+    try {
+      if (prepareError != null) {
+        throw prepareError;
+      }
+      plugin.start(env);
+      env.onStartPlugin(plugin);
+    } catch (Exception e) {
+      plugin.stop(env);
+      throw e;
+    }
+    running.put(name, plugin);
+    broken.remove(name);
+
+    long elapsed = loadMillis + sw.elapsed(TimeUnit.MILLISECONDS);
+    loadLatency.record(name, elapsed, TimeUnit.MILLISECONDS);
+    logger.atInfo().log(
+        "Loaded plugin %s, version %s in %d ms", name, plugin.getVersion(), elapsed);
+  }
+
+  private static boolean isApiPlugin(Path path) {
+    if (!path.getFileName().toString().endsWith(".jar")) {
+      return false;
+    }
+    try (JarFile jarFile = new JarFile(path.toFile())) {
+      return !Strings.isNullOrEmpty(
+          jarFile.getManifest().getMainAttributes().getValue(ServerPlugin.API_MODULE));
+    } catch (IOException e) {
+      // Start it sequentially, loading it will report the error.
+      return true;
+    }
+  }
+
   private void addAllEntries(Map<String, Path> from, TreeSet<Map.Entry<String, Path>> to) {
     Iterator<Map.Entry<String, Path>> it = from.entrySet().iterator();
     while (it.hasNext()) {
@@ -513,7 +668,7 @@ public class PluginLoader implements LifecycleListener {
   private Plugin runPlugin(String name, Path plugin, Plugin oldPlugin)
       throws PluginInstallException {
     FileSnapshot snapshot = FileSnapshot.save(plugin.toFile());
-    try {
+    try (Timer1.Context<String> ignored = loadLatency.start(name)) {
       boolean restartRequired = oldPlugin != null && !oldPlugin.canReload();
       if (restartRequired && mandatoryPlugins.contains(name)) {
         logger.atWarning().log("Restarting mandatory plugin %s not allowed", name);
@@ -0,0 +1,186 @@
+// Copyright (C) 2023 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.plugins;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.MultimapBuilder;
+import com.google.common.flogger.FluentLogger;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.gerrit.server.config.SitePaths;
+import com.google.gerrit.server.plugins.PluginContentScanner.ExtensionMetaData;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Stores the results of {@link JarScanner#scan(String, Iterable)} in {@code $site_path/data}.
+ *
+ * <p>Entries are keyed by the SHA-256 of the plugin jar and the scanned annotations, so that an
+ * unmodified jar doesn't need to be scanned again when the server is restarted. A modified jar has
+ * a different hash and is scanned again. Entries of jars that are no longer used by a plugin are
+ * deleted by {@link #prune(Set)}.
+ */
+@Singleton
+public class PluginScanCache {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  static final String DIRECTORY = "plugin_scan_cache";
+
+  private final Path dir;
+  private final ConcurrentMap<String, HashCode> jarHashByPlugin = new ConcurrentHashMap<>();
+
+  @Inject
+  PluginScanCache(SitePaths sitePaths) {
+    this(sitePaths.data_dir.resolve(DIRECTORY));
+  }
+
+  PluginScanCache(Path dir) {
+    this.dir = dir;
+  }
+
+  /**
+   * Records the jar that is scanned for a plugin.
+   *
+   * <p>The entries of this jar are kept by {@link #prune(Set)} as long as the plugin is loaded.
+   *
+   * @param pluginName name of the plugin
+   * @param jarHash SHA-256 of the plugin jar
+   */
+  void use(String pluginName, HashCode jarHash) {
+    jarHashByPlugin.put(pluginName, jarHash);
+  }
+
+  /**
+   * Deletes the entries of all jars that are not used by one of the given plugins, i.e. of plugins
+   * that were removed or whose jar was replaced.
+   *
+   * @param pluginNames names of the plugins that are loaded
+   */
+  void prune(Set<String> pluginNames) {
+    jarHashByPlugin.keySet().retainAll(pluginNames);
+    Set<String> keep = new HashSet<>();
+    for (HashCode jarHash : jarHashByPlugin.values()) {
+      keep.add(jarHash.toString());
+    }
+
+    if (!Files.isDirectory(dir)) {
+      return;
+    }
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+      for (Path file : files) {
+        String name = file.getFileName().toString();
+        int sep = name.indexOf('-');
+        if (sep < 0 || !keep.contains(name.substring(0, sep))) {
+          Files.deleteIfExists(file);
+        }
+      }
+    } catch (IOException e) {
+      logger.atWarning().withCause(e).log("Cannot prune plugin scan cache %s", dir);
+    }
+  }
+
+  /**
+   * Returns the cached scan result.
+   *
+   * @param jarHash SHA-256 of the plugin jar
+   * @param descriptors descriptors of the scanned annotations
+   * @return classes found per annotation descriptor, or empty if the jar wasn't scanned for these
+   *     annotations yet
+   */
+  Optional<ListMultimap<String, ExtensionMetaData>> get(HashCode jarHash, Set<String> descriptors) {
+    Path file = dir.resolve(key(jarHash, descriptors));
+    List<String> lines;
+    try {
+      lines = Files.readAllLines(file, UTF_8);
+    } catch (NoSuchFileException e) {
+      return Optional.empty();
+    } catch (IOException e) {
+      logger.atWarning().withCause(e).log("Cannot read plugin scan cache %s", file);
+      return Optional.empty();
+    }
+
+    ListMultimap<String, ExtensionMetaData> result =
+        MultimapBuilder.hashKeys().arrayListValues().build();
+    for (String line : lines) {
+      List<String> fields = Splitter.on('\t').limit(3).splitToList(line);
+      if (fields.size() < 2) {
+        logger.atWarning().log("Ignoring corrupt plugin scan cache %s", file);
+        return Optional.empty();
+      }
+      String annotationValue = fields.size() > 2 ? fields.get(2) : null;
+      result.put(fields.get(0), new ExtensionMetaData(fields.get(1), annotationValue));
+    }
+    return Optional.of(result);
+  }
+
+  /**
+   * Stores a scan result.
+   *
+   * @param jarHash SHA-256 of the plugin jar
+   * @param descriptors descriptors of the scanned annotations
+   * @param found classes found per annotation descriptor
+   */
+  void put(
+      HashCode jarHash, Set<String> descriptors, ListMultimap<String, ExtensionMetaData> found) {
+    StringBuilder b = new StringBuilder();
+    for (Map.Entry<String, ExtensionMetaData> e : found.entries()) {
+      b.append(e.getKey()).append('\t').append(e.getValue().className);
+      if (e.getValue().annotationValue != null) {
+        b.append('\t').append(e.getValue().annotationValue);
+      }
+      b.append('\n');
+    }
+
+    Path file = dir.resolve(key(jarHash, descriptors));
+    try {
+      Files.createDirectories(dir);
+      Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+      try {
+        Files.write(tmp, b.toString().getBytes(UTF_8));
+        Files.move(tmp, file, ATOMIC_MOVE, REPLACE_EXISTING);
+      } finally {
+        Files.deleteIfExists(tmp);
+      }
+    } catch (IOException e) {
+      logger.atWarning().withCause(e).log("Cannot write plugin scan cache %s", file);
+    }
+  }
+
+  private static String key(HashCode jarHash, Set<String> descriptors) {
+    return jarHash
+        + "-"
+        + Hashing.sha256()
+            .hashString(String.join("\n", new TreeSet<>(descriptors)), UTF_8)
+            .toString();
+  }
+}
@@ -59,6 +59,8 @@ public class ServerPlugin extends Plugin {
   private Injector sshInjector;
   private Injector httpInjector;
   private LifecycleManager serverManager;
+  private boolean discovered;
+  private AutoRegisterModules auto;
   private List<ReloadableRegistrationHandle<?>> reloadableHandles;
 
   private Optional<Module> apiModule = Optional.empty();
@@ -185,17 +187,55 @@ public class ServerPlugin extends Plugin {
     }
   }
 
+  /**
+   * Prepares the plugin to be started on the calling thread.
+   *
+   * <p>Scans the plugin for auto-registered extensions and, if {@code createInjectors} is true,
+   * creates its injectors. Nothing is started or registered, that is left to {@link
+   * #start(PluginGuiceEnvironment)}. Injectors must only be created here if the plugin doesn't
+   * depend on the injectors of plugins that are started concurrently.
+   */
+  void prepare(PluginGuiceEnvironment env, boolean createInjectors) throws Exception {
+    RequestContext oldContext = env.enter(this);
+    try {
+      discover(env);
+      if (createInjectors && apiModuleClass == null) {
+        createInjectors(env);
+      }
+    } finally {
+      env.exit(oldContext);
+    }
+  }
+
   @Override
   protected void start(PluginGuiceEnvironment env) throws Exception {
     RequestContext oldContext = env.enter(this);
     try {
-      startPlugin(env);
+      if (serverManager == null) {
+        discover(env);
+        createInjectors(env);
+      }
+      serverManager.start();
     } finally {
       env.exit(oldContext);
     }
   }
 
-  private void startPlugin(PluginGuiceEnvironment env) throws Exception {
+  private void discover(PluginGuiceEnvironment env) throws InvalidPluginException {
+    if (discovered) {
+      return;
+    }
+    if (gerritRuntime != GerritRuntime.BATCH
+        && sysModule == null
+        && sshModule == null
+        && httpModule == null
+        && apiModuleClass == null) {
+      auto = new AutoRegisterModules(getName(), env, scanner, classLoader).discover();
+    }
+    discovered = true;
+  }
+
+  private void createInjectors(PluginGuiceEnvironment env) {
     serverManager = new LifecycleManager();
 
     if (gerritRuntime == GerritRuntime.BATCH) {
@@ -206,17 +246,9 @@ public class ServerPlugin extends Plugin {
       } else {
         sysInjector = root;
       }
-
-      serverManager.start();
       return;
     }
 
-    AutoRegisterModules auto = null;
-    if (sysModule == null && sshModule == null && httpModule == null && apiModuleClass == null) {
-      auto = new AutoRegisterModules(getName(), env, scanner, classLoader);
-      auto.discover();
-    }
-
     Injector baseInjector;
     if (apiModuleClass == null) {
       baseInjector = newRootInjector(env);
@@ -266,8 +298,6 @@ public class ServerPlugin extends Plugin {
         serverManager.add(httpInjector);
       }
     }
-
-    serverManager.start();
   }
 
   private Injector newRootInjector(PluginGuiceEnvironment env) {
@@ -314,6 +344,8 @@ public class ServerPlugin extends Plugin {
         env.exit(oldContext);
       }
       serverManager = null;
+      discovered = false;
+      auto = null;
       sysInjector = null;
       sshInjector = null;
       httpInjector = null;
@@ -17,6 +17,7 @@ package com.google.gerrit.server.project;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
 import com.google.common.flogger.FluentLogger;
+import com.google.gerrit.extensions.events.ConcurrentStart;
 import com.google.gerrit.extensions.events.LifecycleListener;
 import com.google.gerrit.server.config.GerritServerConfig;
 import com.google.gerrit.server.config.ScheduleConfig;
@@ -28,6 +29,7 @@ import org.eclipse.jgit.lib.Config;
 public class PeriodicProjectListCacheWarmer implements Runnable {
   private static final FluentLogger logger = FluentLogger.forEnclosingClass();
 
+  @ConcurrentStart
   public static class LifeCycle implements LifecycleListener {
     protected final Config config;
     protected final WorkQueue queue;
@@ -82,6 +82,7 @@ import com.google.gerrit.server.config.SkipCurrentRulesEvaluationOnClosedChanges
 import com.google.gerrit.server.config.TrackingFooters;
 import com.google.gerrit.server.git.GitRepositoryManager;
 import com.google.gerrit.server.git.MergeUtilFactory;
+import com.google.gerrit.server.index.change.ReadPrincipals;
 import com.google.gerrit.server.notedb.ChangeNotes;
 import com.google.gerrit.server.notedb.RobotCommentNotes;
 import com.google.gerrit.server.patch.DiffSummary;
@@ -1398,6 +1399,21 @@ public class ChangeData {
     return customKeyedValues;
   }
 
+  /**
+   * Returns the principals that may be able to read this change.
+   *
+   * @see ReadPrincipals
+   */
+  public ImmutableSet<String> readPrincipals() {
+    Change c = change();
+    Optional<ProjectState> state = projectCache.get(project());
+    if (c == null || !state.isPresent()) {
+      return ImmutableSet.of();
+    }
+    return ReadPrincipals.forChange(
+        state.get().getAllSections(), state.get().getAllOwners(), c, reviewers().all());
+  }
+
   public void setCustomKeyedValues(Map<String, String> customKeyedValues) {
     this.customKeyedValues = ImmutableMap.copyOf(customKeyedValues);
   }
@@ -15,9 +15,13 @@
 package com.google.gerrit.server.query.change;
 
 import com.google.common.flogger.FluentLogger;
+import com.google.gerrit.common.Nullable;
 import com.google.gerrit.entities.Change;
 import com.google.gerrit.exceptions.StorageException;
 import com.google.gerrit.index.query.IsVisibleToPredicate;
+import com.google.gerrit.metrics.Counter0;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.MetricMaker;
 import com.google.gerrit.server.AnonymousUser;
 import com.google.gerrit.server.CurrentUser;
 import com.google.gerrit.server.InternalUser;
@@ -29,8 +33,11 @@ import com.google.gerrit.server.project.ProjectCache;
 import com.google.gerrit.server.project.ProjectState;
 import com.google.inject.Inject;
 import com.google.inject.Provider;
+import com.google.inject.Singleton;
 import com.google.inject.assistedinject.Assisted;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import org.eclipse.jgit.errors.RepositoryNotFoundException;
 
 public class ChangeIsVisibleToPredicate extends IsVisibleToPredicate<ChangeData> {
@@ -40,19 +47,51 @@ public class ChangeIsVisibleToPredicate extends IsVisibleToPredicate<ChangeData>
     ChangeIsVisibleToPredicate forUser(CurrentUser user);
   }
 
+  @Singleton
+  public static class Metrics {
+    final Counter0 candidates;
+    final Counter0 visible;
+
+    @Inject
+    Metrics(MetricMaker metricMaker) {
+      candidates =
+          metricMaker.newCounter(
+              "query/change_visibility/candidates",
+              new Description("Number of query results that were checked for visibility")
+                  .setRate()
+                  .setUnit("changes"));
+      visible =
+          metricMaker.newCounter(
+              "query/change_visibility/visible",
+              new Description("Number of query results that were visible to the calling user")
+                  .setRate()
+                  .setUnit("changes"));
+    }
+  }
+
   protected final CurrentUser user;
   protected final ProjectCache projectCache;
   private final PermissionBackend.WithUser withUser;
+  private final Metrics metrics;
+
+  /**
+   * Changes that were already checked by this predicate, if it's shared by several queries of one
+   * request that may match the same change, e.g. the sections of a dashboard. {@code null} if each
+   * change is checked only once.
+   */
+  @Nullable private Map<Change.Id, Boolean> checked;
 
   @Inject
   public ChangeIsVisibleToPredicate(
       PermissionBackend permissionBackend,
       ProjectCache projectCache,
       Provider<AnonymousUser> anonymousUserProvider,
+      Metrics metrics,
       @Assisted CurrentUser user) {
     super(ChangeQueryBuilder.FIELD_VISIBLETO, IndexUtils.describe(user));
     this.user = user;
     this.projectCache = projectCache;
+    this.metrics = metrics;
     withUser =
         user.isIdentifiedUser()
             ? permissionBackend.absentUser(user.getAccountId())
@@ -62,11 +101,38 @@ public class ChangeIsVisibleToPredicate extends IsVisibleToPredicate<ChangeData>
                     .orElseGet(anonymousUserProvider::get));
   }
 
+  /**
+   * Remembers the result for each checked change. Must only be used for predicates that are shared
+   * by the queries of one request, since the results are kept until the predicate is discarded.
+   */
+  void rememberResults() {
+    if (checked == null) {
+      checked = new ConcurrentHashMap<>();
+    }
+  }
+
   @Override
   public boolean match(ChangeData cd) {
+    metrics.candidates.increment();
     if (cd.fastIsVisibleTo(user)) {
+      metrics.visible.increment();
       return true;
     }
+    Boolean visible = checked != null ? checked.get(cd.getId()) : null;
+    if (visible == null) {
+      visible = isVisible(cd);
+      if (checked != null) {
+        checked.put(cd.getId(), visible);
+      }
+    }
+    if (visible) {
+      cd.cacheVisibleTo(user);
+      metrics.visible.increment();
+    }
+    return visible;
+  }
+
+  private boolean isVisible(ChangeData cd) {
     Change change = cd.change();
     if (change == null) {
       return false;
@@ -97,8 +163,6 @@ public class ChangeIsVisibleToPredicate extends IsVisibleToPredicate<ChangeData>
       }
       throw new StorageException("unable to check permissions on change " + cd.getId(), e);
     }
-
-    cd.cacheVisibleTo(user);
     return true;
   }
 
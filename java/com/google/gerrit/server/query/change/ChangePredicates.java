@@ -124,6 +124,18 @@ public class ChangePredicates {
     return Predicate.or(predicates);
   }
 
+  /**
+   * Returns a predicate that matches changes that have any of the provided read principals, see
+   * {@link com.google.gerrit.server.index.change.ReadPrincipals}.
+   */
+  public static Predicate<ChangeData> readPrincipal(Collection<String> principals) {
+    List<Predicate<ChangeData>> predicates = new ArrayList<>(principals.size());
+    for (String principal : principals) {
+      predicates.add(new ChangeIndexPredicate(ChangeField.READ_PRINCIPAL_SPEC, principal));
+    }
+    return Predicate.or(predicates);
+  }
+
   /** Returns a predicate that matches changes that were not yet reviewed. */
   public static Predicate<ChangeData> unreviewed() {
     return Predicate.not(
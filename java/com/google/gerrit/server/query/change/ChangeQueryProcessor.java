@@ -14,19 +14,28 @@
 
 package com.google.gerrit.server.query.change;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
 import static com.google.gerrit.server.query.change.ChangeQueryBuilder.FIELD_LIMIT;
+import static java.util.stream.Collectors.toList;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableSet;
+import com.google.errorprone.annotations.CanIgnoreReturnValue;
+import com.google.gerrit.common.Nullable;
 import com.google.gerrit.entities.Change;
+import com.google.gerrit.exceptions.StorageException;
 import com.google.gerrit.extensions.common.PluginDefinedInfo;
 import com.google.gerrit.extensions.registration.DynamicSet;
 import com.google.gerrit.extensions.registration.Extension;
 import com.google.gerrit.index.IndexConfig;
+import com.google.gerrit.index.PaginationType;
 import com.google.gerrit.index.QueryOptions;
+import com.google.gerrit.index.query.DataSource;
 import com.google.gerrit.index.query.IndexPredicate;
 import com.google.gerrit.index.query.Predicate;
+import com.google.gerrit.index.query.QueryParseException;
 import com.google.gerrit.index.query.QueryProcessor;
 import com.google.gerrit.metrics.MetricMaker;
 import com.google.gerrit.server.CurrentUser;
@@ -36,19 +45,27 @@ import com.google.gerrit.server.account.AccountLimits;
 import com.google.gerrit.server.change.ChangePluginDefinedInfoFactory;
 import com.google.gerrit.server.change.PluginDefinedAttributesFactories;
 import com.google.gerrit.server.change.PluginDefinedInfosFactory;
+import com.google.gerrit.server.config.GerritServerConfig;
+import com.google.gerrit.server.index.change.ChangeField;
+import com.google.gerrit.server.index.change.ChangeIndex;
 import com.google.gerrit.server.index.change.ChangeIndexCollection;
 import com.google.gerrit.server.index.change.ChangeIndexRewriter;
 import com.google.gerrit.server.index.change.ChangeSchemaDefinitions;
+import com.google.gerrit.server.index.change.ChangeSortKey;
 import com.google.gerrit.server.index.change.IndexedChangeQuery;
+import com.google.gerrit.server.index.change.ReadPrincipals;
 import com.google.inject.Inject;
 import com.google.inject.Provider;
 import com.google.inject.Singleton;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import org.eclipse.jgit.lib.Config;
 
 /**
  * Query processor for the change index.
@@ -64,6 +81,18 @@ public class ChangeQueryProcessor extends QueryProcessor<ChangeData>
   private final List<Extension<ChangePluginDefinedInfoFactory>>
       changePluginDefinedInfoFactoriesByPlugin = new ArrayList<>();
   private final IndexConfig indexConfig;
+  private final ChangeIndexCollection indexes;
+  private final ChangeIndexRewriter rewriter;
+  private final boolean prefilterVisibility;
+
+  /**
+   * Changes returned by the queries of this processor, so that the queries of e.g. a dashboard
+   * share the data that is loaded for a change that is returned by several of them.
+   */
+  private final Map<Change.Id, ChangeData> matches = new HashMap<>();
+
+  /** Visibility check shared by all queries of this processor. */
+  @Nullable private ChangeIsVisibleToPredicate visibleTo;
 
   @Singleton
   protected static class ChangeQueryMetrics extends QueryProcessor.Metrics {
@@ -82,6 +111,7 @@ public class ChangeQueryProcessor extends QueryProcessor<ChangeData>
 
   @Inject
   ChangeQueryProcessor(
+      @GerritServerConfig Config cfg,
       Provider<CurrentUser> userProvider,
       AccountLimits.Factory limitsFactory,
       ChangeQueryMetrics changeQueryMetrics,
@@ -101,12 +131,125 @@ public class ChangeQueryProcessor extends QueryProcessor<ChangeData>
     this.userProvider = userProvider;
     this.changeIsVisibleToPredicateFactory = changeIsVisibleToPredicateFactory;
     this.indexConfig = indexConfig;
+    this.indexes = indexes;
+    this.rewriter = rewriter;
+    this.prefilterVisibility = cfg.getBoolean("index", null, "prefilterChangeVisibility", false);
 
     changePluginDefinedInfoFactories
         .entries()
         .forEach(e -> changePluginDefinedInfoFactoriesByPlugin.add(e));
   }
 
+  /** Receives the results of {@link #stream} batch by batch. */
+  @FunctionalInterface
+  public interface BatchConsumer {
+    /**
+     * Handles a batch of results.
+     *
+     * @param batch results of the batch that are visible to the user, may be empty
+     * @param cursor sort key of the last change that was looked at for this batch, pass it as
+     *     {@code resumeAfter} to {@link #stream} to continue after this batch
+     */
+    void accept(List<ChangeData> batch, ChangeSortKey cursor) throws IOException;
+  }
+
+  /**
+   * Streams all changes that match a query in index order, batch by batch.
+   *
+   * <p>Unlike {@link #query(Predicate)}, the results are not collected in memory: each batch is
+   * read from the index by continuing the search after the {@link ChangeSortKey} of the last
+   * change of the previous batch, and passed to the consumer before the next batch is read. The
+   * user's query limit bounds the size of each batch, not the total number of results.
+   *
+   * @param query the query
+   * @param resumeAfter sort key of the change after which the results should start, null to start
+   *     with the most recently updated change
+   * @param batchSize maximum number of changes that are read from the index per batch
+   * @param consumer consumer of the batches
+   * @return the number of changes that were passed to the consumer
+   */
+  @CanIgnoreReturnValue
+  public int stream(
+      Predicate<ChangeData> query,
+      @Nullable ChangeSortKey resumeAfter,
+      int batchSize,
+      BatchConsumer consumer)
+      throws QueryParseException, IOException {
+    checkArgument(batchSize > 0, "batch size must be positive: %s", batchSize);
+    if (isDisabled()) {
+      return 0;
+    }
+    int pageSize = Math.min(batchSize, indexConfig.maxLimit() - 1);
+    Predicate<ChangeData> pred = query;
+    Predicate<ChangeData> visibilityFilter = null;
+    if (isVisibilityEnforced()) {
+      pageSize = Math.min(pageSize, getUserQueryLimit().getAsInt());
+      pred = prefilterVisibility(query);
+      visibilityFilter = changeIsVisibleToPredicateFactory.forUser(userProvider.get());
+    }
+    IndexConfig streamConfig =
+        indexConfig.toBuilder().paginationType(PaginationType.SEARCH_AFTER).build();
+
+    int count = 0;
+    ChangeSortKey cursor = resumeAfter;
+    while (true) {
+      // Ask for one more change to find out if there are more results after this batch.
+      QueryOptions opts =
+          createOptions(
+              streamConfig,
+              0,
+              pageSize + 1,
+              indexConfig.pageSizeMultiplier(),
+              pageSize + 1,
+              false,
+              getRequestedFields());
+      if (cursor != null) {
+        opts = opts.withSearchAfter(cursor);
+      }
+      Predicate<ChangeData> rewritten = rewriter.rewrite(pred, opts);
+      if (!(rewritten instanceof DataSource)) {
+        throw new QueryParseException("invalid query");
+      }
+      @SuppressWarnings("unchecked")
+      DataSource<ChangeData> source = (DataSource<ChangeData>) rewritten;
+      ImmutableList<ChangeData> read = source.read().toList();
+
+      // Results of OR queries are concatenated from several index queries, restore the index order
+      // and drop changes that were returned by more than one of them.
+      TreeMap<ChangeSortKey, ChangeData> candidates = new TreeMap<>();
+      for (ChangeData cd : read) {
+        ChangeSortKey key = ChangeSortKey.of(cd);
+        if (cursor == null || key.compareTo(cursor) > 0) {
+          candidates.putIfAbsent(key, cd);
+        }
+      }
+      if (candidates.isEmpty()) {
+        if (read.size() > pageSize) {
+          throw new StorageException("Change index does not support resuming after a sort key");
+        }
+        return count;
+      }
+
+      List<ChangeData> batch = new ArrayList<>(pageSize);
+      for (Map.Entry<ChangeSortKey, ChangeData> e : candidates.entrySet()) {
+        if (batch.size() == pageSize) {
+          break;
+        }
+        cursor = e.getKey();
+        batch.add(e.getValue());
+      }
+      boolean more = candidates.size() > pageSize;
+      if (visibilityFilter != null) {
+        batch = batch.stream().filter(visibilityFilter::match).collect(toList());
+      }
+      consumer.accept(batch, cursor);
+      count += batch.size();
+      if (!more) {
+        return count;
+      }
+    }
+  }
+
   @Override
   public ChangeQueryProcessor enforceVisibility(boolean enforce) {
     super.enforceVisibility(enforce);
@@ -153,12 +296,40 @@ public class ChangeQueryProcessor extends QueryProcessor<ChangeData>
         cds, this, changePluginDefinedInfoFactoriesByPlugin.stream());
   }
 
+  @Override
+  protected Predicate<ChangeData> prefilterVisibility(Predicate<ChangeData> pred) {
+    CurrentUser user = userProvider.get();
+    if (!prefilterVisibility || user.isInternalUser()) {
+      return pred;
+    }
+    ChangeIndex index = indexes.getSearchIndex();
+    if (index == null || !index.getSchema().hasField(ChangeField.READ_PRINCIPAL_SPEC)) {
+      return pred;
+    }
+    ImmutableSet<String> principals = ReadPrincipals.forUser(user);
+    if (principals.size() > indexConfig.maxTerms() / 2) {
+      // Leave enough terms for the query itself, the visibility of the results is still checked
+      // after the search.
+      return pred;
+    }
+    return Predicate.and(pred, ChangePredicates.readPrincipal(principals));
+  }
+
   @Override
   protected Predicate<ChangeData> enforceVisibility(Predicate<ChangeData> pred) {
-    return new AndChangeSource(
-        ImmutableList.of(pred, changeIsVisibleToPredicateFactory.forUser(userProvider.get())),
-        start,
-        indexConfig);
+    if (visibleTo == null) {
+      visibleTo = changeIsVisibleToPredicateFactory.forUser(userProvider.get());
+    } else {
+      // Several queries are executed together and may match the same changes.
+      visibleTo.rememberResults();
+    }
+    return new AndChangeSource(ImmutableList.of(pred, visibleTo), start, indexConfig);
+  }
+
+  @Override
+  protected ChangeData shareMatch(ChangeData match) {
+    ChangeData shared = matches.putIfAbsent(match.getId(), match);
+    return shared != null ? shared : match;
   }
 
   @Override
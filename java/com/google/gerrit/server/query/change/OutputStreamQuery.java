@@ -33,9 +33,11 @@ import com.google.gerrit.server.account.AccountAttributeLoader;
 import com.google.gerrit.server.config.TrackingFooters;
 import com.google.gerrit.server.data.ChangeAttribute;
 import com.google.gerrit.server.data.PatchSetAttribute;
+import com.google.gerrit.server.data.QueryCursorAttribute;
 import com.google.gerrit.server.data.QueryStatsAttribute;
 import com.google.gerrit.server.events.EventFactory;
 import com.google.gerrit.server.git.GitRepositoryManager;
+import com.google.gerrit.server.index.change.ChangeSortKey;
 import com.google.gerrit.server.project.SubmitRuleEvaluator;
 import com.google.gerrit.server.project.SubmitRuleOptions;
 import com.google.gerrit.server.util.time.TimeUtil;
@@ -82,6 +84,8 @@ public class OutputStreamQuery {
 
   public static final Gson GSON = new Gson();
 
+  public static final int DEFAULT_EXPORT_BATCH_SIZE = 500;
+
   private final GitRepositoryManager repoManager;
   private final ChangeQueryBuilder queryBuilder;
   private final ChangeQueryProcessor queryProcessor;
@@ -100,6 +104,9 @@ public class OutputStreamQuery {
   private boolean includeDependencies;
   private boolean includeSubmitRecords;
   private boolean includeAllReviewers;
+  private boolean export;
+  private ChangeSortKey resumeAfter;
+  private int exportBatchSize = DEFAULT_EXPORT_BATCH_SIZE;
 
   private OutputStream outputStream = DisabledOutputStream.INSTANCE;
   private PrintWriter out;
@@ -188,6 +195,32 @@ public class OutputStreamQuery {
     includeAllReviewers = on;
   }
 
+  /**
+   * Whether all results should be streamed in batches instead of being limited, see {@link
+   * ChangeQueryProcessor#stream}.
+   */
+  public void setExport(boolean on) {
+    export = on;
+  }
+
+  public boolean getExport() {
+    return export;
+  }
+
+  /**
+   * Sets the cursor after which an export should continue.
+   *
+   * @param cursor cursor of a previous export
+   * @throws IllegalArgumentException if the cursor is malformed
+   */
+  public void setResumeAfter(String cursor) {
+    resumeAfter = ChangeSortKey.parse(cursor);
+  }
+
+  public void setExportBatchSize(int n) {
+    exportBatchSize = n;
+  }
+
   public void setOutput(OutputStream out, OutputFormat fmt) {
     this.outputStream = out;
     this.outputFormat = fmt;
@@ -214,24 +247,27 @@ public class OutputStreamQuery {
         final QueryStatsAttribute stats = new QueryStatsAttribute();
         stats.runTimeMilliseconds = TimeUtil.nowMs();
 
-        Map<Project.NameKey, Repository> repos = new HashMap<>();
-        Map<Project.NameKey, RevWalk> revWalks = new HashMap<>();
-        QueryResult<ChangeData> results = queryProcessor.query(queryBuilder.parse(queryString));
-        pluginInfosByChange = queryProcessor.createPluginDefinedInfos(results.entities());
-        try {
-          AccountAttributeLoader accountLoader = accountAttributeLoaderFactory.create();
-          List<ChangeAttribute> changeAttributes = new ArrayList<>();
-          for (ChangeData d : results.entities()) {
-            changeAttributes.add(buildChangeAttribute(d, repos, revWalks, accountLoader));
-          }
-          accountLoader.fill();
-          changeAttributes.forEach(c -> show(c));
-        } finally {
-          closeAll(revWalks.values(), repos.values());
+        if (export) {
+          stats.rowCount =
+              queryProcessor.stream(
+                  queryBuilder.parse(queryString),
+                  resumeAfter,
+                  exportBatchSize,
+                  (batch, cursor) -> {
+                    showChanges(batch);
+                    QueryCursorAttribute c = new QueryCursorAttribute();
+                    c.cursor = cursor.serialize();
+                    show(c);
+                    // Hand the batch to the client before the next one is loaded. This blocks
+                    // while the client doesn't keep up with reading the results.
+                    out.flush();
+                  });
+        } else {
+          QueryResult<ChangeData> results = queryProcessor.query(queryBuilder.parse(queryString));
+          showChanges(results.entities());
+          stats.rowCount = results.entities().size();
+          stats.moreChanges = results.more();
         }
-
-        stats.rowCount = results.entities().size();
-        stats.moreChanges = results.more();
         stats.runTimeMilliseconds = TimeUtil.nowMs() - stats.runTimeMilliseconds;
         show(stats);
       } catch (StorageException err) {
@@ -255,6 +291,23 @@ public class OutputStreamQuery {
     }
   }
 
+  private void showChanges(List<ChangeData> changes) throws IOException {
+    Map<Project.NameKey, Repository> repos = new HashMap<>();
+    Map<Project.NameKey, RevWalk> revWalks = new HashMap<>();
+    pluginInfosByChange = queryProcessor.createPluginDefinedInfos(changes);
+    try {
+      AccountAttributeLoader accountLoader = accountAttributeLoaderFactory.create();
+      List<ChangeAttribute> changeAttributes = new ArrayList<>();
+      for (ChangeData d : changes) {
+        changeAttributes.add(buildChangeAttribute(d, repos, revWalks, accountLoader));
+      }
+      accountLoader.fill();
+      changeAttributes.forEach(c -> show(c));
+    } finally {
+      closeAll(revWalks.values(), repos.values());
+    }
+  }
+
   private ChangeAttribute buildChangeAttribute(
       ChangeData d,
       Map<Project.NameKey, Repository> repos,
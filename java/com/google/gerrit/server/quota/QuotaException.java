@@ -14,7 +14,11 @@
 
 package com.google.gerrit.server.quota;
 
+import com.google.gerrit.common.Nullable;
 import com.google.gerrit.extensions.restapi.RestApiException;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.OptionalLong;
 
 /**
  * Exception that was encountered while checking if there is sufficient quota to fulfil the request.
@@ -23,7 +27,31 @@ import com.google.gerrit.extensions.restapi.RestApiException;
 public class QuotaException extends RestApiException {
   private static final long serialVersionUID = 1L;
 
+  @Nullable private final Duration retryAfter;
+
   public QuotaException(String reason) {
+    this(reason, null);
+  }
+
+  public QuotaException(String reason, @Nullable Duration retryAfter) {
     super(reason);
+    this.retryAfter = retryAfter;
+  }
+
+  /** Returns the time after which the request may succeed, if known. */
+  public Optional<Duration> getRetryAfter() {
+    return Optional.ofNullable(retryAfter);
+  }
+
+  /**
+   * Returns the time after which the request may succeed in full seconds, rounded up, as used for
+   * {@code Retry-After} headers, if known.
+   */
+  public OptionalLong getRetryAfterSeconds() {
+    if (retryAfter == null) {
+      return OptionalLong.empty();
+    }
+    long seconds = retryAfter.getSeconds() + (retryAfter.getNano() > 0 ? 1 : 0);
+    return OptionalLong.of(Math.max(1, seconds));
   }
 }
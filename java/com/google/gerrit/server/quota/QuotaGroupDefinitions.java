@@ -21,5 +21,22 @@ public class QuotaGroupDefinitions {
    */
   public static final String REPOSITORY_SIZE_GROUP = "/repository:size";
 
+  /**
+   * Definition of the quota group that is requested once for every Git fetch or clone, over HTTP
+   * and SSH.
+   */
+  public static final String GIT_UPLOAD_GROUP = "/git/upload";
+
+  /** Prefix of the quota groups that are requested once for every SSH command. */
+  public static final String SSH_COMMAND_GROUP_PREFIX = "/ssh/";
+
+  /**
+   * Returns the quota group of an SSH command, e.g. {@code /ssh/gerrit/query} for {@code gerrit
+   * query}.
+   */
+  public static String sshCommandGroup(String commandName) {
+    return SSH_COMMAND_GROUP_PREFIX + commandName.trim().replace(' ', '/');
+  }
+
   private QuotaGroupDefinitions() {}
 }
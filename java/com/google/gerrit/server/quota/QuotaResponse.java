@@ -20,7 +20,9 @@ import com.google.auto.value.AutoValue;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Streams;
+import java.time.Duration;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.Optional;
 import java.util.OptionalLong;
 import java.util.stream.Collectors;
@@ -68,12 +70,26 @@ public abstract class QuotaResponse {
     return new AutoValue_QuotaResponse.Builder().status(Status.ERROR).message(message).build();
   }
 
+  /**
+   * Creates an error response for a request that may succeed once {@code retryAfter} has passed.
+   */
+  public static QuotaResponse error(String message, Duration retryAfter) {
+    return new AutoValue_QuotaResponse.Builder()
+        .status(Status.ERROR)
+        .message(message)
+        .retryAfter(retryAfter)
+        .build();
+  }
+
   public abstract Status status();
 
   public abstract Optional<Long> availableTokens();
 
   public abstract Optional<String> message();
 
+  /** Time after which the client may retry a request that failed with this response. */
+  public abstract Optional<Duration> retryAfter();
+
   @AutoValue.Builder
   public abstract static class Builder {
     public abstract QuotaResponse.Builder status(Status status);
@@ -82,6 +98,8 @@ public abstract class QuotaResponse {
 
     public abstract QuotaResponse.Builder message(String message);
 
+    public abstract QuotaResponse.Builder retryAfter(Duration retryAfter);
+
     public abstract QuotaResponse build();
   }
 
@@ -123,10 +141,18 @@ public abstract class QuotaResponse {
           .collect(Collectors.joining(", "));
     }
 
+    /** Returns the longest time after which all failed quota requests may succeed. */
+    public Optional<Duration> retryAfter() {
+      return error().stream()
+          .map(QuotaResponse::retryAfter)
+          .flatMap(Streams::stream)
+          .max(Comparator.naturalOrder());
+    }
+
     public void throwOnError() throws QuotaException {
       String errorMessage = errorMessage();
       if (!Strings.isNullOrEmpty(errorMessage)) {
-        throw new QuotaException(errorMessage);
+        throw new QuotaException(errorMessage, retryAfter().orElse(null));
       }
     }
   }
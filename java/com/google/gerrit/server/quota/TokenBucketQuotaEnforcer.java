@@ -0,0 +1,366 @@
+// Copyright (C) 2023 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.quota;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static java.util.Comparator.comparing;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Splitter;
+import com.google.common.base.Ticker;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Streams;
+import com.google.common.flogger.FluentLogger;
+import com.google.gerrit.common.Nullable;
+import com.google.gerrit.entities.AccountGroup;
+import com.google.gerrit.metrics.Counter1;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.Field;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.server.CurrentUser;
+import com.google.gerrit.server.config.ConfigUtil;
+import com.google.gerrit.server.config.GerritServerConfig;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import org.eclipse.jgit.lib.Config;
+
+/**
+ * Built-in {@link QuotaEnforcer} that limits the rate of requests with token buckets.
+ *
+ * <p>Limits are configured in the {@code quota} section of {@code gerrit.config}. Every limit
+ * applies to one quota group (or to all quota groups with a given prefix) and owns one bucket per
+ * account, account group, project or for the whole server, depending on its key. Limits can be
+ * restricted to the members of an account group to give some users other limits than the rest.
+ *
+ * <p>The buckets implement the generic cell rate algorithm: the state of a bucket is the single
+ * point in time at which it is full again, and it is updated with compare-and-set. Requests never
+ * block each other and the cost of a request doesn't depend on the number of buckets or the load.
+ * Buckets live in a cache that is split into segments so that looking up different buckets rarely
+ * contends. Buckets that were not used for longer than it takes to refill them are full and are
+ * evicted from the cache.
+ */
+@Singleton
+public class TokenBucketQuotaEnforcer implements QuotaEnforcer {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  static final String SECTION = "quota";
+  private static final int CONCURRENCY_LEVEL = 16;
+  private static final Duration MIN_BUCKET_EXPIRY = Duration.ofMinutes(1);
+
+  /** What a limit owns a separate bucket for. */
+  public enum Key {
+    /** One bucket per account, anonymous users share a single bucket. */
+    ACCOUNT,
+    /** One bucket shared by all members of the limit's account group. */
+    ACCOUNT_GROUP,
+    /** One bucket per project, requests without project are not limited. */
+    PROJECT,
+    /** One bucket for the whole server. */
+    GLOBAL
+  }
+
+  /** Returns whether any quota limits are configured. */
+  public static boolean isEnabled(Config cfg) {
+    return !cfg.getSubsections(SECTION).isEmpty();
+  }
+
+  private final Ticker ticker;
+  private final ImmutableList<Limit> limits;
+  private final LoadingCache<String, Bucket> buckets;
+  private final Counter1<String> throttled;
+
+  @Inject
+  TokenBucketQuotaEnforcer(@GerritServerConfig Config cfg, Ticker ticker, MetricMaker metricMaker) {
+    this.ticker = ticker;
+    this.limits = parseLimits(cfg);
+
+    long expiryNanos =
+        limits.stream().mapToLong(l -> l.toleranceNanos).max().orElse(0)
+            + MIN_BUCKET_EXPIRY.toNanos();
+    this.buckets =
+        CacheBuilder.newBuilder()
+            .concurrencyLevel(CONCURRENCY_LEVEL)
+            .expireAfterAccess(expiryNanos, NANOSECONDS)
+            .ticker(ticker)
+            .build(CacheLoader.from(k -> new Bucket(ticker.read())));
+
+    this.throttled =
+        metricMaker.newCounter(
+            "quota/throttled",
+            new Description("Requests rejected by the built-in quota limits")
+                .setRate()
+                .setUnit("requests"),
+            Field.ofString("limit", (metadataBuilder, fieldValue) -> {})
+                .description("The name of the quota limit that rejected the request.")
+                .build());
+    metricMaker.newCallbackMetric(
+        "quota/buckets",
+        Long.class,
+        new Description("Number of token buckets of the built-in quota limits in memory")
+            .setGauge()
+            .setUnit("buckets"),
+        buckets::size);
+  }
+
+  @Override
+  public QuotaResponse requestTokens(String quotaGroup, QuotaRequestContext ctx, long numTokens) {
+    return check(quotaGroup, ctx, numTokens, true);
+  }
+
+  @Override
+  public QuotaResponse dryRun(String quotaGroup, QuotaRequestContext ctx, long numTokens) {
+    return check(quotaGroup, ctx, numTokens, false);
+  }
+
+  @Override
+  public QuotaResponse availableTokens(String quotaGroup, QuotaRequestContext ctx) {
+    Optional<Limit> limit = findLimit(quotaGroup, ctx);
+    if (!limit.isPresent()) {
+      return QuotaResponse.noOp();
+    }
+    return QuotaResponse.ok(bucket(limit.get(), ctx).available(limit.get(), ticker.read()));
+  }
+
+  @Override
+  public void refill(String quotaGroup, QuotaRequestContext ctx, long numTokens) {
+    Optional<Limit> limit = findLimit(quotaGroup, ctx);
+    if (limit.isPresent()) {
+      bucket(limit.get(), ctx).refill(limit.get(), numTokens);
+    }
+  }
+
+  private QuotaResponse check(
+      String quotaGroup, QuotaRequestContext ctx, long numTokens, boolean deduct) {
+    Optional<Limit> limit = findLimit(quotaGroup, ctx);
+    if (!limit.isPresent()) {
+      return QuotaResponse.noOp();
+    }
+    Limit l = limit.get();
+    if (numTokens > l.burst) {
+      throttled.increment(l.name);
+      return QuotaResponse.error(
+          String.format(
+              "Quota limit %s exceeded: %d tokens requested, at most %d allowed",
+              l.name, numTokens, l.burst));
+    }
+    long waitNanos = bucket(l, ctx).take(l, numTokens, ticker.read(), deduct);
+    if (waitNanos > 0) {
+      throttled.increment(l.name);
+      return QuotaResponse.error(
+          String.format("Quota limit %s exceeded", l.name), Duration.ofNanos(waitNanos));
+    }
+    return QuotaResponse.ok();
+  }
+
+  private Optional<Limit> findLimit(String quotaGroup, QuotaRequestContext ctx) {
+    if (limits.isEmpty() || ctx.user().isInternalUser()) {
+      return Optional.empty();
+    }
+    for (Limit limit : limits) {
+      if (limit.appliesTo(quotaGroup, ctx)) {
+        return Optional.of(limit);
+      }
+    }
+    return Optional.empty();
+  }
+
+  private Bucket bucket(Limit limit, QuotaRequestContext ctx) {
+    return buckets.getUnchecked(limit.name + '\0' + limit.bucketId(ctx));
+  }
+
+  @VisibleForTesting
+  ImmutableList<Limit> limits() {
+    return limits;
+  }
+
+  private static ImmutableList<Limit> parseLimits(Config cfg) {
+    return cfg.getSubsections(SECTION).stream()
+        .map(name -> parseLimit(cfg, name))
+        .flatMap(Streams::stream)
+        .sorted(
+            comparing((Limit l) -> l.accountGroup == null)
+                .thenComparing(l -> l.isPrefix())
+                .thenComparing(l -> -l.quotaGroup.length())
+                .thenComparing(l -> l.name))
+        .collect(toImmutableList());
+  }
+
+  private static Optional<Limit> parseLimit(Config cfg, String name) {
+    String quotaGroup = cfg.getString(SECTION, name, "quotaGroup");
+    if (quotaGroup == null) {
+      quotaGroup = name;
+    }
+    String group = cfg.getString(SECTION, name, "accountGroup");
+    AccountGroup.UUID accountGroup = group != null ? AccountGroup.uuid(group) : null;
+    Key key = cfg.getEnum(SECTION, name, "key", Key.ACCOUNT);
+    if (key == Key.ACCOUNT_GROUP && accountGroup == null) {
+      logger.atWarning().log(
+          "Ignoring quota limit %s: key %s requires quota.%s.accountGroup", name, key, name);
+      return Optional.empty();
+    }
+
+    String rate = cfg.getString(SECTION, name, "rate");
+    if (rate == null) {
+      logger.atWarning().log("Ignoring quota limit %s: quota.%s.rate is not set", name, name);
+      return Optional.empty();
+    }
+    List<String> parts = Splitter.on('/').limit(2).trimResults().splitToList(rate);
+    long tokens;
+    long periodNanos;
+    try {
+      tokens = Long.parseLong(parts.get(0));
+      String period = parts.size() > 1 ? parts.get(1) : "s";
+      if (!period.isEmpty() && !Character.isDigit(period.charAt(0))) {
+        period = "1 " + period;
+      }
+      periodNanos = ConfigUtil.getTimeUnit(period, -1, NANOSECONDS);
+    } catch (IllegalArgumentException e) {
+      logger.atWarning().withCause(e).log("Ignoring quota limit %s: invalid rate %s", name, rate);
+      return Optional.empty();
+    }
+    long burst = cfg.getLong(SECTION, name, "burst", tokens);
+    if (tokens <= 0 || periodNanos <= 0 || burst <= 0) {
+      logger.atWarning().log(
+          "Ignoring quota limit %s: rate %s and burst %d must be positive", name, rate, burst);
+      return Optional.empty();
+    }
+    long intervalNanos = Math.max(1, periodNanos / tokens);
+    try {
+      return Optional.of(
+          new Limit(
+              name,
+              quotaGroup,
+              accountGroup,
+              key,
+              intervalNanos,
+              burst,
+              Math.multiplyExact(intervalNanos, burst)));
+    } catch (ArithmeticException e) {
+      logger.atWarning().log("Ignoring quota limit %s: burst %d is too large", name, burst);
+      return Optional.empty();
+    }
+  }
+
+  /** A configured limit for a quota group. */
+  @VisibleForTesting
+  static class Limit {
+    final String name;
+    final String quotaGroup;
+    @Nullable final AccountGroup.UUID accountGroup;
+    final Key key;
+    /** Time in which one token is refilled. */
+    final long intervalNanos;
+    /** Maximum number of tokens in the bucket. */
+    final long burst;
+    /** Time in which an empty bucket is refilled completely. */
+    final long toleranceNanos;
+
+    Limit(
+        String name,
+        String quotaGroup,
+        @Nullable AccountGroup.UUID accountGroup,
+        Key key,
+        long intervalNanos,
+        long burst,
+        long toleranceNanos) {
+      this.name = name;
+      this.quotaGroup = quotaGroup;
+      this.accountGroup = accountGroup;
+      this.key = key;
+      this.intervalNanos = intervalNanos;
+      this.burst = burst;
+      this.toleranceNanos = toleranceNanos;
+    }
+
+    boolean isPrefix() {
+      return quotaGroup.endsWith("*");
+    }
+
+    boolean appliesTo(String requestedGroup, QuotaRequestContext ctx) {
+      boolean matches =
+          isPrefix()
+              ? requestedGroup.startsWith(quotaGroup.substring(0, quotaGroup.length() - 1))
+              : requestedGroup.equals(quotaGroup);
+      if (!matches || (key == Key.PROJECT && !ctx.project().isPresent())) {
+        return false;
+      }
+      return accountGroup == null || ctx.user().getEffectiveGroups().contains(accountGroup);
+    }
+
+    String bucketId(QuotaRequestContext ctx) {
+      switch (key) {
+        case ACCOUNT:
+          CurrentUser user = ctx.user();
+          return user.isIdentifiedUser() ? user.getAccountId().toString() : "anonymous";
+        case ACCOUNT_GROUP:
+          return accountGroup.get();
+        case PROJECT:
+          return ctx.project().get().get();
+        case GLOBAL:
+          return "";
+      }
+      throw new IllegalStateException("unsupported key: " + key);
+    }
+  }
+
+  /**
+   * Token bucket holding the time at which it is full again; every token that is taken moves that
+   * time by the refill interval of one token into the future.
+   */
+  private static class Bucket {
+    private final AtomicLong fullAt;
+
+    Bucket(long now) {
+      fullAt = new AtomicLong(now);
+    }
+
+    /**
+     * Takes tokens from the bucket.
+     *
+     * @return 0 if the tokens were available, otherwise the time in nanoseconds after which they
+     *     will be available
+     */
+    long take(Limit limit, long numTokens, long now, boolean deduct) {
+      while (true) {
+        long current = fullAt.get();
+        long updated = Math.max(current, now) + numTokens * limit.intervalNanos;
+        long wait = updated - now - limit.toleranceNanos;
+        if (wait > 0) {
+          return wait;
+        }
+        if (!deduct || fullAt.compareAndSet(current, updated)) {
+          return 0;
+        }
+      }
+    }
+
+    void refill(Limit limit, long numTokens) {
+      fullAt.addAndGet(-numTokens * limit.intervalNanos);
+    }
+
+    long available(Limit limit, long now) {
+      long used = Math.max(fullAt.get(), now) - now;
+      return (limit.toleranceNanos - used) / limit.intervalNanos;
+    }
+  }
+}
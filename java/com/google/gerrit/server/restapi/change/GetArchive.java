@@ -23,6 +23,7 @@ import com.google.gerrit.extensions.restapi.BinaryResult;
 import com.google.gerrit.extensions.restapi.MethodNotAllowedException;
 import com.google.gerrit.extensions.restapi.Response;
 import com.google.gerrit.extensions.restapi.RestReadView;
+import com.google.gerrit.server.change.ArchiveCache;
 import com.google.gerrit.server.change.ArchiveFormatInternal;
 import com.google.gerrit.server.change.RevisionResource;
 import com.google.gerrit.server.git.GitRepositoryManager;
@@ -39,6 +40,7 @@ import org.kohsuke.args4j.Option;
 public class GetArchive implements RestReadView<RevisionResource> {
   private final GitRepositoryManager repoManager;
   private final AllowedFormats allowedFormats;
+  private final ArchiveCache archiveCache;
   @Nullable private String format;
 
   @Option(name = "--format")
@@ -47,9 +49,11 @@ public class GetArchive implements RestReadView<RevisionResource> {
   }
 
   @Inject
-  GetArchive(GitRepositoryManager repoManager, AllowedFormats allowedFormats) {
+  GetArchive(
+      GitRepositoryManager repoManager, AllowedFormats allowedFormats, ArchiveCache archiveCache) {
     this.repoManager = repoManager;
     this.allowedFormats = allowedFormats;
+    this.archiveCache = archiveCache;
   }
 
   @Override
@@ -79,15 +83,20 @@ public class GetArchive implements RestReadView<RevisionResource> {
           new BinaryResult() {
             @Override
             public void writeTo(OutputStream out) throws IOException {
-              try {
-                new ArchiveCommand(repo)
-                    .setFormat(f.name())
-                    .setTree(commit.getTree())
-                    .setOutputStream(out)
-                    .call();
-              } catch (GitAPIException e) {
-                throw new IOException(e);
-              }
+              archiveCache.writeTo(
+                  ArchiveCache.Key.create(commit.getTree(), f),
+                  o -> {
+                    try {
+                      new ArchiveCommand(repo)
+                          .setFormat(f.name())
+                          .setTree(commit.getTree())
+                          .setOutputStream(o)
+                          .call();
+                    } catch (GitAPIException e) {
+                      throw new IOException(e);
+                    }
+                  },
+                  out);
             }
 
             @Override
@@ -29,9 +29,11 @@ import com.google.gerrit.extensions.restapi.PreconditionFailedException;
 import com.google.gerrit.extensions.restapi.Response;
 import com.google.gerrit.extensions.restapi.RestApiException;
 import com.google.gerrit.extensions.restapi.RestReadView;
+import com.google.gerrit.server.CurrentUser;
 import com.google.gerrit.server.DynamicOptions;
 import com.google.gerrit.server.DynamicOptions.DynamicBean;
 import com.google.gerrit.server.change.ChangeJson;
+import com.google.gerrit.server.change.ChangeJsonCache;
 import com.google.gerrit.server.change.ChangePluginDefinedInfoFactory;
 import com.google.gerrit.server.change.ChangeResource;
 import com.google.gerrit.server.change.PluginDefinedAttributesFactories;
@@ -62,6 +64,7 @@ public class GetChange
   private final EnumSet<ListChangesOption> options = EnumSet.noneOf(ListChangesOption.class);
   private final Map<String, DynamicBean> dynamicBeans = new HashMap<>();
   private final GitRepositoryManager repoMgr;
+  private final ChangeJsonCache changeJsonCache;
 
   @Option(name = "-o", usage = "Output options")
   public void addOption(ListChangesOption o) {
@@ -85,10 +88,12 @@ public class GetChange
   GetChange(
       ChangeJson.Factory json,
       DynamicSet<ChangePluginDefinedInfoFactory> pdiFactories,
-      GitRepositoryManager repoMgr) {
+      GitRepositoryManager repoMgr,
+      ChangeJsonCache changeJsonCache) {
     this.json = json;
     this.pdiFactories = pdiFactories;
     this.repoMgr = repoMgr;
+    this.changeJsonCache = changeJsonCache;
   }
 
   @Override
@@ -106,7 +111,28 @@ public class GetChange
     try {
       Change change = rsrc.getChange();
       ObjectId changeMetaRevId = getMetaRevId(change);
-      return Response.withMustRevalidate(newChangeJson().format(change, changeMetaRevId));
+      if (changeMetaRevId != null
+          || !dynamicBeans.isEmpty()
+          || !changeJsonCache.isEnabled()
+          || !ChangeJsonCache.isCacheable(options)) {
+        return Response.withMustRevalidate(newChangeJson().format(change, changeMetaRevId));
+      }
+
+      boolean perUser = ChangeJsonCache.isPerUser(options);
+      ChangeJsonCache.Key key =
+          ChangeJsonCache.Key.create(
+              perUser ? rsrc.getETag() : rsrc.getVisibilityClassETag(), perUser, options);
+      ChangeInfo info = changeJsonCache.get(key);
+      if (info == null) {
+        info = newChangeJson().format(change, null);
+        changeJsonCache.put(key, info);
+      } else if (!perUser) {
+        CurrentUser user = rsrc.getUser();
+        if (user.isIdentifiedUser() && rsrc.getChangeData().isStarred(user.getAccountId())) {
+          info.starred = true;
+        }
+      }
+      return Response.withMustRevalidate(info);
     } catch (MissingMetaObjectException e) {
       throw new PreconditionFailedException(e.getMessage());
     }
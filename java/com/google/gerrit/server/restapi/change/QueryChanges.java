@@ -198,6 +198,10 @@ public class QueryChanges implements RestReadView<TopLevelResource>, DynamicOpti
       throw new QueryParseException("limit of 10 queries");
     }
 
+    // TODO: Support exports like "gerrit query --export" does, see
+    // ChangeQueryProcessor#stream. The changes could be written batch by batch through a
+    // BinaryResult, but that needs a cursor on ChangeInfo and a different response type than the
+    // List that the Java API expects from this view.
     int cnt = queries.size();
     List<QueryResult<ChangeData>> results = queryProcessor.query(qb.parse(queries));
     List<List<ChangeInfo>> res =
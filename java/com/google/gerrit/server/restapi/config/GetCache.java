@@ -17,14 +17,24 @@ package com.google.gerrit.server.restapi.config;
 import com.google.gerrit.extensions.restapi.Response;
 import com.google.gerrit.extensions.restapi.RestReadView;
 import com.google.gerrit.server.cache.CacheInfo;
+import com.google.gerrit.server.cache.CacheWarmUp;
 import com.google.gerrit.server.config.CacheResource;
+import com.google.inject.Inject;
 import com.google.inject.Singleton;
 
 @Singleton
 public class GetCache implements RestReadView<CacheResource> {
+  private final CacheWarmUp cacheWarmUp;
+
+  @Inject
+  GetCache(CacheWarmUp cacheWarmUp) {
+    this.cacheWarmUp = cacheWarmUp;
+  }
 
   @Override
   public Response<CacheInfo> apply(CacheResource rsrc) {
-    return Response.ok(new CacheInfo(rsrc.getName(), rsrc.getCache()));
+    CacheInfo info = new CacheInfo(rsrc.getName(), rsrc.getCache());
+    info.warmUp = cacheWarmUp.getState(rsrc.getName());
+    return Response.ok(info);
   }
 }
@@ -30,6 +30,7 @@ import com.google.gerrit.extensions.restapi.BinaryResult;
 import com.google.gerrit.extensions.restapi.Response;
 import com.google.gerrit.extensions.restapi.RestReadView;
 import com.google.gerrit.server.cache.CacheInfo;
+import com.google.gerrit.server.cache.CacheWarmUp;
 import com.google.gerrit.server.config.ConfigResource;
 import com.google.inject.Inject;
 import java.util.Map;
@@ -40,6 +41,7 @@ import org.kohsuke.args4j.Option;
 @RequiresAnyCapability({VIEW_CACHES, MAINTAIN_SERVER})
 public class ListCaches implements RestReadView<ConfigResource> {
   private final DynamicMap<Cache<?, ?>> cacheMap;
+  private final CacheWarmUp cacheWarmUp;
 
   public enum OutputFormat {
     LIST,
@@ -55,15 +57,18 @@ public class ListCaches implements RestReadView<ConfigResource> {
   }
 
   @Inject
-  public ListCaches(DynamicMap<Cache<?, ?>> cacheMap) {
+  public ListCaches(DynamicMap<Cache<?, ?>> cacheMap, CacheWarmUp cacheWarmUp) {
     this.cacheMap = cacheMap;
+    this.cacheWarmUp = cacheWarmUp;
   }
 
   public Map<String, CacheInfo> getCacheInfos() {
     Map<String, CacheInfo> cacheInfos = new TreeMap<>();
     for (Extension<Cache<?, ?>> e : cacheMap) {
-      cacheInfos.put(
-          cacheNameOf(e.getPluginName(), e.getExportName()), new CacheInfo(e.getProvider().get()));
+      String name = cacheNameOf(e.getPluginName(), e.getExportName());
+      CacheInfo info = new CacheInfo(e.getProvider().get());
+      info.warmUp = cacheWarmUp.getState(name);
+      cacheInfos.put(name, info);
     }
     return cacheInfos;
   }
@@ -20,6 +20,7 @@ import static java.util.stream.Collectors.toList;
 
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.gerrit.common.Nullable;
 import com.google.gerrit.entities.Account;
@@ -42,6 +43,7 @@ import com.google.gerrit.server.account.AccountResource;
 import com.google.gerrit.server.account.GroupBackend;
 import com.google.gerrit.server.account.GroupCache;
 import com.google.gerrit.server.account.GroupControl;
+import com.google.gerrit.server.account.InternalGroupsSnapshot;
 import com.google.gerrit.server.group.GroupResolver;
 import com.google.gerrit.server.group.InternalGroupDescription;
 import com.google.gerrit.server.group.db.Groups;
@@ -59,6 +61,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.NavigableMap;
+import java.util.Optional;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.function.Predicate;
@@ -84,6 +87,7 @@ public class ListGroups implements RestReadView<TopLevelResource> {
   private final GroupJson json;
   private final GroupBackend groupBackend;
   private final Groups groups;
+  private final InternalGroupsSnapshot groupsSnapshot;
   private final GroupResolver groupResolver;
 
   private Set<ListGroupsOption> options = EnumSet.noneOf(ListGroupsOption.class);
@@ -210,7 +214,8 @@ public class ListGroups implements RestReadView<TopLevelResource> {
       final GroupResolver groupResolver,
       GroupJson json,
       GroupBackend groupBackend,
-      Groups groups) {
+      Groups groups,
+      InternalGroupsSnapshot groupsSnapshot) {
     this.groupCache = groupCache;
     this.groupControlFactory = groupControlFactory;
     this.genericGroupControlFactory = genericGroupControlFactory;
@@ -220,6 +225,7 @@ public class ListGroups implements RestReadView<TopLevelResource> {
     this.json = json;
     this.groupBackend = groupBackend;
     this.groups = groups;
+    this.groupsSnapshot = groupsSnapshot;
     this.groupResolver = groupResolver;
   }
 
@@ -301,7 +307,13 @@ public class ListGroups implements RestReadView<TopLevelResource> {
           .flatMap(Collection::stream)
           .distinct();
     }
-    return groups.getAllGroupReferences();
+    return getAllGroupReferences();
+  }
+
+  private Stream<GroupReference> getAllGroupReferences()
+      throws IOException, ConfigInvalidException {
+    Optional<ImmutableList<GroupReference>> snapshot = groupsSnapshot.getAllGroupReferences();
+    return snapshot.isPresent() ? snapshot.get().stream() : groups.getAllGroupReferences();
   }
 
   private List<GroupInfo> suggestGroups() throws BadRequestException, PermissionBackendException {
@@ -363,8 +375,7 @@ public class ListGroups implements RestReadView<TopLevelResource> {
     Pattern pattern = getRegexPattern();
     Stream<? extends GroupDescription.Internal> foundGroups =
         loadGroups(
-                groups
-                    .getAllGroupReferences()
+                getAllGroupReferences()
                     .filter(group -> isRelevant(pattern, group))
                     .map(g -> g.getUUID())
                     .collect(toImmutableSet()))
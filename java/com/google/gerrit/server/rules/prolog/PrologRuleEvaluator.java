@@ -27,6 +27,12 @@ import com.google.gerrit.entities.SubmitRecord;
 import com.google.gerrit.entities.SubmitTypeRecord;
 import com.google.gerrit.exceptions.StorageException;
 import com.google.gerrit.extensions.client.SubmitType;
+import com.google.gerrit.metrics.Counter1;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.Description.Units;
+import com.google.gerrit.metrics.Field;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.metrics.Timer1;
 import com.google.gerrit.server.account.AccountCache;
 import com.google.gerrit.server.account.Accounts;
 import com.google.gerrit.server.account.Emails;
@@ -35,6 +41,8 @@ import com.google.gerrit.server.project.ProjectCache;
 import com.google.gerrit.server.project.ProjectState;
 import com.google.gerrit.server.project.RuleEvalException;
 import com.google.gerrit.server.query.change.ChangeData;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
 import com.google.inject.assistedinject.Assisted;
 import com.google.inject.assistedinject.AssistedInject;
 import com.googlecode.prolog_cafe.exceptions.CompileException;
@@ -89,11 +97,40 @@ public class PrologRuleEvaluator {
     }
   }
 
+  @Singleton
+  private static class Metrics {
+    final Timer1<String> evaluationLatency;
+    final Counter1<String> reductionLimitExceeded;
+
+    @Inject
+    Metrics(MetricMaker metricMaker) {
+      evaluationLatency =
+          metricMaker.newTimer(
+              "prolog/evaluation_latency",
+              new Description("Latency for evaluating the Prolog rules of a project on a change.")
+                  .setCumulative()
+                  .setUnit(Units.MILLISECONDS),
+              Field.ofProjectName("project_name")
+                  .description("The name of the project.")
+                  .build());
+      reductionLimitExceeded =
+          metricMaker.newCounter(
+              "prolog/reduction_limit_exceeded",
+              new Description("Prolog rule evaluations that exceeded the reduction limit.")
+                  .setRate()
+                  .setUnit("evaluations"),
+              Field.ofProjectName("project_name")
+                  .description("The name of the project whose rules exceeded the limit.")
+                  .build());
+    }
+  }
+
   private final AccountCache accountCache;
   private final Accounts accounts;
   private final Emails emails;
   private final RulesCache rulesCache;
   private final PrologEnvironment.Factory envFactory;
+  private final Metrics metrics;
   private final ChangeData cd;
   private final ProjectState projectState;
   private final PrologOptions opts;
@@ -107,6 +144,7 @@ public class PrologRuleEvaluator {
       Emails emails,
       RulesCache rulesCache,
       PrologEnvironment.Factory envFactory,
+      Metrics metrics,
       ProjectCache projectCache,
       @Assisted ChangeData cd,
       @Assisted PrologOptions options) {
@@ -115,6 +153,7 @@ public class PrologRuleEvaluator {
     this.emails = emails;
     this.rulesCache = rulesCache;
     this.envFactory = envFactory;
+    this.metrics = metrics;
     this.cd = cd;
     this.opts = options;
 
@@ -414,7 +453,8 @@ public class PrologRuleEvaluator {
       String filterRuleWrapperName)
       throws RuleEvalException {
     PrologEnvironment env = getPrologEnvironment();
-    try {
+    try (Timer1.Context<String> ignored =
+        metrics.evaluationLatency.start(projectState.getName())) {
       Term sr = env.once("gerrit", userRuleLocatorName, new VariableTerm());
       List<Term> results = new ArrayList<>();
       try {
@@ -422,6 +462,7 @@ public class PrologRuleEvaluator {
           results.add(template[1]);
         }
       } catch (ReductionLimitException err) {
+        metrics.reductionLimitExceeded.increment(projectState.getName());
         throw new RuleEvalException(
             String.format(
                 "%s on change %d of %s",
@@ -516,6 +557,7 @@ public class PrologRuleEvaluator {
                 "gerrit", filterRuleWrapperName, filterRule, results, new VariableTerm());
         results = template[2];
       } catch (ReductionLimitException err) {
+        metrics.reductionLimitExceeded.increment(parentState.getName());
         throw new RuleEvalException(
             String.format(
                 "%s on change %d of %s",
@@ -142,10 +142,13 @@ public class RulesCache {
   /**
    * Locate a cached Prolog machine state, or create one if not available.
    *
+   * <p>Concurrent calls for the same rules wait for a single machine to be created, calls for
+   * different rules don't block each other.
+   *
    * @return a Prolog machine, after loading the specified rules.
    * @throws CompileException the machine cannot be created.
    */
-  public synchronized PrologMachineCopy loadMachine(
+  public PrologMachineCopy loadMachine(
       @Nullable Project.NameKey project, @Nullable ObjectId rulesId) throws CompileException {
     if (!enableProjectRules || project == null || rulesId == null) {
       return defaultMachine;
@@ -161,6 +164,15 @@ public class RulesCache {
     }
   }
 
+  /**
+   * Drops the cached machine for the given rules, so that it is loaded again on the next use.
+   *
+   * <p>Used once the rules were compiled into a jar, which is preferred over consulted rules.
+   */
+  public void evict(ObjectId rulesId) {
+    machineCache.invalidate(rulesId);
+  }
+
   public PrologMachineCopy loadMachine(String name, Reader in) throws CompileException {
     PrologMachineCopy pmc = consultRules(name, in);
     if (pmc == null) {
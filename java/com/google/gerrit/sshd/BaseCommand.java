@@ -25,10 +25,13 @@ import com.google.gerrit.extensions.annotations.PluginName;
 import com.google.gerrit.extensions.registration.DynamicMap;
 import com.google.gerrit.extensions.restapi.AuthException;
 import com.google.gerrit.server.AccessPath;
+import com.google.gerrit.server.AdmissionController;
 import com.google.gerrit.server.CurrentUser;
 import com.google.gerrit.server.DynamicOptions;
 import com.google.gerrit.server.IdentifiedUser;
 import com.google.gerrit.server.RequestCleanup;
+import com.google.gerrit.server.cancellation.RequestCancelledException;
+import com.google.gerrit.server.cancellation.RequestStateContext;
 import com.google.gerrit.server.git.ProjectRunnable;
 import com.google.gerrit.server.git.WorkQueue.CancelableRunnable;
 import com.google.gerrit.server.permissions.GlobalPermission;
@@ -51,6 +54,7 @@ import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.nio.charset.Charset;
 import java.util.Arrays;
+import java.util.Optional;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.atomic.AtomicReference;
@@ -96,6 +100,8 @@ public abstract class BaseCommand implements Command {
 
   @Inject private PermissionBackend permissionBackend;
 
+  @Inject private AdmissionController admissionController;
+
   @Inject private SshScope.Context context;
 
   /** Commands declared by a plugin can be scoped by the plugin name. */
@@ -290,16 +296,34 @@ public abstract class BaseCommand implements Command {
    * @param accessPath the path used by the end user for running the SSH command
    */
   protected void startThread(final CommandRunnable thunk, AccessPath accessPath) {
-    final TaskThunk tt = new TaskThunk(thunk, accessPath);
+    boolean highPriority = isAdminHighPriorityCommand();
+    AdmissionController.Permit permit;
+    try {
+      // Admitted before the command is queued, so that commands that are rejected don't wait for
+      // a thread of the command executor.
+      permit =
+          highPriority
+              ? admissionController.unlimited()
+              : admissionController.admit(user, getRequestClass());
+    } catch (RequestCancelledException e) {
+      onExit(handleError(new UnloggedFailure(1, "fatal: " + e.getMessage())));
+      return;
+    }
+    final TaskThunk tt = new TaskThunk(thunk, accessPath, permit);
 
-    if (isAdminHighPriorityCommand()) {
+    if (highPriority) {
       // Admin commands should not block the main work threads (there
       // might be an interactive shell there), nor should they wait
       // for the main work threads.
       //
       new Thread(tt, tt.toString()).start();
     } else {
-      task.set(executor.submit(tt));
+      try {
+        task.set(executor.submit(tt));
+      } catch (RuntimeException e) {
+        permit.close();
+        throw e;
+      }
     }
   }
 
@@ -315,6 +339,15 @@ public abstract class BaseCommand implements Command {
     return false;
   }
 
+  /**
+   * Returns the class of this command for the {@link AdmissionController}.
+   *
+   * <p>Commands that modify data or fetch from repositories should override this.
+   */
+  protected AdmissionController.RequestClass getRequestClass() {
+    return AdmissionController.RequestClass.INTERACTIVE_READ;
+  }
+
   /**
    * Terminate this command and return a result code to the remote client.
    *
@@ -349,6 +382,11 @@ public abstract class BaseCommand implements Command {
       return 127;
     }
 
+    Optional<RequestCancelledException> cancelled = RequestCancelledException.getFromCausalChain(e);
+    if (cancelled.isPresent() && !(e instanceof Failure)) {
+      return handleError(new UnloggedFailure(1, "fatal: " + cancelled.get().getMessage()));
+    }
+
     if (!(e instanceof UnloggedFailure)) {
       final StringBuilder m = new StringBuilder();
       m.append("Internal server error");
@@ -451,13 +489,16 @@ public abstract class BaseCommand implements Command {
     private final CommandRunnable thunk;
     private final String taskName;
     private final AccessPath accessPath;
+    private final AdmissionController.Permit permit;
 
     private Project.NameKey projectName;
 
-    private TaskThunk(final CommandRunnable thunk, AccessPath accessPath) {
+    private TaskThunk(
+        final CommandRunnable thunk, AccessPath accessPath, AdmissionController.Permit permit) {
       this.thunk = thunk;
       this.taskName = getTaskName();
       this.accessPath = accessPath;
+      this.permit = permit;
     }
 
     @Override
@@ -468,6 +509,7 @@ public abstract class BaseCommand implements Command {
           onExit(STATUS_CANCEL);
         } finally {
           sshScope.set(old);
+          permit.close();
         }
       }
     }
@@ -484,7 +526,8 @@ public abstract class BaseCommand implements Command {
           context.start();
           thisThread.setName("SSH " + taskName);
 
-          try {
+          try (RequestStateContext requestStateContext =
+              RequestStateContext.open().addRequestStateProvider(permit)) {
             if (thunk instanceof ProjectCommandRunnable) {
               try (DynamicOptions pluginOptions = new DynamicOptions(injector, dynamicBeans)) {
                 ((ProjectCommandRunnable) thunk).executeParseCommand(pluginOptions);
@@ -507,6 +550,7 @@ public abstract class BaseCommand implements Command {
           flushIgnoreException(err);
           rc = handleError(e);
         } finally {
+          permit.close();
           try {
             onExit(rc);
           } finally {
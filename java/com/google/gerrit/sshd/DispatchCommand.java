@@ -25,6 +25,9 @@ import com.google.gerrit.server.args4j.SubcommandHandler;
 import com.google.gerrit.server.permissions.GlobalPermission;
 import com.google.gerrit.server.permissions.PermissionBackend;
 import com.google.gerrit.server.permissions.PermissionBackendException;
+import com.google.gerrit.server.quota.QuotaBackend;
+import com.google.gerrit.server.quota.QuotaException;
+import com.google.gerrit.server.quota.QuotaGroupDefinitions;
 import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
 import java.io.IOException;
@@ -45,6 +48,7 @@ final class DispatchCommand extends BaseCommand {
   }
 
   private final PermissionBackend permissionBackend;
+  private final QuotaBackend quotaBackend;
   private final Map<String, CommandProvider> commands;
   private final AtomicReference<Command> atomicCmd;
   private final DynamicSet<SshExecuteCommandInterceptor> commandInterceptors;
@@ -58,9 +62,11 @@ final class DispatchCommand extends BaseCommand {
   @Inject
   DispatchCommand(
       PermissionBackend permissionBackend,
+      QuotaBackend quotaBackend,
       DynamicSet<SshExecuteCommandInterceptor> commandInterceptors,
       @Assisted Map<String, CommandProvider> all) {
     this.permissionBackend = permissionBackend;
+    this.quotaBackend = quotaBackend;
     commands = all;
     atomicCmd = Atomics.newReference();
     this.commandInterceptors = commandInterceptors;
@@ -115,6 +121,10 @@ final class DispatchCommand extends BaseCommand {
         }
       }
 
+      if (!(cmd instanceof DispatchCommand)) {
+        checkQuota(actualCommandName);
+      }
+
       provideStateTo(cmd);
       atomicCmd.set(cmd);
       cmd.start(channel, env);
@@ -146,6 +156,21 @@ final class DispatchCommand extends BaseCommand {
     }
   }
 
+  private void checkQuota(String actualCommandName) throws UnloggedFailure {
+    try {
+      quotaBackend
+          .currentUser()
+          .requestToken(QuotaGroupDefinitions.sshCommandGroup(actualCommandName))
+          .throwOnError();
+    } catch (QuotaException e) {
+      String msg = "fatal: " + e.getMessage();
+      if (e.getRetryAfterSeconds().isPresent()) {
+        msg += String.format(", retry after %d s", e.getRetryAfterSeconds().getAsLong());
+      }
+      throw new UnloggedFailure(1, msg);
+    }
+  }
+
   @Override
   public void destroy(ChannelSession channel) {
     Command cmd = atomicCmd.getAndSet(null);
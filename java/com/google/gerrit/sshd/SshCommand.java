@@ -15,20 +15,18 @@
 package com.google.gerrit.sshd;
 
 import com.google.common.base.Throwables;
-import com.google.gerrit.extensions.registration.DynamicSet;
 import com.google.gerrit.server.AccessPath;
 import com.google.gerrit.server.CancellationMetrics;
 import com.google.gerrit.server.DeadlineChecker;
 import com.google.gerrit.server.DynamicOptions;
 import com.google.gerrit.server.InvalidDeadlineException;
+import com.google.gerrit.server.PerformanceLogDispatcher;
 import com.google.gerrit.server.RequestInfo;
 import com.google.gerrit.server.RequestListener;
 import com.google.gerrit.server.cache.PerThreadCache;
 import com.google.gerrit.server.cancellation.RequestCancelledException;
 import com.google.gerrit.server.cancellation.RequestStateContext;
-import com.google.gerrit.server.config.GerritServerConfig;
 import com.google.gerrit.server.logging.PerformanceLogContext;
-import com.google.gerrit.server.logging.PerformanceLogger;
 import com.google.gerrit.server.logging.TraceContext;
 import com.google.gerrit.server.plugincontext.PluginSetContext;
 import com.google.inject.Inject;
@@ -37,13 +35,11 @@ import java.io.PrintWriter;
 import java.util.Optional;
 import org.apache.sshd.server.Environment;
 import org.apache.sshd.server.channel.ChannelSession;
-import org.eclipse.jgit.lib.Config;
 import org.kohsuke.args4j.Option;
 
 public abstract class SshCommand extends BaseCommand {
-  @Inject private DynamicSet<PerformanceLogger> performanceLoggers;
+  @Inject private PerformanceLogDispatcher performanceLogDispatcher;
   @Inject private PluginSetContext<RequestListener> requestListeners;
-  @Inject @GerritServerConfig private Config config;
   @Inject private DeadlineChecker.Factory deadlineCheckerFactory;
   @Inject private CancellationMetrics cancellationMetrics;
 
@@ -70,7 +66,7 @@ public abstract class SshCommand extends BaseCommand {
             stderr = toPrintWriter(err);
             try (TraceContext traceContext = enableTracing();
                 PerformanceLogContext performanceLogContext =
-                    new PerformanceLogContext(config, performanceLoggers)) {
+                    performanceLogDispatcher.newContext()) {
               RequestInfo requestInfo =
                   RequestInfo.builder(RequestInfo.RequestType.SSH, user, traceContext).build();
               try (RequestStateContext requestStateContext =
@@ -28,6 +28,7 @@ import com.google.gerrit.server.RemotePeer;
 import com.google.gerrit.server.config.GerritConfigListener;
 import com.google.gerrit.server.config.GerritRequestModule;
 import com.google.gerrit.server.config.GerritServerConfig;
+import com.google.gerrit.server.events.EventListener;
 import com.google.gerrit.server.git.QueueProvider;
 import com.google.gerrit.server.git.receive.AsyncReceiveCommits.AsyncReceiveCommitsModule;
 import com.google.gerrit.server.plugins.ModuleGenerator;
@@ -106,6 +107,7 @@ public class SshModule extends LifecycleModule {
 
     DynamicSet.bind(binder(), AccountActivationListener.class)
         .to(InactiveAccountDisconnector.class);
+    DynamicSet.bind(binder(), EventListener.class).to(StreamEventsBuffer.class);
 
     listener().toInstance(registerInParentInjectors());
     listener().to(SshLog.class);
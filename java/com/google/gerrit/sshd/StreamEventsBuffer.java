@@ -0,0 +1,263 @@
+// Copyright (C) 2023 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.sshd;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.MapMaker;
+import com.google.common.flogger.FluentLogger;
+import com.google.gerrit.common.Nullable;
+import com.google.gerrit.server.config.GerritServerConfig;
+import com.google.gerrit.server.events.Event;
+import com.google.gerrit.server.events.EventGson;
+import com.google.gerrit.server.events.EventListener;
+import com.google.gerrit.server.util.time.TimeUtil;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import org.eclipse.jgit.lib.Config;
+
+/**
+ * Ring buffer of the events streamed to {@code stream-events} clients.
+ *
+ * <p>Every event gets a server wide sequence number and is serialized once, no matter how many
+ * sessions are streaming it. Adding an event only assigns the sequence number, so that the thread
+ * firing the event doesn't pay for the serialization. The event is serialized on the stream
+ * executor right after, or by the first session that needs it before that. Then the event itself
+ * is dropped and only the serialized form is buffered, so that the buffer doesn't keep the data
+ * that events load lazily alive.
+ *
+ * <p>Sessions only remember the sequence numbers of the events they are allowed to see and read the
+ * shared serialized form from here. A client that reconnects can ask for the events following the
+ * last sequence number it received, as long as they were not overwritten in the meantime. Sequence
+ * numbers start at the server start time in milliseconds times 1000, so that they keep increasing
+ * across restarts and a client resuming after a restart learns that it missed events.
+ */
+@Singleton
+public class StreamEventsBuffer implements EventListener {
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  /** Name of the JSON property that carries the sequence number of an event. */
+  public static final String SEQUENCE_PROPERTY = "eventSequence";
+
+  private static final int DEFAULT_SIZE = 4096;
+
+  /** An event in the buffer. */
+  public final class Entry {
+    private final long sequence;
+    private final String type;
+
+    /** The event until it is serialized, guarded by this entry. */
+    @Nullable private Event event;
+
+    /** The serialized event, guarded by this entry. */
+    @Nullable private byte[] line;
+
+    private Entry(long sequence, Event event) {
+      this.sequence = sequence;
+      this.type = event.getType();
+      this.event = event;
+    }
+
+    public long sequence() {
+      return sequence;
+    }
+
+    /** Returns the type of the event, see {@link Event#getType()}. */
+    public String type() {
+      return type;
+    }
+
+    /**
+     * Returns the event as a newline terminated JSON line.
+     *
+     * <p>Serializes the event if this wasn't done yet.
+     *
+     * @return the serialized event, or {@code null} if the event cannot be serialized.
+     */
+    @Nullable
+    public synchronized byte[] line() {
+      if (event != null) {
+        line = toLine(sequence, event);
+        event = null;
+      }
+      return line;
+    }
+  }
+
+  private final Gson gson;
+  private final Executor executor;
+  private final Entry[] ring;
+  private final long firstSequence;
+
+  /**
+   * Entries of the events that were added recently.
+   *
+   * <p>The same event is added once per listener it is fired to. Events are weakly referenced and
+   * compared by identity, so this doesn't keep events alive once they were fired.
+   */
+  private final Map<Event, Entry> byEvent = new MapMaker().weakKeys().makeMap();
+
+  private long nextSequence;
+
+  @Inject
+  StreamEventsBuffer(
+      @GerritServerConfig Config cfg,
+      @EventGson Gson gson,
+      @StreamCommandExecutor ScheduledThreadPoolExecutor executor) {
+    this(
+        gson,
+        cfg.getInt("sshd", "streamEventsBufferSize", DEFAULT_SIZE),
+        executor,
+        TimeUtil.nowMs() * 1000 + 1);
+  }
+
+  @VisibleForTesting
+  public StreamEventsBuffer(Gson gson, int size, Executor executor, long firstSequence) {
+    this.gson = gson;
+    this.executor = executor;
+    this.ring = new Entry[Math.max(1, size)];
+    this.firstSequence = firstSequence;
+    this.nextSequence = firstSequence;
+  }
+
+  @Override
+  public void onEvent(Event event) {
+    add(event);
+  }
+
+  /**
+   * Adds an event to the buffer and schedules its serialization.
+   *
+   * <p>Events are fired to every user scoped listener before the unrestricted ones, so the same
+   * event instance is usually added more than once. Only the first call assigns a sequence number,
+   * later calls return the existing entry.
+   *
+   * @param event the fired event.
+   * @return the buffered entry for the event.
+   */
+  public Entry add(Event event) {
+    Entry entry;
+    synchronized (this) {
+      entry = byEvent.get(event);
+      if (entry != null) {
+        return entry;
+      }
+      long sequence = nextSequence++;
+      entry = new Entry(sequence, event);
+      ring[slot(sequence)] = entry;
+      byEvent.put(event, entry);
+    }
+
+    try {
+      executor.execute(entry::line);
+    } catch (RejectedExecutionException e) {
+      // The server is shutting down, sessions still serialize the event when they need it.
+    }
+    return entry;
+  }
+
+  /**
+   * Reads a buffered event back from its serialized form.
+   *
+   * <p>This is meant for checks that need the event again, like the visibility checks when events
+   * are replayed. The returned event is a copy of the one that was added.
+   *
+   * @return the event, or {@code null} if the event cannot be read.
+   */
+  @Nullable
+  public Event event(Entry entry) {
+    if (entry.line() == null) {
+      return null;
+    }
+    try {
+      return gson.fromJson(new String(entry.line(), UTF_8), Event.class);
+    } catch (RuntimeException e) {
+      logger.atWarning().withCause(e).log("Could not read %s event", entry.type());
+      return null;
+    }
+  }
+
+  /**
+   * Returns a buffered event.
+   *
+   * @param sequence sequence number of the event.
+   * @return the entry, or {@code null} if the event was already overwritten or does not exist yet.
+   */
+  @Nullable
+  public synchronized Entry get(long sequence) {
+    if (sequence < oldest() || sequence >= nextSequence) {
+      return null;
+    }
+    return ring[slot(sequence)];
+  }
+
+  /** Returns all buffered events with a sequence number greater than {@code sequence}. */
+  public synchronized ImmutableList<Entry> after(long sequence) {
+    ImmutableList.Builder<Entry> entries = ImmutableList.builder();
+    for (long s = Math.max(sequence + 1, oldest()); s < nextSequence; s++) {
+      entries.add(ring[slot(s)]);
+    }
+    return entries.build();
+  }
+
+  /** Returns the sequence number of the oldest event that is still buffered. */
+  public synchronized long oldestSequence() {
+    return oldest();
+  }
+
+  /**
+   * Returns whether a client that received the events up to {@code sequence} missed events that
+   * are no longer buffered.
+   *
+   * <p>A sequence number that this buffer didn't hand out yet, e.g. one from a clock that was set
+   * back before the server restarted, means that the client missed events as well.
+   */
+  public synchronized boolean missedAfter(long sequence) {
+    return sequence + 1 < oldest() || sequence >= nextSequence;
+  }
+
+  /** Returns the maximum number of events kept in the buffer. */
+  public int capacity() {
+    return ring.length;
+  }
+
+  private long oldest() {
+    return Math.max(firstSequence, nextSequence - ring.length);
+  }
+
+  private int slot(long sequence) {
+    return (int) (sequence % ring.length);
+  }
+
+  @Nullable
+  private byte[] toLine(long sequence, Event event) {
+    try {
+      JsonObject json = gson.toJsonTree(event).getAsJsonObject();
+      json.addProperty(SEQUENCE_PROPERTY, sequence);
+      return (gson.toJson(json) + "\n").getBytes(UTF_8);
+    } catch (Exception e) {
+      logger.atWarning().withCause(e).log("Could not serialize %s event", event.getType());
+      return null;
+    }
+  }
+}
@@ -62,6 +62,7 @@ public class DefaultCommandModule extends CommandModule {
     command(gerrit, StreamEvents.class);
     command(gerrit, VersionCommand.class);
     command(gerrit, GarbageCollectionCommand.class);
+    command(gerrit, GarbageCollectionStatusCommand.class);
 
     command(gerrit, "plugin").toProvider(new DispatchCommandProvider(plugin));
     command(plugin, PluginLsCommand.class);
@@ -0,0 +1,83 @@
+// Copyright (C) 2023 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.sshd.commands;
+
+import static com.google.gerrit.common.data.GlobalCapability.MAINTAIN_SERVER;
+import static com.google.gerrit.common.data.GlobalCapability.RUN_GC;
+import static com.google.gerrit.sshd.CommandMetaData.Mode.MASTER_OR_SLAVE;
+
+import com.google.gerrit.extensions.annotations.RequiresAnyCapability;
+import com.google.gerrit.server.git.GarbageCollectionScheduler;
+import com.google.gerrit.server.git.RepositoryGcStatistics;
+import com.google.gerrit.server.util.time.TimeUtil;
+import com.google.gerrit.sshd.CommandMetaData;
+import com.google.gerrit.sshd.SshCommand;
+import com.google.inject.Inject;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import org.kohsuke.args4j.Option;
+
+/** Shows the statistics that the adaptive Git garbage collection is based on. */
+@RequiresAnyCapability({RUN_GC, MAINTAIN_SERVER})
+@CommandMetaData(
+    name = "gc-status",
+    description = "Show the Git garbage collection statistics of the repositories",
+    runsAt = MASTER_OR_SLAVE)
+public class GarbageCollectionStatusCommand extends SshCommand {
+  private static final DateTimeFormatter FORMAT =
+      DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm").withZone(ZoneId.systemDefault());
+
+  @Option(name = "--due", usage = "only show repositories that are due for garbage collection")
+  private boolean due;
+
+  @Option(
+      name = "--limit",
+      aliases = {"-n"},
+      metaVar = "CNT",
+      usage = "maximum number of repositories to show")
+  private int limit;
+
+  @Inject private GarbageCollectionScheduler scheduler;
+
+  @Override
+  public void run() throws Exception {
+    Instant now = TimeUtil.now();
+    stdout.format(
+        "%-40s %10s %10s %10s %6s %10s %-16s %s\n",
+        "Project", "Score", "Loose", "Size KiB", "Packs", "Loose refs", "Last gc", "Due");
+    stdout.print("-".repeat(112) + "\n");
+    int n = 0;
+    for (RepositoryGcStatistics s : scheduler.getStatistics()) {
+      boolean pending = scheduler.isPending(s, now);
+      if (due && !pending) {
+        continue;
+      }
+      if (limit > 0 && n++ >= limit) {
+        break;
+      }
+      stdout.format(
+          "%-40s %10d %10d %10d %6d %10d %-16s %s\n",
+          s.project().get(),
+          s.score(),
+          s.looseObjects(),
+          s.looseObjectsSize() / 1024,
+          s.packFiles(),
+          s.looseRefs(),
+          scheduler.getLastGc(s.project()).map(FORMAT::format).orElse(""),
+          pending ? "yes" : "");
+    }
+  }
+}
@@ -96,6 +96,23 @@ public class Query extends SshCommand implements DynamicOptions.BeanReceiver {
     processor.setNoLimit(on);
   }
 
+  @Option(name = "--export", usage = "Stream all results in batches, ignoring the limit")
+  void setExport(boolean on) {
+    processor.setExport(on);
+  }
+
+  @Option(
+      name = "--resume-after",
+      metaVar = "CURSOR",
+      usage = "Continue an export after the given cursor")
+  private String resumeAfter;
+
+  @Option(
+      name = "--batch-size",
+      metaVar = "N",
+      usage = "Number of changes per batch of an export (default: 500)")
+  private Integer batchSize;
+
   @Argument(
       index = 0,
       required = true,
@@ -123,6 +140,25 @@ public class Query extends SshCommand implements DynamicOptions.BeanReceiver {
         && !(processor.getIncludePatchSets() || processor.getIncludeCurrentPatchSet())) {
       throw die("--files option needs --patch-sets or --current-patch-set");
     }
+    if (batchSize != null) {
+      if (!processor.getExport()) {
+        throw die("--batch-size option needs --export");
+      }
+      if (batchSize <= 0) {
+        throw die("--batch-size must be positive");
+      }
+      processor.setExportBatchSize(batchSize);
+    }
+    if (resumeAfter != null) {
+      if (!processor.getExport()) {
+        throw die("--resume-after option needs --export");
+      }
+      try {
+        processor.setResumeAfter(resumeAfter);
+      } catch (IllegalArgumentException e) {
+        throw die("invalid cursor: " + resumeAfter);
+      }
+    }
   }
 
   private static String join(List<String> list, String sep) {
@@ -20,6 +20,7 @@ import com.google.common.flogger.FluentLogger;
 import com.google.gerrit.common.data.Capable;
 import com.google.gerrit.entities.Account;
 import com.google.gerrit.extensions.restapi.AuthException;
+import com.google.gerrit.server.AdmissionController;
 import com.google.gerrit.server.CurrentUser;
 import com.google.gerrit.server.git.receive.AsyncReceiveCommits;
 import com.google.gerrit.server.notedb.ReviewerStateInternal;
@@ -67,6 +68,11 @@ final class Receive extends AbstractGitCommand {
     reviewers.put(ReviewerStateInternal.CC, id);
   }
 
+  @Override
+  protected AdmissionController.RequestClass getRequestClass() {
+    return AdmissionController.RequestClass.WRITE;
+  }
+
   @Override
   protected void runImpl() throws IOException, Failure {
     CurrentUser currentUser = session.getUser();
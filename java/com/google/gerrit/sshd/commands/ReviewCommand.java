@@ -36,6 +36,7 @@ import com.google.gerrit.extensions.api.changes.ReviewInput;
 import com.google.gerrit.extensions.api.changes.RevisionApi;
 import com.google.gerrit.extensions.restapi.RestApiException;
 import com.google.gerrit.json.OutputFormat;
+import com.google.gerrit.server.AdmissionController;
 import com.google.gerrit.server.DynamicOptions;
 import com.google.gerrit.server.config.AllProjectsName;
 import com.google.gerrit.server.project.NoSuchChangeException;
@@ -171,6 +172,11 @@ public class ReviewCommand extends SshCommand {
   private Map<Option, LabelSetter> optionMap;
   private Map<String, Short> customLabels;
 
+  @Override
+  protected AdmissionController.RequestClass getRequestClass() {
+    return AdmissionController.RequestClass.WRITE;
+  }
+
   @Override
   protected void run() throws UnloggedFailure {
     enableGracefulStop();
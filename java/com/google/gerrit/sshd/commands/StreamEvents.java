@@ -25,21 +25,21 @@ import com.google.gerrit.server.CurrentUser;
 import com.google.gerrit.server.DynamicOptions;
 import com.google.gerrit.server.IdentifiedUser;
 import com.google.gerrit.server.events.Event;
+import com.google.gerrit.server.events.EventBroker;
 import com.google.gerrit.server.events.EventGson;
 import com.google.gerrit.server.events.EventTypes;
 import com.google.gerrit.server.events.UserScopedEventListener;
 import com.google.gerrit.server.git.WorkQueue.CancelableRunnable;
+import com.google.gerrit.server.permissions.PermissionBackendException;
 import com.google.gerrit.sshd.BaseCommand;
 import com.google.gerrit.sshd.CommandMetaData;
 import com.google.gerrit.sshd.StreamCommandExecutor;
+import com.google.gerrit.sshd.StreamEventsBuffer;
 import com.google.gson.Gson;
 import com.google.inject.Inject;
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.Future;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import org.apache.sshd.server.Environment;
 import org.apache.sshd.server.channel.ChannelSession;
@@ -50,12 +50,6 @@ import org.kohsuke.args4j.Option;
 public final class StreamEvents extends BaseCommand {
   private static final FluentLogger logger = FluentLogger.forEnclosingClass();
 
-  /** Maximum number of events that may be queued up for each connection. */
-  private static final int MAX_EVENTS = 128;
-
-  /** Number of events to write before yielding off the thread. */
-  private static final int BATCH_SIZE = 32;
-
   @Option(
       name = "--subscribe",
       aliases = {"-s"},
@@ -63,6 +57,12 @@ public final class StreamEvents extends BaseCommand {
       usage = "subscribe to specific stream-events")
   private List<String> subscribedToEvents = new ArrayList<>();
 
+  @Option(
+      name = "--resume-after",
+      metaVar = "SEQUENCE",
+      usage = "first replay the buffered events following this event sequence number")
+  private Long resumeAfter;
+
   @Inject private IdentifiedUser currentUser;
 
   @Inject private DynamicSet<UserScopedEventListener> eventListeners;
@@ -71,8 +71,14 @@ public final class StreamEvents extends BaseCommand {
 
   @Inject @EventGson private Gson gson;
 
-  /** Queue of events to stream to the connected user. */
-  private final LinkedBlockingQueue<Event> queue = new LinkedBlockingQueue<>(MAX_EVENTS);
+  @Inject private StreamEventsBuffer buffer;
+
+  @Inject private EventBroker eventBroker;
+
+  private ChannelSession channel;
+
+  /** Writes the events to stream to the connected user. */
+  private StreamEventsWriter writer;
 
   private RegistrationHandle eventListenerRegistration;
 
@@ -89,25 +95,9 @@ public final class StreamEvents extends BaseCommand {
     EventTypes.register(DroppedOutputEvent.TYPE, DroppedOutputEvent.class);
   }
 
-  /** True if {@link DroppedOutputEvent} needs to be sent. */
-  private volatile boolean dropped;
-
-  /** Lock to protect {@link #queue}, {@link #task}, {@link #done}. */
-  private final Object taskLock = new Object();
-
-  /** True if no more messages should be sent to the output. */
-  private boolean done;
-
-  /**
-   * Currently scheduled task to spin out {@link #queue}.
-   *
-   * <p>This field is usually {@code null}, unless there is at least one object present inside of
-   * {@link #queue} ready for delivery. Tasks are only started when there are events to be sent.
-   */
-  private Future<?> task;
-
   @Override
   public void start(ChannelSession channel, Environment env) throws IOException {
+    this.channel = channel;
     try (DynamicOptions pluginOptions = new DynamicOptions(injector, dynamicBeans)) {
       try {
         parseCommandLine(pluginOptions);
@@ -122,12 +112,11 @@ public final class StreamEvents extends BaseCommand {
         return;
       }
 
-      PrintWriter stdout = toPrintWriter(out);
-      CancelableRunnable writer =
+      CancelableRunnable task =
           new CancelableRunnable() {
             @Override
             public void run() {
-              writeEvents(this, stdout);
+              writer.writeEvents();
             }
 
             @Override
@@ -146,15 +135,27 @@ public final class StreamEvents extends BaseCommand {
             }
           };
 
+      writer =
+          new StreamEventsWriter(
+              buffer,
+              pool,
+              out,
+              this::hasRoomFor,
+              toJson(new DroppedOutputEvent()),
+              task,
+              this::close);
+      if (resumeAfter != null) {
+        writer.beginReplay();
+      }
+
       eventListenerRegistration =
           eventListeners.add(
               "gerrit",
               new UserScopedEventListener() {
                 @Override
                 public void onEvent(Event event) {
-                  if (subscribedToEvents.isEmpty()
-                      || subscribedToEvents.contains(event.getType())) {
-                    offer(writer, event);
+                  if (isSubscribed(event.getType())) {
+                    writer.offer(buffer.add(event).sequence());
                   }
                 }
 
@@ -163,9 +164,17 @@ public final class StreamEvents extends BaseCommand {
                   return currentUser;
                 }
               });
+
+      if (resumeAfter != null) {
+        replay(resumeAfter);
+      }
     }
   }
 
+  private boolean isSubscribed(String type) {
+    return subscribedToEvents.isEmpty() || subscribedToEvents.contains(type);
+  }
+
   private void removeEventListenerRegistration() {
     if (eventListenerRegistration != null) {
       eventListenerRegistration.remove();
@@ -176,8 +185,8 @@ public final class StreamEvents extends BaseCommand {
   protected void onExit(int rc) {
     removeEventListenerRegistration();
 
-    synchronized (taskLock) {
-      done = true;
+    if (writer != null) {
+      writer.stop();
     }
 
     super.onExit(rc);
@@ -187,102 +196,64 @@ public final class StreamEvents extends BaseCommand {
   public void destroy(ChannelSession channel) {
     removeEventListenerRegistration();
 
-    final boolean exit;
-    synchronized (taskLock) {
-      if (task != null) {
-        task.cancel(true);
-        exit = false; // onExit will be invoked by the task cancellation.
-      } else {
-        exit = !done;
-      }
-      done = true;
-    }
-    if (exit) {
+    if (writer != null && writer.destroy()) {
       onExit(0);
     }
   }
 
-  private void offer(CancelableRunnable writer, Event event) {
-    synchronized (taskLock) {
-      if (!queue.offer(event)) {
-        dropped = true;
-      }
-
-      if (task == null && !done) {
-        task = pool.submit(writer);
+  /**
+   * Queues the buffered events the user missed since {@code after}.
+   *
+   * <p>The listener is already registered at this point, so events fired meanwhile are queued as
+   * well. Both end up ordered by their sequence number and are only written once replaying is
+   * done.
+   */
+  private void replay(long after) {
+    boolean missed = buffer.missedAfter(after);
+    List<Long> sequences = new ArrayList<>();
+    for (StreamEventsBuffer.Entry entry : buffer.after(after)) {
+      if (isSubscribed(entry.type())) {
+        Event event = buffer.event(entry);
+        if (event != null && isVisible(event)) {
+          sequences.add(entry.sequence());
+        }
       }
     }
+    writer.endReplay(sequences, missed);
   }
 
-  private Event poll() {
-    synchronized (taskLock) {
-      Event event = queue.poll();
-      if (event == null) {
-        task = null;
-      }
-      return event;
+  private boolean isVisible(Event event) {
+    try {
+      return eventBroker.isEventVisibleTo(event, currentUser);
+    } catch (PermissionBackendException e) {
+      logger.atWarning().withCause(e).log("Cannot check visibility of %s event", event.getType());
+      return false;
     }
   }
 
-  private void writeEvents(CancelableRunnable writer, PrintWriter stdout) {
-    int processed = 0;
-
-    while (processed < BATCH_SIZE) {
-      if (Thread.interrupted() || stdout.checkError()) {
-        // The other side either requested a shutdown by calling our
-        // destroy() above, or it closed the stream and is no longer
-        // accepting output. Either way terminate this instance.
-        //
-        removeEventListenerRegistration();
-        flush(stdout);
-        onExit(0);
-        return;
-      }
-
-      if (dropped) {
-        write(stdout, new DroppedOutputEvent());
-        dropped = false;
-      }
-
-      final Event event = poll();
-      if (event == null) {
-        break;
-      }
-
-      write(stdout, event);
-      processed++;
-    }
-
-    flush(stdout);
-
-    if (BATCH_SIZE <= processed) {
-      // We processed the limit, but more might remain in the queue.
-      // Schedule the write task again so we will come back here and
-      // can process more events.
-      //
-      synchronized (taskLock) {
-        task = pool.submit(writer);
-      }
-    }
+  /**
+   * Checks whether the client's SSH window can take {@code size} more bytes.
+   *
+   * <p>Writing more than that would block the stream thread until the client catches up, which
+   * stalls all other sessions sharing the pool. Output larger than the whole window is allowed once
+   * the window is completely open again.
+   */
+  private boolean hasRoomFor(long size) {
+    var window = channel.getRemoteWindow();
+    return window.getSize() >= Math.min(size, window.getMaxSize());
   }
 
-  private void write(PrintWriter stdout, Object message) {
-    String msg = null;
+  private void close() {
+    removeEventListenerRegistration();
     try {
-      msg = gson.toJson(message) + "\n";
-    } catch (Exception e) {
-      logger.atWarning().withCause(e).log("Could not deserialize the msg");
-    }
-    if (msg != null) {
-      synchronized (stdout) {
-        stdout.print(msg);
-      }
+      out.flush();
+    } catch (IOException e) {
+      // The client is gone, there is nothing left to flush to.
     }
+    onExit(0);
   }
 
-  private void flush(PrintWriter stdout) {
-    synchronized (stdout) {
-      stdout.flush();
-    }
+  private byte[] toJson(Event event) {
+    return (gson.toJson(event) + "\n").getBytes(UTF_8);
   }
 }
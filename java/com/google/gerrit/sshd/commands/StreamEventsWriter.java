@@ -0,0 +1,279 @@
+// Copyright (C) 2023 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.sshd.commands;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.gerrit.sshd.StreamEventsBuffer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.TreeSet;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.LongPredicate;
+
+/**
+ * Writes the events queued for one {@code stream-events} session.
+ *
+ * <p>Only the sequence numbers of the events are queued, the serialized events are read from the
+ * shared {@link StreamEventsBuffer}. Events that are overwritten there before they could be sent
+ * are reported as dropped output.
+ *
+ * <p>Events are written on the stream executor, a batch at a time. A slow client never blocks the
+ * executor: if the client has no room for the next event, the writer flushes what it has and
+ * reschedules itself.
+ */
+final class StreamEventsWriter {
+  /** Number of events to write before yielding off the thread. */
+  @VisibleForTesting static final int BATCH_SIZE = 32;
+
+  /** Delay before checking again whether the client has room for more output. */
+  @VisibleForTesting static final long WINDOW_RETRY_DELAY_MS = 100;
+
+  private final StreamEventsBuffer buffer;
+  private final ScheduledExecutorService pool;
+  private final OutputStream out;
+  private final LongPredicate hasRoomFor;
+  private final byte[] droppedOutput;
+  private final Runnable writer;
+  private final Runnable close;
+
+  /** Sequence numbers of the events to write. */
+  private final TreeSet<Long> queue = new TreeSet<>();
+
+  /** True if {@link #droppedOutput} needs to be sent. */
+  private volatile boolean dropped;
+
+  /** Lock to protect {@link #queue}, {@link #task}, {@link #done}, {@link #replaying}. */
+  private final Object taskLock = new Object();
+
+  /** True if no more messages should be sent to the output. */
+  private boolean done;
+
+  /** True while buffered events are replayed, no output is written until that is done. */
+  private boolean replaying;
+
+  /**
+   * Currently scheduled task to spin out {@link #queue}.
+   *
+   * <p>This field is usually {@code null}, unless there is at least one object present inside of
+   * {@link #queue} ready for delivery. Tasks are only started when there are events to be sent.
+   */
+  private Future<?> task;
+
+  /**
+   * Creates the writer of one session.
+   *
+   * @param buffer buffer holding the serialized events.
+   * @param pool executor to write the events on.
+   * @param out output stream of the session.
+   * @param hasRoomFor checks whether the client can take the given number of bytes without
+   *     blocking the writer.
+   * @param droppedOutput line to write if events were dropped.
+   * @param writer task to schedule on {@code pool}, it must call {@link #writeEvents()}.
+   * @param close closes the session once the client is gone.
+   */
+  StreamEventsWriter(
+      StreamEventsBuffer buffer,
+      ScheduledExecutorService pool,
+      OutputStream out,
+      LongPredicate hasRoomFor,
+      byte[] droppedOutput,
+      Runnable writer,
+      Runnable close) {
+    this.buffer = buffer;
+    this.pool = pool;
+    this.out = out;
+    this.hasRoomFor = hasRoomFor;
+    this.droppedOutput = droppedOutput;
+    this.writer = writer;
+    this.close = close;
+  }
+
+  /** Holds back all output until {@link #endReplay(Collection, boolean)} is called. */
+  void beginReplay() {
+    synchronized (taskLock) {
+      replaying = true;
+    }
+  }
+
+  /**
+   * Queues replayed events and starts writing.
+   *
+   * <p>Events that were offered meanwhile stay queued. All events are written ordered by their
+   * sequence number.
+   *
+   * @param sequences sequence numbers of the replayed events.
+   * @param missed whether the client missed events that are no longer buffered.
+   */
+  void endReplay(Collection<Long> sequences, boolean missed) {
+    synchronized (taskLock) {
+      dropped |= missed;
+      queue.addAll(sequences);
+      while (queue.size() > buffer.capacity()) {
+        queue.pollFirst();
+        dropped = true;
+      }
+      replaying = false;
+      if ((dropped || !queue.isEmpty()) && task == null && !done) {
+        task = pool.submit(writer);
+      }
+    }
+  }
+
+  /** Queues an event and schedules writing it. */
+  void offer(long sequence) {
+    synchronized (taskLock) {
+      if (queue.size() < buffer.capacity()) {
+        queue.add(sequence);
+      } else {
+        dropped = true;
+      }
+
+      if (task == null && !done && !replaying) {
+        task = pool.submit(writer);
+      }
+    }
+  }
+
+  /** Stops writing, events queued later are not written anymore. */
+  void stop() {
+    synchronized (taskLock) {
+      done = true;
+    }
+  }
+
+  /**
+   * Stops writing and cancels the scheduled task.
+   *
+   * @return whether the caller needs to exit the command itself, i.e. no task was cancelled and the
+   *     command didn't exit yet.
+   */
+  boolean destroy() {
+    synchronized (taskLock) {
+      boolean exit;
+      if (task != null) {
+        task.cancel(true);
+        exit = false; // onExit will be invoked by the task cancellation.
+      } else {
+        exit = !done;
+      }
+      done = true;
+      return exit;
+    }
+  }
+
+  /** Writes the next batch of queued events. */
+  void writeEvents() {
+    int processed = 0;
+    long pending = 0;
+
+    try {
+      while (processed < BATCH_SIZE) {
+        if (Thread.interrupted()) {
+          // The other side requested a shutdown by calling our
+          // destroy() above. Terminate this instance.
+          //
+          close.run();
+          return;
+        }
+
+        if (dropped) {
+          if (!hasRoomFor.test(pending + droppedOutput.length)) {
+            retryLater(pending);
+            return;
+          }
+          out.write(droppedOutput);
+          pending += droppedOutput.length;
+          dropped = false;
+        }
+
+        Long sequence = peek();
+        if (sequence == null) {
+          break;
+        }
+
+        StreamEventsBuffer.Entry entry = buffer.get(sequence);
+        byte[] line = entry != null ? entry.line() : null;
+        if (line == null) {
+          // Either the event was overwritten by newer events before the
+          // client could read it, or it cannot be serialized at all.
+          //
+          remove(sequence);
+          dropped |= entry == null;
+          continue;
+        }
+
+        if (!hasRoomFor.test(pending + line.length)) {
+          retryLater(pending);
+          return;
+        }
+
+        remove(sequence);
+        out.write(line);
+        pending += line.length;
+        processed++;
+      }
+
+      out.flush();
+    } catch (IOException e) {
+      // The client closed the stream and is no longer accepting
+      // output. Terminate this instance.
+      //
+      close.run();
+      return;
+    }
+
+    if (BATCH_SIZE <= processed) {
+      // We processed the limit, but more might remain in the queue.
+      // Schedule the write task again so we will come back here and
+      // can process more events.
+      //
+      synchronized (taskLock) {
+        task = pool.submit(writer);
+      }
+    }
+  }
+
+  private Long peek() {
+    synchronized (taskLock) {
+      if (queue.isEmpty()) {
+        task = null;
+        return null;
+      }
+      return queue.first();
+    }
+  }
+
+  private void remove(long sequence) {
+    synchronized (taskLock) {
+      queue.remove(sequence);
+    }
+  }
+
+  /** Flushes what was written so far and retries once the client has drained some output. */
+  private void retryLater(long pending) throws IOException {
+    if (pending > 0) {
+      out.flush();
+    }
+    synchronized (taskLock) {
+      if (!done) {
+        task = pool.schedule(writer, WINDOW_RETRY_DELAY_MS, MILLISECONDS);
+      }
+    }
+  }
+}
@@ -18,6 +18,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.gerrit.extensions.registration.DynamicSet;
 import com.google.gerrit.extensions.restapi.AuthException;
+import com.google.gerrit.server.AdmissionController;
 import com.google.gerrit.server.RequestInfo;
 import com.google.gerrit.server.RequestListener;
 import com.google.gerrit.server.git.PermissionAwareRepositoryManager;
@@ -32,6 +33,9 @@ import com.google.gerrit.server.permissions.PermissionBackend;
 import com.google.gerrit.server.permissions.PermissionBackendException;
 import com.google.gerrit.server.permissions.ProjectPermission;
 import com.google.gerrit.server.plugincontext.PluginSetContext;
+import com.google.gerrit.server.quota.QuotaBackend;
+import com.google.gerrit.server.quota.QuotaException;
+import com.google.gerrit.server.quota.QuotaGroupDefinitions;
 import com.google.gerrit.sshd.AbstractGitCommand;
 import com.google.inject.Inject;
 import java.io.IOException;
@@ -54,9 +58,15 @@ final class Upload extends AbstractGitCommand {
   @Inject private UploadValidators.Factory uploadValidatorsFactory;
   @Inject private PermissionBackend permissionBackend;
   @Inject private UsersSelfAdvertiseRefsHook usersSelfAdvertiseRefsHook;
+  @Inject private QuotaBackend quotaBackend;
 
   private PackStatistics stats;
 
+  @Override
+  protected AdmissionController.RequestClass getRequestClass() {
+    return AdmissionController.RequestClass.GIT_UPLOAD;
+  }
+
   @Override
   protected void runImpl() throws IOException, Failure {
     PermissionBackend.ForProject perm =
@@ -69,6 +79,16 @@ final class Upload extends AbstractGitCommand {
       throw new Failure(1, "fatal: unable to check permissions ", e);
     }
 
+    try {
+      quotaBackend
+          .user(user)
+          .project(projectState.getNameKey())
+          .requestToken(QuotaGroupDefinitions.GIT_UPLOAD_GROUP)
+          .throwOnError();
+    } catch (QuotaException e) {
+      throw new UnloggedFailure(1, "fatal: " + e.getMessage());
+    }
+
     Repository permissionAwareRepo = PermissionAwareRepositoryManager.wrap(repo, perm);
     UploadPack up = new UploadPack(permissionAwareRepo);
 
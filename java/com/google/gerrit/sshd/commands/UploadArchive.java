@@ -20,6 +20,8 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableMap;
 import com.google.gerrit.extensions.restapi.AuthException;
+import com.google.gerrit.server.AdmissionController;
+import com.google.gerrit.server.change.ArchiveCache;
 import com.google.gerrit.server.change.ArchiveFormatInternal;
 import com.google.gerrit.server.permissions.PermissionBackend;
 import com.google.gerrit.server.permissions.PermissionBackendException;
@@ -132,6 +134,7 @@ public class UploadArchive extends AbstractGitCommand {
   @Inject private PermissionBackend permissionBackend;
   @Inject private CommitsCollection commits;
   @Inject private AllowedFormats allowedFormats;
+  @Inject private ArchiveCache archiveCache;
   @Inject private ProjectCache projectCache;
   private Options options = new Options();
 
@@ -171,6 +174,11 @@ public class UploadArchive extends AbstractGitCommand {
     }
   }
 
+  @Override
+  protected AdmissionController.RequestClass getRequestClass() {
+    return AdmissionController.RequestClass.GIT_UPLOAD;
+  }
+
   @Override
   protected void runImpl() throws IOException, PermissionBackendException, Failure {
     PacketLineOut packetOut = new PacketLineOut(out);
@@ -202,17 +210,25 @@ public class UploadArchive extends AbstractGitCommand {
       try (SideBandOutputStream sidebandOut =
           new SideBandOutputStream(
               SideBandOutputStream.CH_DATA, SideBandOutputStream.MAX_BUF, out)) {
-        new ArchiveCommand(repo)
-            .setFormat(f.name())
-            .setFormatOptions(getFormatOptions(f))
-            .setTree(treeId)
-            .setPaths(options.path.toArray(new String[0]))
-            .setPrefix(options.prefix)
-            .setOutputStream(sidebandOut)
-            .call();
+        Map<String, Object> formatOptions = getFormatOptions(f);
+        archiveCache.writeTo(
+            ArchiveCache.Key.create(treeId, f, options.prefix, options.path, formatOptions),
+            o -> {
+              try {
+                new ArchiveCommand(repo)
+                    .setFormat(f.name())
+                    .setFormatOptions(formatOptions)
+                    .setTree(treeId)
+                    .setPaths(options.path.toArray(new String[0]))
+                    .setPrefix(options.prefix)
+                    .setOutputStream(o)
+                    .call();
+              } catch (GitAPIException e) {
+                throw new IOException("fatal: git api exception, " + e, e);
+              }
+            },
+            sidebandOut);
         sidebandOut.flush();
-      } catch (GitAPIException e) {
-        throw new Failure(7, "fatal: git api exception, " + e);
       }
     } catch (Exception e) {
       // Report the error in ERROR sideband channel. Catch Throwable too so we can also catch
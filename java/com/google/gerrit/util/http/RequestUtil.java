@@ -98,5 +98,18 @@ public class RequestUtil {
     return accepts != null && accepts.indexOf("gzip") != -1;
   }
 
+  public static boolean acceptsBrotliEncoding(HttpServletRequest request) {
+    String accepts = request.getHeader("Accept-Encoding");
+    if (accepts == null) {
+      return false;
+    }
+    for (String encoding : Splitter.on(',').trimResults().split(accepts)) {
+      if (encoding.equals("br") || encoding.startsWith("br;")) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   private RequestUtil() {}
 }
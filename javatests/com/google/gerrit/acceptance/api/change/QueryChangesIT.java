@@ -15,8 +15,13 @@
 package com.google.gerrit.acceptance.api.change;
 
 import static com.google.common.truth.Truth.assertThat;
+import static com.google.gerrit.acceptance.WaitUtil.waitUntil;
+import static com.google.gerrit.acceptance.testsuite.project.TestProjectUpdate.allow;
 import static com.google.gerrit.acceptance.testsuite.project.TestProjectUpdate.allowCapability;
 import static com.google.gerrit.acceptance.testsuite.project.TestProjectUpdate.block;
+import static com.google.gerrit.acceptance.testsuite.project.TestProjectUpdate.permissionKey;
+import static com.google.gerrit.server.group.SystemGroupBackend.ANONYMOUS_USERS;
+import static com.google.gerrit.server.group.SystemGroupBackend.PROJECT_OWNERS;
 import static com.google.gerrit.server.group.SystemGroupBackend.REGISTERED_USERS;
 import static com.google.gerrit.testing.GerritJUnit.assertThrows;
 import static java.util.stream.Collectors.toList;
@@ -32,11 +37,13 @@ import com.google.gerrit.acceptance.UseClockStep;
 import com.google.gerrit.acceptance.config.GerritConfig;
 import com.google.gerrit.acceptance.testsuite.account.AccountOperations;
 import com.google.gerrit.acceptance.testsuite.change.ChangeOperations;
+import com.google.gerrit.acceptance.testsuite.group.GroupOperations;
 import com.google.gerrit.acceptance.testsuite.project.ProjectOperations;
 import com.google.gerrit.acceptance.testsuite.request.RequestScopeOperations;
 import com.google.gerrit.common.data.GlobalCapability;
 import com.google.gerrit.entities.AccessSection;
 import com.google.gerrit.entities.Account;
+import com.google.gerrit.entities.AccountGroup;
 import com.google.gerrit.entities.Change;
 import com.google.gerrit.entities.Patch;
 import com.google.gerrit.entities.Permission;
@@ -46,12 +53,14 @@ import com.google.gerrit.extensions.common.ChangeInfo;
 import com.google.gerrit.extensions.restapi.AuthException;
 import com.google.gerrit.extensions.restapi.BadRequestException;
 import com.google.gerrit.extensions.restapi.ResourceNotFoundException;
+import com.google.gerrit.extensions.restapi.RestApiException;
 import com.google.gerrit.extensions.restapi.TopLevelResource;
 import com.google.gerrit.server.project.ProjectConfig;
 import com.google.gerrit.server.restapi.change.QueryChanges;
 import com.google.gerrit.truth.NullAwareCorrespondence;
 import com.google.inject.Inject;
 import com.google.inject.Provider;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.List;
 import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
@@ -61,6 +70,7 @@ import org.junit.Test;
 public class QueryChangesIT extends AbstractDaemonTest {
   @Inject private AccountOperations accountOperations;
   @Inject private ChangeOperations changeOperations;
+  @Inject private GroupOperations groupOperations;
   @Inject private ProjectOperations projectOperations;
   @Inject private Provider<QueryChanges> queryChangesProvider;
   @Inject private RequestScopeOperations requestScopeOperations;
@@ -661,6 +671,67 @@ public class QueryChangesIT extends AbstractDaemonTest {
         .containsExactly(changeId);
   }
 
+  @Test
+  @GerritConfig(name = "index.prefilterChangeVisibility", value = "true")
+  public void prefilteredQueryReturnsChangesReadableThroughProjectOwners() throws Exception {
+    AccountGroup.UUID owners = groupOperations.newGroup().members(user.id()).create();
+    Project.NameKey ownedProject = projectOperations.newProject().create();
+    projectOperations
+        .allProjectsForUpdate()
+        .remove(permissionKey(Permission.READ).ref("refs/*").group(ANONYMOUS_USERS))
+        .update();
+    projectOperations
+        .project(ownedProject)
+        .forUpdate()
+        .add(allow(Permission.OWNER).ref("refs/*").group(owners))
+        .add(allow(Permission.READ).ref("refs/*").group(PROJECT_OWNERS))
+        .update();
+    Change.Id changeId =
+        changeOperations.newChange().project(ownedProject).owner(admin.id()).create();
+
+    // The user can read the change only as a member of the owner group of the project.
+    requestScopeOperations.setApiUser(user.id());
+    assertThat(gApi.changes().query("project:" + ownedProject.get()).get())
+        .comparingElementsUsing(hasChangeId())
+        .containsExactly(changeId);
+
+    requestScopeOperations.setApiUser(accountOperations.newAccount().create());
+    assertThat(gApi.changes().query("project:" + ownedProject.get()).get()).isEmpty();
+  }
+
+  @Test
+  @GerritConfig(name = "index.prefilterChangeVisibility", value = "true")
+  public void prefilteredQueryFindsChangesAfterReadPermissionIsGranted() throws Exception {
+    projectOperations
+        .allProjectsForUpdate()
+        .remove(permissionKey(Permission.READ).ref("refs/*").group(ANONYMOUS_USERS))
+        .update();
+    Project.NameKey readableProject = projectOperations.newProject().create();
+    Change.Id changeId =
+        changeOperations.newChange().project(readableProject).owner(admin.id()).create();
+    requestScopeOperations.setApiUser(user.id());
+    assertThat(gApi.changes().query("project:" + readableProject.get()).get()).isEmpty();
+
+    // The changes of the project are reindexed in the background.
+    projectOperations
+        .project(readableProject)
+        .forUpdate()
+        .add(allow(Permission.READ).ref("refs/*").group(REGISTERED_USERS))
+        .update();
+    waitUntil(
+        () -> {
+          try {
+            return !gApi.changes().query("project:" + readableProject.get()).get().isEmpty();
+          } catch (RestApiException e) {
+            throw new IllegalStateException(e);
+          }
+        },
+        Duration.ofSeconds(10));
+    assertThat(gApi.changes().query("project:" + readableProject.get()).get())
+        .comparingElementsUsing(hasChangeId())
+        .containsExactly(changeId);
+  }
+
   private static void assertNoChangeHasMoreChangesSet(List<ChangeInfo> results) {
     for (ChangeInfo info : results) {
       assertThat(info._moreChanges).isNull();
@@ -20,9 +20,13 @@ import static com.google.gerrit.testing.GerritJUnit.assertThrows;
 
 import com.google.common.collect.ImmutableList;
 import com.google.gerrit.acceptance.FakeGroupAuditService;
+import com.google.gerrit.acceptance.GitUtil;
 import com.google.gerrit.acceptance.Sandboxed;
 import com.google.gerrit.acceptance.TestProjectInput;
+import com.google.gerrit.acceptance.config.GerritConfig;
+import com.google.gerrit.acceptance.testsuite.project.ProjectOperations;
 import com.google.gerrit.entities.Account;
+import com.google.gerrit.entities.Project;
 import com.google.gerrit.pgm.http.jetty.JettyServer;
 import com.google.gerrit.server.audit.HttpAuditEvent;
 import com.google.inject.Inject;
@@ -40,6 +44,7 @@ import org.junit.Test;
 
 public class AbstractGitOverHttpServlet extends AbstractPushForReview {
   @Inject protected FakeGroupAuditService auditService;
+  @Inject private ProjectOperations projectOperations;
   private JettyServer jettyServer;
 
   @Before
@@ -143,6 +148,20 @@ public class AbstractGitOverHttpServlet extends AbstractPushForReview {
         .isTrue();
   }
 
+  @Test
+  @GerritConfig(name = "quota.clones.quotaGroup", value = "/git/upload")
+  @GerritConfig(name = "quota.clones.key", value = "project")
+  @GerritConfig(name = "quota.clones.rate", value = "1/hour")
+  @GerritConfig(name = "quota.clones.burst", value = "1")
+  public void cloneTakesOneUploadToken() throws Exception {
+    Project.NameKey p = projectOperations.newProject().create();
+    String url = admin.getHttpUrl(server) + "/" + p.get();
+
+    // The clone consists of several requests, but only the fetch command is charged.
+    GitUtil.cloneProject(p, url);
+    assertThrows(TransportException.class, () -> GitUtil.cloneProject(p, url));
+  }
+
   /**
    * Git client use Protocol V2 fetch by default, see https://git.eclipse.org/r/c/jgit/jgit/+/172595
    * See {@code org.eclipse.jgit.transport.BasePackFetchConnection#doFetchV2} for the negotiation
@@ -22,6 +22,7 @@ import static com.google.common.truth.Truth8.assertThat;
 import static com.google.gerrit.extensions.client.ListGroupsOption.MEMBERS;
 
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
 import com.google.common.io.MoreFiles;
 import com.google.common.io.RecursiveDeleteOption;
 import com.google.gerrit.acceptance.NoHttpd;
@@ -35,6 +36,7 @@ import com.google.gerrit.index.IndexDefinition;
 import com.google.gerrit.index.Schema;
 import com.google.gerrit.launcher.GerritLauncher;
 import com.google.gerrit.server.index.GerritIndexStatus;
+import com.google.gerrit.server.index.change.ChangeIndex;
 import com.google.gerrit.server.index.change.ChangeIndexCollection;
 import com.google.gerrit.server.index.change.ChangeSchemaDefinitions;
 import com.google.gerrit.server.query.change.ChangeData;
@@ -45,8 +47,10 @@ import com.google.inject.Provider;
 import com.google.inject.TypeLiteral;
 import java.nio.file.Files;
 import java.util.Collection;
+import java.util.List;
 import java.util.Set;
 import java.util.function.Consumer;
+import java.util.stream.Stream;
 import org.eclipse.jgit.lib.Config;
 import org.eclipse.jgit.storage.file.FileBasedConfig;
 import org.eclipse.jgit.util.FS;
@@ -229,6 +233,69 @@ public abstract class AbstractReindexTests extends StandaloneSiteTest {
     }
   }
 
+  @Test
+  public void onlineUpgradeChangesReusesStoredFields() throws Exception {
+    Schema<ChangeData> previous = ChangeSchemaDefinitions.INSTANCE.getPrevious();
+    Assume.assumeNotNull(previous);
+    int prevVersion = previous.getVersion();
+    int currVersion = ChangeSchemaDefinitions.INSTANCE.getLatest().getVersion();
+
+    GerritIndexStatus status = new GerritIndexStatus(sitePaths);
+    status.setReady(CHANGES, currVersion, false);
+    status.setReady(CHANGES, prevVersion, true);
+    status.save();
+
+    setOnlineUpgradeConfig(false);
+    setUpChange();
+    String staleChangeId;
+    String missingChangeId;
+    try (ServerContext ctx = startServer()) {
+      GerritApi gApi = ctx.getInjector().getInstance(GerritApi.class);
+      Provider<InternalChangeQuery> queryProvider =
+          ctx.getInjector().getProvider(InternalChangeQuery.class);
+      ChangeIndex searchIndex =
+          ctx.getInjector().getInstance(ChangeIndexCollection.class).getSearchIndex();
+      gApi.changes().id(changeId).topic("topic1");
+      staleChangeId = createChange(gApi, "Stale change");
+      missingChangeId = createChange(gApi, "Missing change");
+
+      // Write an outdated document for one change, and drop the document of another one.
+      ChangeData stale =
+          Iterables.getOnlyElement(queryProvider.get().byKey(Change.key(staleChangeId)));
+      stale.notes();
+      gApi.changes().id(staleChangeId).topic("topic2");
+      searchIndex.replace(stale);
+      searchIndex.delete(
+          Iterables.getOnlyElement(queryProvider.get().byKey(Change.key(missingChangeId))).getId());
+
+      assertThat(queryProvider.get().byTopicOpen("topic2")).isEmpty();
+      assertThat(queryProvider.get().byKey(Change.key(missingChangeId))).isEmpty();
+    }
+    setOnlineUpgradeConfig(true);
+
+    IndexUpgradeController u = new IndexUpgradeController(1);
+    try (ServerContext ctx = startServer(u.module())) {
+      u.runUpgrades();
+      assertThat(u.getSucceededAttempts())
+          .containsExactly(UpgradeAttempt.create(CHANGES, prevVersion, currVersion));
+      assertReady(currVersion);
+      assertSearchVersion(ctx, currVersion);
+
+      // The up-to-date document was copied, the others were reloaded from NoteDb.
+      Provider<InternalChangeQuery> queryProvider =
+          ctx.getInjector().getProvider(InternalChangeQuery.class);
+      assertThat(
+              queryProvider.get().byKey(Change.key(changeId)).stream()
+                  .map(cd -> cd.change().getSubject()))
+          .containsExactly("Test change");
+      assertThat(changeIds(queryProvider.get().byTopicOpen("topic1"))).containsExactly(changeId);
+      assertThat(changeIds(queryProvider.get().byTopicOpen("topic2")))
+          .containsExactly(staleChangeId);
+      assertThat(changeIds(queryProvider.get().byKey(Change.key(missingChangeId))))
+          .containsExactly(missingChangeId);
+    }
+  }
+
   protected static void createAllIndexes(Injector injector) {
     Collection<IndexDefinition<?, ?, ?>> indexDefs =
         injector.getInstance(Key.get(new TypeLiteral<Collection<IndexDefinition<?, ?, ?>>>() {}));
@@ -250,6 +317,14 @@ public abstract class AbstractReindexTests extends StandaloneSiteTest {
     }
   }
 
+  private String createChange(GerritApi gApi, String subject) throws Exception {
+    return gApi.changes().create(new ChangeInput(project.get(), "master", subject)).info().changeId;
+  }
+
+  private static Stream<String> changeIds(List<ChangeData> changes) {
+    return changes.stream().map(cd -> cd.change().getKey().get());
+  }
+
   private void setOnlineUpgradeConfig(boolean enable) throws Exception {
     updateConfig(cfg -> cfg.setBoolean("index", null, "onlineUpgrade", enable));
   }
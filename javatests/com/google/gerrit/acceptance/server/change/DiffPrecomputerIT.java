@@ -0,0 +1,88 @@
+// Copyright (C) 2023 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.acceptance.server.change;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.gerrit.acceptance.WaitUtil.waitUntil;
+
+import com.google.common.cache.Cache;
+import com.google.common.collect.ImmutableList;
+import com.google.gerrit.acceptance.AbstractDaemonTest;
+import com.google.gerrit.acceptance.NoHttpd;
+import com.google.gerrit.acceptance.PushOneCommit;
+import com.google.gerrit.acceptance.TestMetricMaker;
+import com.google.gerrit.acceptance.config.GerritConfig;
+import com.google.gerrit.server.patch.diff.ModifiedFilesCacheKey;
+import com.google.gerrit.server.patch.gitdiff.ModifiedFile;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+import java.time.Duration;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.Before;
+import org.junit.Test;
+
+@NoHttpd
+public class DiffPrecomputerIT extends AbstractDaemonTest {
+  private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+  @Inject private TestMetricMaker testMetricMaker;
+
+  @Inject
+  @Named("modified_files")
+  private Cache<ModifiedFilesCacheKey, ImmutableList<ModifiedFile>> modifiedFilesCache;
+
+  @Before
+  public void setUp() {
+    testMetricMaker.reset();
+  }
+
+  @Test
+  @GerritConfig(name = "diffPrecompute.enabled", value = "true")
+  public void diffsOfNewPatchSetsArePrecomputed() throws Exception {
+    PushOneCommit.Result r = createChange();
+    waitUntil(() -> testMetricMaker.getCount("diff/precompute/count") == 1, TIMEOUT);
+    RevCommit ps1 = r.getCommit();
+    assertThat(isCached(ps1.getParent(0), ps1)).isTrue();
+
+    RevCommit ps2 = amendChange(r.getChangeId()).getCommit();
+    waitUntil(() -> testMetricMaker.getCount("diff/precompute/count") == 2, TIMEOUT);
+    assertThat(isCached(ps1, ps2)).isTrue();
+    assertThat(testMetricMaker.getCount("diff/precompute/skipped_too_large")).isEqualTo(0);
+    assertThat(testMetricMaker.getCount("diff/precompute/failures")).isEqualTo(0);
+  }
+
+  @Test
+  @GerritConfig(name = "diffPrecompute.enabled", value = "true")
+  @GerritConfig(name = "diffPrecompute.maxFiles", value = "0")
+  public void tooLargePatchSetsAreSkipped() throws Exception {
+    createChange();
+    waitUntil(
+        () -> testMetricMaker.getCount("diff/precompute/skipped_too_large") == 1, TIMEOUT);
+    assertThat(testMetricMaker.getCount("diff/precompute/count")).isEqualTo(0);
+  }
+
+  @Test
+  public void nothingIsPrecomputedByDefault() throws Exception {
+    createChange();
+    assertThat(testMetricMaker.getCount("diff/precompute/count")).isEqualTo(0);
+    assertThat(testMetricMaker.getCount("diff/precompute/skipped_too_large")).isEqualTo(0);
+  }
+
+  private boolean isCached(ObjectId a, ObjectId b) {
+    return modifiedFilesCache.asMap().keySet().stream()
+        .anyMatch(k -> k.aCommit().equals(a) && k.bCommit().equals(b));
+  }
+}
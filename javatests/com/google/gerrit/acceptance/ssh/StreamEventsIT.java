@@ -14,6 +14,7 @@
 
 package com.google.gerrit.acceptance.ssh;
 
+import static com.google.common.truth.Truth.assertThat;
 import static com.google.gerrit.acceptance.WaitUtil.waitUntil;
 import static com.google.gerrit.entities.Patch.PATCHSET_LEVEL;
 
@@ -29,9 +30,12 @@ import com.google.gerrit.extensions.api.changes.DraftInput;
 import com.google.gerrit.extensions.api.changes.ReviewInput;
 import com.google.gerrit.extensions.api.changes.ReviewInput.DraftHandling;
 import com.google.gerrit.server.query.change.ChangeData;
+import com.google.gerrit.sshd.StreamEventsBuffer;
+import com.google.gson.JsonParser;
 import java.io.IOException;
 import java.io.Reader;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -159,6 +163,59 @@ public class StreamEventsIT extends AbstractDaemonTest {
         () -> pollEventsContaining("batch-ref-updated", "refs/draft-comments/").size() == 1);
   }
 
+  @Test
+  public void resumeAfterReplaysBufferedEvents() throws Exception {
+    change = createChange().getChange();
+    String firstComment = String.format("%s 1", TEST_REVIEW_COMMENT);
+    String secondComment = String.format("%s 2", TEST_REVIEW_COMMENT);
+
+    gApi.changes()
+        .id(change.getId().get())
+        .current()
+        .review(new ReviewInput().message(firstComment));
+    List<String> first = new ArrayList<>();
+    waitForEvent(
+        () -> {
+          first.addAll(pollEventsContaining("comment-added", firstComment));
+          return !first.isEmpty();
+        });
+    long sequence =
+        JsonParser.parseString(first.get(0))
+            .getAsJsonObject()
+            .get(StreamEventsBuffer.SEQUENCE_PROPERTY)
+            .getAsLong();
+
+    gApi.changes()
+        .id(change.getId().get())
+        .current()
+        .review(new ReviewInput().message(secondComment));
+    waitForEvent(() -> pollEventsContaining("comment-added", secondComment).size() == 1);
+
+    try (Reader resumed =
+        adminSshSession.execAndReturnReader("gerrit stream-events --resume-after " + sequence)) {
+      List<String> replayed = new ArrayList<>();
+      waitForEvent(
+          () -> {
+            replayed.addAll(pollEventsContaining(resumed, "comment-added", TEST_REVIEW_COMMENT));
+            return !replayed.isEmpty();
+          });
+      assertThat(replayed).hasSize(1);
+      assertThat(replayed.get(0)).contains(secondComment);
+    }
+  }
+
+  @Test
+  @GerritConfig(name = "sshd.streamEventsBufferSize", value = "1")
+  public void resumeAfterOverwrittenEventsReportsDroppedOutput() throws Exception {
+    reviewChange(new ReviewInput().message(TEST_REVIEW_COMMENT));
+    waitForEvent(() -> pollEventsContaining("comment-added", TEST_REVIEW_COMMENT).size() == 1);
+
+    try (Reader resumed =
+        adminSshSession.execAndReturnReader("gerrit stream-events --resume-after 0")) {
+      waitForEvent(() -> pollEventsContaining(resumed, "dropped-output").size() == 1);
+    }
+  }
+
   private void waitForEvent(Supplier<Boolean> waitCondition) throws InterruptedException {
     waitUntil(() -> waitCondition.get(), MAX_DURATION_FOR_RECEIVING_EVENTS);
   }
@@ -184,6 +241,11 @@ public class StreamEventsIT extends AbstractDaemonTest {
   }
 
   private List<String> pollEventsContaining(String eventType, String... expectedContent) {
+    return pollEventsContaining(streamEventsReader, eventType, expectedContent);
+  }
+
+  private static List<String> pollEventsContaining(
+      Reader streamEventsReader, String eventType, String... expectedContent) {
     try {
       char[] cbuf = new char[2048];
       StringBuilder eventsOutput = new StringBuilder();
@@ -0,0 +1,116 @@
+// Copyright (C) 2023 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.auth.ldap;
+
+import static com.google.common.collect.ImmutableMap.toImmutableMap;
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.Before;
+import org.junit.Test;
+
+public class NestedGroupExpanderTest {
+  private static final ImmutableMap<String, ImmutableSet<String>> PARENTS =
+      ImmutableMap.<String, ImmutableSet<String>>builder()
+          .put("cn=a", ImmutableSet.of("cn=parent1"))
+          .put("cn=b", ImmutableSet.of("cn=parent1", "cn=parent2"))
+          .put("cn=c", ImmutableSet.of())
+          .put("cn=parent1", ImmutableSet.of("cn=root"))
+          .put("cn=parent2", ImmutableSet.of("cn=root"))
+          // Cycle back to a group of a lower level.
+          .put("cn=root", ImmutableSet.of("cn=a"))
+          .build();
+
+  private Cache<String, ImmutableSet<String>> parentGroups;
+  private List<Set<String>> lookups;
+
+  @Before
+  public void setUp() {
+    parentGroups = CacheBuilder.newBuilder().build();
+    lookups = new ArrayList<>();
+  }
+
+  private NestedGroupExpander expander(int batchSize) {
+    return new NestedGroupExpander(
+        parentGroups,
+        dns -> {
+          lookups.add(dns);
+          return dns.stream()
+              .filter(PARENTS::containsKey)
+              .collect(toImmutableMap(dn -> dn, PARENTS::get));
+        },
+        batchSize);
+  }
+
+  @Test
+  public void expandsLevelByLevel() throws Exception {
+    Set<String> result = new HashSet<>();
+    expander(50).expand(result, ImmutableList.of("cn=a", "cn=b", "cn=c"));
+
+    assertThat(result)
+        .containsExactly("cn=a", "cn=b", "cn=c", "cn=parent1", "cn=parent2", "cn=root");
+    assertThat(lookups)
+        .containsExactly(
+            ImmutableSet.of("cn=a", "cn=b", "cn=c"),
+            ImmutableSet.of("cn=parent1", "cn=parent2"),
+            ImmutableSet.of("cn=root"))
+        .inOrder();
+  }
+
+  @Test
+  public void splitsLevelsIntoBatches() throws Exception {
+    Set<String> result = new HashSet<>();
+    expander(2).expand(result, ImmutableList.of("cn=a", "cn=b", "cn=c"));
+
+    assertThat(result)
+        .containsExactly("cn=a", "cn=b", "cn=c", "cn=parent1", "cn=parent2", "cn=root");
+    assertThat(lookups)
+        .containsExactly(
+            ImmutableSet.of("cn=a", "cn=b"),
+            ImmutableSet.of("cn=c"),
+            ImmutableSet.of("cn=parent1", "cn=parent2"),
+            ImmutableSet.of("cn=root"))
+        .inOrder();
+  }
+
+  @Test
+  public void usesCachedParents() throws Exception {
+    expander(50).expand(new HashSet<>(), ImmutableList.of("cn=a"));
+    lookups.clear();
+
+    Set<String> result = new HashSet<>();
+    expander(50).expand(result, ImmutableList.of("cn=a", "cn=b"));
+
+    assertThat(result).containsExactly("cn=a", "cn=b", "cn=parent1", "cn=parent2", "cn=root");
+    assertThat(lookups)
+        .containsExactly(ImmutableSet.of("cn=b"), ImmutableSet.of("cn=parent2"))
+        .inOrder();
+  }
+
+  @Test
+  public void cachesGroupsWithoutParents() throws Exception {
+    expander(50).expand(new HashSet<>(), ImmutableList.of("cn=unknown"));
+
+    assertThat(parentGroups.getIfPresent("cn=unknown")).isEmpty();
+  }
+}
@@ -315,8 +315,64 @@ public class ResourceServletTest {
     assertCacheable(res, true);
   }
 
+  @Test
+  public void smallFileWithPrecompressedVariants() throws Exception {
+    Cache<Path, Resource> cache = newCache(1);
+    Servlet servlet = new Servlet(fs, cache, true);
+    String content = Strings.repeat("a", 100);
+    writeFile("/foo.js", content);
+    writeFile("/foo.js.br", "brotli");
+
+    FakeHttpServletRequest req = request("/foo.js").addHeader("Accept-Encoding", "gzip, br");
+    FakeHttpServletResponse res = new FakeHttpServletResponse();
+    servlet.doGet(req, res);
+    assertThat(res.getStatus()).isEqualTo(SC_OK);
+    assertThat(res.getHeader("Content-Encoding")).isEqualTo("br");
+    assertThat(res.getHeader("Vary")).isEqualTo("Accept-Encoding");
+    assertThat(res.getActualBodyString()).isEqualTo("brotli");
+
+    req = request("/foo.js").addHeader("Accept-Encoding", "gzip");
+    res = new FakeHttpServletResponse();
+    servlet.doGet(req, res);
+    assertThat(res.getStatus()).isEqualTo(SC_OK);
+    assertThat(res.getHeader("Content-Encoding")).isEqualTo("gzip");
+    assertThat(gunzip(res.getActualBody())).isEqualTo(content);
+    assertCacheHits(cache, 1, 2);
+  }
+
+  @Test
+  public void outdatedPrecompressedVariantIsIgnored() throws Exception {
+    Cache<Path, Resource> cache = newCache(1);
+    Servlet servlet = new Servlet(fs, cache, true);
+    writeFile("/foo.js.br", "brotli");
+    String content = Strings.repeat("a", 100);
+    writeFile("/foo.js", content);
+
+    FakeHttpServletRequest req = request("/foo.js").addHeader("Accept-Encoding", "br");
+    FakeHttpServletResponse res = new FakeHttpServletResponse();
+    servlet.doGet(req, res);
+    assertThat(res.getStatus()).isEqualTo(SC_OK);
+    assertThat(res.getHeader("Content-Encoding")).isNull();
+    assertThat(res.getActualBodyString()).isEqualTo(content);
+  }
+
+  @Test
+  public void largeFileWithPrecompressedVariant() throws Exception {
+    Cache<Path, Resource> cache = newCache(1);
+    Servlet servlet = new Servlet(fs, cache, true, 3);
+    writeFile("/foo.js", Strings.repeat("a", 100));
+    writeFile("/foo.js.gz", "gzipped");
+
+    FakeHttpServletRequest req = request("/foo.js").addHeader("Accept-Encoding", "gzip");
+    FakeHttpServletResponse res = new FakeHttpServletResponse();
+    servlet.doGet(req, res);
+    assertThat(res.getStatus()).isEqualTo(SC_OK);
+    assertThat(res.getHeader("Content-Encoding")).isEqualTo("gzip");
+    assertThat(res.getHeader("Vary")).isEqualTo("Accept-Encoding");
+    assertThat(res.getActualBodyString()).isEqualTo("gzipped");
+  }
+
   // TODO(dborowitz): Check MIME type.
-  // TODO(dborowitz): Test that JS is not gzipped.
   // TODO(dborowitz): Test ?e parameter.
   // TODO(dborowitz): Test If-None-Match behavior.
   // TODO(dborowitz): Test If-Modified-Since behavior.
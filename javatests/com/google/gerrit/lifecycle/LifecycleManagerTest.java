@@ -0,0 +1,175 @@
+// Copyright (C) 2023 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.lifecycle;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.gerrit.testing.GerritJUnit.assertThrows;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import com.google.gerrit.extensions.events.ConcurrentStart;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import org.junit.Test;
+
+public class LifecycleManagerTest {
+  private final List<String> events = Collections.synchronizedList(new ArrayList<>());
+
+  @Test
+  public void listenersAreStartedInOrderAndStoppedInReverseOrder() {
+    LifecycleManager manager = new LifecycleManager();
+    manager.add(new Listener("a"));
+    manager.add(new Listener("b"));
+
+    manager.start();
+    assertThat(events).containsExactly("start a", "start b").inOrder();
+
+    manager.stop();
+    assertThat(events).containsExactly("start a", "start b", "stop b", "stop a").inOrder();
+  }
+
+  @Test
+  public void concurrentListenerDoesNotBlockFollowingListeners() {
+    CountDownLatch followingStarted = new CountDownLatch(1);
+    LifecycleManager manager = new LifecycleManager();
+    manager.add(new Listener("a"));
+    manager.add(new AwaitingListener("concurrent", followingStarted));
+    manager.add(
+        new Listener("b") {
+          @Override
+          public void start() {
+            super.start();
+            followingStarted.countDown();
+          }
+        });
+
+    manager.start();
+    assertThat(events).containsExactly("start a", "start b", "start concurrent").inOrder();
+  }
+
+  @Test
+  public void concurrentListenerWaitsForDependencies() {
+    LifecycleManager manager = new LifecycleManager();
+    manager.add(new SlowListener("slow"));
+    manager.add(new DependentListener("dependent"));
+    manager.add(new Listener("a"));
+
+    manager.start();
+    assertThat(events).containsExactly("start a", "start slow", "start dependent");
+    assertThat(events.indexOf("start dependent")).isGreaterThan(events.indexOf("start slow"));
+  }
+
+  @Test
+  public void startedListenersAreStoppedAfterFailure() {
+    LifecycleManager manager = new LifecycleManager();
+    manager.add(new Listener("a"));
+    manager.add(
+        new Listener("failing") {
+          @Override
+          public void start() {
+            super.start();
+            throw new IllegalStateException("failed");
+          }
+        });
+    manager.add(new Listener("b"));
+
+    IllegalStateException thrown = assertThrows(IllegalStateException.class, manager::start);
+    assertThat(thrown).hasMessageThat().isEqualTo("failed");
+
+    manager.stop();
+    assertThat(events)
+        .containsExactly("start a", "start failing", "stop failing", "stop a")
+        .inOrder();
+  }
+
+  @Test
+  public void startTimelineListsAllListeners() {
+    LifecycleManager manager = new LifecycleManager();
+    manager.add(new Listener("a"));
+    manager.add(new SlowListener("slow"));
+
+    manager.start();
+    List<String> listeners =
+        manager.getStartTimeline().stream()
+            .map(LifecycleManager.StartEvent::listener)
+            .collect(toImmutableList());
+    assertThat(listeners).containsExactly(Listener.class.getName(), SlowListener.class.getName());
+  }
+
+  private class Listener implements LifecycleListener {
+    private final String name;
+
+    Listener(String name) {
+      this.name = name;
+    }
+
+    @Override
+    public void start() {
+      events.add("start " + name);
+    }
+
+    @Override
+    public void stop() {
+      events.add("stop " + name);
+    }
+  }
+
+  @ConcurrentStart
+  private class AwaitingListener extends Listener {
+    private final CountDownLatch latch;
+
+    AwaitingListener(String name, CountDownLatch latch) {
+      super(name);
+      this.latch = latch;
+    }
+
+    @Override
+    public void start() {
+      try {
+        latch.await(1, SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      super.start();
+    }
+  }
+
+  @ConcurrentStart
+  private class SlowListener extends Listener {
+    SlowListener(String name) {
+      super(name);
+    }
+
+    @Override
+    public void start() {
+      try {
+        Thread.sleep(100);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      super.start();
+    }
+  }
+
+  @ConcurrentStart(after = SlowListener.class)
+  private class DependentListener extends Listener {
+    DependentListener(String name) {
+      super(name);
+    }
+  }
+}
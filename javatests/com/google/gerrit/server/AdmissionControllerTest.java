@@ -0,0 +1,137 @@
+// Copyright (C) 2023 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.gerrit.testing.GerritJUnit.assertThrows;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import com.google.common.base.Ticker;
+import com.google.gerrit.server.AdmissionController.Limiter;
+import com.google.gerrit.server.AdmissionController.Permit;
+import com.google.gerrit.server.cancellation.RequestCancelledException;
+import com.google.gerrit.server.cancellation.RequestStateProvider;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+
+public class AdmissionControllerTest {
+  private final AtomicLong now = new AtomicLong();
+  private final Ticker ticker =
+      new Ticker() {
+        @Override
+        public long read() {
+          return now.get();
+        }
+      };
+
+  @Test
+  public void requestsAboveLimitAreRejected() {
+    Limiter limiter = newLimiter(2, false);
+    limiter.acquire();
+    limiter.acquire();
+
+    RequestCancelledException thrown =
+        assertThrows(RequestCancelledException.class, limiter::acquire);
+    assertThat(thrown.getCancellationReason())
+        .isEqualTo(RequestStateProvider.Reason.SERVER_OVERLOADED);
+    assertThat(limiter.inFlight()).isEqualTo(2);
+  }
+
+  @Test
+  public void closedPermitFreesSlot() {
+    Limiter limiter = newLimiter(1, false);
+    limiter.acquire();
+    Permit permit = limiter.newPermit(null);
+    permit.close();
+    permit.close();
+
+    assertThat(limiter.inFlight()).isEqualTo(0);
+    limiter.acquire();
+    assertThat(limiter.inFlight()).isEqualTo(1);
+  }
+
+  @Test
+  public void limitGrowsWhileLatencyIsStable() {
+    Limiter limiter = newLimiter(10, false);
+    for (int i = 0; i < 10; i++) {
+      limiter.acquire();
+    }
+
+    for (int i = 0; i < 10; i++) {
+      window(limiter, MILLISECONDS.toNanos(10));
+    }
+    assertThat(limiter.limit()).isGreaterThan(10);
+    assertThat(limiter.limit()).isAtMost(100);
+  }
+
+  @Test
+  public void limitDoesNotGrowWhileUnused() {
+    Limiter limiter = newLimiter(10, false);
+
+    for (int i = 0; i < 10; i++) {
+      window(limiter, MILLISECONDS.toNanos(10));
+    }
+    assertThat(limiter.limit()).isEqualTo(10);
+  }
+
+  @Test
+  public void limitShrinksWhenLatencyRises() {
+    Limiter limiter = newLimiter(10, false);
+    window(limiter, MILLISECONDS.toNanos(10));
+
+    for (int i = 0; i < 20; i++) {
+      window(limiter, SECONDS.toNanos(1));
+    }
+    assertThat(limiter.limit()).isEqualTo(1);
+  }
+
+  @Test
+  public void runningRequestsAboveLimitAreCancelled() {
+    Limiter limiter = newLimiter(4, true);
+    List<Permit> permits = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      limiter.acquire();
+      permits.add(limiter.newPermit(null));
+    }
+    window(limiter, MILLISECONDS.toNanos(10));
+    while (limiter.limit() >= 4) {
+      window(limiter, SECONDS.toNanos(1));
+    }
+    int limit = limiter.limit();
+
+    AtomicInteger cancelled = new AtomicInteger();
+    for (Permit permit : permits) {
+      permit.checkIfCancelled((reason, message) -> cancelled.incrementAndGet());
+    }
+    assertThat(cancelled.get()).isEqualTo(4 - limit);
+    assertThat(limiter.inFlight()).isEqualTo(limit);
+
+    permits.forEach(Permit::close);
+    assertThat(limiter.inFlight()).isEqualTo(0);
+  }
+
+  private Limiter newLimiter(int initialLimit, boolean shed) {
+    return new Limiter(ticker, initialLimit, 1, 100, shed);
+  }
+
+  private void window(Limiter limiter, long latencyNanos) {
+    now.addAndGet(SECONDS.toNanos(1));
+    limiter.onSample(latencyNanos);
+  }
+}
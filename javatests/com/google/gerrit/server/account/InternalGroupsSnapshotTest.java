@@ -0,0 +1,100 @@
+// Copyright (C) 2023 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.account;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth8.assertThat;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.gerrit.entities.AccountGroup;
+import com.google.gerrit.entities.InternalGroup;
+import java.time.Instant;
+import java.util.Optional;
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.Test;
+
+public class InternalGroupsSnapshotTest {
+  private static final AccountGroup.UUID UUID_1 =
+      AccountGroup.uuid("1111111111111111111111111111111111111111");
+  private static final AccountGroup.UUID UUID_2 =
+      AccountGroup.uuid("2222222222222222222222222222222222222222");
+
+  @Test
+  public void groupsAreFoundByUuidIdAndName() {
+    InternalGroup group = group(UUID_1, 1, "foo");
+    InternalGroupsSnapshot.State state =
+        new InternalGroupsSnapshot.State(ImmutableMap.of(UUID_1, group));
+
+    assertThat(state.get(UUID_1)).hasValue(group);
+    assertThat(state.get(AccountGroup.id(1))).hasValue(group);
+    assertThat(state.get(AccountGroup.nameKey("foo"))).hasValue(group);
+    assertThat(state.get(UUID_2)).isEmpty();
+    assertThat(state.get(AccountGroup.id(2))).isEmpty();
+    assertThat(state.get(AccountGroup.nameKey("bar"))).isEmpty();
+  }
+
+  @Test
+  public void updateAddsGroup() {
+    InternalGroupsSnapshot.State state =
+        new InternalGroupsSnapshot.State(ImmutableMap.of(UUID_1, group(UUID_1, 1, "foo")));
+    InternalGroup added = group(UUID_2, 2, "bar");
+
+    InternalGroupsSnapshot.State updated =
+        state.update(ImmutableMap.of(UUID_2, Optional.of(added)));
+    assertThat(updated.size()).isEqualTo(2);
+    assertThat(updated.get(AccountGroup.nameKey("bar"))).hasValue(added);
+    assertThat(state.size()).isEqualTo(1);
+  }
+
+  @Test
+  public void updateRenamesGroup() {
+    InternalGroupsSnapshot.State state =
+        new InternalGroupsSnapshot.State(ImmutableMap.of(UUID_1, group(UUID_1, 1, "foo")));
+    InternalGroup renamed = group(UUID_1, 1, "bar");
+
+    InternalGroupsSnapshot.State updated =
+        state.update(ImmutableMap.of(UUID_1, Optional.of(renamed)));
+    assertThat(updated.get(AccountGroup.nameKey("foo"))).isEmpty();
+    assertThat(updated.get(AccountGroup.nameKey("bar"))).hasValue(renamed);
+    assertThat(updated.get(AccountGroup.id(1))).hasValue(renamed);
+  }
+
+  @Test
+  public void updateRemovesGroup() {
+    InternalGroupsSnapshot.State state =
+        new InternalGroupsSnapshot.State(ImmutableMap.of(UUID_1, group(UUID_1, 1, "foo")));
+
+    InternalGroupsSnapshot.State updated = state.update(ImmutableMap.of(UUID_1, Optional.empty()));
+    assertThat(updated.size()).isEqualTo(0);
+    assertThat(updated.get(UUID_1)).isEmpty();
+    assertThat(updated.get(AccountGroup.id(1))).isEmpty();
+    assertThat(updated.get(AccountGroup.nameKey("foo"))).isEmpty();
+  }
+
+  private static InternalGroup group(AccountGroup.UUID uuid, int id, String name) {
+    return InternalGroup.builder()
+        .setId(AccountGroup.id(id))
+        .setNameKey(AccountGroup.nameKey(name))
+        .setOwnerGroupUUID(uuid)
+        .setVisibleToAll(false)
+        .setGroupUUID(uuid)
+        .setCreatedOn(Instant.EPOCH)
+        .setMembers(ImmutableSet.of())
+        .setSubgroups(ImmutableSet.of())
+        .setRefState(ObjectId.zeroId())
+        .build();
+  }
+}
@@ -0,0 +1,149 @@
+// Copyright (C) 2023 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.gerrit.extensions.registration.DynamicMap;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.google.gerrit.server.cache.serialize.StringCacheSerializer;
+import com.google.gerrit.server.config.SitePaths;
+import com.google.gerrit.server.git.WorkQueue;
+import com.google.gerrit.server.plugincontext.PluginContext;
+import com.google.gerrit.server.plugincontext.PluginMapContext;
+import com.google.gerrit.server.util.IdGenerator;
+import com.google.inject.Guice;
+import java.util.ArrayList;
+import java.util.List;
+import org.eclipse.jgit.lib.Config;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CacheWarmUpTest {
+  private static final String CACHE = "test";
+  private static final long TIMEOUT_MS = 10_000;
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private Config cfg;
+  private SitePaths site;
+  private WorkQueue workQueue;
+  private List<String> loaded;
+
+  @Before
+  public void setUp() throws Exception {
+    cfg = new Config();
+    cfg.setBoolean("cacheWarmUp", null, "enabled", true);
+    cfg.setString("cacheWarmUp", null, "recordInterval", "0");
+    cfg.setString("cache", null, "directory", "cache");
+    site = new SitePaths(temporaryFolder.getRoot().toPath());
+    workQueue =
+        new WorkQueue(
+            Guice.createInjector().getInstance(IdGenerator.class),
+            2,
+            new DisabledMetricMaker(),
+            new PluginMapContext<>(
+                DynamicMap.emptyMap(), PluginContext.PluginMetrics.DISABLED_INSTANCE));
+    loaded = new ArrayList<>();
+  }
+
+  @Test
+  public void recordedKeysAreLoadedOnNextStart() throws Exception {
+    CacheWarmUp first = newCacheWarmUp();
+    LoadingCache<String, String> cache = newCache();
+    first.register(CACHE, cache, StringCacheSerializer.INSTANCE, 1);
+    first.start();
+    awaitDone(first);
+    cache.getUnchecked("foo");
+    cache.getUnchecked("bar");
+    first.stop();
+
+    loaded.clear();
+    CacheWarmUp second = newCacheWarmUp();
+    cache = newCache();
+    second.register(CACHE, cache, StringCacheSerializer.INSTANCE, 1);
+    second.start();
+    awaitDone(second);
+    second.stop();
+
+    assertThat(loaded).containsExactly("foo", "bar");
+    assertThat(cache.asMap().keySet()).containsExactly("foo", "bar");
+  }
+
+  @Test
+  public void keysOfOtherVersionAreNotLoaded() throws Exception {
+    CacheWarmUp first = newCacheWarmUp();
+    LoadingCache<String, String> cache = newCache();
+    first.register(CACHE, cache, StringCacheSerializer.INSTANCE, 1);
+    first.start();
+    awaitDone(first);
+    cache.getUnchecked("foo");
+    first.stop();
+
+    loaded.clear();
+    CacheWarmUp second = newCacheWarmUp();
+    cache = newCache();
+    second.register(CACHE, cache, StringCacheSerializer.INSTANCE, 2);
+    second.start();
+    awaitDone(second);
+    second.stop();
+
+    assertThat(loaded).isEmpty();
+  }
+
+  @Test
+  public void disabledWithoutCacheDirectory() throws Exception {
+    cfg.unset("cache", null, "directory");
+    CacheWarmUp warmUp = newCacheWarmUp();
+    warmUp.register(CACHE, newCache(), StringCacheSerializer.INSTANCE, 1);
+    warmUp.start();
+    warmUp.stop();
+
+    assertThat(warmUp.getState(CACHE)).isNull();
+    assertThat(temporaryFolder.getRoot().toPath().resolve("cache").toFile().exists()).isFalse();
+  }
+
+  private CacheWarmUp newCacheWarmUp() {
+    return new CacheWarmUp(
+        cfg, site, workQueue, new CacheWarmUp.Metrics(new DisabledMetricMaker()));
+  }
+
+  private LoadingCache<String, String> newCache() {
+    return CacheBuilder.newBuilder()
+        .build(
+            new CacheLoader<String, String>() {
+              @Override
+              public String load(String key) {
+                synchronized (loaded) {
+                  loaded.add(key);
+                }
+                return "value of " + key;
+              }
+            });
+  }
+
+  private static void awaitDone(CacheWarmUp warmUp) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+    while (!"done".equals(warmUp.getState(CACHE))) {
+      assertThat(System.currentTimeMillis()).isLessThan(deadline);
+      Thread.sleep(10);
+    }
+  }
+}
@@ -0,0 +1,43 @@
+// Copyright (C) 2023 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.cache.serialize.entities;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.gerrit.server.patch.filediff.Edit;
+import com.google.gerrit.server.patch.gitfilediff.GitFileEdits;
+import com.google.gerrit.server.patch.gitfilediff.GitFileEdits.Serializer;
+import org.junit.Test;
+
+public class GitFileEditsSerializerTest {
+  @Test
+  public void roundTrip() {
+    GitFileEdits gitFileEdits =
+        GitFileEdits.create(
+            ImmutableList.of(Edit.create(1, 5, 3, 4), Edit.create(21, 30, 150, 158)));
+
+    byte[] serialized = Serializer.INSTANCE.serialize(gitFileEdits);
+    assertThat(Serializer.INSTANCE.deserialize(serialized)).isEqualTo(gitFileEdits);
+  }
+
+  @Test
+  public void roundTripWithoutEdits() {
+    GitFileEdits gitFileEdits = GitFileEdits.create(ImmutableList.of());
+
+    byte[] serialized = Serializer.INSTANCE.serialize(gitFileEdits);
+    assertThat(Serializer.INSTANCE.deserialize(serialized)).isEqualTo(gitFileEdits);
+  }
+}
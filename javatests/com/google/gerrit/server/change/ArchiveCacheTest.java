@@ -0,0 +1,168 @@
+// Copyright (C) 2023 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.change;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.google.gerrit.server.config.SitePaths;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ArchiveCacheTest {
+  private static final ObjectId TREE_1 =
+      ObjectId.fromString("1111111111111111111111111111111111111111");
+  private static final ObjectId TREE_2 =
+      ObjectId.fromString("2222222222222222222222222222222222222222");
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private SitePaths site;
+  private AtomicInteger generated;
+
+  @Before
+  public void setUp() throws Exception {
+    site = new SitePaths(temporaryFolder.newFolder().toPath());
+    generated = new AtomicInteger();
+  }
+
+  @Test
+  public void archiveIsGeneratedOnce() throws Exception {
+    ArchiveCache cache = newCache(1024);
+    ArchiveCache.Key key = ArchiveCache.Key.create(TREE_1, ArchiveFormatInternal.TGZ);
+
+    assertThat(write(cache, key, "foo")).isEqualTo("foo");
+    assertThat(write(cache, key, "foo")).isEqualTo("foo");
+    assertThat(generated.get()).isEqualTo(1);
+    assertThat(cachedFiles()).isEqualTo(1);
+  }
+
+  @Test
+  public void keysDifferByFormatAndPrefix() throws Exception {
+    ArchiveCache cache = newCache(1024);
+
+    write(cache, ArchiveCache.Key.create(TREE_1, ArchiveFormatInternal.TGZ), "a");
+    write(cache, ArchiveCache.Key.create(TREE_1, ArchiveFormatInternal.TAR), "b");
+    write(cache, ArchiveCache.Key.create(TREE_2, ArchiveFormatInternal.TGZ), "c");
+    ArchiveCache.Key withPrefix =
+        ArchiveCache.Key.create(
+            TREE_1, ArchiveFormatInternal.TGZ, "prefix/", ImmutableList.of(), ImmutableMap.of());
+    assertThat(write(cache, withPrefix, "d")).isEqualTo("d");
+    assertThat(generated.get()).isEqualTo(4);
+  }
+
+  @Test
+  public void leastRecentlyUsedArchiveIsEvicted() throws Exception {
+    ArchiveCache cache = newCache(10);
+    ArchiveCache.Key key1 = ArchiveCache.Key.create(TREE_1, ArchiveFormatInternal.TGZ);
+    ArchiveCache.Key key2 = ArchiveCache.Key.create(TREE_1, ArchiveFormatInternal.TAR);
+    ArchiveCache.Key key3 = ArchiveCache.Key.create(TREE_2, ArchiveFormatInternal.TGZ);
+
+    write(cache, key1, "aaaa");
+    write(cache, key2, "bbbb");
+    write(cache, key1, "aaaa");
+    write(cache, key3, "cccc");
+    assertThat(generated.get()).isEqualTo(3);
+
+    // key2 was evicted, key1 is still cached.
+    write(cache, key1, "aaaa");
+    assertThat(generated.get()).isEqualTo(3);
+    write(cache, key2, "bbbb");
+    assertThat(generated.get()).isEqualTo(4);
+  }
+
+  @Test
+  public void archiveLargerThanCacheIsNotKept() throws Exception {
+    ArchiveCache cache = newCache(2);
+    ArchiveCache.Key key = ArchiveCache.Key.create(TREE_1, ArchiveFormatInternal.TGZ);
+
+    assertThat(write(cache, key, "foo")).isEqualTo("foo");
+    assertThat(write(cache, key, "foo")).isEqualTo("foo");
+    assertThat(generated.get()).isEqualTo(2);
+    assertThat(cachedFiles()).isEqualTo(0);
+  }
+
+  @Test
+  public void disabledCacheGeneratesEveryTime() throws Exception {
+    ArchiveCache cache = newCache(0);
+    ArchiveCache.Key key = ArchiveCache.Key.create(TREE_1, ArchiveFormatInternal.TGZ);
+
+    write(cache, key, "foo");
+    write(cache, key, "foo");
+    assertThat(generated.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void cachedArchivesAreKeptOnRestart() throws Exception {
+    ArchiveCache.Key key = ArchiveCache.Key.create(TREE_1, ArchiveFormatInternal.TGZ);
+    write(newCache(1024), key, "foo");
+
+    assertThat(write(newCache(1024), key, "foo")).isEqualTo("foo");
+    assertThat(generated.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void disabledWithoutCacheDirectory() throws Exception {
+    Config cfg = new Config();
+    cfg.setLong("download", null, "archiveCacheSize", 1024);
+    ArchiveCache cache = new ArchiveCache(cfg, site, new DisabledMetricMaker());
+    ArchiveCache.Key key = ArchiveCache.Key.create(TREE_1, ArchiveFormatInternal.TGZ);
+
+    write(cache, key, "foo");
+    write(cache, key, "foo");
+    assertThat(generated.get()).isEqualTo(2);
+    assertThat(Files.exists(site.resolve("cache"))).isFalse();
+  }
+
+  private ArchiveCache newCache(long size) {
+    Config cfg = new Config();
+    cfg.setLong("download", null, "archiveCacheSize", size);
+    cfg.setString("cache", null, "directory", "cache");
+    return new ArchiveCache(cfg, site, new DisabledMetricMaker());
+  }
+
+  private String write(ArchiveCache cache, ArchiveCache.Key key, String content)
+      throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    cache.writeTo(
+        key,
+        o -> {
+          generated.incrementAndGet();
+          o.write(content.getBytes(UTF_8));
+        },
+        out);
+    return out.toString(UTF_8);
+  }
+
+  private long cachedFiles() throws IOException {
+    Path dir = site.resolve("cache").resolve("archives");
+    try (Stream<Path> files = Files.list(dir)) {
+      return files.count();
+    }
+  }
+}
@@ -0,0 +1,150 @@
+// Copyright (C) 2023 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.change;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.gerrit.extensions.client.ListChangesOption.CHECK;
+import static com.google.gerrit.extensions.client.ListChangesOption.CURRENT_ACTIONS;
+import static com.google.gerrit.extensions.client.ListChangesOption.DETAILED_LABELS;
+import static com.google.gerrit.extensions.client.ListChangesOption.LABELS;
+import static com.google.gerrit.extensions.client.ListChangesOption.MESSAGES;
+import static com.google.gerrit.extensions.client.ListChangesOption.REVIEWED;
+import static com.google.gerrit.extensions.client.ListChangesOption.STAR;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.gerrit.extensions.client.ListChangesOption;
+import com.google.gerrit.extensions.common.ChangeInfo;
+import com.google.gerrit.extensions.common.PluginDefinedInfo;
+import com.google.gerrit.extensions.common.RevisionInfo;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import org.eclipse.jgit.lib.Config;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ChangeJsonCacheTest {
+  private ChangeJsonCache cache;
+
+  @Before
+  public void setUp() {
+    Config cfg = new Config();
+    cfg.setLong("cache", ChangeJsonCache.CACHE_NAME, "memoryLimit", 1024);
+    cache = new ChangeJsonCache(CacheBuilder.newBuilder().build(), cfg, new DisabledMetricMaker());
+  }
+
+  @Test
+  public void disabledByDefault() {
+    ChangeJsonCache disabled =
+        new ChangeJsonCache(
+            CacheBuilder.newBuilder().build(), new Config(), new DisabledMetricMaker());
+    assertThat(disabled.isEnabled()).isFalse();
+    assertThat(cache.isEnabled()).isTrue();
+  }
+
+  @Test
+  public void cachedChangeIsCopied() {
+    ChangeJsonCache.Key key = key("etag", LABELS);
+    assertThat(cache.get(key)).isNull();
+
+    ChangeInfo info = newChange();
+    cache.put(key, info);
+
+    ChangeInfo cached = cache.get(key);
+    assertThat(cached).isNotSameInstanceAs(info);
+    assertThat(cached.id).isEqualTo(info.id);
+    assertThat(cached._number).isEqualTo(info._number);
+    assertThat(cached.currentRevision).isEqualTo("rev2");
+    assertThat(cached.revisions.get("rev1").isCurrent).isFalse();
+    assertThat(cached.revisions.get("rev2").isCurrent).isTrue();
+
+    cached.subject = "modified";
+    assertThat(cache.get(key).subject).isEqualTo(info.subject);
+  }
+
+  @Test
+  public void keysDifferByETagAndOptions() {
+    cache.put(key("etag", LABELS), newChange());
+
+    assertThat(cache.get(key("other", LABELS))).isNull();
+    assertThat(cache.get(key("etag", MESSAGES))).isNull();
+    assertThat(cache.get(key("etag", LABELS))).isNotNull();
+  }
+
+  @Test
+  public void changeWithPluginAttributesIsNotCached() {
+    ChangeJsonCache.Key key = key("etag");
+    ChangeInfo info = newChange();
+    PluginDefinedInfo pluginInfo = new PluginDefinedInfo();
+    pluginInfo.name = "plugin";
+    info.plugins = ImmutableList.of(pluginInfo);
+
+    cache.put(key, info);
+    assertThat(cache.get(key)).isNull();
+  }
+
+  @Test
+  public void sharedEntryDoesNotKeepStarredFlag() {
+    ChangeJsonCache.Key key = ChangeJsonCache.Key.create("etag", false, ImmutableSet.of(LABELS));
+    ChangeInfo info = newChange();
+    info.starred = true;
+
+    cache.put(key, info);
+    assertThat(info.starred).isTrue();
+    assertThat(cache.get(key).starred).isNull();
+  }
+
+  @Test
+  public void perUserEntryKeepsStarredFlag() {
+    ChangeJsonCache.Key key = key("etag", STAR);
+    ChangeInfo info = newChange();
+    info.starred = true;
+
+    cache.put(key, info);
+    assertThat(cache.get(key).starred).isTrue();
+  }
+
+  @Test
+  public void optionsThatDependOnTheAccountArePerUser() {
+    assertThat(ChangeJsonCache.isPerUser(ImmutableSet.of(LABELS, MESSAGES))).isFalse();
+    assertThat(ChangeJsonCache.isPerUser(ImmutableSet.of(LABELS, STAR))).isTrue();
+    assertThat(ChangeJsonCache.isPerUser(ImmutableSet.of(CURRENT_ACTIONS))).isTrue();
+    assertThat(ChangeJsonCache.isPerUser(ImmutableSet.of(DETAILED_LABELS))).isTrue();
+  }
+
+  @Test
+  public void checkAndReviewedAreNotCached() {
+    assertThat(ChangeJsonCache.isCacheable(ImmutableSet.of(LABELS, MESSAGES))).isTrue();
+    assertThat(ChangeJsonCache.isCacheable(ImmutableSet.of(LABELS, CHECK))).isFalse();
+    assertThat(ChangeJsonCache.isCacheable(ImmutableSet.of(REVIEWED))).isFalse();
+  }
+
+  private static ChangeJsonCache.Key key(String eTag, ListChangesOption... options) {
+    return ChangeJsonCache.Key.create(eTag, true, ImmutableSet.copyOf(options));
+  }
+
+  private static ChangeInfo newChange() {
+    RevisionInfo rev1 = new RevisionInfo("rev1", 1);
+    RevisionInfo rev2 = new RevisionInfo("rev2", 2);
+    rev2.isCurrent = true;
+    ChangeInfo info = new ChangeInfo(ImmutableMap.of("rev1", rev1, "rev2", rev2));
+    info.id = "project~123";
+    info._number = 123;
+    info.subject = "Subject";
+    info.currentRevision = "rev2";
+    return info;
+  }
+}
@@ -0,0 +1,86 @@
+// Copyright (C) 2023 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.git;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.google.gerrit.server.cache.PerThreadCache;
+import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
+import org.eclipse.jgit.junit.TestRepository;
+import org.eclipse.jgit.lib.Config;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RefSnapshotCacheTest {
+  private InMemoryRepository repo;
+
+  @Before
+  public void setUp() throws Exception {
+    repo = new InMemoryRepository(new DfsRepositoryDescription("repo"));
+    TestRepository<InMemoryRepository> tr = new TestRepository<>(repo);
+    tr.branch("refs/heads/master").commit().create();
+  }
+
+  @Test
+  public void snapshotIsNotSharedOutsideOfRequest() throws Exception {
+    RefSnapshotCache cache = newCache(new Config());
+
+    assertThat(cache.isShared()).isFalse();
+    assertThat(cache.get(repo)).isNotSameInstanceAs(cache.get(repo));
+    assertThat(RefSnapshotCache.getIfPresent(repo)).isNull();
+  }
+
+  @Test
+  public void snapshotIsSharedWithinRequest() throws Exception {
+    RefSnapshotCache cache = newCache(new Config());
+
+    try (PerThreadCache ignored = PerThreadCache.create()) {
+      assertThat(cache.isShared()).isTrue();
+      RefSnapshot snapshot = cache.get(repo);
+      assertThat(cache.get(repo)).isSameInstanceAs(snapshot);
+      assertThat(RefSnapshotCache.getIfPresent(repo)).isSameInstanceAs(snapshot);
+    }
+  }
+
+  @Test
+  public void invalidateDropsSnapshotsOfRequest() throws Exception {
+    RefSnapshotCache cache = newCache(new Config());
+
+    try (PerThreadCache ignored = PerThreadCache.create()) {
+      RefSnapshot snapshot = cache.get(repo);
+      RefSnapshotCache.invalidate();
+      assertThat(RefSnapshotCache.getIfPresent(repo)).isNull();
+      assertThat(cache.get(repo)).isNotSameInstanceAs(snapshot);
+    }
+  }
+
+  @Test
+  public void snapshotIsNotSharedIfPerRequestRefCacheIsDisabled() throws Exception {
+    Config cfg = new Config();
+    cfg.setBoolean("core", null, "usePerRequestRefCache", false);
+    RefSnapshotCache cache = newCache(cfg);
+
+    try (PerThreadCache ignored = PerThreadCache.create()) {
+      assertThat(cache.isShared()).isFalse();
+      assertThat(cache.get(repo)).isNotSameInstanceAs(cache.get(repo));
+    }
+  }
+
+  private static RefSnapshotCache newCache(Config cfg) {
+    return new RefSnapshotCache(cfg, new RefSnapshotCache.Metrics(new DisabledMetricMaker()));
+  }
+}
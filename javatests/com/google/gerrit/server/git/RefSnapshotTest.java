@@ -0,0 +1,95 @@
+// Copyright (C) 2023 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.git;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectIdRef;
+import org.eclipse.jgit.lib.Ref;
+import org.junit.Test;
+
+public class RefSnapshotTest {
+  private static final ObjectId ID1 =
+      ObjectId.fromString("badc0feebadc0feebadc0feebadc0feebadc0fee");
+  private static final ObjectId ID2 =
+      ObjectId.fromString("deadbeefdeadbeefdeadbeefdeadbeefdeadbeef");
+
+  private final Ref master = newRef("refs/heads/master", ID1);
+  private final Ref stable = newRef("refs/heads/stable", ID2);
+  private final Ref ps1 = newRef("refs/changes/01/1/1", ID1);
+  private final Ref meta1 = newRef("refs/changes/01/1/meta", ID2);
+  private final Ref ps2 = newRef("refs/changes/02/2/1", ID2);
+  private final Ref tag = newRef("refs/tags/v1", ID1);
+
+  private final RefSnapshot snapshot =
+      RefSnapshot.create(ImmutableList.of(tag, stable, ps2, master, meta1, ps1));
+
+  @Test
+  public void allRefsAreSortedByName() {
+    assertThat(snapshot.all()).containsExactly(ps1, meta1, ps2, master, stable, tag).inOrder();
+    assertThat(snapshot.size()).isEqualTo(6);
+  }
+
+  @Test
+  public void exactRef() {
+    assertThat(snapshot.exactRef("refs/heads/master")).isEqualTo(master);
+    assertThat(snapshot.exactRef("refs/changes/01/1/meta")).isEqualTo(meta1);
+    assertThat(snapshot.exactRef("refs/heads")).isNull();
+    assertThat(snapshot.exactRef("refs/heads/mas")).isNull();
+    assertThat(snapshot.exactRef("refs/zzz")).isNull();
+  }
+
+  @Test
+  public void byPrefix() {
+    assertThat(snapshot.byPrefix("refs/heads/")).containsExactly(master, stable).inOrder();
+    assertThat(snapshot.byPrefix("refs/changes/01/1/")).containsExactly(ps1, meta1).inOrder();
+    assertThat(snapshot.byPrefix("refs/heads/m")).containsExactly(master);
+    assertThat(snapshot.byPrefix("refs/notes/")).isEmpty();
+    assertThat(snapshot.byPrefix("")).isEqualTo(snapshot.all());
+  }
+
+  @Test
+  public void byPrefixWithExclusions() {
+    assertThat(
+            snapshot.byPrefixWithExclusions(
+                "", ImmutableSet.of("refs/changes/", "refs/heads/stable")))
+        .containsExactly(master, tag)
+        .inOrder();
+    assertThat(snapshot.byPrefixWithExclusions("refs/heads/", ImmutableSet.of("refs/tags/")))
+        .containsExactly(master, stable)
+        .inOrder();
+  }
+
+  @Test
+  public void byObjectId() {
+    assertThat(snapshot.byObjectId(ID1)).containsExactly(ps1, master, tag);
+    assertThat(snapshot.byObjectId(ObjectId.zeroId())).isEmpty();
+  }
+
+  @Test
+  public void emptySnapshot() {
+    RefSnapshot empty = RefSnapshot.create(ImmutableList.of());
+    assertThat(empty.exactRef("refs/heads/master")).isNull();
+    assertThat(empty.byPrefix("refs/")).isEmpty();
+    assertThat(empty.estimatedSizeBytes()).isEqualTo(0);
+  }
+
+  private static Ref newRef(String name, ObjectId id) {
+    return new ObjectIdRef.Unpeeled(Ref.Storage.NEW, name, id, 1);
+  }
+}
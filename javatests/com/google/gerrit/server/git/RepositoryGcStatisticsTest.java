@@ -0,0 +1,63 @@
+// Copyright (C) 2023 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.git;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.gerrit.entities.Project;
+import java.time.Instant;
+import java.util.Properties;
+import org.junit.Test;
+
+public class RepositoryGcStatisticsTest {
+  private static final Project.NameKey FOO = Project.nameKey("foo");
+
+  @Test
+  public void createFromJGitStatistics() {
+    Properties p = new Properties();
+    p.put("numberOfLooseObjects", 200L);
+    p.put("sizeOfLooseObjects", 4096L);
+    p.put("numberOfPackFiles", 3L);
+    p.put("numberOfLooseRefs", 10L);
+    p.put("numberOfPackedObjects", 5000L);
+
+    RepositoryGcStatistics s = RepositoryGcStatistics.create(FOO, p, Instant.EPOCH);
+    assertThat(s.project()).isEqualTo(FOO);
+    assertThat(s.looseObjects()).isEqualTo(200);
+    assertThat(s.looseObjectsSize()).isEqualTo(4096);
+    assertThat(s.packFiles()).isEqualTo(3);
+    assertThat(s.looseRefs()).isEqualTo(10);
+    assertThat(s.score()).isEqualTo(200 + 10 + 2 * RepositoryGcStatistics.PACK_FILE_WEIGHT);
+  }
+
+  @Test
+  public void sizeOfLooseObjectsAddsToScore() {
+    Properties p = new Properties();
+    p.put("numberOfLooseObjects", 10L);
+    p.put("sizeOfLooseObjects", 100 * RepositoryGcStatistics.LOOSE_OBJECTS_SIZE_PER_POINT);
+    p.put("numberOfPackFiles", 1L);
+
+    RepositoryGcStatistics s = RepositoryGcStatistics.create(FOO, p, Instant.EPOCH);
+    assertThat(s.score()).isEqualTo(10 + 100);
+  }
+
+  @Test
+  public void missingStatisticsCountAsZero() {
+    RepositoryGcStatistics s = RepositoryGcStatistics.create(FOO, new Properties(), Instant.EPOCH);
+    assertThat(s.looseObjects()).isEqualTo(0);
+    assertThat(s.packFiles()).isEqualTo(0);
+    assertThat(s.score()).isEqualTo(0);
+  }
+}
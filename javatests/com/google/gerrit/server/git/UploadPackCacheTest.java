@@ -0,0 +1,268 @@
+// Copyright (C) 2023 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.git;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth8.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.ImmutableList;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.google.gerrit.server.config.SitePaths;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectIdRef;
+import org.eclipse.jgit.lib.Ref;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class UploadPackCacheTest {
+  private static final Project.NameKey PROJECT = Project.nameKey("project");
+  private static final String ID_1 = "1111111111111111111111111111111111111111";
+  private static final String ID_2 = "2222222222222222222222222222222222222222";
+  private static final byte[] REQUEST = request("want " + ID_1 + "\n", null, "done\n");
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private SitePaths site;
+  private AtomicInteger generated;
+
+  @Before
+  public void setUp() throws Exception {
+    site = new SitePaths(temporaryFolder.newFolder().toPath());
+    generated = new AtomicInteger();
+  }
+
+  @Test
+  public void parseClone() {
+    assertThat(UploadPackCache.parseFullFetch(REQUEST))
+        .hasValue(ImmutableList.of(ObjectId.fromString(ID_1)));
+  }
+
+  @Test
+  public void parseProtocolV2Fetch() {
+    byte[] request =
+        request(
+            "command=fetch\n",
+            "agent=git/2.40\n",
+            "",
+            "want " + ID_1 + "\n",
+            "want " + ID_2 + "\n",
+            "done\n",
+            null);
+    assertThat(UploadPackCache.parseFullFetch(request))
+        .hasValue(ImmutableList.of(ObjectId.fromString(ID_1), ObjectId.fromString(ID_2)));
+  }
+
+  @Test
+  public void parseIncrementalFetch() {
+    byte[] request = request("want " + ID_1 + "\n", null, "have " + ID_2 + "\n", "done\n");
+    assertThat(UploadPackCache.parseFullFetch(request)).isEmpty();
+  }
+
+  @Test
+  public void parseUnfinishedNegotiation() {
+    assertThat(UploadPackCache.parseFullFetch(request("want " + ID_1 + "\n", null))).isEmpty();
+  }
+
+  @Test
+  public void parseOtherRequests() {
+    assertThat(UploadPackCache.parseFullFetch(request("command=ls-refs\n", null))).isEmpty();
+    assertThat(
+            UploadPackCache.parseFullFetch(
+                request("command=fetch\n", "", "want-ref refs/heads/master\n", "done\n", null)))
+        .isEmpty();
+    assertThat(UploadPackCache.parseFullFetch("garbage".getBytes(UTF_8))).isEmpty();
+  }
+
+  @Test
+  public void responseIsGeneratedOnce() throws Exception {
+    UploadPackCache cache = newCache(1024);
+    UploadPackCache.Key key = key(ID_1);
+
+    assertThat(write(cache, key, "pack")).isEqualTo("pack");
+    assertThat(write(cache, key, "pack")).isEqualTo("pack");
+    assertThat(generated.get()).isEqualTo(1);
+    assertThat(cachedFiles()).isEqualTo(1);
+  }
+
+  @Test
+  public void keysDifferByVisibleRefs() throws Exception {
+    UploadPackCache cache = newCache(1024);
+
+    write(cache, key(ID_1), "a");
+    write(cache, key(ID_2), "b");
+    write(cache, UploadPackCache.Key.create(PROJECT, ImmutableList.of(), REQUEST), "c");
+    assertThat(generated.get()).isEqualTo(3);
+  }
+
+  @Test
+  public void incompleteResponseIsNotKept() throws Exception {
+    UploadPackCache cache = newCache(1024);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    cache.writeTo(
+        key(ID_1),
+        o -> {
+          o.write("error".getBytes(UTF_8));
+          return false;
+        },
+        out);
+    assertThat(out.toString(UTF_8)).isEqualTo("error");
+    assertThat(cachedFiles()).isEqualTo(0);
+  }
+
+  @Test
+  public void responseLargerThanMaxPackSizeIsNotKept() throws Exception {
+    Config cfg = config(1024);
+    cfg.setLong("upload", null, "packCacheMaxPackSize", 2);
+    UploadPackCache cache = new UploadPackCache(cfg, site, new DisabledMetricMaker());
+
+    assertThat(write(cache, key(ID_1), "pack")).isEqualTo("pack");
+    assertThat(cachedFiles()).isEqualTo(0);
+  }
+
+  @Test
+  public void responseLargerThanCacheIsNotKept() throws Exception {
+    Config cfg = config(2);
+    cfg.setLong("upload", null, "packCacheMaxPackSize", 1024);
+    UploadPackCache cache = new UploadPackCache(cfg, site, new DisabledMetricMaker());
+
+    assertThat(write(cache, key(ID_1), "pack")).isEqualTo("pack");
+    assertThat(cachedFiles()).isEqualTo(0);
+  }
+
+  @Test
+  public void sizeOfCachedResponseIsReturned() throws Exception {
+    UploadPackCache cache = newCache(1024);
+    UploadPackCache.Key key = key(ID_1);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    UploadPackCache.Generator generator =
+        o -> {
+          o.write("pack".getBytes(UTF_8));
+          return true;
+        };
+
+    assertThat(cache.writeTo(key, generator, out)).isEqualTo(-1);
+    assertThat(cache.writeTo(key, generator, out)).isEqualTo(4);
+    assertThat(out.toString(UTF_8)).isEqualTo("packpack");
+  }
+
+  @Test
+  public void leastRecentlyUsedResponseIsEvicted() throws Exception {
+    UploadPackCache cache = newCache(10);
+    UploadPackCache.Key key1 = key(ID_1);
+    UploadPackCache.Key key2 = key(ID_2);
+    UploadPackCache.Key key3 = UploadPackCache.Key.create(PROJECT, ImmutableList.of(), REQUEST);
+
+    write(cache, key1, "aaaa");
+    write(cache, key2, "bbbb");
+    write(cache, key1, "aaaa");
+    write(cache, key3, "cccc");
+    assertThat(generated.get()).isEqualTo(3);
+
+    // key2 was evicted, key1 is still cached.
+    write(cache, key1, "aaaa");
+    assertThat(generated.get()).isEqualTo(3);
+    write(cache, key2, "bbbb");
+    assertThat(generated.get()).isEqualTo(4);
+  }
+
+  @Test
+  public void disabledCacheGeneratesEveryTime() throws Exception {
+    UploadPackCache cache = newCache(0);
+
+    write(cache, key(ID_1), "pack");
+    write(cache, key(ID_1), "pack");
+    assertThat(generated.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void disabledWithoutCacheDirectory() throws Exception {
+    Config cfg = config(1024);
+    cfg.unset("cache", null, "directory");
+    UploadPackCache cache = new UploadPackCache(cfg, site, new DisabledMetricMaker());
+
+    assertThat(cache.isEnabled()).isFalse();
+    write(cache, key(ID_1), "pack");
+    write(cache, key(ID_1), "pack");
+    assertThat(generated.get()).isEqualTo(2);
+  }
+
+  private UploadPackCache newCache(long size) {
+    return new UploadPackCache(config(size), site, new DisabledMetricMaker());
+  }
+
+  private static Config config(long size) {
+    Config cfg = new Config();
+    cfg.setLong("upload", null, "packCacheSize", size);
+    cfg.setLong("upload", null, "packCacheMinPackSize", 0);
+    cfg.setLong("upload", null, "packCacheMaxPackSize", size);
+    cfg.setString("cache", null, "directory", "cache");
+    return cfg;
+  }
+
+  private static UploadPackCache.Key key(String master) {
+    Ref ref =
+        new ObjectIdRef.PeeledNonTag(
+            Ref.Storage.LOOSE, "refs/heads/master", ObjectId.fromString(master));
+    return UploadPackCache.Key.create(PROJECT, ImmutableList.of(ref), REQUEST);
+  }
+
+  private String write(UploadPackCache cache, UploadPackCache.Key key, String content)
+      throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    cache.writeTo(
+        key,
+        o -> {
+          generated.incrementAndGet();
+          o.write(content.getBytes(UTF_8));
+          return true;
+        },
+        out);
+    return out.toString(UTF_8);
+  }
+
+  private long cachedFiles() throws IOException {
+    Path dir = site.resolve("cache").resolve("packs");
+    try (Stream<Path> files = Files.list(dir)) {
+      return files.count();
+    }
+  }
+
+  /** Encodes pkt-lines, {@code null} is a flush packet and an empty string a delimiter. */
+  private static byte[] request(String... lines) {
+    StringBuilder b = new StringBuilder();
+    for (String line : lines) {
+      if (line == null) {
+        b.append("0000");
+      } else if (line.isEmpty()) {
+        b.append("0001");
+      } else {
+        b.append(String.format("%04x", line.length() + 4)).append(line);
+      }
+    }
+    return b.toString().getBytes(UTF_8);
+  }
+}
@@ -0,0 +1,116 @@
+// Copyright (C) 2023 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.index.change;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.gerrit.server.index.change.AllChangesIndexer.reusableStoredFields;
+
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.gerrit.index.IndexedField;
+import com.google.gerrit.index.Schema;
+import com.google.gerrit.server.query.change.ChangeData;
+import org.junit.Test;
+
+public class AllChangesIndexerTest {
+  private static final IndexedField<ChangeData, String> STORED_FIELD =
+      IndexedField.<ChangeData>stringBuilder("Stored").stored().build(cd -> "stored");
+  private static final IndexedField<ChangeData, String>.SearchSpec STORED_SPEC =
+      STORED_FIELD.exact("stored");
+
+  private static final IndexedField<ChangeData, String> OTHER_FIELD =
+      IndexedField.<ChangeData>stringBuilder("Other").stored().build(cd -> "other");
+  private static final IndexedField<ChangeData, String>.SearchSpec OTHER_SPEC =
+      OTHER_FIELD.exact("other");
+
+  private static final IndexedField<ChangeData, String> NOT_STORED_FIELD =
+      IndexedField.<ChangeData>stringBuilder("NotStored").build(cd -> "not stored");
+  private static final IndexedField<ChangeData, String>.SearchSpec NOT_STORED_SPEC =
+      NOT_STORED_FIELD.exact("notstored");
+
+  @Test
+  public void reuseStoredFieldsDefinedByTheSameField() {
+    Schema<ChangeData> v1 = schema(1, STORED_FIELD, STORED_SPEC, NOT_STORED_FIELD, NOT_STORED_SPEC);
+    Schema<ChangeData> v2 =
+        new Schema.Builder<ChangeData>()
+            .add(v1)
+            .addIndexedFields(OTHER_FIELD)
+            .addSearchSpecs(OTHER_SPEC)
+            .build();
+
+    assertThat(reusableStoredFields(schemas(v1, v2), v1, v2)).containsExactly("stored");
+  }
+
+  @Test
+  public void doNotReuseStoredFieldRedefinedWithTheSameName() {
+    IndexedField<ChangeData, String> redefinedField =
+        IndexedField.<ChangeData>stringBuilder("Stored").stored().build(cd -> "redefined");
+    Schema<ChangeData> v1 = schema(1, STORED_FIELD, STORED_SPEC, OTHER_FIELD, OTHER_SPEC);
+    Schema<ChangeData> v2 =
+        schema(2, redefinedField, redefinedField.exact("stored"), OTHER_FIELD, OTHER_SPEC);
+
+    assertThat(reusableStoredFields(schemas(v1, v2), v1, v2)).containsExactly("other");
+  }
+
+  @Test
+  public void doNotReuseFieldsRecomputedAfterPreviousVersion() {
+    Schema<ChangeData> v1 = schema(1, STORED_FIELD, STORED_SPEC, OTHER_FIELD, OTHER_SPEC);
+    Schema<ChangeData> v2 =
+        new Schema.Builder<ChangeData>().add(v1).recompute(STORED_FIELD).build();
+    Schema<ChangeData> v3 = new Schema.Builder<ChangeData>().add(v2).build();
+
+    assertThat(reusableStoredFields(schemas(v1, v2, v3), v1, v3)).containsExactly("other");
+    assertThat(reusableStoredFields(schemas(v1, v2, v3), v1, v2)).containsExactly("other");
+    assertThat(reusableStoredFields(schemas(v1, v2, v3), v2, v3))
+        .containsExactly("stored", "other");
+  }
+
+  @Test
+  public void recomputedFieldsAreNotInherited() {
+    Schema<ChangeData> v1 =
+        new Schema.Builder<ChangeData>()
+            .version(1)
+            .addIndexedFields(STORED_FIELD)
+            .addSearchSpecs(STORED_SPEC)
+            .recompute(STORED_FIELD)
+            .build();
+    Schema<ChangeData> v2 = new Schema.Builder<ChangeData>().add(v1).build();
+
+    assertThat(v1.getRecomputedFields()).containsExactly("stored");
+    assertThat(v2.getRecomputedFields()).isEmpty();
+  }
+
+  private static Schema<ChangeData> schema(
+      int version,
+      IndexedField<ChangeData, ?> field1,
+      IndexedField<ChangeData, ?>.SearchSpec spec1,
+      IndexedField<ChangeData, ?> field2,
+      IndexedField<ChangeData, ?>.SearchSpec spec2) {
+    return new Schema.Builder<ChangeData>()
+        .version(version)
+        .addIndexedFields(field1, field2)
+        .addSearchSpecs(spec1, spec2)
+        .build();
+  }
+
+  @SafeVarargs
+  private static ImmutableSortedMap<Integer, Schema<ChangeData>> schemas(
+      Schema<ChangeData>... schemas) {
+    ImmutableSortedMap.Builder<Integer, Schema<ChangeData>> b = ImmutableSortedMap.naturalOrder();
+    for (Schema<ChangeData> s : schemas) {
+      b.put(s.getVersion(), s);
+    }
+    return b.build();
+  }
+}
@@ -0,0 +1,52 @@
+// Copyright (C) 2023 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.index.change;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.gerrit.testing.GerritJUnit.assertThrows;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Ordering;
+import org.junit.Test;
+
+public class ChangeSortKeyTest {
+  @Test
+  public void serializeAndParse() {
+    ChangeSortKey key = ChangeSortKey.create(1698765432000L, 0L, 4711);
+    assertThat(key.serialize()).isEqualTo("1698765432000.0.4711");
+    assertThat(ChangeSortKey.parse(key.serialize())).isEqualTo(key);
+  }
+
+  @Test
+  public void parseInvalid() {
+    assertThrows(IllegalArgumentException.class, () -> ChangeSortKey.parse(""));
+    assertThrows(IllegalArgumentException.class, () -> ChangeSortKey.parse("1.2"));
+    assertThrows(IllegalArgumentException.class, () -> ChangeSortKey.parse("1.2.3.4"));
+    assertThrows(IllegalArgumentException.class, () -> ChangeSortKey.parse("1.x.3"));
+  }
+
+  @Test
+  public void sortedLikeIndex() {
+    ChangeSortKey newest = ChangeSortKey.create(3, 0, 1);
+    ChangeSortKey mergedLater = ChangeSortKey.create(2, 2, 1);
+    ChangeSortKey higherNumber = ChangeSortKey.create(2, 1, 2);
+    ChangeSortKey oldest = ChangeSortKey.create(2, 1, 1);
+
+    ImmutableList<ChangeSortKey> keys = ImmutableList.of(oldest, higherNumber, newest, mergedLater);
+    assertThat(Ordering.natural().sortedCopy(keys))
+        .containsExactly(newest, mergedLater, higherNumber, oldest)
+        .inOrder();
+  }
+}
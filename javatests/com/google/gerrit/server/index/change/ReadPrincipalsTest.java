@@ -0,0 +1,170 @@
+// Copyright (C) 2023 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.index.change;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.gerrit.server.group.SystemGroupBackend.CHANGE_OWNER;
+import static com.google.gerrit.server.group.SystemGroupBackend.PROJECT_OWNERS;
+import static com.google.gerrit.server.group.SystemGroupBackend.REGISTERED_USERS;
+
+import com.google.common.base.Strings;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.gerrit.entities.AccessSection;
+import com.google.gerrit.entities.Account;
+import com.google.gerrit.entities.AccountGroup;
+import com.google.gerrit.entities.BranchNameKey;
+import com.google.gerrit.entities.Change;
+import com.google.gerrit.entities.GroupReference;
+import com.google.gerrit.entities.Permission;
+import com.google.gerrit.entities.PermissionRule;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.server.project.RefPatternMatcher;
+import com.google.gerrit.server.project.SectionMatcher;
+import com.google.gerrit.testing.TestChanges;
+import java.util.List;
+import org.junit.Test;
+
+public class ReadPrincipalsTest {
+  private static final Project.NameKey PROJECT = Project.nameKey("project");
+  private static final Account.Id OWNER = Account.id(1);
+  private static final Account.Id REVIEWER = Account.id(2);
+  private static final AccountGroup.UUID DEVS = internalGroup('d');
+  private static final AccountGroup.UUID RELEASE = internalGroup('e');
+  private static final AccountGroup.UUID BLOCKED = internalGroup('b');
+  private static final AccountGroup.UUID OWNERS = internalGroup('a');
+  private static final AccountGroup.UUID EXTERNAL = AccountGroup.uuid("ldap:cn=devs");
+
+  @Test
+  public void groupsWithReadOnDestinationBranch() {
+    List<SectionMatcher> sections =
+        ImmutableList.of(
+            section("refs/heads/*", Permission.READ, rule(DEVS), rule(BLOCKED).setBlock()),
+            section("refs/heads/release/*", Permission.READ, rule(RELEASE)),
+            section("refs/heads/*", Permission.PUSH, rule(RELEASE)));
+
+    assertThat(forChange(sections, change("master"))).containsExactly(group(DEVS));
+    assertThat(forChange(sections, change("release/1")))
+        .containsExactly(group(DEVS), group(RELEASE));
+  }
+
+  @Test
+  public void privateChange() {
+    List<SectionMatcher> sections =
+        ImmutableList.of(
+            section("refs/heads/*", Permission.READ, rule(DEVS)),
+            section("refs/heads/*", Permission.VIEW_PRIVATE_CHANGES, rule(RELEASE)));
+    Change change = change("master");
+    change.setPrivate(true);
+
+    assertThat(
+            ReadPrincipals.forChange(
+                sections, ImmutableSet.of(), change, ImmutableSet.of(REVIEWER)))
+        .containsExactly("a/1", "a/2", group(RELEASE));
+  }
+
+  @Test
+  public void userDependentSectionMatchesAnyUser() {
+    List<SectionMatcher> sections =
+        ImmutableList.of(
+            section("refs/heads/*", Permission.READ, rule(DEVS)),
+            section("refs/heads/users/${username}/*", Permission.READ, rule(RELEASE)));
+
+    assertThat(forChange(sections, change("master"))).containsExactly(group(DEVS));
+    assertThat(forChange(sections, change("users/jdoe/a"))).containsExactly(ReadPrincipals.ANY);
+  }
+
+  @Test
+  public void tagMatchesAnyUser() {
+    List<SectionMatcher> sections =
+        ImmutableList.of(section("refs/*", Permission.READ, rule(DEVS)));
+
+    assertThat(forChange(sections, change("refs/tags/v1"))).containsExactly(ReadPrincipals.ANY);
+  }
+
+  @Test
+  public void projectOwnersAreResolvedToOwnerGroups() {
+    List<SectionMatcher> sections =
+        ImmutableList.of(section("refs/heads/*", Permission.READ, rule(PROJECT_OWNERS)));
+
+    assertThat(
+            ReadPrincipals.forChange(
+                sections, ImmutableSet.of(OWNERS, DEVS), change("master"), ImmutableSet.of()))
+        .containsExactly(group(OWNERS), group(DEVS));
+    assertThat(
+            ReadPrincipals.forChange(
+                sections, ImmutableSet.of(OWNERS, EXTERNAL), change("master"), ImmutableSet.of()))
+        .containsExactly(ReadPrincipals.ANY);
+  }
+
+  @Test
+  public void changeOwnerIsResolvedToOwnerAccount() {
+    List<SectionMatcher> sections =
+        ImmutableList.of(section("refs/heads/*", Permission.READ, rule(CHANGE_OWNER)));
+
+    assertThat(forChange(sections, change("master"))).containsExactly("a/1");
+  }
+
+  @Test
+  public void externalGroupMatchesAnyUser() {
+    List<SectionMatcher> sections =
+        ImmutableList.of(
+            section("refs/heads/*", Permission.READ, rule(DEVS), rule(EXTERNAL)),
+            section("refs/heads/*", Permission.READ, rule(REGISTERED_USERS)));
+
+    assertThat(forChange(sections, change("master"))).containsExactly(ReadPrincipals.ANY);
+  }
+
+  @Test
+  public void systemGroupsAreIndexed() {
+    List<SectionMatcher> sections =
+        ImmutableList.of(section("refs/heads/*", Permission.READ, rule(REGISTERED_USERS)));
+
+    assertThat(forChange(sections, change("master"))).containsExactly(group(REGISTERED_USERS));
+  }
+
+  private static ImmutableSet<String> forChange(List<SectionMatcher> sections, Change change) {
+    return ReadPrincipals.forChange(sections, ImmutableSet.of(), change, ImmutableSet.of());
+  }
+
+  private static AccountGroup.UUID internalGroup(char c) {
+    return AccountGroup.uuid(Strings.repeat(String.valueOf(c), 40));
+  }
+
+  private static String group(AccountGroup.UUID uuid) {
+    return "g/" + uuid.get();
+  }
+
+  private static Change change(String branch) {
+    Change change = TestChanges.newChange(PROJECT, OWNER);
+    change.setDest(BranchNameKey.create(PROJECT, branch));
+    return change;
+  }
+
+  private static PermissionRule.Builder rule(AccountGroup.UUID group) {
+    return PermissionRule.builder(GroupReference.create(group, group.get()));
+  }
+
+  private static SectionMatcher section(
+      String ref, String permission, PermissionRule.Builder... rules) {
+    Permission.Builder p = Permission.builder(permission);
+    for (PermissionRule.Builder rule : rules) {
+      p.add(rule);
+    }
+    AccessSection section = AccessSection.builder(ref).addPermission(p).build();
+    return new SectionMatcher(PROJECT, section, RefPatternMatcher.getMatcher(section));
+  }
+}
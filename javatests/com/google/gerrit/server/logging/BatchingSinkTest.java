@@ -0,0 +1,154 @@
+// Copyright (C) 2023 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.logging;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import com.google.common.collect.ImmutableList;
+import com.google.gerrit.server.logging.BatchingSink.OverflowPolicy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import org.junit.Test;
+
+public class BatchingSinkTest {
+  private final List<List<Integer>> batches = Collections.synchronizedList(new ArrayList<>());
+
+  @Test
+  public void recordsAreDeliveredInOrder() {
+    BatchingSink<Integer> sink =
+        new BatchingSink<>("test", 10, 3, OverflowPolicy.DROP, batches::add);
+    for (int i = 0; i < 7; i++) {
+      assertThat(sink.add(i)).isTrue();
+    }
+    sink.start();
+    sink.stop();
+
+    assertThat(delivered()).containsExactly(0, 1, 2, 3, 4, 5, 6).inOrder();
+    assertThat(batches.stream().allMatch(b -> b.size() <= 3)).isTrue();
+    assertThat(sink.size()).isEqualTo(0);
+  }
+
+  @Test
+  public void recordsAreDroppedIfSinkIsFull() {
+    BatchingSink<Integer> sink =
+        new BatchingSink<>("test", 2, 10, OverflowPolicy.DROP, batches::add);
+    assertThat(sink.add(1)).isTrue();
+    assertThat(sink.add(2)).isTrue();
+    assertThat(sink.add(3)).isFalse();
+    assertThat(sink.size()).isEqualTo(2);
+    assertThat(sink.dropped()).isEqualTo(1);
+
+    sink.start();
+    sink.stop();
+    assertThat(delivered()).containsExactly(1, 2).inOrder();
+  }
+
+  @Test
+  public void producerIsBlockedIfSinkIsFull() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    BatchingSink<Integer> sink =
+        new BatchingSink<>(
+            "test",
+            1,
+            1,
+            OverflowPolicy.BLOCK,
+            batch -> {
+              try {
+                release.await(10, SECONDS);
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+              batches.add(batch);
+            });
+    sink.start();
+    for (int i = 0; i < 3; i++) {
+      if (i == 2) {
+        release.countDown();
+      }
+      assertThat(sink.add(i)).isTrue();
+    }
+    sink.stop();
+
+    assertThat(delivered()).containsExactly(0, 1, 2).inOrder();
+    assertThat(sink.dropped()).isEqualTo(0);
+  }
+
+  @Test
+  public void recordsAreDeliveredSynchronouslyAfterStop() {
+    BatchingSink<Integer> sink =
+        new BatchingSink<>("test", 1, 1, OverflowPolicy.DROP, batches::add);
+    sink.start();
+    sink.stop();
+
+    assertThat(sink.add(1)).isTrue();
+    assertThat(batches).containsExactly(ImmutableList.of(1));
+  }
+
+  @Test
+  public void recordsAddedWhileStoppingAreDelivered() throws Exception {
+    BatchingSink<Integer> sink =
+        new BatchingSink<>("test", 100_000, 100, OverflowPolicy.DROP, batches::add);
+    sink.start();
+    CountDownLatch producing = new CountDownLatch(1);
+    Thread producer =
+        new Thread(
+            () -> {
+              for (int i = 0; i < 50_000; i++) {
+                sink.add(i);
+                if (i == 1000) {
+                  producing.countDown();
+                }
+              }
+            });
+    producer.start();
+    producing.await(10, SECONDS);
+    sink.stop();
+    producer.join();
+
+    assertThat(delivered()).hasSize(50_000);
+    assertThat(sink.size()).isEqualTo(0);
+  }
+
+  @Test
+  public void failingConsumerDoesNotStopDelivery() {
+    BatchingSink<Integer> sink =
+        new BatchingSink<>(
+            "test",
+            10,
+            1,
+            OverflowPolicy.DROP,
+            batch -> {
+              if (batch.contains(1)) {
+                throw new IllegalStateException("failed");
+              }
+              batches.add(batch);
+            });
+    sink.add(1);
+    sink.add(2);
+    sink.start();
+    sink.stop();
+
+    assertThat(delivered()).containsExactly(2);
+  }
+
+  private List<Integer> delivered() {
+    List<Integer> records = new ArrayList<>();
+    batches.forEach(records::addAll);
+    return records;
+  }
+}
@@ -0,0 +1,129 @@
+// Copyright (C) 2023 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.notedb;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.gerrit.entities.Account;
+import com.google.gerrit.entities.Change;
+import com.google.gerrit.entities.RefNames;
+import com.google.gerrit.server.notedb.AccountChangeRefIndex.Entries;
+import com.google.gerrit.server.notedb.AccountChangeRefIndex.Kind;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
+import org.eclipse.jgit.junit.TestRepository;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AccountChangeRefIndexTest {
+  private static final Account.Id ACCOUNT_1 = Account.id(1000001);
+  private static final Account.Id ACCOUNT_2 = Account.id(1000002);
+
+  private InMemoryRepository repo;
+  private TestRepository<InMemoryRepository> tr;
+
+  @Before
+  public void setUp() throws Exception {
+    repo = new InMemoryRepository(new DfsRepositoryDescription("All-Users"));
+    tr = new TestRepository<>(repo);
+  }
+
+  @Test
+  public void buildIndexesRefsByAccount() throws Exception {
+    star(Change.id(3), ACCOUNT_1);
+    star(Change.id(1), ACCOUNT_1);
+    star(Change.id(2), ACCOUNT_2);
+    draft(Change.id(2), ACCOUNT_1);
+
+    Entries entries = Entries.build(repo);
+    assertThat(entries.get(Kind.STAR, ACCOUNT_1)).asList().containsExactly(1, 3).inOrder();
+    assertThat(entries.get(Kind.STAR, ACCOUNT_2)).asList().containsExactly(2);
+    assertThat(entries.get(Kind.DRAFT, ACCOUNT_1)).asList().containsExactly(2);
+    assertThat(entries.get(Kind.DRAFT, ACCOUNT_2)).isEmpty();
+  }
+
+  @Test
+  public void updatesAddAndRemoveChanges() throws Exception {
+    Entries entries = Entries.build(repo);
+    entries.update(RefNames.refsStarredChanges(Change.id(5), ACCOUNT_1), true);
+    entries.update(RefNames.refsStarredChanges(Change.id(2), ACCOUNT_1), true);
+    entries.update(RefNames.refsStarredChanges(Change.id(9), ACCOUNT_1), true);
+    entries.update(RefNames.refsStarredChanges(Change.id(5), ACCOUNT_1), true);
+    assertThat(entries.get(Kind.STAR, ACCOUNT_1)).asList().containsExactly(2, 5, 9).inOrder();
+
+    entries.update(RefNames.refsStarredChanges(Change.id(5), ACCOUNT_1), false);
+    entries.update(RefNames.refsStarredChanges(Change.id(7), ACCOUNT_1), false);
+    assertThat(entries.get(Kind.STAR, ACCOUNT_1)).asList().containsExactly(2, 9).inOrder();
+
+    entries.update(RefNames.refsStarredChanges(Change.id(2), ACCOUNT_1), false);
+    entries.update(RefNames.refsStarredChanges(Change.id(9), ACCOUNT_1), false);
+    assertThat(entries.get(Kind.STAR, ACCOUNT_1)).isEmpty();
+  }
+
+  @Test
+  public void otherRefsAreIgnored() throws Exception {
+    Entries entries = Entries.build(repo);
+    entries.update(RefNames.refsUsers(ACCOUNT_1), true);
+    entries.update(RefNames.REFS_STARRED_CHANGES + "invalid", true);
+    assertThat(entries.get(Kind.STAR, ACCOUNT_1)).isEmpty();
+    assertThat(entries.get(Kind.DRAFT, ACCOUNT_1)).isEmpty();
+  }
+
+  @Test
+  public void writtenEntriesCanBeRead() throws Exception {
+    star(Change.id(1), ACCOUNT_1);
+    star(Change.id(4), ACCOUNT_1);
+    draft(Change.id(4), ACCOUNT_2);
+    Entries entries = Entries.build(repo);
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      entries.write(out);
+    }
+    Entries read;
+    try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+      read = Entries.read(in);
+    }
+
+    assertThat(read).isNotNull();
+    assertThat(read.get(Kind.STAR, ACCOUNT_1)).asList().containsExactly(1, 4).inOrder();
+    assertThat(read.get(Kind.STAR, ACCOUNT_2)).isEmpty();
+    assertThat(read.get(Kind.DRAFT, ACCOUNT_2)).asList().containsExactly(4);
+  }
+
+  @Test
+  public void unknownFormatIsNotRead() throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      out.writeInt(0);
+      out.writeInt(0);
+    }
+    try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+      assertThat(Entries.read(in)).isNull();
+    }
+  }
+
+  private void star(Change.Id changeId, Account.Id accountId) throws Exception {
+    tr.update(RefNames.refsStarredChanges(changeId, accountId), tr.blob("star"));
+  }
+
+  private void draft(Change.Id changeId, Account.Id accountId) throws Exception {
+    tr.update(RefNames.refsDraftComments(changeId, accountId), tr.commit().create());
+  }
+}
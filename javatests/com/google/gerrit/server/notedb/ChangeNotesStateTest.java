@@ -24,6 +24,7 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableTable;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Maps;
 import com.google.gerrit.entities.Account;
 import com.google.gerrit.entities.Address;
 import com.google.gerrit.entities.AttentionSetUpdate;
@@ -1177,6 +1178,38 @@ public class ChangeNotesStateTest {
             .build());
   }
 
+  @Test
+  public void deserializedStatesShareRepeatedValues() throws Exception {
+    ChangeNotesState state =
+        newBuilder()
+            .serverId(DEFAULT_SERVER_ID)
+            .hashtags(ImmutableSet.of("tag1"))
+            .approvals(
+                ImmutableList.of(
+                    Maps.immutableEntry(
+                        PatchSet.id(ID, 1),
+                        PatchSetApproval.builder()
+                            .key(
+                                PatchSetApproval.key(
+                                    PatchSet.id(ID, 1),
+                                    Account.id(2001),
+                                    LabelId.create(LabelId.CODE_REVIEW)))
+                            .value(1)
+                            .granted(Instant.ofEpochMilli(1212L))
+                            .build())))
+            .build();
+    byte[] serialized = Serializer.INSTANCE.serialize(state);
+
+    ChangeNotesState first = Serializer.INSTANCE.deserialize(serialized);
+    ChangeNotesState second = Serializer.INSTANCE.deserialize(serialized);
+    assertThat(second.columns().branch()).isSameInstanceAs(first.columns().branch());
+    assertThat(second.serverId()).isSameInstanceAs(first.serverId());
+    assertThat(Iterables.getOnlyElement(second.hashtags()))
+        .isSameInstanceAs(Iterables.getOnlyElement(first.hashtags()));
+    assertThat(second.approvals().get(0).getValue().labelId())
+        .isSameInstanceAs(first.approvals().get(0).getValue().labelId());
+  }
+
   private static ChangeNotesStateProto toProto(ChangeNotesState state) throws Exception {
     return ChangeNotesStateProto.parseFrom(Serializer.INSTANCE.serialize(state));
   }
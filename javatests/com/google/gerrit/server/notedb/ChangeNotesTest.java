@@ -34,6 +34,7 @@ import static org.mockito.Mockito.mock;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.collect.ImmutableTable;
@@ -75,6 +76,8 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.TreeMap;
 import org.eclipse.jgit.errors.ConfigInvalidException;
+import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
@@ -111,6 +114,44 @@ public class ChangeNotesTest extends AbstractChangeNotesTest {
     assertThat(notes.getChangeMessages().get(0).getTag()).isEqualTo(tag);
   }
 
+  @Test
+  public void scanLoadsChangesThroughOpenRepository() throws Exception {
+    Change c1 = newChange();
+    Change c2 = newChange();
+    ChangeUpdate update = newUpdate(c2, changeOwner);
+    update.setTopic("scanned", topicValidator);
+    update.commit();
+    ImmutableMap<Change.Id, ObjectId> metaIdByChange = ChangeNotes.Factory.scanChangeIds(repo);
+    assertThat(metaIdByChange.keySet()).containsExactly(c1.getId(), c2.getId());
+
+    List<ChangeNotes.Factory.ChangeNotesResult> results =
+        changeNotesFactory
+            .scan(repo, metaIdByChange, project, id -> id.equals(c2.getId()))
+            .collect(toImmutableList());
+    assertThat(results).hasSize(1);
+    ChangeNotes.Factory.ChangeNotesResult result = results.get(0);
+    assertThat(result.error()).isEmpty();
+    assertThat(result.id()).isEqualTo(c2.getId());
+    assertThat(result.notes().getMetaId()).isEqualTo(metaIdByChange.get(c2.getId()));
+    assertThat(result.notes().getChange().getTopic()).isEqualTo("scanned");
+  }
+
+  @Test
+  public void scanReadsFromGivenRepository() throws Exception {
+    Change c = newChange();
+    ImmutableMap<Change.Id, ObjectId> metaIdByChange = ChangeNotes.Factory.scanChangeIds(repo);
+
+    // The meta commit is not in another repository, even if it is passed for the same project.
+    InMemoryRepository otherRepo = new InMemoryRepository(new DfsRepositoryDescription("other"));
+    List<ChangeNotes.Factory.ChangeNotesResult> results =
+        changeNotesFactory
+            .scan(otherRepo, metaIdByChange, project, null)
+            .collect(toImmutableList());
+    assertThat(results).hasSize(1);
+    assertThat(results.get(0).id()).isEqualTo(c.getId());
+    assertThat(results.get(0).error()).isPresent();
+  }
+
   @Test
   public void patchSetDescription() throws Exception {
     String description = "descriptive";
@@ -0,0 +1,120 @@
+// Copyright (C) 2023 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.patch.gitfilediff;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.extensions.client.DiffPreferencesInfo.Whitespace;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.google.gerrit.server.patch.filediff.Edit;
+import com.google.gerrit.server.patch.gitfilediff.GitFileDiffCacheImpl.DiffAlgorithm;
+import com.google.gerrit.testing.InMemoryRepositoryManager;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
+import org.eclipse.jgit.junit.TestRepository;
+import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.revwalk.RevBlob;
+import org.eclipse.jgit.revwalk.RevTree;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GitFileDiffCacheImplTest {
+  private static final Project.NameKey PROJECT = Project.nameKey("project");
+
+  private TestRepository<InMemoryRepository> tr;
+  private Cache<GitFileEditsCacheKey, GitFileEdits> editsCache;
+  private GitFileDiffCacheImpl.Loader loader;
+  private RevBlob oldBlob;
+  private RevBlob newBlob;
+
+  @Before
+  public void setUp() throws Exception {
+    InMemoryRepositoryManager repoManager = new InMemoryRepositoryManager();
+    tr = new TestRepository<>(repoManager.createRepository(PROJECT));
+    editsCache = CacheBuilder.newBuilder().recordStats().build();
+    loader =
+        new GitFileDiffCacheImpl.Loader(
+            new Config(),
+            repoManager,
+            editsCache,
+            MoreExecutors.newDirectExecutorService(),
+            new GitFileDiffCacheImpl.Metrics(new DisabledMetricMaker()));
+    oldBlob = tr.blob("a\nb\nc\n");
+    newBlob = tr.blob("a\nB\nc\n");
+  }
+
+  @Test
+  public void editsAreReusedForOtherTreesWithSameBlobs() throws Exception {
+    GitFileDiff first =
+        loader.load(
+            key(tr.tree(tr.file("f.txt", oldBlob)), tr.tree(tr.file("f.txt", newBlob)), "f.txt"));
+    assertThat(editsCache.stats().hitCount()).isEqualTo(0);
+    assertThat(editsCache.size()).isEqualTo(1);
+
+    RevTree oldTree = tr.tree(tr.file("f.txt", oldBlob), tr.file("g.txt", tr.blob("g")));
+    RevTree newTree = tr.tree(tr.file("f.txt", newBlob), tr.file("g.txt", tr.blob("h")));
+    GitFileDiff second = loader.load(key(oldTree, newTree, "f.txt"));
+
+    assertThat(editsCache.stats().hitCount()).isEqualTo(1);
+    assertThat(second).isEqualTo(first);
+  }
+
+  @Test
+  public void fileHeaderIsComputedForReusedEdits() throws Exception {
+    GitFileDiff first =
+        loader.load(
+            key(tr.tree(tr.file("f.txt", oldBlob)), tr.tree(tr.file("f.txt", newBlob)), "f.txt"));
+    GitFileDiff second =
+        loader.load(
+            key(tr.tree(tr.file("g.txt", oldBlob)), tr.tree(tr.file("g.txt", newBlob)), "g.txt"));
+
+    assertThat(editsCache.stats().hitCount()).isEqualTo(1);
+    assertThat(second.edits()).isEqualTo(first.edits());
+    assertThat(second.newPath()).hasValue("g.txt");
+    assertThat(second.fileHeader()).contains("a/g.txt b/g.txt");
+  }
+
+  @Test
+  public void cachedEditsAreNotRecomputed() throws Exception {
+    ImmutableList<Edit> edits = ImmutableList.of(Edit.create(0, 1, 0, 1));
+    editsCache.put(
+        GitFileEditsCacheKey.create(
+            oldBlob, newBlob, DiffAlgorithm.HISTOGRAM_WITH_FALLBACK_MYERS, Whitespace.IGNORE_NONE),
+        GitFileEdits.create(edits));
+
+    GitFileDiff gitFileDiff =
+        loader.load(
+            key(tr.tree(tr.file("f.txt", oldBlob)), tr.tree(tr.file("f.txt", newBlob)), "f.txt"));
+
+    assertThat(gitFileDiff.edits()).isEqualTo(edits);
+  }
+
+  private static GitFileDiffCacheKey key(RevTree oldTree, RevTree newTree, String path) {
+    return GitFileDiffCacheKey.builder()
+        .project(PROJECT)
+        .oldTree(oldTree)
+        .newTree(newTree)
+        .newFilePath(path)
+        .disableRenameDetection()
+        .diffAlgorithm(DiffAlgorithm.HISTOGRAM_WITH_FALLBACK_MYERS)
+        .whitespace(Whitespace.IGNORE_NONE)
+        .useTimeout(false)
+        .build();
+  }
+}
@@ -0,0 +1,138 @@
+// Copyright (C) 2023 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.plugins;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth8.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.MultimapBuilder;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.gerrit.server.plugins.PluginContentScanner.ExtensionMetaData;
+import java.util.List;
+import java.util.Optional;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PluginScanCacheTest {
+  private static final String EXPORT = "Lcom/google/gerrit/extensions/annotations/Export;";
+  private static final String LISTEN = "Lcom/google/gerrit/extensions/annotations/Listen;";
+  private static final ImmutableSet<String> DESCRIPTORS = ImmutableSet.of(EXPORT, LISTEN);
+  private static final HashCode JAR = Hashing.sha256().hashString("jar", UTF_8);
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private PluginScanCache cache;
+
+  @Before
+  public void setUp() throws Exception {
+    cache = new PluginScanCache(temporaryFolder.getRoot().toPath().resolve("cache"));
+  }
+
+  @Test
+  public void missingEntry() {
+    assertThat(cache.get(JAR, DESCRIPTORS)).isEmpty();
+  }
+
+  @Test
+  public void storedEntryIsReturned() {
+    ListMultimap<String, ExtensionMetaData> found =
+        MultimapBuilder.hashKeys().arrayListValues().build();
+    found.put(EXPORT, new ExtensionMetaData("com.example.Foo", "foo"));
+    found.put(EXPORT, new ExtensionMetaData("com.example.Bar", "bar baz"));
+    found.put(LISTEN, new ExtensionMetaData("com.example.Listener", null));
+    cache.put(JAR, DESCRIPTORS, found);
+
+    Optional<ListMultimap<String, ExtensionMetaData>> cached = cache.get(JAR, DESCRIPTORS);
+    assertThat(cached).isPresent();
+    List<ExtensionMetaData> exports = cached.get().get(EXPORT);
+    assertThat(exports).hasSize(2);
+    assertThat(exports.get(0).className).isEqualTo("com.example.Foo");
+    assertThat(exports.get(0).annotationValue).isEqualTo("foo");
+    assertThat(exports.get(1).className).isEqualTo("com.example.Bar");
+    assertThat(exports.get(1).annotationValue).isEqualTo("bar baz");
+    List<ExtensionMetaData> listeners = cached.get().get(LISTEN);
+    assertThat(listeners).hasSize(1);
+    assertThat(listeners.get(0).className).isEqualTo("com.example.Listener");
+    assertThat(listeners.get(0).annotationValue).isNull();
+  }
+
+  @Test
+  public void emptyResultIsCached() {
+    cache.put(JAR, DESCRIPTORS, MultimapBuilder.hashKeys().arrayListValues().build());
+
+    Optional<ListMultimap<String, ExtensionMetaData>> cached = cache.get(JAR, DESCRIPTORS);
+    assertThat(cached).isPresent();
+    assertThat(cached.get().isEmpty()).isTrue();
+  }
+
+  @Test
+  public void entriesAreKeyedByJarAndAnnotations() {
+    ListMultimap<String, ExtensionMetaData> found =
+        MultimapBuilder.hashKeys().arrayListValues().build();
+    found.put(EXPORT, new ExtensionMetaData("com.example.Foo", "foo"));
+    cache.put(JAR, DESCRIPTORS, found);
+
+    assertThat(cache.get(Hashing.sha256().hashString("other", UTF_8), DESCRIPTORS)).isEmpty();
+    assertThat(cache.get(JAR, ImmutableSet.of(EXPORT))).isEmpty();
+    assertThat(cache.get(JAR, ImmutableSet.of(LISTEN, EXPORT))).isPresent();
+  }
+
+  @Test
+  public void pruneKeepsEntriesOfLoadedPlugins() {
+    cache.use("plugin", JAR);
+    cache.put(JAR, DESCRIPTORS, MultimapBuilder.hashKeys().arrayListValues().build());
+
+    cache.prune(ImmutableSet.of("plugin"));
+
+    assertThat(cache.get(JAR, DESCRIPTORS)).isPresent();
+  }
+
+  @Test
+  public void pruneDeletesEntriesOfRemovedPlugins() {
+    cache.use("plugin", JAR);
+    cache.put(JAR, DESCRIPTORS, MultimapBuilder.hashKeys().arrayListValues().build());
+
+    cache.prune(ImmutableSet.of());
+
+    assertThat(cache.get(JAR, DESCRIPTORS)).isEmpty();
+  }
+
+  @Test
+  public void pruneDeletesEntriesOfReplacedJars() {
+    HashCode newJar = Hashing.sha256().hashString("new jar", UTF_8);
+    cache.use("plugin", JAR);
+    cache.put(JAR, DESCRIPTORS, MultimapBuilder.hashKeys().arrayListValues().build());
+    cache.use("plugin", newJar);
+    cache.put(newJar, DESCRIPTORS, MultimapBuilder.hashKeys().arrayListValues().build());
+
+    cache.prune(ImmutableSet.of("plugin"));
+
+    assertThat(cache.get(JAR, DESCRIPTORS)).isEmpty();
+    assertThat(cache.get(newJar, DESCRIPTORS)).isPresent();
+  }
+
+  @Test
+  public void pruneWithoutDirectory() {
+    cache.prune(ImmutableSet.of("plugin"));
+
+    assertThat(cache.get(JAR, DESCRIPTORS)).isEmpty();
+  }
+}
@@ -102,6 +102,7 @@ import com.google.gerrit.index.Schema;
 import com.google.gerrit.index.query.IndexPredicate;
 import com.google.gerrit.index.query.Predicate;
 import com.google.gerrit.index.query.QueryParseException;
+import com.google.gerrit.index.query.QueryResult;
 import com.google.gerrit.lifecycle.LifecycleManager;
 import com.google.gerrit.server.AnonymousUser;
 import com.google.gerrit.server.CurrentUser;
@@ -130,6 +131,7 @@ import com.google.gerrit.server.group.testing.TestGroupBackend;
 import com.google.gerrit.server.index.change.ChangeField;
 import com.google.gerrit.server.index.change.ChangeIndexCollection;
 import com.google.gerrit.server.index.change.ChangeIndexer;
+import com.google.gerrit.server.index.change.ChangeSortKey;
 import com.google.gerrit.server.index.change.IndexedChangeQuery;
 import com.google.gerrit.server.notedb.ChangeNotes;
 import com.google.gerrit.server.notedb.ChangeUpdate;
@@ -1851,6 +1853,51 @@ public abstract class AbstractQueryChangesTest extends GerritServerTests {
     assertQuery("status:new", change1, change2);
   }
 
+  @Test
+  public void streamChangesWithSameUpdatedTimestamp() throws Exception {
+    resetTimeWithClockStep(0, MILLISECONDS);
+    repo = createAndOpenProject("repo");
+    List<Change> changes = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      changes.add(insert("repo", newChange(repo)));
+    }
+    for (Change change : changes) {
+      assertThat(lastUpdatedMs(change)).isEqualTo(lastUpdatedMs(changes.get(0)));
+    }
+    Predicate<ChangeData> query = queryBuilder.parse("status:new");
+
+    // Changes with the same last updated timestamp only differ in their number, no change may be
+    // skipped or repeated when a batch ends in the middle of them.
+    List<Change.Id> streamed = new ArrayList<>();
+    List<ChangeSortKey> cursors = new ArrayList<>();
+    int count =
+        queryProcessorProvider
+            .get()
+            .stream(
+                query,
+                null,
+                2,
+                (batch, cursor) -> {
+                  batch.forEach(cd -> streamed.add(cd.getId()));
+                  cursors.add(cursor);
+                });
+    assertThat(count).isEqualTo(5);
+    assertThat(streamed)
+        .containsExactlyElementsIn(ids(Lists.reverse(changes).toArray(new Change[0])))
+        .inOrder();
+    assertThat(cursors).hasSize(3);
+
+    List<Change.Id> resumed = new ArrayList<>();
+    queryProcessorProvider
+        .get()
+        .stream(
+            query,
+            cursors.get(0),
+            2,
+            (batch, cursor) -> batch.forEach(cd -> resumed.add(cd.getId())));
+    assertThat(resumed).containsExactlyElementsIn(streamed.subList(2, 5)).inOrder();
+  }
+
   @Test
   public void filterOutMoreThanOnePageOfResults() throws Exception {
     repo = createAndOpenProject("repo");
@@ -4216,6 +4263,28 @@ public abstract class AbstractQueryChangesTest extends GerritServerTests {
     }
   }
 
+  @Test
+  public void queriesExecutedTogetherShareMatchedChanges() throws Exception {
+    repo = createAndOpenProject("repo");
+    Change change1 = insert("repo", newChange(repo));
+    Change change2 = insert("repo", newChange(repo));
+
+    List<QueryResult<ChangeData>> results =
+        queryProcessorProvider
+            .get()
+            .query(
+                ImmutableList.of(
+                    queryBuilder.parse("status:open"),
+                    queryBuilder.parse("change:" + change1.getId())));
+    assertThat(results).hasSize(2);
+    List<ChangeData> open = results.get(0).entities();
+    assertThat(open.stream().map(ChangeData::getId).collect(toList()))
+        .containsExactly(change2.getId(), change1.getId())
+        .inOrder();
+    assertThat(results.get(1).entities()).hasSize(1);
+    assertThat(results.get(1).entities().get(0)).isSameInstanceAs(open.get(1));
+  }
+
   @Test
   @GerritConfig(name = "change.mergeabilityComputationBehavior", value = "NEVER")
   public void mergeableFailsWhenNotIndexed() throws Exception {
@@ -0,0 +1,232 @@
+// Copyright (C) 2023 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.server.quota;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth8.assertThat;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
+import com.google.gerrit.entities.AccountGroup;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.google.gerrit.server.CurrentUser;
+import com.google.gerrit.server.account.GroupMembership;
+import com.google.gerrit.server.account.ListGroupMembership;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import org.eclipse.jgit.lib.Config;
+import org.junit.Test;
+
+public class TokenBucketQuotaEnforcerTest {
+  private static final String GROUP = "/restapi/changes:GET";
+  private static final AccountGroup.UUID CI = AccountGroup.uuid("ci-bots");
+
+  private final AtomicLong now = new AtomicLong();
+  private final Ticker ticker =
+      new Ticker() {
+        @Override
+        public long read() {
+          return now.get();
+        }
+      };
+  private final Config cfg = new Config();
+
+  @Test
+  public void disabledWithoutLimits() {
+    assertThat(TokenBucketQuotaEnforcer.isEnabled(cfg)).isFalse();
+    cfg.setString("quota", GROUP, "rate", "1/s");
+    assertThat(TokenBucketQuotaEnforcer.isEnabled(cfg)).isTrue();
+  }
+
+  @Test
+  public void unlimitedQuotaGroupIsNoOp() {
+    cfg.setString("quota", GROUP, "rate", "1/s");
+    TokenBucketQuotaEnforcer enforcer = newEnforcer();
+
+    assertThat(enforcer.requestTokens("/restapi/other:GET", ctx(), 1).status())
+        .isEqualTo(QuotaResponse.Status.NO_OP);
+  }
+
+  @Test
+  public void burstIsAllowedAndThenRefilledAtRate() {
+    cfg.setString("quota", GROUP, "rate", "2/s");
+    cfg.setInt("quota", GROUP, "burst", 4);
+    TokenBucketQuotaEnforcer enforcer = newEnforcer();
+
+    for (int i = 0; i < 4; i++) {
+      assertThat(enforcer.requestTokens(GROUP, ctx(), 1).status().isOk()).isTrue();
+    }
+    QuotaResponse rejected = enforcer.requestTokens(GROUP, ctx(), 1);
+    assertThat(rejected.status().isError()).isTrue();
+    assertThat(rejected.retryAfter()).hasValue(Duration.ofMillis(500));
+
+    now.addAndGet(SECONDS.toNanos(1));
+    assertThat(enforcer.availableTokens(GROUP, ctx()).availableTokens()).hasValue(2L);
+    assertThat(enforcer.requestTokens(GROUP, ctx(), 2).status().isOk()).isTrue();
+    assertThat(enforcer.requestTokens(GROUP, ctx(), 1).status().isError()).isTrue();
+  }
+
+  @Test
+  public void dryRunDoesNotTakeTokens() {
+    cfg.setString("quota", GROUP, "rate", "1/min");
+    TokenBucketQuotaEnforcer enforcer = newEnforcer();
+
+    assertThat(enforcer.dryRun(GROUP, ctx(), 1).status().isOk()).isTrue();
+    assertThat(enforcer.requestTokens(GROUP, ctx(), 1).status().isOk()).isTrue();
+    assertThat(enforcer.dryRun(GROUP, ctx(), 1).status().isError()).isTrue();
+  }
+
+  @Test
+  public void refillReturnsTokens() {
+    cfg.setString("quota", GROUP, "rate", "1/min");
+    TokenBucketQuotaEnforcer enforcer = newEnforcer();
+
+    assertThat(enforcer.requestTokens(GROUP, ctx(), 1).status().isOk()).isTrue();
+    enforcer.refill(GROUP, ctx(), 1);
+    assertThat(enforcer.requestTokens(GROUP, ctx(), 1).status().isOk()).isTrue();
+  }
+
+  @Test
+  public void requestLargerThanBurstIsRejectedWithoutRetry() {
+    cfg.setString("quota", GROUP, "rate", "5/s");
+    TokenBucketQuotaEnforcer enforcer = newEnforcer();
+
+    QuotaResponse rejected = enforcer.requestTokens(GROUP, ctx(), 6);
+    assertThat(rejected.status().isError()).isTrue();
+    assertThat(rejected.retryAfter()).isEmpty();
+  }
+
+  @Test
+  public void projectsHaveSeparateBuckets() {
+    cfg.setString("quota", GROUP, "rate", "1/min");
+    cfg.setString("quota", GROUP, "key", "project");
+    TokenBucketQuotaEnforcer enforcer = newEnforcer();
+
+    assertThat(enforcer.requestTokens(GROUP, ctx("foo"), 1).status().isOk()).isTrue();
+    assertThat(enforcer.requestTokens(GROUP, ctx("foo"), 1).status().isError()).isTrue();
+    assertThat(enforcer.requestTokens(GROUP, ctx("bar"), 1).status().isOk()).isTrue();
+    assertThat(enforcer.requestTokens(GROUP, ctx(), 1).status())
+        .isEqualTo(QuotaResponse.Status.NO_OP);
+  }
+
+  @Test
+  public void accountGroupLimitTakesPrecedence() {
+    cfg.setString("quota", "all", "quotaGroup", "/restapi/*");
+    cfg.setString("quota", "all", "rate", "1/min");
+    cfg.setString("quota", "ci", "quotaGroup", GROUP);
+    cfg.setString("quota", "ci", "accountGroup", CI.get());
+    cfg.setString("quota", "ci", "key", "account_group");
+    cfg.setString("quota", "ci", "rate", "2/min");
+    TokenBucketQuotaEnforcer enforcer = newEnforcer();
+
+    QuotaRequestContext ci = QuotaRequestContext.builder().user(new TestUser(CI)).build();
+    for (int i = 0; i < 2; i++) {
+      assertThat(enforcer.requestTokens(GROUP, ci, 1).status().isOk()).isTrue();
+    }
+    assertThat(enforcer.requestTokens(GROUP, ci, 1).message()).hasValue("Quota limit ci exceeded");
+
+    assertThat(enforcer.requestTokens(GROUP, ctx(), 1).status().isOk()).isTrue();
+    assertThat(enforcer.requestTokens(GROUP, ctx(), 1).message())
+        .hasValue("Quota limit all exceeded");
+  }
+
+  @Test
+  public void invalidLimitsAreIgnored() {
+    cfg.setString("quota", "noRate", "burst", "5");
+    cfg.setString("quota", "badRate", "rate", "5/fortnight");
+    cfg.setString("quota", "zero", "rate", "0/s");
+    cfg.setString("quota", "noGroup", "rate", "1/s");
+    cfg.setString("quota", "noGroup", "key", "account_group");
+    cfg.setString("quota", "valid", "rate", "1/s");
+
+    ImmutableList<String> names =
+        newEnforcer().limits().stream().map(l -> l.name).collect(ImmutableList.toImmutableList());
+    assertThat(names).containsExactly("valid");
+  }
+
+  @Test
+  public void concurrentRequestsNeverExceedBurst() throws Exception {
+    int burst = 10_000;
+    int threads = 8;
+    cfg.setString("quota", GROUP, "rate", burst + "/h");
+    TokenBucketQuotaEnforcer enforcer = newEnforcer();
+
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      CountDownLatch start = new CountDownLatch(1);
+      List<Future<Integer>> results = new ArrayList<>();
+      for (int t = 0; t < threads; t++) {
+        results.add(
+            executor.submit(
+                () -> {
+                  start.await();
+                  int accepted = 0;
+                  for (int i = 0; i < burst / 2; i++) {
+                    if (enforcer.requestTokens(GROUP, ctx(), 1).status().isOk()) {
+                      accepted++;
+                    }
+                  }
+                  return accepted;
+                }));
+      }
+      start.countDown();
+      int accepted = 0;
+      for (Future<Integer> result : results) {
+        accepted += result.get();
+      }
+      assertThat(accepted).isEqualTo(burst);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private TokenBucketQuotaEnforcer newEnforcer() {
+    return new TokenBucketQuotaEnforcer(cfg, ticker, new DisabledMetricMaker());
+  }
+
+  private static QuotaRequestContext ctx() {
+    return QuotaRequestContext.builder().build();
+  }
+
+  private static QuotaRequestContext ctx(String project) {
+    return QuotaRequestContext.builder().project(Project.nameKey(project)).build();
+  }
+
+  private static class TestUser extends CurrentUser {
+    private final GroupMembership groups;
+
+    TestUser(AccountGroup.UUID... groups) {
+      this.groups = new ListGroupMembership(ImmutableList.copyOf(groups));
+    }
+
+    @Override
+    public GroupMembership getEffectiveGroups() {
+      return groups;
+    }
+
+    @Override
+    public Object getCacheKey() {
+      return new Object();
+    }
+  }
+}
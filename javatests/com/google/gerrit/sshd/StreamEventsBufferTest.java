@@ -0,0 +1,186 @@
+// Copyright (C) 2023 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.sshd;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableList;
+import com.google.common.testing.GcFinalization;
+import com.google.gerrit.server.events.Event;
+import com.google.gerrit.server.events.EventGsonProvider;
+import com.google.gerrit.server.events.EventTypes;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StreamEventsBufferTest {
+  private static class TestEvent extends Event {
+    static final String TYPE = "test-event";
+
+    TestEvent() {
+      super(TYPE);
+    }
+  }
+
+  static {
+    EventTypes.register(TestEvent.TYPE, TestEvent.class);
+  }
+
+  private final List<Runnable> serializations = new ArrayList<>();
+  private StreamEventsBuffer buffer;
+
+  @Before
+  public void setUp() {
+    buffer = new StreamEventsBuffer(new EventGsonProvider().get(), 3, serializations::add, 1);
+  }
+
+  @Test
+  public void sameEventIsAddedOnce() {
+    Event event = new TestEvent();
+    long sequence = buffer.add(event).sequence();
+    buffer.onEvent(event);
+
+    assertThat(buffer.add(event).sequence()).isEqualTo(sequence);
+    assertThat(buffer.after(0)).hasSize(1);
+  }
+
+  @Test
+  public void oldEventsAreOverwritten() {
+    for (int i = 0; i < 5; i++) {
+      buffer.add(new TestEvent());
+    }
+
+    assertThat(buffer.oldestSequence()).isEqualTo(3);
+    assertThat(buffer.get(2)).isNull();
+    assertThat(buffer.get(3).sequence()).isEqualTo(3);
+    assertThat(buffer.get(5).sequence()).isEqualTo(5);
+    assertThat(buffer.get(6)).isNull();
+    assertThat(sequencesAfter(0)).containsExactly(3L, 4L, 5L).inOrder();
+    assertThat(sequencesAfter(4)).containsExactly(5L);
+  }
+
+  @Test
+  public void lineContainsSequence() {
+    buffer.add(new TestEvent());
+    byte[] line = buffer.add(new TestEvent()).line();
+
+    String json = new String(line, UTF_8);
+    assertThat(json).endsWith("\n");
+    JsonObject object = JsonParser.parseString(json).getAsJsonObject();
+    assertThat(object.get("type").getAsString()).isEqualTo("test-event");
+    assertThat(object.get(StreamEventsBuffer.SEQUENCE_PROPERTY).getAsLong()).isEqualTo(2);
+  }
+
+  @Test
+  public void eventIsSerializedOnExecutor() {
+    CountingEvent event = new CountingEvent();
+    StreamEventsBuffer.Entry entry = buffer.add(event);
+    buffer.add(event);
+
+    assertThat(entry.type()).isEqualTo(CountingEvent.TYPE);
+    assertThat(event.serialized).isEqualTo(0);
+    assertThat(serializations).hasSize(1);
+
+    serializations.get(0).run();
+    assertThat(event.serialized).isEqualTo(1);
+    assertThat(entry.line()).isNotNull();
+    assertThat(event.serialized).isEqualTo(1);
+  }
+
+  @Test
+  public void eventIsSerializedByFirstReader() {
+    CountingEvent event = new CountingEvent();
+    StreamEventsBuffer.Entry entry = buffer.add(event);
+
+    assertThat(entry.line()).isNotNull();
+    serializations.forEach(Runnable::run);
+    assertThat(event.serialized).isEqualTo(1);
+  }
+
+  @Test
+  public void eventsAreNotKeptAliveOnceSerialized() {
+    WeakReference<Event> event = addEvent();
+    serializations.forEach(Runnable::run);
+
+    GcFinalization.awaitClear(event);
+    assertThat(buffer.get(1).line()).isNotNull();
+  }
+
+  @Test
+  public void sequencesStartAtFirstSequence() {
+    buffer = new StreamEventsBuffer(new EventGsonProvider().get(), 3, serializations::add, 1000);
+
+    assertThat(buffer.add(new TestEvent()).sequence()).isEqualTo(1000);
+    assertThat(buffer.oldestSequence()).isEqualTo(1000);
+    assertThat(buffer.get(999)).isNull();
+  }
+
+  @Test
+  public void missedAfter() {
+    for (int i = 0; i < 5; i++) {
+      buffer.add(new TestEvent());
+    }
+
+    assertThat(buffer.missedAfter(0)).isTrue();
+    assertThat(buffer.missedAfter(1)).isTrue();
+    assertThat(buffer.missedAfter(2)).isFalse();
+    assertThat(buffer.missedAfter(4)).isFalse();
+    assertThat(buffer.missedAfter(5)).isFalse();
+    assertThat(buffer.missedAfter(6)).isTrue();
+  }
+
+  @Test
+  public void eventIsReadBackFromLine() {
+    Event event = buffer.event(buffer.add(new TestEvent()));
+
+    assertThat(event).isInstanceOf(TestEvent.class);
+    assertThat(event.getType()).isEqualTo(TestEvent.TYPE);
+  }
+
+  private static class CountingEvent extends Event {
+    static final String TYPE = "counting-event";
+
+    transient int serialized;
+
+    final Supplier<String> value =
+        () -> {
+          serialized++;
+          return "value";
+        };
+
+    CountingEvent() {
+      super(TYPE);
+    }
+  }
+
+  private WeakReference<Event> addEvent() {
+    Event event = new TestEvent();
+    buffer.add(event);
+    return new WeakReference<>(event);
+  }
+
+  private ImmutableList<Long> sequencesAfter(long sequence) {
+    return buffer.after(sequence).stream()
+        .map(StreamEventsBuffer.Entry::sequence)
+        .collect(toImmutableList());
+  }
+}
@@ -0,0 +1,177 @@
+// Copyright (C) 2023 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.gerrit.sshd.commands;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+import static com.google.gerrit.sshd.commands.StreamEventsWriter.WINDOW_RETRY_DELAY_MS;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.google.common.collect.ImmutableList;
+import com.google.gerrit.server.events.Event;
+import com.google.gerrit.server.events.EventGsonProvider;
+import com.google.gerrit.sshd.StreamEventsBuffer;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StreamEventsWriterTest {
+  private static final byte[] DROPPED = "dropped\n".getBytes(UTF_8);
+
+  private static class TestEvent extends Event {
+    TestEvent() {
+      super("test-event");
+    }
+  }
+
+  private final Runnable task = () -> {};
+  private StreamEventsBuffer buffer;
+  private ScheduledExecutorService pool;
+  private ByteArrayOutputStream out;
+  private long room;
+  private boolean closed;
+  private StreamEventsWriter writer;
+
+  @Before
+  public void setUp() {
+    buffer = new StreamEventsBuffer(new EventGsonProvider().get(), 3, directExecutor(), 1);
+    pool = mock(ScheduledExecutorService.class);
+    doReturn(mock(ScheduledFuture.class)).when(pool).submit(any(Runnable.class));
+    doReturn(mock(ScheduledFuture.class))
+        .when(pool)
+        .schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+    out = new ByteArrayOutputStream();
+    room = Long.MAX_VALUE;
+    writer =
+        new StreamEventsWriter(
+            buffer, pool, out, size -> size <= room, DROPPED, task, () -> closed = true);
+  }
+
+  @Test
+  public void writesQueuedEventsInOrder() {
+    StreamEventsBuffer.Entry first = buffer.add(new TestEvent());
+    StreamEventsBuffer.Entry second = buffer.add(new TestEvent());
+
+    writer.offer(first.sequence());
+    writer.offer(second.sequence());
+    verify(pool).submit(task);
+
+    writer.writeEvents();
+    assertThat(output()).isEqualTo(lines(first, second));
+    assertThat(closed).isFalse();
+  }
+
+  @Test
+  public void reschedulesIfClientHasNoRoom() {
+    StreamEventsBuffer.Entry entry = buffer.add(new TestEvent());
+    room = 0;
+
+    writer.offer(entry.sequence());
+    writer.writeEvents();
+    assertThat(output()).isEmpty();
+    verify(pool).schedule(task, WINDOW_RETRY_DELAY_MS, MILLISECONDS);
+
+    room = Long.MAX_VALUE;
+    writer.writeEvents();
+    assertThat(output()).isEqualTo(lines(entry));
+  }
+
+  @Test
+  public void writesWhatFitsBeforeRescheduling() {
+    StreamEventsBuffer.Entry first = buffer.add(new TestEvent());
+    StreamEventsBuffer.Entry second = buffer.add(new TestEvent());
+    room = first.line().length;
+
+    writer.offer(first.sequence());
+    writer.offer(second.sequence());
+    writer.writeEvents();
+    assertThat(output()).isEqualTo(lines(first));
+    verify(pool).schedule(task, WINDOW_RETRY_DELAY_MS, MILLISECONDS);
+
+    room = Long.MAX_VALUE;
+    writer.writeEvents();
+    assertThat(output()).isEqualTo(lines(first, second));
+  }
+
+  @Test
+  public void doesNotRescheduleAfterStop() {
+    StreamEventsBuffer.Entry entry = buffer.add(new TestEvent());
+    room = 0;
+
+    writer.offer(entry.sequence());
+    writer.stop();
+    writer.writeEvents();
+    verify(pool, never()).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+  }
+
+  @Test
+  public void replayedEventsAreWrittenBeforeNewerOnes() {
+    StreamEventsBuffer.Entry replayed = buffer.add(new TestEvent());
+    StreamEventsBuffer.Entry live = buffer.add(new TestEvent());
+
+    writer.beginReplay();
+    writer.offer(live.sequence());
+    verify(pool, never()).submit(any(Runnable.class));
+
+    writer.endReplay(ImmutableList.of(replayed.sequence()), false);
+    verify(pool, times(1)).submit(task);
+    writer.writeEvents();
+    assertThat(output()).isEqualTo(lines(replayed, live));
+  }
+
+  @Test
+  public void missedEventsAreReportedAsDroppedOutput() {
+    writer.beginReplay();
+    writer.endReplay(ImmutableList.of(), true);
+    verify(pool).submit(task);
+
+    writer.writeEvents();
+    assertThat(output()).isEqualTo(new String(DROPPED, UTF_8));
+  }
+
+  @Test
+  public void overwrittenEventsAreReportedAsDroppedOutput() {
+    writer.offer(buffer.add(new TestEvent()).sequence());
+    for (int i = 0; i < buffer.capacity(); i++) {
+      buffer.add(new TestEvent());
+    }
+
+    writer.writeEvents();
+    assertThat(output()).isEqualTo(new String(DROPPED, UTF_8));
+  }
+
+  private String output() {
+    return new String(out.toByteArray(), UTF_8);
+  }
+
+  private static String lines(StreamEventsBuffer.Entry... entries) {
+    StringBuilder b = new StringBuilder();
+    for (StreamEventsBuffer.Entry entry : entries) {
+      b.append(new String(entry.line(), UTF_8));
+    }
+    return b.toString();
+  }
+}